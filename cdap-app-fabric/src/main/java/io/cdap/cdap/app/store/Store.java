@@ -476,6 +476,14 @@ public interface Store {
    */
   Set<RunId> getRunningInRange(long startTimeInSecs, long endTimeInSecs);
 
+  /**
+   * Adds the runs that completed before the run records were indexed by time to the time index used by
+   * {@link #getRunningInRange(long, long)}. It does nothing if they were added already.
+   *
+   * @param batchSize the number of runs to index in each transaction
+   */
+  void backfillRunTimeIndex(int batchSize);
+
   /**
    * Get the run count of the given program.
    *
@@ -21,6 +21,7 @@ import io.cdap.cdap.common.logging.LoggingContext;
 import io.cdap.cdap.logging.appender.LogAppender;
 import io.cdap.cdap.logging.appender.LogMessage;
 import io.cdap.cdap.logging.context.LoggingContextHelper;
+import io.cdap.cdap.logging.serialize.LoggingEventBlock;
 import io.cdap.cdap.logging.serialize.LoggingEventSerializer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -28,6 +29,7 @@ import org.slf4j.LoggerFactory;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.Iterator;
+import java.util.List;
 import javax.inject.Inject;
 
 /**
@@ -49,19 +51,34 @@ public class LogAppenderLogProcessor implements RemoteExecutionLogProcessor {
   public void process(Iterator<byte[]> loggingEventBytes) {
     LoggingEventSerializer serializer = LOGGING_EVENT_SERIALIZER.get();
     loggingEventBytes.forEachRemaining(bytes -> {
+      // The payload is either a block of events or a single event
+      List<ByteBuffer> events;
       try {
-        ILoggingEvent iLoggingEvent = serializer.fromBytes(ByteBuffer.wrap(bytes));
-        LoggingContext loggingContext = LoggingContextHelper.getLoggingContext(iLoggingEvent.getMDCPropertyMap());
-        if (loggingContext == null) {
-          // This shouldn't happen
-          LOG.debug("Ignore logging event due to missing logging context: {}", iLoggingEvent);
-          return;
-        }
-        logAppender.append(new LogMessage(iLoggingEvent, loggingContext));
+        events = LoggingEventBlock.decode(ByteBuffer.wrap(bytes));
       } catch (IOException e) {
-        LOG.warn("Ignore logging event due to decode failure: {}", e.getMessage());
-        LOG.debug("Ignore logging event stack trace", e);
+        LOG.warn("Ignore logging event block due to decode failure: {}", e.getMessage());
+        LOG.debug("Ignore logging event block stack trace", e);
+        return;
+      }
+      for (ByteBuffer eventBytes : events) {
+        processEvent(serializer, eventBytes);
       }
     });
   }
+
+  private void processEvent(LoggingEventSerializer serializer, ByteBuffer eventBytes) {
+    try {
+      ILoggingEvent iLoggingEvent = serializer.fromBytes(eventBytes);
+      LoggingContext loggingContext = LoggingContextHelper.getLoggingContext(iLoggingEvent.getMDCPropertyMap());
+      if (loggingContext == null) {
+        // This shouldn't happen
+        LOG.debug("Ignore logging event due to missing logging context: {}", iLoggingEvent);
+        return;
+      }
+      logAppender.append(new LogMessage(iLoggingEvent, loggingContext));
+    } catch (IOException e) {
+      LOG.warn("Ignore logging event due to decode failure: {}", e.getMessage());
+      LOG.debug("Ignore logging event stack trace", e);
+    }
+  }
 }
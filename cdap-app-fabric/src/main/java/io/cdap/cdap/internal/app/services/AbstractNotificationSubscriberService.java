@@ -60,7 +60,8 @@ public abstract class AbstractNotificationSubscriberService extends AbstractMess
             Constants.Metrics.Tag.CONSUMER, name
           )));
     this.name = name;
-    this.messagingContext = new MultiThreadMessagingContext(messagingService);
+    this.messagingContext = new MultiThreadMessagingContext(
+      messagingService, cConf.getLong(Constants.MessagingSystem.SUBSCRIBER_FETCH_WAIT_MS));
     this.transactionRunner = transactionRunner;
   }
 
@@ -42,6 +42,7 @@ import java.util.EnumSet;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
@@ -71,6 +72,7 @@ public abstract class RunRecordCorrectorService extends AbstractIdleService {
   private final NamespaceAdmin namespaceAdmin;
   private final DatasetFramework datasetFramework;
   private ScheduledExecutorService localDatasetDeleterService;
+  private ExecutorService runTimeIndexBackfillService;
 
   RunRecordCorrectorService(CConfiguration cConf, Store store, ProgramStateWriter programStateWriter,
                             ProgramRuntimeService runtimeService, NamespaceAdmin namespaceAdmin,
@@ -172,6 +174,18 @@ public abstract class RunRecordCorrectorService extends AbstractIdleService {
 
     Runnable runnable = new LocalDatasetDeleterRunnable(namespaceAdmin, store, datasetFramework);
     localDatasetDeleterService.scheduleWithFixedDelay(runnable, initialDelay, interval, TimeUnit.SECONDS);
+
+    // Index the runs completed before the run records were indexed by time. Until then, queries by time range
+    // scan the run records.
+    runTimeIndexBackfillService = Executors.newSingleThreadExecutor(r -> new Thread(r, "run time index backfill"));
+    runTimeIndexBackfillService.execute(() -> {
+      try {
+        store.backfillRunTimeIndex(txBatchSize);
+      } catch (Exception e) {
+        LOG.warn("Failed to backfill the run records time index, it will be retried on the next start", e);
+      }
+    });
+    runTimeIndexBackfillService.shutdown();
   }
 
   @Override
@@ -179,6 +193,7 @@ public abstract class RunRecordCorrectorService extends AbstractIdleService {
     LOG.info("Stopping RunRecordCorrectorService");
 
     localDatasetDeleterService.shutdown();
+    runTimeIndexBackfillService.shutdownNow();
     try {
       if (!localDatasetDeleterService.awaitTermination(5, TimeUnit.SECONDS)) {
         localDatasetDeleterService.shutdownNow();
@@ -64,7 +64,9 @@ import java.io.IOException;
 import java.lang.reflect.Type;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
@@ -96,6 +98,16 @@ import javax.annotation.Nullable;
  *
  * Workflow node state is updated whenever program state is updated
  * and we notice that the program belongs to a workflow.
+ *
+ * Completed run records are also indexed by time bucket. The time between the start and the stop time of a run
+ * is covered by the fewest aligned hour, day, 30 day and 360 day buckets, such that the number of rows of a run
+ * grows with the number of years it ran rather than the number of hours:
+ *
+ * bucket size|time bucket|runid
+ *
+ * The index is used to find the runs that were running in a given time range, without scanning all completed
+ * run records. Until the runs completed before the index existed are added to it by {@link #backfillTimeIndex},
+ * the completed run records are scanned instead.
  */
 public class AppMetadataStore {
 
@@ -112,6 +124,16 @@ public class AppMetadataStore {
   private static final String TYPE_COUNT = "runRecordCount";
   private static final String TYPE_RUN_RECORD_UPGRADE_COUNT = "runRecordUpgradeCount";
   private static final String SMALLEST_POSSIBLE_STRING = "";
+  // Sizes of the time buckets in seconds for indexing completed run records, from the smallest to the largest.
+  // Each size is a multiple of the previous one.
+  private static final long[] RUN_TIME_BUCKET_SIZES_SECS = {
+    TimeUnit.HOURS.toSeconds(1), TimeUnit.DAYS.toSeconds(1), TimeUnit.DAYS.toSeconds(30), TimeUnit.DAYS.toSeconds(360)
+  };
+  // Time bucket of the time index row recording that the runs completed before the time index existed are indexed
+  private static final long TIME_INDEX_BACKFILLED_BUCKET_SIZE = 0L;
+  private static final long TIME_INDEX_BACKFILLED_BUCKET = Long.MIN_VALUE;
+  // Maximum number of time index rows deleted with a single multi delete
+  private static final int TIME_INDEX_DELETE_BATCH_SIZE = 1000;
 
   private static final Map<ProgramRunStatus, String> STATUS_TYPE_MAP = ImmutableMap.<ProgramRunStatus, String>builder()
     .put(ProgramRunStatus.PENDING, TYPE_RUN_RECORD_ACTIVE)
@@ -126,9 +148,12 @@ public class AppMetadataStore {
 
 
   private final StructuredTableContext context;
+  @Nullable
+  private final ApplicationMetaCache appMetaCache;
   private StructuredTable applicationSpecificationTable;
   private StructuredTable workflowNodeStateTable;
   private StructuredTable runRecordsTable;
+  private StructuredTable runRecordsTimeIndexTable;
   private StructuredTable workflowsTable;
   private StructuredTable programCountsTable;
   private StructuredTable subscriberStateTable;
@@ -137,11 +162,20 @@ public class AppMetadataStore {
    * Static method for creating an instance of {@link AppMetadataStore}.
    */
   public static AppMetadataStore create(StructuredTableContext context) {
-    return new AppMetadataStore(context);
+    return new AppMetadataStore(context, null);
+  }
+
+  /**
+   * Static method for creating an instance of {@link AppMetadataStore} that uses the given
+   * {@link ApplicationMetaCache} to avoid deserializing the same {@link ApplicationMeta} repeatedly.
+   */
+  public static AppMetadataStore create(StructuredTableContext context, @Nullable ApplicationMetaCache appMetaCache) {
+    return new AppMetadataStore(context, appMetaCache);
   }
 
-  private AppMetadataStore(StructuredTableContext context) {
+  private AppMetadataStore(StructuredTableContext context, @Nullable ApplicationMetaCache appMetaCache) {
     this.context = context;
+    this.appMetaCache = appMetaCache;
   }
 
   private StructuredTable getApplicationSpecificationTable() {
@@ -177,6 +211,17 @@ public class AppMetadataStore {
     return runRecordsTable;
   }
 
+  private StructuredTable getRunRecordsTimeIndexTable() {
+    try {
+      if (runRecordsTimeIndexTable == null) {
+        runRecordsTimeIndexTable = context.getTable(StoreDefinition.AppMetadataStore.RUN_RECORDS_TIME_INDEX);
+      }
+    } catch (TableNotFoundException e) {
+      throw new RuntimeException(e);
+    }
+    return runRecordsTimeIndexTable;
+  }
+
   private StructuredTable getWorkflowsTable() {
     try {
       if (workflowsTable == null) {
@@ -223,8 +268,8 @@ public class AppMetadataStore {
     if (!row.isPresent()) {
       return null;
     }
-    return GSON.fromJson(
-      row.get().getString(StoreDefinition.AppMetadataStore.APPLICATION_DATA_FIELD), ApplicationMeta.class);
+    return decodeApplicationMeta(new ApplicationId(namespaceId, appId, versionId),
+                                 row.get().getString(StoreDefinition.AppMetadataStore.APPLICATION_DATA_FIELD));
   }
 
   public List<ApplicationMeta> getAllApplications(String namespaceId) throws IOException {
@@ -265,30 +310,41 @@ public class AppMetadataStore {
 
   public Map<ApplicationId, ApplicationMeta> getApplicationsForAppIds(Collection<ApplicationId> appIds)
     throws IOException {
+    List<List<Field<?>>> multiKeys = new ArrayList<>(appIds.size());
+    for (ApplicationId appId : appIds) {
+      multiKeys.add(getApplicationPrimaryKeys(appId.getNamespace(), appId.getApplication(), appId.getVersion()));
+    }
     Map<ApplicationId, ApplicationMeta> result = new HashMap<>();
-    for (ApplicationId appId: appIds) {
-      ApplicationMeta applicationMeta = getApplication(appId);
-      if (applicationMeta != null) {
-        result.put(appId, getApplication(appId));
-      }
+    for (StructuredRow row : getApplicationSpecificationTable().multiRead(multiKeys)) {
+      ApplicationId appId = new NamespaceId(row.getString(StoreDefinition.AppMetadataStore.NAMESPACE_FIELD))
+        .app(row.getString(StoreDefinition.AppMetadataStore.APPLICATION_FIELD),
+             row.getString(StoreDefinition.AppMetadataStore.VERSION_FIELD));
+      result.put(appId,
+                 decodeApplicationMeta(appId, row.getString(StoreDefinition.AppMetadataStore.APPLICATION_DATA_FIELD)));
     }
     return result;
   }
 
   public void writeApplication(String namespaceId, String appId, String versionId, ApplicationSpecification spec)
     throws IOException {
-    writeApplicationSerialized(namespaceId, appId, versionId, GSON.toJson(new ApplicationMeta(appId, spec)));
+    writeApplicationMeta(namespaceId, appId, versionId, new ApplicationMeta(appId, spec));
   }
 
   public void deleteApplication(String namespaceId, String appId, String versionId)
     throws IOException {
     List<Field<?>> fields = getApplicationPrimaryKeys(namespaceId, appId, versionId);
     getApplicationSpecificationTable().delete(fields);
+    if (appMetaCache != null) {
+      appMetaCache.invalidate(new ApplicationId(namespaceId, appId, versionId));
+    }
   }
 
   public void deleteApplications(String namespaceId)
     throws IOException {
     getApplicationSpecificationTable().deleteAll(getNamespaceRange(namespaceId));
+    if (appMetaCache != null) {
+      appMetaCache.invalidate(new NamespaceId(namespaceId));
+    }
   }
 
   // todo: do we need appId? may be use from appSpec?
@@ -306,7 +362,30 @@ public class AppMetadataStore {
 
     updated = ApplicationMeta.updateSpec(existing, spec);
     LOG.trace("Application exists in mds: id: {}, spec: {}", existing);
-    writeApplicationSerialized(namespaceId, appId, versionId, GSON.toJson(updated));
+    writeApplicationMeta(namespaceId, appId, versionId, updated);
+  }
+
+  /**
+   * Writes the given {@link ApplicationMeta} to the store and also puts it into the {@link ApplicationMetaCache}.
+   */
+  private void writeApplicationMeta(String namespaceId, String appId, String versionId,
+                                    ApplicationMeta meta) throws IOException {
+    String serialized = GSON.toJson(meta);
+    writeApplicationSerialized(namespaceId, appId, versionId, serialized);
+    if (appMetaCache != null) {
+      appMetaCache.put(new ApplicationId(namespaceId, appId, versionId), serialized, meta);
+    }
+  }
+
+  /**
+   * Decodes the serialized {@link ApplicationMeta} of the given application, using the {@link ApplicationMetaCache}
+   * if there is one.
+   */
+  private ApplicationMeta decodeApplicationMeta(ApplicationId appId, String serialized) {
+    if (appMetaCache == null) {
+      return GSON.fromJson(serialized, ApplicationMeta.class);
+    }
+    return appMetaCache.get(appId, serialized, json -> GSON.fromJson(json, ApplicationMeta.class));
   }
 
   /**
@@ -645,6 +724,7 @@ public class AppMetadataStore {
     List<Field<?>> fields = getProgramRunInvertedTimeKey(TYPE_RUN_RECORD_COMPLETED, programRunId, startTs);
     writeToStructuredTableWithPrimaryKeys(
       fields, meta, getRunRecordsTable(), StoreDefinition.AppMetadataStore.RUN_RECORD_DATA);
+    addToTimeIndex(meta);
     List<Field<?>> countKey = getProgramCountPrimaryKeys(TYPE_COUNT, programRunId.getParent());
     getProgramCountsTable().increment(countKey, StoreDefinition.AppMetadataStore.COUNTS, 1L);
     LOG.trace("Recorded {} for program {}", ProgramRunStatus.REJECTED, programRunId);
@@ -862,6 +942,7 @@ public class AppMetadataStore {
       .build();
     writeToStructuredTableWithPrimaryKeys(
       key, meta, getRunRecordsTable(), StoreDefinition.AppMetadataStore.RUN_RECORD_DATA);
+    addToTimeIndex(meta);
     LOG.trace("Recorded {} for program {}", runStatus, programRunId);
     return meta;
   }
@@ -913,9 +994,17 @@ public class AppMetadataStore {
 
   public Map<ProgramRunId, RunRecordMeta> getRuns(Set<ProgramRunId> programRunIds)
     throws IOException {
-    Map<ProgramRunId, RunRecordMeta> result = new HashMap();
+    Map<ProgramRunId, RunRecordMeta> result = new HashMap<>();
+    // Query active run records first
+    result.putAll(getRunRecordMetas(TYPE_RUN_RECORD_ACTIVE, programRunIds));
+    // Then query completed run records for runs that are not active
+    Set<ProgramRunId> completedRunIds = programRunIds.stream()
+      .filter(runId -> !result.containsKey(runId))
+      .collect(Collectors.toSet());
+    result.putAll(getRunRecordMetas(TYPE_RUN_RECORD_COMPLETED, completedRunIds));
+    // Runs that are not found are mapped to null
     for (ProgramRunId runId : programRunIds) {
-      result.put(runId, getRun(runId));
+      result.putIfAbsent(runId, null);
     }
     return result;
   }
@@ -1242,8 +1331,9 @@ public class AppMetadataStore {
     ApplicationId applicationId = new ApplicationId(namespaceId, appId, versionId);
     getRunRecordsTable()
       .deleteAll(Range.singleton(getRunRecordApplicationPrefix(TYPE_RUN_RECORD_ACTIVE, applicationId)));
-    getRunRecordsTable()
-      .deleteAll(Range.singleton(getRunRecordApplicationPrefix(TYPE_RUN_RECORD_COMPLETED, applicationId)));
+    Range completedRange = Range.singleton(getRunRecordApplicationPrefix(TYPE_RUN_RECORD_COMPLETED, applicationId));
+    deleteFromTimeIndex(completedRange);
+    getRunRecordsTable().deleteAll(completedRange);
     getProgramCountsTable().deleteAll(Range.singleton(getCountApplicationPrefix(TYPE_COUNT, applicationId)));
     getProgramCountsTable().deleteAll(
       Range.singleton(getCountApplicationPrefix(TYPE_RUN_RECORD_UPGRADE_COUNT, applicationId)));
@@ -1252,8 +1342,10 @@ public class AppMetadataStore {
   public void deleteProgramHistory(String namespaceId) throws IOException {
     getRunRecordsTable().deleteAll(
       Range.singleton(getRunRecordNamespacePrefixWithString(TYPE_RUN_RECORD_ACTIVE, namespaceId)));
-    getRunRecordsTable().deleteAll(Range.singleton(
-      getRunRecordNamespacePrefixWithString(TYPE_RUN_RECORD_COMPLETED, namespaceId)));
+    Range completedRange = Range.singleton(
+      getRunRecordNamespacePrefixWithString(TYPE_RUN_RECORD_COMPLETED, namespaceId));
+    deleteFromTimeIndex(completedRange);
+    getRunRecordsTable().deleteAll(completedRange);
     getProgramCountsTable().deleteAll(Range.singleton(getCountNamespacePrefix(TYPE_COUNT, namespaceId)));
     getProgramCountsTable().deleteAll(Range.singleton(
       getCountNamespacePrefix(TYPE_RUN_RECORD_UPGRADE_COUNT, namespaceId)));
@@ -1296,10 +1388,8 @@ public class AppMetadataStore {
    */
   public Set<RunId> getRunningInRangeCompleted(long startTimeInSecs, long endTimeInSecs)
     throws IOException {
-    // This method scans a large amount of data and may timeout. However, the previous implementation would
-    // simply return incomplete data. We have doubled the amount of time each transaction can take by using two
-    // transactions - and can further get all namespaces from the smaller app spec table and do one transaction per
-    // namespace if necessary.
+    // Completed runs are looked up from the time index, which only touches the time buckets overlapping the range,
+    // once the runs completed before the index existed are backfilled
     return getRunningInRangeForStatus(TYPE_RUN_RECORD_COMPLETED, startTimeInSecs, endTimeInSecs);
   }
 
@@ -1308,10 +1398,8 @@ public class AppMetadataStore {
    */
   public Set<RunId> getRunningInRangeActive(long startTimeInSecs, long endTimeInSecs)
     throws IOException {
-    // This method scans a large amount of data and may timeout. However, the previous implementation would
-    // simply return incomplete data. We have doubled the amount of time each transaction can take by using two
-    // transactions - and can further get all namespaces from the smaller app spec table and do one transaction per
-    // namespace if necessary.
+    // Active runs don't have a stop time yet, hence they are not in the time index. This scans all active run
+    // records, which are bounded by the number of programs that are currently running.
     return getRunningInRangeForStatus(TYPE_RUN_RECORD_ACTIVE, startTimeInSecs, endTimeInSecs);
   }
 
@@ -1393,6 +1481,10 @@ public class AppMetadataStore {
   @VisibleForTesting
   Set<RunId> getRunningInRangeForStatus(String statusKey, final long startTimeInSecs,
                                         final long endTimeInSecs) throws IOException {
+    if (TYPE_RUN_RECORD_COMPLETED.equals(statusKey) && isTimeIndexBackfilled()) {
+      return getRunningInRangeFromTimeIndex(startTimeInSecs, endTimeInSecs);
+    }
+
     // Create time filter to get running programs between start and end time
     Predicate<RunRecordMeta> timeFilter = (runRecordMeta) ->
       runRecordMeta.getStartTs() < endTimeInSecs &&
@@ -1406,12 +1498,160 @@ public class AppMetadataStore {
         .collect(Collectors.toSet());
   }
 
+  /**
+   * Returns the completed runs that were running between the given start and end time by scanning the time buckets
+   * of the time index that overlap the time range, for each bucket size.
+   */
+  private Set<RunId> getRunningInRangeFromTimeIndex(long startTimeInSecs, long endTimeInSecs) throws IOException {
+    // A run overlaps the time range if it started before the end time and stopped at or after the start time.
+    // The buckets of such a run cover every second it was running, so one of its buckets overlaps the time range.
+    Set<RunId> result = new HashSet<>();
+    for (long bucketSize : RUN_TIME_BUCKET_SIZES_SECS) {
+      Range range = Range.create(
+        getTimeIndexKeys(bucketSize, Math.min(startTimeInSecs, endTimeInSecs) / bucketSize), Range.Bound.INCLUSIVE,
+        getTimeIndexKeys(bucketSize, Math.max(startTimeInSecs, endTimeInSecs) / bucketSize), Range.Bound.INCLUSIVE);
+      try (CloseableIterator<StructuredRow> iterator = getRunRecordsTimeIndexTable().scan(range, Integer.MAX_VALUE)) {
+        while (iterator.hasNext()) {
+          StructuredRow row = iterator.next();
+          long startTs = row.getLong(StoreDefinition.AppMetadataStore.RUN_START_TIME);
+          long stopTs = row.getLong(StoreDefinition.AppMetadataStore.RUN_STOP_TIME);
+          if (startTs < endTimeInSecs && stopTs >= startTimeInSecs) {
+            result.add(RunIds.fromString(row.getString(StoreDefinition.AppMetadataStore.RUN_FIELD)));
+          }
+        }
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Adds the given completed run to the time index, with one row for each time bucket covering the time the run was
+   * running.
+   */
+  private void addToTimeIndex(RunRecordMeta meta) throws IOException {
+    long startTs = meta.getStartTs();
+    long stopTs = meta.getStopTs() == null ? startTs : meta.getStopTs();
+    List<Collection<Field<?>>> rows = getTimeIndexKeys(startTs, stopTs, meta.getPid());
+    for (Collection<Field<?>> fields : rows) {
+      fields.add(Fields.longField(StoreDefinition.AppMetadataStore.RUN_START_TIME, startTs));
+      fields.add(Fields.longField(StoreDefinition.AppMetadataStore.RUN_STOP_TIME, stopTs));
+      rows.add(fields);
+    }
+    getRunRecordsTimeIndexTable().multiUpsert(rows);
+  }
+
+  /**
+   * Returns whether the runs completed before the time index existed have been added to it by
+   * {@link #backfillTimeIndex}.
+   */
+  public boolean isTimeIndexBackfilled() throws IOException {
+    return getRunRecordsTimeIndexTable().read(getBackfilledKeys()).isPresent();
+  }
+
+  /**
+   * Adds the next batch of completed runs to the time index, for the runs that completed before the time index
+   * existed. Runs that are already indexed are written again with the same rows. Once all completed runs are
+   * indexed, the time index is used by {@link #getRunningInRangeCompleted}.
+   *
+   * @param afterKey the key returned by the previous call, or {@code null} to start from the first completed run
+   * @param limit the maximum number of runs to index
+   * @return the key to pass to the next call, or {@code null} if all completed runs are indexed
+   */
+  @Nullable
+  public Collection<Field<?>> backfillTimeIndex(@Nullable Collection<Field<?>> afterKey,
+                                                int limit) throws IOException {
+    List<Field<?>> prefix = getRunRecordStatusPrefix(TYPE_RUN_RECORD_COMPLETED);
+    Range range = afterKey == null ? Range.singleton(prefix)
+                                   : Range.create(afterKey, Range.Bound.EXCLUSIVE, prefix, Range.Bound.INCLUSIVE);
+    Collection<Field<?>> lastKey = null;
+    int count = 0;
+    try (CloseableIterator<StructuredRow> iterator = getRunRecordsTable().scan(range, limit)) {
+      while (iterator.hasNext()) {
+        StructuredRow row = iterator.next();
+        addToTimeIndex(deserializeRunRecordMeta(row));
+        lastKey = row.getPrimaryKeys();
+        count++;
+      }
+    }
+    if (count < limit) {
+      List<Field<?>> fields = getBackfilledKeys();
+      fields.add(Fields.longField(StoreDefinition.AppMetadataStore.RUN_START_TIME, 0L));
+      fields.add(Fields.longField(StoreDefinition.AppMetadataStore.RUN_STOP_TIME, 0L));
+      getRunRecordsTimeIndexTable().upsert(fields);
+      return null;
+    }
+    return lastKey;
+  }
+
+  /**
+   * Deletes the time index rows of all completed runs in the given range of the run records table.
+   */
+  private void deleteFromTimeIndex(Range completedRange) throws IOException {
+    List<Collection<Field<?>>> keys = new ArrayList<>();
+    try (CloseableIterator<StructuredRow> iterator = getRunRecordsTable().scan(completedRange, Integer.MAX_VALUE)) {
+      while (iterator.hasNext()) {
+        RunRecordMeta meta = deserializeRunRecordMeta(iterator.next());
+        long stopTs = meta.getStopTs() == null ? meta.getStartTs() : meta.getStopTs();
+        keys.addAll(getTimeIndexKeys(meta.getStartTs(), stopTs, meta.getPid()));
+        if (keys.size() >= TIME_INDEX_DELETE_BATCH_SIZE) {
+          getRunRecordsTimeIndexTable().multiDelete(keys);
+          keys.clear();
+        }
+      }
+    }
+    if (!keys.isEmpty()) {
+      getRunRecordsTimeIndexTable().multiDelete(keys);
+    }
+  }
+
+  /**
+   * Returns the keys of the time index rows of a run. The hours between the start and the stop time are covered
+   * by the fewest aligned buckets, by always taking the largest bucket that starts at the current hour and does
+   * not go past the hour of the stop time. A run has at most a bucket for each hour of the first and the last day,
+   * each day of the first and the last 30 days, each 30 days of the first and the last 360 days, and each 360 days in
+   * between.
+   */
+  private List<Collection<Field<?>>> getTimeIndexKeys(long startTs, long stopTs, String runId) {
+    long smallestSize = RUN_TIME_BUCKET_SIZES_SECS[0];
+    long time = Math.min(startTs, stopTs) / smallestSize * smallestSize;
+    long endTime = (Math.max(startTs, stopTs) / smallestSize + 1) * smallestSize;
+
+    List<Collection<Field<?>>> keys = new ArrayList<>();
+    while (time < endTime) {
+      long bucketSize = smallestSize;
+      for (long size : RUN_TIME_BUCKET_SIZES_SECS) {
+        if (time % size == 0 && time + size <= endTime) {
+          bucketSize = size;
+        }
+      }
+      List<Field<?>> fields = getTimeIndexKeys(bucketSize, time / bucketSize);
+      fields.add(Fields.stringField(StoreDefinition.AppMetadataStore.RUN_FIELD, runId));
+      keys.add(fields);
+      time += bucketSize;
+    }
+    return keys;
+  }
+
+  private List<Field<?>> getTimeIndexKeys(long bucketSize, long bucket) {
+    List<Field<?>> fields = new ArrayList<>();
+    fields.add(Fields.longField(StoreDefinition.AppMetadataStore.RUN_TIME_BUCKET_SIZE, bucketSize));
+    fields.add(Fields.longField(StoreDefinition.AppMetadataStore.RUN_TIME_BUCKET, bucket));
+    return fields;
+  }
+
+  private List<Field<?>> getBackfilledKeys() {
+    List<Field<?>> fields = getTimeIndexKeys(TIME_INDEX_BACKFILLED_BUCKET_SIZE, TIME_INDEX_BACKFILLED_BUCKET);
+    fields.add(Fields.stringField(StoreDefinition.AppMetadataStore.RUN_FIELD, SMALLEST_POSSIBLE_STRING));
+    return fields;
+  }
+
   @VisibleForTesting
   // USE ONLY IN TESTS: WILL DELETE ALL METADATA STORE INFO
   public void deleteAllAppMetadataTables() throws IOException {
     deleteTable(getApplicationSpecificationTable(), StoreDefinition.AppMetadataStore.NAMESPACE_FIELD);
     deleteTable(getWorkflowNodeStateTable(), StoreDefinition.AppMetadataStore.NAMESPACE_FIELD);
     deleteTable(getRunRecordsTable(), StoreDefinition.AppMetadataStore.RUN_STATUS);
+    getRunRecordsTimeIndexTable().deleteAll(Range.all());
     deleteTable(getWorkflowsTable(), StoreDefinition.AppMetadataStore.NAMESPACE_FIELD);
     deleteTable(getProgramCountsTable(), StoreDefinition.AppMetadataStore.COUNT_TYPE);
     deleteTable(getSubscriberStateTable(), StoreDefinition.AppMetadataStore.SUBSCRIBER_TOPIC);
@@ -1569,6 +1809,28 @@ public class AppMetadataStore {
     return fields;
   }
 
+  /**
+   * Reads the run records of the given record type for the given runs with a single multi read.
+   */
+  private Map<ProgramRunId, RunRecordMeta> getRunRecordMetas(String recordType,
+                                                             Collection<ProgramRunId> programRunIds)
+    throws IOException {
+    if (programRunIds.isEmpty()) {
+      return Collections.emptyMap();
+    }
+    List<List<Field<?>>> multiKeys = new ArrayList<>(programRunIds.size());
+    for (ProgramRunId runId : programRunIds) {
+      multiKeys.add(getProgramRunInvertedTimeKey(recordType, runId,
+                                                 RunIds.getTime(runId.getRun(), TimeUnit.SECONDS)));
+    }
+    Map<ProgramRunId, RunRecordMeta> result = new HashMap<>();
+    for (StructuredRow row : getRunRecordsTable().multiRead(multiKeys)) {
+      RunRecordMeta meta = deserializeRunRecordMeta(row);
+      result.put(meta.getProgramRunId(), meta);
+    }
+    return result;
+  }
+
   @Nullable
   private RunRecordMeta getRunRecordMeta(List<Field<?>> primaryKeys) throws IOException {
     Optional<StructuredRow> row = getRunRecordsTable().read(primaryKeys);
@@ -0,0 +1,164 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.cdap.internal.app.store;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.Weigher;
+import com.google.common.collect.ImmutableMap;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import io.cdap.cdap.api.metrics.MetricsCollectionService;
+import io.cdap.cdap.api.metrics.MetricsContext;
+import io.cdap.cdap.common.conf.CConfiguration;
+import io.cdap.cdap.common.conf.Constants;
+import io.cdap.cdap.proto.id.ApplicationId;
+import io.cdap.cdap.proto.id.NamespaceId;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * A cache of deserialized {@link ApplicationMeta}, keyed by {@link ApplicationId}. Each entry is versioned by the
+ * serialized form it was decoded from. A cached entry is only used if the serialized form read from the store is
+ * the same, hence the cache never returns stale metadata, even if the application was updated by another process
+ * or the transaction that updated it was rolled back. The total size of the cache is bounded by the size of the
+ * serialized forms.
+ *
+ * This class is thread safe.
+ */
+@Singleton
+public class ApplicationMetaCache {
+
+  private static final String METRIC_HIT = "appspec.cache.hit";
+  private static final String METRIC_MISS = "appspec.cache.miss";
+
+  private final Cache<ApplicationId, Entry> cache;
+  private final AtomicLong hitCount;
+  private final AtomicLong missCount;
+  private volatile MetricsContext metricsContext;
+
+  @Inject
+  ApplicationMetaCache(CConfiguration cConf) {
+    this(cConf.getLong(Constants.AppMetaStore.SPEC_CACHE_SIZE_MB) * 1024L);
+  }
+
+  /**
+   * Creates a cache with the given max size.
+   *
+   * @param maxSizeKb max total size of the serialized forms in KB
+   */
+  @VisibleForTesting
+  ApplicationMetaCache(long maxSizeKb) {
+    this.cache = CacheBuilder.newBuilder()
+      .maximumWeight(maxSizeKb)
+      .weigher(new Weigher<ApplicationId, Entry>() {
+        @Override
+        public int weigh(ApplicationId key, Entry entry) {
+          return Math.max(1, entry.serialized.length() / 1024);
+        }
+      })
+      .build();
+    this.hitCount = new AtomicLong();
+    this.missCount = new AtomicLong();
+  }
+
+  /**
+   * Setter method for the optional binding on the {@link MetricsCollectionService} for emitting cache metrics.
+   */
+  @Inject(optional = true)
+  void setMetricsCollectionService(MetricsCollectionService metricsCollectionService) {
+    this.metricsContext = metricsCollectionService.getContext(ImmutableMap.of(
+      Constants.Metrics.Tag.NAMESPACE, NamespaceId.SYSTEM.getNamespace(),
+      Constants.Metrics.Tag.COMPONENT, Constants.Service.APP_FABRIC_HTTP));
+  }
+
+  /**
+   * Returns the {@link ApplicationMeta} of the given serialized form.
+   *
+   * @param appId the application id
+   * @param serialized the serialized {@link ApplicationMeta} as read from the store
+   * @param decoder function to decode the serialized form if it is not in the cache
+   * @return the cached {@link ApplicationMeta} if it was decoded from the same serialized form, otherwise the
+   *         newly decoded {@link ApplicationMeta}
+   */
+  ApplicationMeta get(ApplicationId appId, String serialized, Function<String, ApplicationMeta> decoder) {
+    Entry entry = cache.getIfPresent(appId);
+    if (entry != null && entry.serialized.equals(serialized)) {
+      hitCount.incrementAndGet();
+      emitMetric(METRIC_HIT);
+      return entry.meta;
+    }
+    missCount.incrementAndGet();
+    emitMetric(METRIC_MISS);
+    ApplicationMeta meta = decoder.apply(serialized);
+    cache.put(appId, new Entry(serialized, meta));
+    return meta;
+  }
+
+  /**
+   * Puts the {@link ApplicationMeta} that is being written to the store into the cache.
+   */
+  void put(ApplicationId appId, String serialized, ApplicationMeta meta) {
+    cache.put(appId, new Entry(serialized, meta));
+  }
+
+  /**
+   * Removes the given application from the cache.
+   */
+  void invalidate(ApplicationId appId) {
+    cache.invalidate(appId);
+  }
+
+  /**
+   * Removes all applications in the given namespace from the cache.
+   */
+  void invalidate(NamespaceId namespaceId) {
+    cache.asMap().keySet().removeIf(appId -> appId.getNamespaceId().equals(namespaceId));
+  }
+
+  @VisibleForTesting
+  long getHitCount() {
+    return hitCount.get();
+  }
+
+  @VisibleForTesting
+  long getMissCount() {
+    return missCount.get();
+  }
+
+  private void emitMetric(String name) {
+    MetricsContext context = metricsContext;
+    if (context != null) {
+      context.increment(name, 1L);
+    }
+  }
+
+  /**
+   * A cache entry of the decoded {@link ApplicationMeta} and the serialized form it was decoded from.
+   */
+  private static final class Entry {
+    private final String serialized;
+    private final ApplicationMeta meta;
+
+    Entry(String serialized, ApplicationMeta meta) {
+      this.serialized = serialized;
+      this.meta = meta;
+    }
+  }
+}
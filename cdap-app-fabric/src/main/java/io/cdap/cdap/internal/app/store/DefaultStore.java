@@ -60,6 +60,7 @@ import io.cdap.cdap.proto.id.ProgramRunId;
 import io.cdap.cdap.proto.id.WorkflowId;
 import io.cdap.cdap.spi.data.StructuredTableContext;
 import io.cdap.cdap.spi.data.TableNotFoundException;
+import io.cdap.cdap.spi.data.table.field.Field;
 import io.cdap.cdap.spi.data.transaction.TransactionRunner;
 import io.cdap.cdap.spi.data.transaction.TransactionRunners;
 import io.cdap.cdap.store.StoreDefinition;
@@ -95,10 +96,17 @@ public class DefaultStore implements Store {
   private static final Type STRING_MAP_TYPE = new TypeToken<Map<String, String>>() { }.getType();
 
   private TransactionRunner transactionRunner;
+  @Nullable
+  private final ApplicationMetaCache appMetaCache;
 
-  @Inject
   public DefaultStore(TransactionRunner transactionRunner) {
+    this(transactionRunner, null);
+  }
+
+  @Inject
+  public DefaultStore(TransactionRunner transactionRunner, @Nullable ApplicationMetaCache appMetaCache) {
     this.transactionRunner = transactionRunner;
+    this.appMetaCache = appMetaCache;
   }
 
   /**
@@ -112,7 +120,7 @@ public class DefaultStore implements Store {
   }
 
   private AppMetadataStore getAppMetadataStore(StructuredTableContext context) {
-    return AppMetadataStore.create(context);
+    return AppMetadataStore.create(context, appMetaCache);
   }
 
   private WorkflowTable getWorkflowTable(StructuredTableContext context) throws TableNotFoundException {
@@ -723,6 +731,25 @@ public class DefaultStore implements Store {
     return runs;
   }
 
+  @Override
+  public void backfillRunTimeIndex(int batchSize) {
+    boolean backfilled = TransactionRunners.run(transactionRunner, context -> {
+      return getAppMetadataStore(context).isTimeIndexBackfilled();
+    });
+    if (backfilled) {
+      return;
+    }
+
+    // Index the runs in batches to avoid transaction timeout
+    Collection<Field<?>> key = null;
+    do {
+      Collection<Field<?>> afterKey = key;
+      key = TransactionRunners.run(transactionRunner, context -> {
+        return getAppMetadataStore(context).backfillTimeIndex(afterKey, batchSize);
+      });
+    } while (key != null && !Thread.currentThread().isInterrupted());
+  }
+
   @Override
   public long getProgramRunCount(ProgramId programId) throws NotFoundException {
     return TransactionRunners.run(transactionRunner, context -> {
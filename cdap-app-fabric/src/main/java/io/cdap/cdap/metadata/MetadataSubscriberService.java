@@ -134,7 +134,8 @@ public class MetadataSubscriberService extends AbstractMessagingSubscriberServic
       )));
 
     this.cConf = cConf;
-    this.messagingContext = new MultiThreadMessagingContext(messagingService);
+    this.messagingContext = new MultiThreadMessagingContext(
+      messagingService, cConf.getLong(Constants.MessagingSystem.SUBSCRIBER_FETCH_WAIT_MS));
     this.datasetFramework = datasetFramework;
     this.metadataStorage = metadataStorage;
     this.transactionRunner = transactionRunner;
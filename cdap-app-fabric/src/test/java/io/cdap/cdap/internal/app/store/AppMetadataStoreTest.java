@@ -21,6 +21,7 @@ import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
 import io.cdap.cdap.api.artifact.ArtifactId;
+import io.cdap.cdap.api.dataset.lib.CloseableIterator;
 import io.cdap.cdap.common.app.RunIds;
 import io.cdap.cdap.internal.AppFabricTestHelper;
 import io.cdap.cdap.internal.app.runtime.SystemArguments;
@@ -31,8 +32,12 @@ import io.cdap.cdap.proto.id.NamespaceId;
 import io.cdap.cdap.proto.id.ProfileId;
 import io.cdap.cdap.proto.id.ProgramId;
 import io.cdap.cdap.proto.id.ProgramRunId;
+import io.cdap.cdap.spi.data.StructuredRow;
+import io.cdap.cdap.spi.data.table.field.Field;
+import io.cdap.cdap.spi.data.table.field.Range;
 import io.cdap.cdap.spi.data.transaction.TransactionRunner;
 import io.cdap.cdap.spi.data.transaction.TransactionRunners;
+import io.cdap.cdap.store.StoreDefinition;
 import org.apache.twill.api.RunId;
 import org.junit.Assert;
 import org.junit.Before;
@@ -331,6 +336,125 @@ public abstract class AppMetadataStoreTest {
     });
   }
 
+  @Test
+  public void testRunningInRangeAcrossTimeBuckets() throws Exception {
+    ApplicationId application = NamespaceId.DEFAULT.app("app");
+    ProgramId program = application.program(ProgramType.WORKFLOW, "program");
+    long hourSecs = TimeUnit.HOURS.toSeconds(1);
+
+    // A long run that spans several hours and a short run in the first hour
+    RunId longRunId = RunIds.generate(TimeUnit.SECONDS.toMillis(hourSecs / 2));
+    RunId shortRunId = RunIds.generate(TimeUnit.SECONDS.toMillis(hourSecs / 2 + 10));
+    ProgramRunId longRun = program.run(longRunId);
+    ProgramRunId shortRun = program.run(shortRunId);
+    TransactionRunners.run(transactionRunner, context -> {
+      AppMetadataStore metadataStoreDataset = AppMetadataStore.create(context);
+      for (ProgramRunId programRunId : Arrays.asList(longRun, shortRun)) {
+        recordProvisionAndStart(programRunId, metadataStoreDataset);
+        metadataStoreDataset.recordProgramRunning(
+          programRunId, RunIds.getTime(programRunId.getRun(), TimeUnit.SECONDS), null,
+          AppFabricTestHelper.createSourceId(sourceId.incrementAndGet()));
+      }
+      metadataStoreDataset.recordProgramStop(longRun, hourSecs * 5, ProgramRunStatus.COMPLETED, null,
+                                             AppFabricTestHelper.createSourceId(sourceId.incrementAndGet()));
+      metadataStoreDataset.recordProgramStop(shortRun, hourSecs / 2 + 20, ProgramRunStatus.FAILED, null,
+                                             AppFabricTestHelper.createSourceId(sourceId.incrementAndGet()));
+    });
+
+    TransactionRunners.run(transactionRunner, context -> {
+      AppMetadataStore metadataStoreDataset = AppMetadataStore.create(context);
+      // Simulate runs that completed before the time index existed, which are found by scanning the run records
+      context.getTable(StoreDefinition.AppMetadataStore.RUN_RECORDS_TIME_INDEX).deleteAll(Range.all());
+      Assert.assertFalse(metadataStoreDataset.isTimeIndexBackfilled());
+      assertRunningInRangeCompleted(metadataStoreDataset, longRunId, shortRunId);
+
+      // Backfill one run at a time, after which the runs are found from the time index
+      Collection<Field<?>> key = metadataStoreDataset.backfillTimeIndex(null, 1);
+      Assert.assertNotNull(key);
+      Assert.assertFalse(metadataStoreDataset.isTimeIndexBackfilled());
+      while (key != null) {
+        key = metadataStoreDataset.backfillTimeIndex(key, 1);
+      }
+      Assert.assertTrue(metadataStoreDataset.isTimeIndexBackfilled());
+      assertRunningInRangeCompleted(metadataStoreDataset, longRunId, shortRunId);
+
+      // Deleting the program history should also remove the runs from the time index
+      metadataStoreDataset.deleteProgramHistory(application.getNamespace(), application.getApplication(),
+                                                application.getVersion());
+      Assert.assertEquals(Collections.emptySet(), metadataStoreDataset.getRunningInRangeCompleted(0, Long.MAX_VALUE));
+    });
+  }
+
+  @Test
+  public void testRunningInRangeMultiYearRun() throws Exception {
+    ApplicationId application = NamespaceId.DEFAULT.app("app");
+    ProgramId program = application.program(ProgramType.WORKFLOW, "program");
+    long hourSecs = TimeUnit.HOURS.toSeconds(1);
+    long daySecs = TimeUnit.DAYS.toSeconds(1);
+
+    // A run that starts in the middle of a day and runs for about three years
+    long startTs = daySecs * 10 + hourSecs * 5 + 10;
+    long stopTs = startTs + daySecs * 1100 + hourSecs * 7;
+    RunId runId = RunIds.generate(TimeUnit.SECONDS.toMillis(startTs));
+    ProgramRunId programRunId = program.run(runId);
+    TransactionRunners.run(transactionRunner, context -> {
+      AppMetadataStore metadataStoreDataset = AppMetadataStore.create(context);
+      recordProvisionAndStart(programRunId, metadataStoreDataset);
+      metadataStoreDataset.recordProgramRunning(programRunId, startTs, null,
+                                                AppFabricTestHelper.createSourceId(sourceId.incrementAndGet()));
+      metadataStoreDataset.recordProgramStop(programRunId, stopTs, ProgramRunStatus.COMPLETED, null,
+                                             AppFabricTestHelper.createSourceId(sourceId.incrementAndGet()));
+    });
+
+    TransactionRunners.run(transactionRunner, context -> {
+      // The run is indexed with a bounded number of buckets instead of one per hour
+      int rows = 0;
+      try (CloseableIterator<StructuredRow> iterator = context.getTable(
+        StoreDefinition.AppMetadataStore.RUN_RECORDS_TIME_INDEX).scan(Range.all(), Integer.MAX_VALUE)) {
+        while (iterator.hasNext()) {
+          iterator.next();
+          rows++;
+        }
+      }
+      Assert.assertTrue("Unexpected number of time index rows " + rows, rows < 100);
+
+      // Mark the time index as backfilled, such that the runs are found from the time index
+      AppMetadataStore metadataStoreDataset = AppMetadataStore.create(context);
+      Assert.assertNull(metadataStoreDataset.backfillTimeIndex(null, Integer.MAX_VALUE));
+      Assert.assertTrue(metadataStoreDataset.isTimeIndexBackfilled());
+
+      Set<RunId> expected = Collections.singleton(runId);
+      Assert.assertEquals(expected, metadataStoreDataset.getRunningInRangeCompleted(startTs, startTs + 1));
+      Assert.assertEquals(expected, metadataStoreDataset.getRunningInRangeCompleted(daySecs * 400, daySecs * 400 + 1));
+      Assert.assertEquals(expected, metadataStoreDataset.getRunningInRangeCompleted(daySecs * 725 + hourSecs * 3,
+                                                                                    daySecs * 725 + hourSecs * 4));
+      Assert.assertEquals(expected, metadataStoreDataset.getRunningInRangeCompleted(stopTs, stopTs + hourSecs));
+      Assert.assertEquals(expected, metadataStoreDataset.getRunningInRangeCompleted(0, Long.MAX_VALUE));
+      Assert.assertEquals(Collections.emptySet(), metadataStoreDataset.getRunningInRangeCompleted(0, startTs - 1));
+      Assert.assertEquals(Collections.emptySet(),
+                          metadataStoreDataset.getRunningInRangeCompleted(stopTs + 1, stopTs + daySecs * 400));
+
+      metadataStoreDataset.deleteProgramHistory(application.getNamespace(), application.getApplication(),
+                                                application.getVersion());
+      Assert.assertEquals(Collections.emptySet(), metadataStoreDataset.getRunningInRangeCompleted(0, Long.MAX_VALUE));
+    });
+  }
+
+  private void assertRunningInRangeCompleted(AppMetadataStore metadataStoreDataset,
+                                             RunId longRunId, RunId shortRunId) throws IOException {
+    long hourSecs = TimeUnit.HOURS.toSeconds(1);
+    Assert.assertEquals(new HashSet<>(Arrays.asList(longRunId, shortRunId)),
+                        metadataStoreDataset.getRunningInRangeCompleted(0, hourSecs));
+    Assert.assertEquals(Collections.singleton(longRunId),
+                        metadataStoreDataset.getRunningInRangeCompleted(hourSecs * 2, hourSecs * 3));
+    Assert.assertEquals(Collections.singleton(longRunId),
+                        metadataStoreDataset.getRunningInRangeCompleted(hourSecs * 5, hourSecs * 6));
+    Assert.assertEquals(Collections.emptySet(),
+                        metadataStoreDataset.getRunningInRangeCompleted(hourSecs * 5 + 1, hourSecs * 6));
+    Assert.assertEquals(Collections.emptySet(),
+                        metadataStoreDataset.getRunningInRangeCompleted(0, hourSecs / 2));
+  }
+
   @Test
   public void testGetRuns() throws Exception {
     // Add some run records
@@ -0,0 +1,98 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.cdap.internal.app.store;
+
+import io.cdap.cdap.proto.id.ApplicationId;
+import io.cdap.cdap.proto.id.NamespaceId;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Unit test for {@link ApplicationMetaCache}.
+ */
+public class ApplicationMetaCacheTest {
+
+  @Test
+  public void testVersioning() {
+    ApplicationMetaCache cache = new ApplicationMetaCache(1024L);
+    AtomicInteger decodeCount = new AtomicInteger();
+    Function<String, ApplicationMeta> decoder = s -> {
+      decodeCount.incrementAndGet();
+      return new ApplicationMeta(s, null);
+    };
+
+    ApplicationId appId = NamespaceId.DEFAULT.app("app");
+    ApplicationMeta meta = cache.get(appId, "v1", decoder);
+    Assert.assertEquals("v1", meta.getId());
+    Assert.assertEquals(1, decodeCount.get());
+
+    // Same serialized form should be served from the cache
+    Assert.assertSame(meta, cache.get(appId, new String("v1"), decoder));
+    Assert.assertEquals(1, decodeCount.get());
+
+    // A different serialized form means the application was updated, hence it should be decoded again
+    ApplicationMeta updated = cache.get(appId, "v2", decoder);
+    Assert.assertEquals("v2", updated.getId());
+    Assert.assertEquals(2, decodeCount.get());
+    Assert.assertSame(updated, cache.get(appId, "v2", decoder));
+
+    Assert.assertEquals(2L, cache.getHitCount());
+    Assert.assertEquals(2L, cache.getMissCount());
+  }
+
+  @Test
+  public void testWriteThroughAndInvalidate() {
+    ApplicationMetaCache cache = new ApplicationMetaCache(1024L);
+    Function<String, ApplicationMeta> decoder = s -> new ApplicationMeta(s, null);
+
+    ApplicationId app1 = NamespaceId.DEFAULT.app("app1");
+    ApplicationId app2 = NamespaceId.DEFAULT.app("app2");
+    ApplicationId app3 = new NamespaceId("ns").app("app3");
+
+    ApplicationMeta meta1 = new ApplicationMeta("app1", null);
+    ApplicationMeta meta2 = new ApplicationMeta("app2", null);
+    ApplicationMeta meta3 = new ApplicationMeta("app3", null);
+    cache.put(app1, "app1", meta1);
+    cache.put(app2, "app2", meta2);
+    cache.put(app3, "app3", meta3);
+
+    Assert.assertSame(meta1, cache.get(app1, "app1", decoder));
+    Assert.assertSame(meta2, cache.get(app2, "app2", decoder));
+    Assert.assertSame(meta3, cache.get(app3, "app3", decoder));
+
+    cache.invalidate(app1);
+    Assert.assertNotSame(meta1, cache.get(app1, "app1", decoder));
+
+    cache.invalidate(NamespaceId.DEFAULT);
+    Assert.assertNotSame(meta2, cache.get(app2, "app2", decoder));
+    Assert.assertSame(meta3, cache.get(app3, "app3", decoder));
+  }
+
+  @Test
+  public void testDisabled() {
+    ApplicationMetaCache cache = new ApplicationMetaCache(0L);
+    Function<String, ApplicationMeta> decoder = s -> new ApplicationMeta(s, null);
+
+    ApplicationId appId = NamespaceId.DEFAULT.app("app");
+    ApplicationMeta meta = cache.get(appId, "v1", decoder);
+    Assert.assertNotSame(meta, cache.get(appId, "v1", decoder));
+    Assert.assertEquals(0L, cache.getHitCount());
+  }
+}
@@ -114,6 +114,7 @@ public final class Constants {
     public static final String EXTERNAL_AUTHENTICATION = "external.authentication";
     public static final String EXPLORE_HTTP_USER_SERVICE = "explore.service";
     public static final String MESSAGING_SERVICE = "messaging.service";
+    public static final String MESSAGING_CHANNEL = "messaging.channel";
     public static final String RUNTIME_HTTP = "runtime.http";
 
     public static final String SERVICE_INSTANCE_TABLE_NAME = "cdap.services.instances";
@@ -363,6 +364,7 @@ public final class Constants {
    */
   public static final class AppMetaStore {
     public static final String TABLE = "app.meta";
+    public static final String SPEC_CACHE_SIZE_MB = "app.meta.spec.cache.size.mb";
   }
 
   /**
@@ -456,6 +458,8 @@ public final class Constants {
     public static final String DATA_STORAGE_SQL_PASSWORD = "data.storage.sql.jdbc.password";
     public static final String DATA_STORAGE_SQL_PROPERTY_PREFIX = "data.storage.sql.jdbc.property.";
     public static final String DATA_STORAGE_SQL_CONNECTION_SIZE = "data.storage.sql.jdbc.connection.pool.size";
+    public static final String DATA_STORAGE_SQL_STATEMENT_CACHE_SIZE = "data.storage.sql.jdbc.statement.cache.size";
+    public static final String DATA_STORAGE_SQL_SCAN_FETCH_SIZE = "data.storage.sql.scan.fetch.size";
 
     // used for Guice named bindings
     public static final String TABLE_TYPE = "table.type";
@@ -588,6 +592,14 @@ public final class Constants {
     public static final String SERVICE_DESCRIPTION = "Service to handle metrics requests.";
     public static final String PROCESSOR_MAX_DELAY_MS = "metrics.processor.max.delay.ms";
     public static final String QUEUE_SIZE = "metrics.processor.queue.size";
+    public static final String PROCESSOR_SHARDS = "metrics.processor.shards";
+    public static final String STORE_FLUSH_INTERVAL_MS = "metrics.store.flush.interval.ms";
+    public static final String ROLLUP_ENABLED = "metrics.rollup.enabled";
+    public static final String ROLLUP_DELAY_SECONDS = "metrics.rollup.delay.seconds";
+    public static final String ROLLUP_INTERVAL_SECONDS = "metrics.rollup.interval.seconds";
+    public static final String COMPACTION_ENABLED = "metrics.compaction.enabled";
+    public static final String COMPACTION_DELAY_SECONDS = "metrics.compaction.delay.seconds";
+    public static final String COMPACTION_INTERVAL_SECONDS = "metrics.compaction.interval.seconds";
 
     public static final String ENTITY_TABLE_NAME = "metrics.data.entity.tableName";
     public static final String METRICS_TABLE_PREFIX = "metrics.data.table.prefix";
@@ -888,9 +900,13 @@ public final class Constants {
     // Configuration keys
     public static final String KAFKA_TOPIC = "log.kafka.topic";
     public static final String TMS_TOPIC_PREFIX = "log.tms.topic.prefix";
+    public static final String TMS_BLOCK_SIZE_BYTES = "log.tms.block.size.bytes";
+    public static final String TMS_COMPRESSION = "log.tms.compression";
+    public static final String TMS_DROP_ON_FULL_QUEUE = "log.tms.drop.on.full.queue";
     public static final String APPENDER_QUEUE_SIZE = "log.queue.size";
     public static final String NUM_PARTITIONS = "log.publish.num.partitions";
     public static final String LOG_PUBLISH_PARTITION_KEY = "log.publish.partition.key";
+    public static final String LOG_READER_PREFETCH_FILES = "log.reader.prefetch.files";
 
     public static final String PIPELINE_CONFIG_DIR = "log.process.pipeline.config.dir";
     public static final String PIPELINE_LIBRARY_DIR = "log.process.pipeline.lib.dir";
@@ -1206,6 +1222,9 @@ public final class Constants {
   public static final String CFG_DATA_LEVELDB_BLOCKSIZE = "data.local.storage.blocksize";
   public static final String CFG_DATA_LEVELDB_CACHESIZE = "data.local.storage.cachesize";
   public static final String CFG_DATA_LEVELDB_FSYNC = "data.local.storage.fsync";
+  public static final String CFG_DATA_LEVELDB_WRITE_BUFFER_SIZE = "data.local.storage.write.buffer.size";
+  public static final String CFG_DATA_LEVELDB_COMPRESSION = "data.local.storage.compression";
+  public static final String CFG_DATA_LEVELDB_ROW_LOCK_STRIPES = "data.local.storage.row.lock.stripes";
 
   /**
    * Defaults for Data Fabric.
@@ -1214,6 +1233,9 @@ public final class Constants {
   public static final int DEFAULT_DATA_LEVELDB_BLOCKSIZE = 1024;
   public static final long DEFAULT_DATA_LEVELDB_CACHESIZE = 1024 * 1024 * 100;
   public static final boolean DEFAULT_DATA_LEVELDB_FSYNC = true;
+  public static final int DEFAULT_DATA_LEVELDB_WRITE_BUFFER_SIZE = 4 * 1024 * 1024;
+  public static final String DEFAULT_DATA_LEVELDB_COMPRESSION = "SNAPPY";
+  public static final int DEFAULT_DATA_LEVELDB_ROW_LOCK_STRIPES = 1024;
 
   /**
    * Used for upgrade and backwards compatability
@@ -1312,6 +1334,12 @@ public final class Constants {
     public static final String LOCAL_DATA_CLEANUP_FREQUENCY = "messaging.local.data.cleanup.frequency.secs";
 
     public static final String CACHE_SIZE_MB = "messaging.cache.size.mb";
+    public static final String CHANNEL_ENABLED = "messaging.channel.enabled";
+    public static final String CACHE_OFFHEAP_SIZE_MB = "messaging.cache.offheap.size.mb";
+
+    public static final String GROUP_COMMIT_ENABLED = "messaging.group.commit.enabled";
+    public static final String GROUP_COMMIT_FLUSH_INTERVAL_MS = "messaging.group.commit.flush.interval.ms";
+    public static final String GROUP_COMMIT_FLUSH_SIZE = "messaging.group.commit.flush.size";
 
     public static final String HBASE_MAX_SCAN_THREADS = "messaging.hbase.max.scan.threads";
     public static final String HBASE_SCAN_CACHE_ROWS = "messaging.hbase.scan.cache.rows";
@@ -1320,6 +1348,7 @@ public final class Constants {
     public static final String MESSAGE_TABLE_HBASE_SPLITS = "messaging.message.table.hbase.splits";
     public static final String PAYLOAD_TABLE_NAME = "messaging.payload.table.name";
     public static final String PAYLOAD_TABLE_HBASE_SPLITS = "messaging.payload.table.hbase.splits";
+    public static final String SUBSCRIBER_FETCH_WAIT_MS = "messaging.subscriber.fetch.wait.ms";
     public static final String SYSTEM_TOPICS = "messaging.system.topics";
     public static final String TABLE_CACHE_EXPIRATION_SECONDS = "messaging.table.expiration.seconds";
     public static final String TABLE_HBASE_SPLIT_POLICY = "messaging.table.hbase.split.policy";
@@ -1331,6 +1360,9 @@ public final class Constants {
     public static final String HTTP_SERVER_EXECUTOR_THREADS = "messaging.http.server.executor.threads";
     public static final String HTTP_SERVER_MAX_REQUEST_SIZE_MB = "messaging.http.server.max.request.size.mb";
     public static final String HTTP_SERVER_CONSUME_CHUNK_SIZE = "messaging.http.server.consume.chunk.size";
+    public static final String HTTP_SERVER_CONSUME_ZERO_COPY = "messaging.http.server.consume.zero.copy";
+    public static final String HTTP_SERVER_CONSUME_MAX_WAIT_MS = "messaging.http.server.consume.max.wait.ms";
+    public static final String HTTP_SERVER_CONSUME_WAIT_THREADS = "messaging.http.server.consume.wait.threads";
 
     // Distributed mode related configurations
     public static final String HA_FENCING_DELAY_SECONDS = "messaging.ha.fencing.delay.seconds";
@@ -1351,6 +1383,9 @@ public final class Constants {
     // The network port for the http server to bind to.
     public static final String HTTP_SERVER_BIND_PORT = "messaging.http.server.bind.port";
 
+    // The network port for the binary channel server to bind to.
+    public static final String CHANNEL_SERVER_BIND_PORT = "messaging.channel.server.bind.port";
+
     // The guice binding name for http handler used by the messaging system
     public static final String HANDLER_BINDING_NAME = "messaging.http.handler";
 
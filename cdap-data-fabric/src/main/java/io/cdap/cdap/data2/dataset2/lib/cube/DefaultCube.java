@@ -32,6 +32,8 @@ import io.cdap.cdap.api.dataset.lib.cube.CubeExploreQuery;
 import io.cdap.cdap.api.dataset.lib.cube.CubeFact;
 import io.cdap.cdap.api.dataset.lib.cube.CubeQuery;
 import io.cdap.cdap.api.dataset.lib.cube.DimensionValue;
+import io.cdap.cdap.api.dataset.lib.cube.MeasureType;
+import io.cdap.cdap.api.dataset.lib.cube.Measurement;
 import io.cdap.cdap.api.dataset.lib.cube.TimeSeries;
 import io.cdap.cdap.api.dataset.lib.cube.TimeValue;
 import io.cdap.cdap.api.dataset.metrics.MeteredDataset;
@@ -47,13 +49,17 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.SortedSet;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
@@ -77,6 +83,12 @@ public class DefaultCube implements Cube, MeteredDataset {
   private final Map<String, ? extends Aggregation> aggregations;
   private final Map<String, AggregationAlias> aggregationAliasMap;
   private final ExecutorService executorService;
+  // Buffers of facts for each resolution table. It is empty if buffering is disabled.
+  private final Map<Integer, FactBuffer> resolutionToFactBuffer;
+  private final int maxBufferedFacts;
+  // Resolutions that facts are written to when being added. Other resolutions are computed by rollup.
+  private final Set<Integer> onlineResolutions;
+  private final int[] sortedResolutions;
 
   @Nullable
   private MetricsCollector metrics;
@@ -84,11 +96,52 @@ public class DefaultCube implements Cube, MeteredDataset {
   public DefaultCube(int[] resolutions, FactTableSupplier factTableSupplier,
                      Map<String, ? extends Aggregation> aggregations,
                      Map<String, AggregationAlias> aggregationAliasMap) {
+    this(resolutions, factTableSupplier, aggregations, aggregationAliasMap, 0);
+  }
+
+  /**
+   * Creates a {@link DefaultCube} that buffers facts in memory. Facts added to the cube are merged in the buffer
+   * and are written to the fact tables when {@link #flush()} is called, when the number of merged facts of any
+   * resolution reaches {@code maxBufferedFacts}, or before the cube is being queried or deleted from.
+   *
+   * @param maxBufferedFacts maximum number of merged facts to buffer per resolution; buffering is disabled if it is
+   *                         {@code <= 0}
+   */
+  public DefaultCube(int[] resolutions, FactTableSupplier factTableSupplier,
+                     Map<String, ? extends Aggregation> aggregations,
+                     Map<String, AggregationAlias> aggregationAliasMap, int maxBufferedFacts) {
+    this(resolutions, factTableSupplier, aggregations, aggregationAliasMap, maxBufferedFacts, false);
+  }
+
+  /**
+   * Creates a {@link DefaultCube} with optional buffering and rollup.
+   *
+   * @param maxBufferedFacts maximum number of merged facts to buffer per resolution; buffering is disabled if it is
+   *                         {@code <= 0}
+   * @param rollup if {@code true}, facts added to the cube are only written to the finest resolution. Facts of
+   *               other resolutions have to be computed by calling {@link #rollup(int, long, long)}
+   */
+  public DefaultCube(int[] resolutions, FactTableSupplier factTableSupplier,
+                     Map<String, ? extends Aggregation> aggregations,
+                     Map<String, AggregationAlias> aggregationAliasMap, int maxBufferedFacts, boolean rollup) {
     this.aggregations = aggregations;
+    this.sortedResolutions = Arrays.copyOf(resolutions, resolutions.length);
+    Arrays.sort(sortedResolutions);
+    this.onlineResolutions = new HashSet<>();
+    for (int resolution : sortedResolutions) {
+      if (!rollup || onlineResolutions.isEmpty()) {
+        onlineResolutions.add(resolution);
+      }
+    }
     this.resolutionToFactTable = Maps.newHashMap();
+    this.resolutionToFactBuffer = Maps.newHashMap();
     for (int resolution : resolutions) {
       resolutionToFactTable.put(resolution, factTableSupplier.get(resolution, 3600));
+      if (maxBufferedFacts > 0 && onlineResolutions.contains(resolution)) {
+        resolutionToFactBuffer.put(resolution, new FactBuffer(resolution));
+      }
     }
+    this.maxBufferedFacts = maxBufferedFacts;
     this.aggregationAliasMap = aggregationAliasMap;
     this.executorService = new ThreadPoolExecutor(0, resolutions.length, 30, TimeUnit.SECONDS,
                                                   new LinkedBlockingQueue<>(),
@@ -104,7 +157,17 @@ public class DefaultCube implements Cube, MeteredDataset {
   public void add(Collection<? extends CubeFact> facts) {
     List<Fact> toWrite = Lists.newArrayList();
     int dimValuesCount = 0;
+    // With rollup, types of measures need to be known for computing coarser resolutions from the finest one
+    FactTable rollupSourceTable = onlineResolutions.size() < resolutionToFactTable.size()
+      ? resolutionToFactTable.get(sortedResolutions[0]) : null;
     for (CubeFact fact : facts) {
+      if (rollupSourceTable != null) {
+        for (Measurement measurement : fact.getMeasurements()) {
+          if (measurement.getType() == MeasureType.GAUGE) {
+            rollupSourceTable.registerGauge(measurement.getName());
+          }
+        }
+      }
       for (Map.Entry<String, ? extends Aggregation> aggEntry : aggregations.entrySet()) {
         Aggregation agg = aggEntry.getValue();
         AggregationAlias aggregationAlias = null;
@@ -126,9 +189,160 @@ public class DefaultCube implements Cube, MeteredDataset {
       }
     }
 
+    if (resolutionToFactBuffer.isEmpty()) {
+      Map<Integer, List<Fact>> resolutionToFacts = new HashMap<>();
+      for (Integer resolution : onlineResolutions) {
+        resolutionToFacts.put(resolution, toWrite);
+      }
+      writeFacts(resolutionToFacts);
+    } else {
+      synchronized (this) {
+        boolean full = false;
+        for (FactBuffer buffer : resolutionToFactBuffer.values()) {
+          buffer.add(toWrite);
+          full = full || buffer.size() >= maxBufferedFacts;
+        }
+        if (full) {
+          flush();
+        }
+      }
+    }
+
+    incrementMetric("cube.cubeFact.add.request.count", 1);
+    incrementMetric("cube.cubeFact.added.count", facts.size());
+    incrementMetric("cube.tsFact.created.count", toWrite.size());
+    incrementMetric("cube.tsFact.created.dimValues.count", dimValuesCount);
+  }
+
+  /**
+   * Writes all facts buffered in memory to the fact tables. It is a no-op if buffering is not enabled.
+   */
+  public void flush() {
+    if (resolutionToFactBuffer.isEmpty()) {
+      return;
+    }
+    synchronized (this) {
+      Map<Integer, List<Fact>> resolutionToFacts = new HashMap<>();
+      for (Map.Entry<Integer, FactBuffer> entry : resolutionToFactBuffer.entrySet()) {
+        if (entry.getValue().size() > 0) {
+          resolutionToFacts.put(entry.getKey(), entry.getValue().drain());
+        }
+      }
+      if (!resolutionToFacts.isEmpty()) {
+        writeFacts(resolutionToFacts);
+      }
+    }
+  }
+
+  /**
+   * Computes facts of the given resolution from the facts of the next finer resolution that have timestamps in
+   * the range of {@code [startTs, endTs)}. Counters are summed and the gauge value with the latest timestamp is kept
+   * for each time bucket of the resolution.
+   *
+   * If both {@code startTs} and {@code endTs} are aligned to the resolution, every time bucket in the range is
+   * computed completely and is written by overwriting existing values. Otherwise, counters are added to the existing
+   * values, and the end of the range is recorded in each row written so that the values of the finer resolution
+   * before it are never added again. In both cases, it is safe to repeat the rollup of the same range.
+   *
+   * @param resolution the resolution to compute
+   * @param startTs start timestamp in seconds, inclusive
+   * @param endTs end timestamp in seconds, exclusive
+   */
+  public void rollup(int resolution, long startTs, long endTs) {
+    int index = Arrays.binarySearch(sortedResolutions, resolution);
+    if (index <= 0) {
+      throw new IllegalArgumentException("There is no finer resolution to compute resolution " + resolution + " from");
+    }
+    if (startTs >= endTs) {
+      return;
+    }
+    flush();
+
+    FactTable sourceTable = resolutionToFactTable.get(sortedResolutions[index - 1]);
+    // Types of measures are registered in the table of the finest resolution when facts are added
+    FactTable typeTable = resolutionToFactTable.get(sortedResolutions[0]);
+    boolean aligned = startTs % resolution == 0 && endTs % resolution == 0;
+    FactBuffer buffer = new FactBuffer(resolution);
+    // Facts of the finer resolution, which are added to the existing values if the time range is not aligned
+    List<Fact> sourceFacts = new ArrayList<>();
+    Map<String, MeasureType> measureTypes = new HashMap<>();
+    for (Aggregation agg : aggregations.values()) {
+      // Scan all facts of the aggregation in the time range
+      List<DimensionValue> dimensionValues = Lists.newArrayList();
+      for (String dimensionName : agg.getDimensionNames()) {
+        dimensionValues.add(new DimensionValue(dimensionName, null));
+      }
+      FactScanner scanner = sourceTable.scan(new FactScan(startTs, endTs - 1, dimensionValues));
+      try {
+        while (scanner.hasNext()) {
+          FactScanResult result = scanner.next();
+          MeasureType type = measureTypes.computeIfAbsent(
+            result.getMeasureName(), name -> typeTable.isGauge(name) ? MeasureType.GAUGE : MeasureType.COUNTER);
+          for (TimeValue timeValue : result) {
+            if (aligned) {
+              buffer.add(result.getDimensionValues(), result.getMeasureName(), type,
+                         timeValue.getTimestamp(), timeValue.getValue());
+            } else {
+              sourceFacts.add(new Fact(timeValue.getTimestamp(), result.getDimensionValues(),
+                                       new Measurement(result.getMeasureName(), type, timeValue.getValue())));
+            }
+          }
+        }
+      } finally {
+        scanner.close();
+      }
+    }
+
+    if (!aligned) {
+      resolutionToFactTable.get(resolution).addRollup(sourceFacts, endTs);
+      incrementMetric("cube.rollup." + resolution + ".count", sourceFacts.size());
+      return;
+    }
+
+    // All time buckets are complete, write all values as gauges to overwrite existing values
+    List<Fact> facts = buffer.drain();
+    List<Fact> gauges = new ArrayList<>(facts.size());
+    for (Fact fact : facts) {
+      Measurement measurement = fact.getMeasurements().iterator().next();
+      gauges.add(new Fact(fact.getTimestamp(), fact.getDimensionValues(),
+                          new Measurement(measurement.getName(), MeasureType.GAUGE, measurement.getValue())));
+    }
+    writeFacts(Collections.singletonMap(resolution, gauges));
+    incrementMetric("cube.rollup." + resolution + ".count", gauges.size());
+  }
+
+  /**
+   * Rewrites the facts of the given resolution in the time range of {@code [startTs, endTs)} into the compact row
+   * format of the {@link FactTable}. It should only be called for time ranges that no longer receive writes.
+   *
+   * @param resolution the resolution to compact
+   * @param startTs start timestamp in seconds, inclusive
+   * @param endTs end timestamp in seconds, exclusive
+   * @return the number of rows compacted
+   * @see FactTable#compact(long, long)
+   */
+  public int compact(int resolution, long startTs, long endTs) {
+    FactTable table = resolutionToFactTable.get(resolution);
+    if (table == null) {
+      throw new IllegalArgumentException("There is no fact table for resolution " + resolution);
+    }
+    int compacted = table.compact(startTs, endTs);
+    incrementMetric("cube.compact." + resolution + ".count", compacted);
+    return compacted;
+  }
+
+  /**
+   * Writes facts to the fact tables of different resolutions in parallel.
+   *
+   * @param resolutionToFacts map from resolution to the list of facts to write to the table of that resolution
+   */
+  private void writeFacts(Map<Integer, List<Fact>> resolutionToFacts) {
     Map<Integer, Future<?>> futures = new HashMap<>();
-    for (Map.Entry<Integer, FactTable> table : resolutionToFactTable.entrySet()) {
-      futures.put(table.getKey(), executorService.submit(() -> table.getValue().add(toWrite)));
+    int factsCount = 0;
+    for (Map.Entry<Integer, List<Fact>> entry : resolutionToFacts.entrySet()) {
+      FactTable table = resolutionToFactTable.get(entry.getKey());
+      futures.put(entry.getKey(), executorService.submit(() -> table.add(entry.getValue())));
+      factsCount += entry.getValue().size();
     }
 
     boolean failed = false;
@@ -156,11 +370,7 @@ public class DefaultCube implements Cube, MeteredDataset {
       throw new RuntimeException(failedMessage.append(".").toString(), failedException);
     }
 
-    incrementMetric("cube.cubeFact.add.request.count", 1);
-    incrementMetric("cube.cubeFact.added.count", facts.size());
-    incrementMetric("cube.tsFact.created.count", toWrite.size());
-    incrementMetric("cube.tsFact.created.dimValues.count", dimValuesCount);
-    incrementMetric("cube.tsFact.added.count", toWrite.size() * resolutionToFactTable.size());
+    incrementMetric("cube.tsFact.added.count", factsCount);
   }
 
   @Override
@@ -202,6 +412,7 @@ public class DefaultCube implements Cube, MeteredDataset {
     */
 
     incrementMetric("cube.query.request.count", 1);
+    flush();
 
     if (!resolutionToFactTable.containsKey(query.getResolution())) {
       incrementMetric("cube.query.request.failure.count", 1);
@@ -262,6 +473,7 @@ public class DefaultCube implements Cube, MeteredDataset {
 
   @Override
   public void delete(CubeDeleteQuery query) {
+    flush();
     //this may be very inefficient and its better to use TTL, this is to only support existing old functionality.
     List<DimensionValue> dimensionValues = Lists.newArrayList();
     // find all the aggregations that match the dimensionValues in the query and
@@ -282,6 +494,7 @@ public class DefaultCube implements Cube, MeteredDataset {
   @Override
   public Collection<DimensionValue> findDimensionValues(CubeExploreQuery query) {
     LOG.trace("Searching for next-level context, query: {}", query);
+    flush();
 
     // In each aggregation that matches given dimensions, try to fill in value in a single null-valued given dimension.
     // NOTE: that we try to fill in first value that is non-null-valued in a stored record
@@ -309,6 +522,7 @@ public class DefaultCube implements Cube, MeteredDataset {
   @Override
   public Collection<String> findMeasureNames(CubeExploreQuery query) {
     LOG.trace("Searching for measures, query: {}", query);
+    flush();
 
     // In each aggregation that matches given dimensions, try to find measure names
     SortedSet<String> result = Sets.newTreeSet();
@@ -479,11 +693,15 @@ public class DefaultCube implements Cube, MeteredDataset {
   @Override
   public void close() throws IOException {
     try {
-      for (FactTable factTable : resolutionToFactTable.values()) {
-        factTable.close();
-      }
+      flush();
     } finally {
-      executorService.shutdown();
+      try {
+        for (FactTable factTable : resolutionToFactTable.values()) {
+          factTable.close();
+        }
+      } finally {
+        executorService.shutdown();
+      }
     }
   }
 
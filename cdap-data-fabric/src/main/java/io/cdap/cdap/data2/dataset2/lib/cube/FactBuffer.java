@@ -0,0 +1,158 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.cdap.data2.dataset2.lib.cube;
+
+import io.cdap.cdap.api.dataset.lib.cube.DimensionValue;
+import io.cdap.cdap.api.dataset.lib.cube.MeasureType;
+import io.cdap.cdap.api.dataset.lib.cube.Measurement;
+import io.cdap.cdap.data2.dataset2.lib.timeseries.Fact;
+import io.cdap.cdap.data2.dataset2.lib.timeseries.FactTable;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Buffers {@link Fact}s in memory before they are written to the {@link FactTable} of one resolution.
+ * Measurements with the same dimension values, measure name and time bucket of the resolution are merged into one,
+ * with counters being summed and only the last gauge value being kept. A counter added after a gauge is added on top
+ * of the gauge value, which is the same as what the {@link FactTable} does for a put followed by an increment.
+ *
+ * This class is not thread safe.
+ */
+final class FactBuffer {
+
+  private final int resolution;
+  private final Map<FactKey, MergedValue> facts;
+
+  FactBuffer(int resolution) {
+    this.resolution = resolution;
+    this.facts = new LinkedHashMap<>();
+  }
+
+  /**
+   * Adds the given facts to the buffer.
+   */
+  void add(Collection<Fact> facts) {
+    for (Fact fact : facts) {
+      for (Measurement measurement : fact.getMeasurements()) {
+        add(fact.getDimensionValues(), measurement.getName(), measurement.getType(),
+            fact.getTimestamp(), measurement.getValue());
+      }
+    }
+  }
+
+  /**
+   * Adds a single measurement to the buffer.
+   *
+   * @param timestamp timestamp of the measurement in seconds, which doesn't need to be aligned to the resolution
+   */
+  void add(List<DimensionValue> dimensionValues, String measureName, MeasureType type, long timestamp, long value) {
+    FactKey key = new FactKey(dimensionValues, measureName, timestamp / resolution * resolution);
+    MergedValue mergedValue = facts.get(key);
+    if (mergedValue == null) {
+      facts.put(key, new MergedValue(type, value));
+    } else {
+      mergedValue.merge(type, value);
+    }
+  }
+
+  /**
+   * Returns the number of merged facts in the buffer.
+   */
+  int size() {
+    return facts.size();
+  }
+
+  /**
+   * Removes all merged facts from the buffer.
+   *
+   * @return the list of merged facts, in the order of when they were first added
+   */
+  List<Fact> drain() {
+    List<Fact> result = new ArrayList<>(facts.size());
+    for (Map.Entry<FactKey, MergedValue> entry : facts.entrySet()) {
+      FactKey key = entry.getKey();
+      MergedValue value = entry.getValue();
+      result.add(new Fact(key.timestamp, key.dimensionValues,
+                          new Measurement(key.measureName, value.type, value.value)));
+    }
+    facts.clear();
+    return result;
+  }
+
+  /**
+   * Key for identifying facts that can be merged.
+   */
+  private static final class FactKey {
+    private final List<DimensionValue> dimensionValues;
+    private final String measureName;
+    private final long timestamp;
+    private final int hashCode;
+
+    FactKey(List<DimensionValue> dimensionValues, String measureName, long timestamp) {
+      this.dimensionValues = dimensionValues;
+      this.measureName = measureName;
+      this.timestamp = timestamp;
+      this.hashCode = Objects.hash(dimensionValues, measureName, timestamp);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (o == null || getClass() != o.getClass()) {
+        return false;
+      }
+      FactKey that = (FactKey) o;
+      return timestamp == that.timestamp
+        && measureName.equals(that.measureName)
+        && dimensionValues.equals(that.dimensionValues);
+    }
+
+    @Override
+    public int hashCode() {
+      return hashCode;
+    }
+  }
+
+  /**
+   * The merged value of a measurement.
+   */
+  private static final class MergedValue {
+    private MeasureType type;
+    private long value;
+
+    MergedValue(MeasureType type, long value) {
+      this.type = type;
+      this.value = value;
+    }
+
+    void merge(MeasureType type, long value) {
+      if (type == MeasureType.COUNTER) {
+        this.value += value;
+      } else {
+        this.type = type;
+        this.value = value;
+      }
+    }
+  }
+}
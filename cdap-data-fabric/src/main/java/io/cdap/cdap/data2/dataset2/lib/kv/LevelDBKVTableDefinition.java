@@ -61,7 +61,7 @@ public class LevelDBKVTableDefinition extends AbstractDatasetDefinition<NoTxKeyV
   @Override
   public DatasetAdmin getAdmin(DatasetContext datasetContext, DatasetSpecification spec,
                                ClassLoader classLoader) throws IOException {
-    return new DatasetAdminImpl(datasetContext, spec.getName(), service, cConf);
+    return new DatasetAdminImpl(datasetContext, spec, service, cConf);
   }
 
   @Override
@@ -72,11 +72,13 @@ public class LevelDBKVTableDefinition extends AbstractDatasetDefinition<NoTxKeyV
 
   private static final class DatasetAdminImpl implements DatasetAdmin {
     private final String tableName;
+    private final Map<String, String> properties;
     protected final LevelDBTableService service;
 
-    private DatasetAdminImpl(DatasetContext datasetContext, String tableName, LevelDBTableService service,
+    private DatasetAdminImpl(DatasetContext datasetContext, DatasetSpecification spec, LevelDBTableService service,
                              CConfiguration cConf) throws IOException {
-      this.tableName = PrefixedNamespaces.namespace(cConf, datasetContext.getNamespaceId(), tableName);
+      this.tableName = PrefixedNamespaces.namespace(cConf, datasetContext.getNamespaceId(), spec.getName());
+      this.properties = spec.getProperties();
       this.service = service;
     }
 
@@ -92,7 +94,7 @@ public class LevelDBKVTableDefinition extends AbstractDatasetDefinition<NoTxKeyV
 
     @Override
     public void create() throws IOException {
-      service.ensureTableExists(tableName);
+      service.ensureTableExists(tableName, properties);
     }
 
     @Override
@@ -0,0 +1,447 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.cdap.data2.dataset2.lib.table;
+
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.Maps;
+import com.google.common.io.Closeables;
+import com.google.common.io.CountingOutputStream;
+import io.cdap.cdap.api.common.Bytes;
+import io.cdap.cdap.api.dataset.lib.CloseableIterator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.PriorityQueue;
+import javax.annotation.Nullable;
+
+/**
+ * Holds the buffered updates of a {@link BufferingTable} that were spilled to local files, to bound the memory used by
+ * transactions that write a lot of data. Each spill writes the in-memory buffer, which is sorted by row, to a new file
+ * (a run). Updates in later runs are applied on top of the updates in earlier runs with
+ * {@link Updates#mergeUpdates(Update, Update)}, the same way updates are combined in the in-memory buffer.
+ *
+ * A sparse index of row keys to file offsets is kept in memory for every run, so that a single row can be read
+ * without scanning a whole run.
+ *
+ * This class is not thread safe.
+ */
+final class BufferSpill {
+
+  private static final Logger LOG = LoggerFactory.getLogger(BufferSpill.class);
+
+  // Write an index entry whenever this many bytes were written since the last index entry
+  private static final int INDEX_INTERVAL_BYTES = 64 * 1024;
+  private static final int IO_BUFFER_SIZE = 64 * 1024;
+
+  private static final int END_OF_RUN = -1;
+  private static final byte TYPE_PUT = 0;
+  private static final byte TYPE_INCREMENT = 1;
+
+  private static final Comparator<RunIterator> RUN_ITERATOR_COMPARATOR = new Comparator<RunIterator>() {
+    @Override
+    public int compare(RunIterator o1, RunIterator o2) {
+      int cmp = Bytes.compareTo(o1.peek().getKey(), o2.peek().getKey());
+      // For the same row, the earlier run comes first, such that later updates are applied on top
+      return cmp != 0 ? cmp : Integer.compare(o1.order, o2.order);
+    }
+  };
+
+  private final File dir;
+  private final String prefix;
+  private final List<Run> runs;
+
+  /**
+   * Creates an instance that writes runs to the given directory.
+   *
+   * @param dir the directory for the run files
+   * @param prefix prefix of the run file names
+   */
+  BufferSpill(File dir, String prefix) {
+    this.dir = dir;
+    this.prefix = prefix;
+    this.runs = new ArrayList<>();
+  }
+
+  /**
+   * Returns {@code true} if nothing was spilled.
+   */
+  boolean isEmpty() {
+    return runs.isEmpty();
+  }
+
+  /**
+   * Writes the given buffer to a new run. Updates in the new run are applied on top of updates spilled before.
+   *
+   * @param buffer the updates to spill, as row to column to update map
+   */
+  void spill(NavigableMap<byte[], NavigableMap<byte[], Update>> buffer) throws IOException {
+    if (buffer.isEmpty()) {
+      return;
+    }
+    if (!dir.isDirectory() && !dir.mkdirs() && !dir.isDirectory()) {
+      throw new IOException("Failed to create directory " + dir + " for spilling table buffer");
+    }
+    File file = File.createTempFile(prefix, ".spill", dir);
+    List<byte[]> indexRows = new ArrayList<>();
+    List<Long> indexOffsets = new ArrayList<>();
+
+    // Count the bytes written with a long, as DataOutputStream.size() stops at Integer.MAX_VALUE
+    try (CountingOutputStream counter = new CountingOutputStream(
+           new BufferedOutputStream(new FileOutputStream(file), IO_BUFFER_SIZE));
+         DataOutputStream output = new DataOutputStream(counter)) {
+      long lastIndexOffset = -INDEX_INTERVAL_BYTES;
+      for (Map.Entry<byte[], NavigableMap<byte[], Update>> row : buffer.entrySet()) {
+        if (counter.getCount() - lastIndexOffset >= INDEX_INTERVAL_BYTES) {
+          lastIndexOffset = counter.getCount();
+          indexRows.add(row.getKey());
+          indexOffsets.add(lastIndexOffset);
+        }
+        writeRow(output, row.getKey(), row.getValue());
+      }
+      output.writeInt(END_OF_RUN);
+    } catch (IOException e) {
+      deleteFile(file);
+      throw e;
+    }
+
+    runs.add(new Run(file, indexRows, indexOffsets, buffer.lastKey()));
+    LOG.debug("Spilled {} buffered rows to {}", buffer.size(), file);
+  }
+
+  /**
+   * Returns the spilled updates of the given row.
+   *
+   * @return a new map of column to update, or {@code null} if nothing was spilled for the row
+   */
+  @Nullable
+  NavigableMap<byte[], Update> getRow(byte[] row) throws IOException {
+    NavigableMap<byte[], Update> result = null;
+    for (Run run : runs) {
+      int index = run.floorIndex(row);
+      if (index < 0 || Bytes.compareTo(row, run.lastRow) > 0) {
+        continue;
+      }
+      try (DataInputStream input = run.open(run.indexOffsets.get(index))) {
+        Map.Entry<byte[], NavigableMap<byte[], Update>> entry = readRow(input);
+        while (entry != null && Bytes.compareTo(entry.getKey(), row) < 0) {
+          entry = readRow(input);
+        }
+        if (entry != null && Bytes.equals(entry.getKey(), row)) {
+          result = result == null ? entry.getValue() : mergeRow(result, entry.getValue());
+        }
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Returns the spilled rows in the given range, sorted by row key.
+   *
+   * @param startRow the first row to return, inclusive, or {@code null} to start from the first row
+   * @param stopRow the row to stop at, exclusive, or {@code null} to return all rows after the start row
+   */
+  CloseableIterator<Map.Entry<byte[], NavigableMap<byte[], Update>>> scan(@Nullable byte[] startRow,
+                                                                         @Nullable byte[] stopRow) throws IOException {
+    List<Iterator<Map.Entry<byte[], NavigableMap<byte[], Update>>>> iterators = new ArrayList<>(runs.size());
+    try {
+      for (Run run : runs) {
+        if (startRow != null && Bytes.compareTo(startRow, run.lastRow) > 0) {
+          continue;
+        }
+        int index = startRow == null ? 0 : Math.max(0, run.floorIndex(startRow));
+        iterators.add(new RunIterator(run.open(run.indexOffsets.get(index)), startRow, stopRow, iterators.size()));
+      }
+    } catch (IOException e) {
+      for (Iterator<?> iterator : iterators) {
+        ((RunIterator) iterator).close();
+      }
+      throw e;
+    }
+    return merge(iterators);
+  }
+
+  /**
+   * Deletes all runs.
+   */
+  void clear() {
+    for (Run run : runs) {
+      deleteFile(run.file);
+    }
+    runs.clear();
+  }
+
+  /**
+   * Merges iterators of rows that are sorted by row key into one iterator sorted by row key. If a row is returned by
+   * multiple iterators, the columns are merged, applying the updates of later iterators in the list on top of the
+   * updates of earlier ones. The returned iterator closes the given iterators that are {@link AutoCloseable}.
+   *
+   * @param iterators iterators ordered from the oldest updates to the newest updates
+   */
+  static CloseableIterator<Map.Entry<byte[], NavigableMap<byte[], Update>>> merge(
+    List<? extends Iterator<Map.Entry<byte[], NavigableMap<byte[], Update>>>> iterators) {
+
+    final List<RunIterator> sources = new ArrayList<>(iterators.size());
+    final PriorityQueue<RunIterator> queue = new PriorityQueue<>(Math.max(1, iterators.size()),
+                                                                 RUN_ITERATOR_COMPARATOR);
+    for (Iterator<Map.Entry<byte[], NavigableMap<byte[], Update>>> iterator : iterators) {
+      RunIterator source = iterator instanceof RunIterator
+        ? (RunIterator) iterator : new RunIterator(iterator, sources.size());
+      source.order = sources.size();
+      sources.add(source);
+      if (source.hasNext()) {
+        queue.add(source);
+      }
+    }
+
+    return new MergingIterator(queue, sources);
+  }
+
+  /**
+   * Applies the updates of the newer row on top of the older row. The older row is modified in place and returned.
+   */
+  private static NavigableMap<byte[], Update> mergeRow(NavigableMap<byte[], Update> older,
+                                                       NavigableMap<byte[], Update> newer) {
+    for (Map.Entry<byte[], Update> column : newer.entrySet()) {
+      older.put(column.getKey(), Updates.mergeUpdates(older.get(column.getKey()), column.getValue()));
+    }
+    return older;
+  }
+
+  private static void writeRow(DataOutputStream output, byte[] row,
+                               NavigableMap<byte[], Update> columns) throws IOException {
+    output.writeInt(row.length);
+    output.write(row);
+    output.writeInt(columns.size());
+    for (Map.Entry<byte[], Update> column : columns.entrySet()) {
+      output.writeInt(column.getKey().length);
+      output.write(column.getKey());
+      Update update = column.getValue();
+      if (update instanceof IncrementValue) {
+        output.writeByte(TYPE_INCREMENT);
+        output.writeLong(((IncrementValue) update).getValue());
+      } else {
+        // A null value is a delete of the column
+        byte[] value = update == null ? null : ((PutValue) update).getValue();
+        output.writeByte(TYPE_PUT);
+        output.writeInt(value == null ? -1 : value.length);
+        if (value != null) {
+          output.write(value);
+        }
+      }
+    }
+  }
+
+  @Nullable
+  private static Map.Entry<byte[], NavigableMap<byte[], Update>> readRow(DataInputStream input) throws IOException {
+    int rowLength = input.readInt();
+    if (rowLength == END_OF_RUN) {
+      return null;
+    }
+    byte[] row = readBytes(input, rowLength);
+    int columnCount = input.readInt();
+    NavigableMap<byte[], Update> columns = Maps.newTreeMap(Bytes.BYTES_COMPARATOR);
+    for (int i = 0; i < columnCount; i++) {
+      byte[] column = readBytes(input, input.readInt());
+      byte type = input.readByte();
+      if (type == TYPE_INCREMENT) {
+        columns.put(column, new IncrementValue(input.readLong()));
+      } else {
+        int valueLength = input.readInt();
+        columns.put(column, new PutValue(valueLength < 0 ? null : readBytes(input, valueLength)));
+      }
+    }
+    return Maps.immutableEntry(row, columns);
+  }
+
+  private static byte[] readBytes(DataInputStream input, int length) throws IOException {
+    byte[] bytes = new byte[length];
+    input.readFully(bytes);
+    return bytes;
+  }
+
+  private static void deleteFile(File file) {
+    if (!file.delete() && file.exists()) {
+      LOG.warn("Failed to delete table buffer spill file {}", file);
+    }
+  }
+
+  /**
+   * A spilled run of buffered updates.
+   */
+  private static final class Run {
+    private final File file;
+    private final List<byte[]> indexRows;
+    private final List<Long> indexOffsets;
+    private final byte[] lastRow;
+
+    private Run(File file, List<byte[]> indexRows, List<Long> indexOffsets, byte[] lastRow) {
+      this.file = file;
+      this.indexRows = indexRows;
+      this.indexOffsets = indexOffsets;
+      this.lastRow = lastRow;
+    }
+
+    /**
+     * Returns the position of the last index entry with a row key smaller than or equal to the given row, or
+     * {@code -1} if the given row is smaller than the first row of the run.
+     */
+    private int floorIndex(byte[] row) {
+      int idx = Collections.binarySearch(indexRows, row, Bytes.BYTES_COMPARATOR);
+      return idx >= 0 ? idx : -idx - 2;
+    }
+
+    private DataInputStream open(long offset) throws IOException {
+      FileInputStream input = new FileInputStream(file);
+      try {
+        input.getChannel().position(offset);
+        return new DataInputStream(new BufferedInputStream(input, IO_BUFFER_SIZE));
+      } catch (IOException e) {
+        Closeables.closeQuietly(input);
+        throw e;
+      }
+    }
+  }
+
+  /**
+   * An iterator over the rows of a source, which is either a run or an iterator over in-memory rows.
+   */
+  private static final class RunIterator extends AbstractIterator<Map.Entry<byte[], NavigableMap<byte[], Update>>>
+    implements AutoCloseable {
+
+    private final DataInputStream input;
+    private final Iterator<Map.Entry<byte[], NavigableMap<byte[], Update>>> iterator;
+    private final byte[] startRow;
+    private final byte[] stopRow;
+    private int order;
+
+    private RunIterator(DataInputStream input, @Nullable byte[] startRow, @Nullable byte[] stopRow, int order) {
+      this.input = input;
+      this.iterator = null;
+      this.startRow = startRow;
+      this.stopRow = stopRow;
+      this.order = order;
+    }
+
+    private RunIterator(Iterator<Map.Entry<byte[], NavigableMap<byte[], Update>>> iterator, int order) {
+      this.input = null;
+      this.iterator = iterator;
+      this.startRow = null;
+      this.stopRow = null;
+      this.order = order;
+    }
+
+    @Override
+    protected Map.Entry<byte[], NavigableMap<byte[], Update>> computeNext() {
+      if (iterator != null) {
+        return iterator.hasNext() ? iterator.next() : endOfData();
+      }
+      try {
+        Map.Entry<byte[], NavigableMap<byte[], Update>> entry = readRow(input);
+        while (entry != null && startRow != null && Bytes.compareTo(entry.getKey(), startRow) < 0) {
+          entry = readRow(input);
+        }
+        if (entry == null || (stopRow != null && Bytes.compareTo(entry.getKey(), stopRow) >= 0)) {
+          close();
+          return endOfData();
+        }
+        return entry;
+      } catch (IOException e) {
+        throw new UncheckedIOException("Failed to read spilled table buffer", e);
+      }
+    }
+
+    @Override
+    public void close() {
+      if (input != null) {
+        Closeables.closeQuietly(input);
+      } else if (iterator instanceof AutoCloseable) {
+        try {
+          ((AutoCloseable) iterator).close();
+        } catch (Exception e) {
+          LOG.warn("Failed to close iterator", e);
+        }
+      }
+    }
+  }
+
+  /**
+   * A k-way merge of {@link RunIterator}s.
+   */
+  private static final class MergingIterator extends AbstractIterator<Map.Entry<byte[], NavigableMap<byte[], Update>>>
+    implements CloseableIterator<Map.Entry<byte[], NavigableMap<byte[], Update>>> {
+
+    private final PriorityQueue<RunIterator> queue;
+    private final List<RunIterator> sources;
+
+    private MergingIterator(PriorityQueue<RunIterator> queue, List<RunIterator> sources) {
+      this.queue = queue;
+      this.sources = sources;
+    }
+
+    @Override
+    protected Map.Entry<byte[], NavigableMap<byte[], Update>> computeNext() {
+      RunIterator source = queue.poll();
+      if (source == null) {
+        return endOfData();
+      }
+      Map.Entry<byte[], NavigableMap<byte[], Update>> entry = source.next();
+      byte[] row = entry.getKey();
+      NavigableMap<byte[], Update> columns = entry.getValue();
+      boolean copied = false;
+      if (source.hasNext()) {
+        queue.add(source);
+      }
+      // Sources with the same row are polled from the oldest to the newest
+      while (!queue.isEmpty() && Bytes.equals(queue.peek().peek().getKey(), row)) {
+        RunIterator next = queue.poll();
+        if (!copied) {
+          // Never modify the rows of the in-memory buffer
+          columns = Maps.newTreeMap(columns);
+          copied = true;
+        }
+        columns = mergeRow(columns, next.next().getValue());
+        if (next.hasNext()) {
+          queue.add(next);
+        }
+      }
+      return Maps.immutableEntry(row, columns);
+    }
+
+    @Override
+    public void close() {
+      for (RunIterator source : sources) {
+        source.close();
+      }
+    }
+  }
+}
@@ -27,6 +27,7 @@ import io.cdap.cdap.api.annotation.WriteOnly;
 import io.cdap.cdap.api.common.Bytes;
 import io.cdap.cdap.api.data.batch.Split;
 import io.cdap.cdap.api.dataset.DataSetException;
+import io.cdap.cdap.api.dataset.lib.CloseableIterator;
 import io.cdap.cdap.api.dataset.metrics.MeteredDataset;
 import io.cdap.cdap.api.dataset.table.ConflictDetection;
 import io.cdap.cdap.api.dataset.table.Filter;
@@ -44,6 +45,7 @@ import org.apache.tephra.TransactionAware;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -53,6 +55,7 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.NavigableMap;
+import java.util.SortedMap;
 import java.util.concurrent.ConcurrentSkipListMap;
 import javax.annotation.Nullable;
 
@@ -73,8 +76,9 @@ import javax.annotation.Nullable;
  *       not in in-memory buffer twice, two times it will try to fetch it from persistent store.
  *       Given the snapshot isolation tx model, this can be improved in future implementations.
  * <p>
- * NOTE: current implementation persists changes only at the end of transaction. Beware of OOME. There should be better
- *       implementation for MapReduce case (YMMV though, for counters/aggregations this implementation looks sweet)
+ * NOTE: current implementation persists changes only at the end of transaction. Beware of OOME. For transactions that
+ *       write a lot of data, the {@link #PROPERTY_BUFFER_SPILL_THRESHOLD} property can be set to spill the in-memory
+ *       buffer to local files when it grows too large (see {@link BufferSpill})
  * <p>
  * NOTE: Using {@link #get(byte[], byte[], byte[], int)} is generally always not efficient since it always hits the
  *       persisted store even if all needed data is in-memory buffer. See more info at method javadoc
@@ -86,6 +90,20 @@ public abstract class BufferingTable extends AbstractTable implements MeteredDat
 
   protected static final byte[] DELETE_MARKER = new byte[0];
 
+  /**
+   * Dataset property for the approximate size in bytes of the in-memory buffer above which the buffer is spilled to
+   * local files. Spilling is disabled if it is not set or not positive.
+   */
+  public static final String PROPERTY_BUFFER_SPILL_THRESHOLD = "dataset.table.buffer.spill.threshold.bytes";
+
+  /**
+   * Dataset property for the local directory to spill the in-memory buffer to. Defaults to the temp directory.
+   */
+  public static final String PROPERTY_BUFFER_SPILL_DIR = "dataset.table.buffer.spill.dir";
+
+  // Approximate memory used by a buffered row or column in addition to its keys and value
+  private static final int BUFFER_ENTRY_OVERHEAD = 64;
+
   // name of the table
   private final String name;
   // conflict detection level
@@ -102,6 +120,16 @@ public abstract class BufferingTable extends AbstractTable implements MeteredDat
   // Keeps track of what was persisted so far
   private NavigableMap<byte[], NavigableMap<byte[], Update>> toUndo;
 
+  // Size of the in-memory buffer above which it is spilled, or 0 if spilling is disabled
+  private final long spillThreshold;
+  // Buffered data that was spilled to local files in the current tx, null if spilling is disabled
+  private final BufferSpill spill;
+  // Approximate size of the in-memory buffer, only tracked if spilling is enabled
+  private long buffSize;
+  // Whether the spilled data was (at least partially) persisted in the current tx
+  // and hence has to be undone on rollback
+  private boolean spillPersisted;
+
   // Report data ops metrics to
   private MetricsCollector metricsCollector;
 
@@ -151,6 +179,16 @@ public abstract class BufferingTable extends AbstractTable implements MeteredDat
     // Default uses the above scheme. Subclasses can change it by overriding the #getNameAsTxChangePrefix method
     this.nameAsTxChangePrefix = Bytes.add(new byte[]{(byte) name.length()}, Bytes.toBytes(name));
     this.buff = new ConcurrentSkipListMap<>(Bytes.BYTES_COMPARATOR);
+
+    String threshold = properties.get(PROPERTY_BUFFER_SPILL_THRESHOLD);
+    this.spillThreshold = threshold == null ? 0L : Math.max(0L, Long.parseLong(threshold.trim()));
+    if (spillThreshold > 0) {
+      String spillDir = properties.get(PROPERTY_BUFFER_SPILL_DIR);
+      this.spill = new BufferSpill(new File(spillDir == null ? System.getProperty("java.io.tmpdir") : spillDir),
+                                   name + ".buffer.");
+    } else {
+      this.spill = null;
+    }
   }
 
   /**
@@ -262,6 +300,7 @@ public abstract class BufferingTable extends AbstractTable implements MeteredDat
     // releasing resources
     buff = null;
     toUndo = null;
+    clearSpill();
   }
 
   @Override
@@ -274,6 +313,7 @@ public abstract class BufferingTable extends AbstractTable implements MeteredDat
     // starting with fresh buffer when tx starts
     buff.clear();
     toUndo = null;
+    clearSpill();
     this.tx = tx;
   }
 
@@ -294,31 +334,44 @@ public abstract class BufferingTable extends AbstractTable implements MeteredDat
 
   @Override
   public Collection<byte[]> getTxChanges() {
+    if (conflictLevel == ConflictDetection.NONE) {
+      return Collections.emptyList();
+    }
+    if (!isSpilled()) {
+      return getTxChanges(buff.entrySet().iterator());
+    }
+    try (CloseableIterator<Map.Entry<byte[], NavigableMap<byte[], Update>>> changes = scanSpilled(null, null)) {
+      return getTxChanges(changes);
+    } catch (IOException e) {
+      throw new DataSetException("Failed to read spilled changes of table " + getTransactionAwareName(), e);
+    }
+  }
+
+  private Collection<byte[]> getTxChanges(Iterator<Map.Entry<byte[], NavigableMap<byte[], Update>>> rowChanges) {
     switch (conflictLevel) {
-      case NONE:
-        return Collections.emptyList();
       case ROW:
-        return getRowChanges();
+        return getRowChanges(rowChanges);
       case COLUMN:
-        return getColumnChanges();
+        return getColumnChanges(rowChanges);
       default:
         throw new RuntimeException("Unknown conflict detection level: " + conflictLevel);
     }
   }
 
-  private Collection<byte[]> getRowChanges() {
+  private Collection<byte[]> getRowChanges(Iterator<Map.Entry<byte[], NavigableMap<byte[], Update>>> rowChanges) {
     // we resolve conflicts on row level of individual table
     List<byte[]> changes = new ArrayList<>(buff.size());
-    for (byte[] changedRow : buff.keySet()) {
-      changes.add(Bytes.add(getNameAsTxChangePrefix(), changedRow));
+    while (rowChanges.hasNext()) {
+      changes.add(Bytes.add(getNameAsTxChangePrefix(), rowChanges.next().getKey()));
     }
     return changes;
   }
 
-  private Collection<byte[]> getColumnChanges() {
+  private Collection<byte[]> getColumnChanges(Iterator<Map.Entry<byte[], NavigableMap<byte[], Update>>> rowChanges) {
     // we resolve conflicts on row level of individual table
     List<byte[]> changes = new ArrayList<>(buff.size());
-    for (Map.Entry<byte[], NavigableMap<byte[], Update>> rowChange : buff.entrySet()) {
+    while (rowChanges.hasNext()) {
+      Map.Entry<byte[], NavigableMap<byte[], Update>> rowChange = rowChanges.next();
       if (rowChange.getValue() == null) {
         // NOTE: as of now we cannot detect conflict between delete whole row and row's column value change.
         //       this is not a big problem as of now, as row deletion is now act as deletion of every column, but this
@@ -338,7 +391,9 @@ public abstract class BufferingTable extends AbstractTable implements MeteredDat
 
   @Override
   public boolean commitTx() throws Exception {
-    if (!buff.isEmpty()) {
+    if (isSpilled()) {
+      commitSpilled();
+    } else if (!buff.isEmpty()) {
       // We first assume that all data will be persisted. So that if exception happen during persist we try to
       // rollback everything we had in in-memory buffer.
       toUndo = buff;
@@ -353,25 +408,146 @@ public abstract class BufferingTable extends AbstractTable implements MeteredDat
     return true;
   }
 
+  /**
+   * Persists the buffered data if part of it was spilled. All buffered data is spilled, and then persisted in batches
+   * of about the spill threshold size while reading back the spilled rows.
+   */
+  private void commitSpilled() throws Exception {
+    spillBuffer();
+    // We first assume that all data will be persisted, same as for the in-memory buffer
+    spillPersisted = true;
+    forEachSpilledBatch(new SpilledBatchConsumer() {
+      @Override
+      public void consume(NavigableMap<byte[], NavigableMap<byte[], Update>> batch) throws Exception {
+        persist(batch);
+      }
+    });
+  }
+
   @Override
   public void postTxCommit() {
     // don't need buffer anymore: tx has been committed
     buff.clear();
     toUndo = null;
+    clearSpill();
     tx = null;
   }
 
   @Override
   public boolean rollbackTx() throws Exception {
     buff.clear();
+    buffSize = 0;
     if (toUndo != null) {
       undo(toUndo);
       toUndo = null;
     }
+    if (spillPersisted) {
+      forEachSpilledBatch(new SpilledBatchConsumer() {
+        @Override
+        public void consume(NavigableMap<byte[], NavigableMap<byte[], Update>> batch) throws Exception {
+          undo(batch);
+        }
+      });
+    }
+    clearSpill();
     tx = null;
     return true;
   }
 
+  private boolean isSpilled() {
+    return spill != null && !spill.isEmpty();
+  }
+
+  /**
+   * Spills the in-memory buffer if it grew above the spill threshold.
+   */
+  private void spillBufferIfNeeded() {
+    if (spillThreshold > 0 && buffSize >= spillThreshold) {
+      try {
+        spillBuffer();
+      } catch (IOException e) {
+        throw new DataSetException("Failed to spill buffer of table " + getTransactionAwareName(), e);
+      }
+    }
+  }
+
+  private void spillBuffer() throws IOException {
+    spill.spill(buff);
+    buff = new ConcurrentSkipListMap<>(Bytes.BYTES_COMPARATOR);
+    buffSize = 0;
+  }
+
+  private void clearSpill() {
+    if (spill != null) {
+      spill.clear();
+    }
+    buffSize = 0;
+    spillPersisted = false;
+  }
+
+  /**
+   * Reads back all spilled rows and passes them to the given consumer in batches of about the spill threshold size.
+   */
+  private void forEachSpilledBatch(SpilledBatchConsumer consumer) throws Exception {
+    try (CloseableIterator<Map.Entry<byte[], NavigableMap<byte[], Update>>> rows = spill.scan(null, null)) {
+      NavigableMap<byte[], NavigableMap<byte[], Update>> batch = Maps.newTreeMap(Bytes.BYTES_COMPARATOR);
+      long batchSize = 0;
+      while (rows.hasNext()) {
+        Map.Entry<byte[], NavigableMap<byte[], Update>> row = rows.next();
+        batch.put(row.getKey(), row.getValue());
+        batchSize += getSize(row.getKey(), row.getValue());
+        if (batchSize >= spillThreshold) {
+          consumer.consume(batch);
+          batch = Maps.newTreeMap(Bytes.BYTES_COMPARATOR);
+          batchSize = 0;
+        }
+      }
+      if (!batch.isEmpty()) {
+        consumer.consume(batch);
+      }
+    }
+  }
+
+  /**
+   * Returns the spilled rows merged with the rows in the in-memory buffer in the given range.
+   */
+  private CloseableIterator<Map.Entry<byte[], NavigableMap<byte[], Update>>> scanSpilled(@Nullable byte[] startRow,
+                                                                                        @Nullable byte[] stopRow)
+    throws IOException {
+    NavigableMap<byte[], NavigableMap<byte[], Update>> buffered = getRange(buff, startRow, stopRow, 0);
+    return BufferSpill.merge(Arrays.asList(spill.scan(startRow, stopRow), buffered.entrySet().iterator()));
+  }
+
+  /**
+   * Returns the buffered updates of a row, merging the spilled updates with the ones in the in-memory buffer.
+   *
+   * @return the buffered updates, or {@code null} if there is none for the row
+   */
+  @Nullable
+  private NavigableMap<byte[], Update> getBufferedRow(byte[] row) throws IOException {
+    NavigableMap<byte[], Update> buffCols = buff.get(row);
+    if (!isSpilled()) {
+      return buffCols;
+    }
+    NavigableMap<byte[], Update> spilled = spill.getRow(row);
+    if (spilled == null) {
+      return buffCols;
+    }
+    if (buffCols != null) {
+      for (Map.Entry<byte[], Update> column : buffCols.entrySet()) {
+        spilled.put(column.getKey(), Updates.mergeUpdates(spilled.get(column.getKey()), column.getValue()));
+      }
+    }
+    return spilled;
+  }
+
+  /**
+   * Consumer of batches of spilled rows.
+   */
+  private interface SpilledBatchConsumer {
+    void consume(NavigableMap<byte[], NavigableMap<byte[], Update>> batch) throws Exception;
+  }
+
   protected void ensureTransactionIsStarted() {
     if (tx == null) {
       throw new DataSetException("Attempt to perform a data operation without a transaction");
@@ -414,24 +590,25 @@ public abstract class BufferingTable extends AbstractTable implements MeteredDat
   public Row get(byte[] row, byte[] startColumn, byte[] stopColumn, int limit) {
     ensureTransactionIsStarted();
     reportRead(1);
-    // checking if the row was deleted inside this tx
-    NavigableMap<byte[], Update> buffCols = buff.get(row);
 
     // NOTE: since we cannot tell the exact column set, we always have to go to persisted store.
     //       potential improvement: do not fetch columns available in in-mem buffer (we know them at this point)
     try {
+      // checking if the row was deleted inside this tx
+      NavigableMap<byte[], Update> buffCols = getBufferedRow(row);
       Map<byte[], byte[]> persistedCols = getPersisted(row, startColumn, stopColumn, limit);
 
       // adding server cols, and then overriding with buffered values
-      NavigableMap<byte[], byte[]> result = Maps.newTreeMap(Bytes.BYTES_COMPARATOR);
-      if (persistedCols != null) {
-        result.putAll(persistedCols);
-      }
-
+      NavigableMap<byte[], byte[]> result;
       if (buffCols != null) {
         buffCols = getRange(buffCols, startColumn, stopColumn, limit);
-        // null valued columns in in-memory buffer are deletes, so we need to delete them from the result list
-        mergeToPersisted(result, buffCols, null);
+        // null valued columns in in-memory buffer are deletes, they are dropped from the result by the merge
+        result = mergeRow(persistedCols, buffCols, false);
+      } else {
+        result = Maps.newTreeMap(Bytes.BYTES_COMPARATOR);
+        if (persistedCols != null) {
+          result.putAll(persistedCols);
+        }
       }
 
       // applying limit
@@ -461,22 +638,23 @@ public abstract class BufferingTable extends AbstractTable implements MeteredDat
         Get get = getIter.next();
         Map<byte[], byte[]> persistedRow = persistedRowsIter.next();
 
-        // navigable copy of the persisted data. Implementation may return immutable or unmodifiable maps,
-        // so we make a copy here.
-        NavigableMap<byte[], byte[]> rowColumns = Maps.newTreeMap(Bytes.BYTES_COMPARATOR);
-        rowColumns.putAll(persistedRow);
-
         byte[] row = get.getRow();
-        NavigableMap<byte[], Update> buffCols = buff.get(row);
+        NavigableMap<byte[], Update> buffCols = getBufferedRow(row);
+        List<byte[]> getColumns = get.getColumns();
 
         // merge what was in the buffer and what was persisted
-        if (buffCols != null) {
-          List<byte[]> getColumns = get.getColumns();
-          byte[][] columns = getColumns == null ? null : getColumns.toArray(new byte[getColumns.size()][]);
-          mergeToPersisted(rowColumns, buffCols, columns);
+        if (buffCols == null) {
+          result.add(new Result(row, unwrapDeletes(persistedRow)));
+        } else if (getColumns == null) {
+          result.add(new Result(row, mergeRow(persistedRow, buffCols, true)));
+        } else {
+          // navigable copy of the persisted data. Implementation may return immutable or unmodifiable maps,
+          // so we make a copy here.
+          NavigableMap<byte[], byte[]> rowColumns = Maps.newTreeMap(Bytes.BYTES_COMPARATOR);
+          rowColumns.putAll(persistedRow);
+          mergeToPersisted(rowColumns, buffCols, getColumns.toArray(new byte[getColumns.size()][]));
+          result.add(new Result(row, unwrapDeletes(rowColumns)));
         }
-
-        result.add(new Result(row, unwrapDeletes(rowColumns)));
       }
       return result;
     } catch (Exception e) {
@@ -518,6 +696,11 @@ public abstract class BufferingTable extends AbstractTable implements MeteredDat
       // NOTE: we copy passed row's byte arrays to protect buffer against possible changes of this array on client
       buff.put(copy(row), colVals);
     }
+    if (spillThreshold > 0) {
+      buffSize += (newRow ? getSize(row) + BUFFER_ENTRY_OVERHEAD : 0)
+        + getSize(columns) + getSize(values) + columns.length * BUFFER_ENTRY_OVERHEAD;
+      spillBufferIfNeeded();
+    }
   }
 
   /**
@@ -621,14 +804,21 @@ public abstract class BufferingTable extends AbstractTable implements MeteredDat
     ensureTransactionIsStarted();
     if (enableReadlessIncrements) {
       NavigableMap<byte[], Update> colVals = buff.get(row);
+      boolean newRow = false;
       if (colVals == null) {
         colVals = Maps.newTreeMap(Bytes.BYTES_COMPARATOR);
         buff.put(row, colVals);
+        newRow = true;
       }
       for (int i = 0; i < columns.length; i++) {
         colVals.put(columns[i], Updates.mergeUpdates(colVals.get(columns[i]), new IncrementValue(amounts[i])));
       }
       reportWrite(1, getSize(row) + getSize(columns) + getSize(amounts));
+      if (spillThreshold > 0) {
+        buffSize += (newRow ? getSize(row) + BUFFER_ENTRY_OVERHEAD : 0)
+          + getSize(columns) + getSize(amounts) + columns.length * BUFFER_ENTRY_OVERHEAD;
+        spillBufferIfNeeded();
+      }
     } else {
       internalIncrementAndGet(row, columns, amounts);
     }
@@ -695,9 +885,13 @@ public abstract class BufferingTable extends AbstractTable implements MeteredDat
   @Override
   public Scanner scan(Scan scan) {
     ensureTransactionIsStarted();
-    NavigableMap<byte[], NavigableMap<byte[], Update>> bufferMap = scanBuffer(scan);
     try {
-      return new BufferingScanner(bufferMap, scanPersisted(scan));
+      if (isSpilled()) {
+        return new BufferingScanner(filter(scanSpilled(scan.getStartRow(), scan.getStopRow()), scan.getFilter()),
+                                    scanPersisted(scan));
+      }
+      NavigableMap<byte[], NavigableMap<byte[], Update>> bufferMap = scanBuffer(scan);
+      return new BufferingScanner(bufferMap.entrySet().iterator(), scanPersisted(scan));
     } catch (Exception e) {
       LOG.debug("scan failed for table: " + getTransactionAwareName() +
           ", scan: " + scan.toString(), e);
@@ -731,43 +925,45 @@ public abstract class BufferingTable extends AbstractTable implements MeteredDat
 
     // todo: currently we support only FuzzyRowFilter as an experimental feature
     if (filter instanceof FuzzyRowFilter) {
-      NavigableMap<byte[], NavigableMap<byte[], Update>> result = Maps.newTreeMap(Bytes.BYTES_COMPARATOR);
-      for (Map.Entry<byte[], NavigableMap<byte[], Update>> entry : bufferMap.entrySet()) {
-        if (FuzzyRowFilter.ReturnCode.INCLUDE == ((FuzzyRowFilter) filter).filterRow(entry.getKey())) {
-          result.put(entry.getKey(), entry.getValue());
-        }
-      }
-      return result;
+      return ((FuzzyRowFilter) filter).filter(bufferMap);
     } else {
       throw new DataSetException("Unknown filter type: " + filter);
     }
   }
 
+  private CloseableIterator<Map.Entry<byte[], NavigableMap<byte[], Update>>> filter(
+    CloseableIterator<Map.Entry<byte[], NavigableMap<byte[], Update>>> rows, @Nullable Filter filter) {
+    if (filter == null) {
+      return rows;
+    }
+    // todo: currently we support only FuzzyRowFilter as an experimental feature
+    if (!(filter instanceof FuzzyRowFilter)) {
+      rows.close();
+      throw new DataSetException("Unknown filter type: " + filter);
+    }
+    return new FilteringCloseableIterator(rows, (FuzzyRowFilter) filter);
+  }
+
   private Map<byte[], byte[]> getRowMap(byte[] row) throws Exception {
-    NavigableMap<byte[], byte[]> result = Maps.newTreeMap(Bytes.BYTES_COMPARATOR);
     // checking if the row was deleted inside this tx
-    NavigableMap<byte[], Update> buffCols = buff.get(row);
+    NavigableMap<byte[], Update> buffCols = getBufferedRow(row);
     boolean rowDeleted = buffCols == null && buff.containsKey(row);
     if (rowDeleted) {
       return Collections.emptyMap();
     }
 
     Map<byte[], byte[]> persisted = getPersisted(row, null);
-
-
-    result.putAll(persisted);
-    if (buffCols != null) {
-      // buffered should override those returned from persistent store
-      mergeToPersisted(result, buffCols, null);
+    if (buffCols == null) {
+      return unwrapDeletes(persisted);
     }
-
-    return unwrapDeletes(result);
+    // buffered should override those returned from persistent store
+    return mergeRow(persisted, buffCols, true);
   }
 
   private Map<byte[], byte[]> getRowMap(byte[] row, byte[][] columns) throws Exception {
     NavigableMap<byte[], byte[]> result = Maps.newTreeMap(Bytes.BYTES_COMPARATOR);
     // checking if the row was deleted inside this tx
-    NavigableMap<byte[], Update> buffCols = buff.get(row);
+    NavigableMap<byte[], Update> buffCols = getBufferedRow(row);
 
     // if nothing locally, return all from server
     if (buffCols == null) {
@@ -848,6 +1044,86 @@ public abstract class BufferingTable extends AbstractTable implements MeteredDat
     }
   }
 
+  /**
+   * Merges the persisted columns of a row with the buffered updates of the same row into a new map. Both are sorted by
+   * column, hence they are merged in a single pass, without copying the persisted columns first and without looking up
+   * every buffered column in them.
+   *
+   * @param persisted the persisted columns; if it is not sorted by {@link Bytes#BYTES_COMPARATOR}, it is sorted first
+   * @param buffered the buffered updates to apply on top of the persisted columns
+   * @param unwrapDeletes if {@code true}, columns with the {@link #DELETE_MARKER} value are omitted from the result
+   * @return a new map with the merged columns
+   */
+  private static NavigableMap<byte[], byte[]> mergeRow(@Nullable Map<byte[], byte[]> persisted,
+                                                       NavigableMap<byte[], Update> buffered, boolean unwrapDeletes) {
+    NavigableMap<byte[], byte[]> result = Maps.newTreeMap(Bytes.BYTES_COMPARATOR);
+    Iterator<Map.Entry<byte[], byte[]>> persistedIter = sortedEntries(persisted);
+    Iterator<Map.Entry<byte[], Update>> bufferedIter = buffered.entrySet().iterator();
+    Map.Entry<byte[], byte[]> persistedEntry = persistedIter.hasNext() ? persistedIter.next() : null;
+    Map.Entry<byte[], Update> bufferedEntry = bufferedIter.hasNext() ? bufferedIter.next() : null;
+
+    while (persistedEntry != null || bufferedEntry != null) {
+      int order;
+      if (persistedEntry == null) {
+        order = 1;
+      } else if (bufferedEntry == null) {
+        order = -1;
+      } else {
+        order = Bytes.compareTo(persistedEntry.getKey(), bufferedEntry.getKey());
+      }
+
+      if (order < 0) {
+        // persisted column is not updated in the buffer
+        putColumn(result, persistedEntry.getKey(), persistedEntry.getValue(), unwrapDeletes);
+        persistedEntry = persistedIter.hasNext() ? persistedIter.next() : null;
+        continue;
+      }
+
+      // NOTE: we want to copy key's and value's byte arrays because they may be leaked to table's client and we
+      //       don't want client to affect the buffer by changing them in place
+      byte[] persistedValue = order == 0 ? persistedEntry.getValue() : null;
+      Update val = bufferedEntry.getValue();
+      if (val instanceof IncrementValue) {
+        long newValue = ((IncrementValue) val).getValue();
+        if (persistedValue != null) {
+          newValue += Bytes.toLong(persistedValue);
+        }
+        putColumn(result, copy(bufferedEntry.getKey()), Bytes.toBytes(newValue), unwrapDeletes);
+      } else if (val instanceof PutValue) {
+        putColumn(result, copy(bufferedEntry.getKey()), copy(((PutValue) val).getValue()), unwrapDeletes);
+      } else if (val != null && persistedValue != null) {
+        // unknown type, keep the persisted value
+        putColumn(result, persistedEntry.getKey(), persistedValue, unwrapDeletes);
+      }
+      // otherwise null valued columns in the buffer are deletes, which remove the persisted column
+
+      bufferedEntry = bufferedIter.hasNext() ? bufferedIter.next() : null;
+      if (order == 0) {
+        persistedEntry = persistedIter.hasNext() ? persistedIter.next() : null;
+      }
+    }
+    return result;
+  }
+
+  private static Iterator<Map.Entry<byte[], byte[]>> sortedEntries(@Nullable Map<byte[], byte[]> columns) {
+    if (columns == null) {
+      return Collections.emptyIterator();
+    }
+    if (columns instanceof SortedMap && ((SortedMap<byte[], byte[]>) columns).comparator() == Bytes.BYTES_COMPARATOR) {
+      return columns.entrySet().iterator();
+    }
+    NavigableMap<byte[], byte[]> sorted = Maps.newTreeMap(Bytes.BYTES_COMPARATOR);
+    sorted.putAll(columns);
+    return sorted.entrySet().iterator();
+  }
+
+  private static void putColumn(NavigableMap<byte[], byte[]> columns, byte[] column,
+                                @Nullable byte[] value, boolean unwrapDeletes) {
+    if (!unwrapDeletes || (value != null && unwrapDeleteIfNeeded(value) != null)) {
+      columns.put(column, value);
+    }
+  }
+
   // utilities useful for underlying implementations
 
   protected static <T> NavigableMap<byte[], T> getRange(NavigableMap<byte[], T> rowMap,
@@ -907,7 +1183,7 @@ public abstract class BufferingTable extends AbstractTable implements MeteredDat
   }
 
   // todo: it is in-efficient to copy maps a lot, consider merging with getLatest methods
-  protected static NavigableMap<byte[], byte[]> unwrapDeletes(NavigableMap<byte[], byte[]> rowMap) {
+  protected static NavigableMap<byte[], byte[]> unwrapDeletes(Map<byte[], byte[]> rowMap) {
     if (rowMap == null || rowMap.isEmpty()) {
       return EMPTY_ROW_MAP;
     }
@@ -954,6 +1230,16 @@ public abstract class BufferingTable extends AbstractTable implements MeteredDat
     return item == null ? 0 : item.length;
   }
 
+  private static long getSize(byte[] row, Map<byte[], Update> columns) {
+    long size = getSize(row) + BUFFER_ENTRY_OVERHEAD;
+    for (Map.Entry<byte[], Update> column : columns.entrySet()) {
+      Update update = column.getValue();
+      size += getSize(column.getKey()) + BUFFER_ENTRY_OVERHEAD
+        + (update instanceof PutValue ? getSize(((PutValue) update).getValue()) : Bytes.SIZEOF_LONG);
+    }
+    return size;
+  }
+
   private static byte[] copy(byte[] bytes) {
     return bytes == null ? null : Arrays.copyOf(bytes, bytes.length);
   }
@@ -962,11 +1248,11 @@ public abstract class BufferingTable extends AbstractTable implements MeteredDat
   // they get annotated
 
   @ReadOnly
-  private Iterator<byte[]> getBufferKeyIterator(NavigableMap<byte[], NavigableMap<byte[], Update>> buffer) {
-    final Iterator<byte[]> iterator = buffer.keySet().iterator();
-    return new AbstractIterator<byte[]>() {
+  private Iterator<Map.Entry<byte[], NavigableMap<byte[], Update>>> getBufferIterator(
+    final Iterator<Map.Entry<byte[], NavigableMap<byte[], Update>>> iterator) {
+    return new AbstractIterator<Map.Entry<byte[], NavigableMap<byte[], Update>>>() {
       @Override
-      protected byte[] computeNext() {
+      protected Map.Entry<byte[], NavigableMap<byte[], Update>> computeNext() {
         return BufferingTable.this.hasNext(iterator) ? BufferingTable.this.next(iterator) : endOfData();
       }
     };
@@ -982,27 +1268,55 @@ public abstract class BufferingTable extends AbstractTable implements MeteredDat
     return iterator.next();
   }
 
-  @ReadOnly
-  private NavigableMap<byte[], Update> getFromBuffer(NavigableMap<byte[], NavigableMap<byte[], Update>> buffer,
-                                                     byte[] key) {
-    return buffer.get(key);
+  /**
+   * Iterator of buffered rows that only returns the rows matching a {@link FuzzyRowFilter}.
+   */
+  private static final class FilteringCloseableIterator
+    extends AbstractIterator<Map.Entry<byte[], NavigableMap<byte[], Update>>>
+    implements CloseableIterator<Map.Entry<byte[], NavigableMap<byte[], Update>>> {
+
+    private final CloseableIterator<Map.Entry<byte[], NavigableMap<byte[], Update>>> rows;
+    private final FuzzyRowFilter filter;
+
+    private FilteringCloseableIterator(CloseableIterator<Map.Entry<byte[], NavigableMap<byte[], Update>>> rows,
+                                       FuzzyRowFilter filter) {
+      this.rows = rows;
+      this.filter = filter;
+    }
+
+    @Override
+    protected Map.Entry<byte[], NavigableMap<byte[], Update>> computeNext() {
+      while (rows.hasNext()) {
+        Map.Entry<byte[], NavigableMap<byte[], Update>> row = rows.next();
+        if (FuzzyRowFilter.ReturnCode.INCLUDE == filter.filterRow(row.getKey())) {
+          return row;
+        }
+      }
+      return endOfData();
+    }
+
+    @Override
+    public void close() {
+      rows.close();
+    }
   }
 
   /**
    * Scanner implementation that overlays buffered data on top of already persisted data.
    */
   private class BufferingScanner implements Scanner {
-    private final NavigableMap<byte[], NavigableMap<byte[], Update>> buffer;
+    private final Iterator<Map.Entry<byte[], NavigableMap<byte[], Update>>> bufferIter;
     private final Scanner persistedScanner;
-    private final Iterator<byte[]> keyIter;
-    private byte[] currentKey;
+    private final Iterator<Map.Entry<byte[], NavigableMap<byte[], Update>>> entryIter;
+    private Map.Entry<byte[], NavigableMap<byte[], Update>> currentEntry;
     private Row currentRow;
 
-    private BufferingScanner(NavigableMap<byte[], NavigableMap<byte[], Update>> buffer, Scanner persistedScanner) {
-      this.buffer = buffer;
-      this.keyIter = getBufferKeyIterator(buffer);
-      if (this.keyIter.hasNext()) {
-        currentKey = keyIter.next();
+    private BufferingScanner(Iterator<Map.Entry<byte[], NavigableMap<byte[], Update>>> bufferIter,
+                             Scanner persistedScanner) {
+      this.bufferIter = bufferIter;
+      this.entryIter = getBufferIterator(bufferIter);
+      if (this.entryIter.hasNext()) {
+        currentEntry = entryIter.next();
       }
       this.persistedScanner = persistedScanner;
       this.currentRow = this.persistedScanner.next();
@@ -1011,20 +1325,20 @@ public abstract class BufferingTable extends AbstractTable implements MeteredDat
     @Nullable
     @Override
     public Row next() {
-      if (currentKey == null && currentRow == null) {
+      if (currentEntry == null && currentRow == null) {
         // out of rows
         return null;
       }
       reportRead(1);
       int order;
-      if (currentKey == null) {
+      if (currentEntry == null) {
         // exhausted buffer is the same as persisted scan row coming first
         order = 1;
       } else if (currentRow == null) {
         // exhausted persisted scanner is the same as buffer row coming first
         order = -1;
       } else {
-        order = Bytes.compareTo(currentKey, currentRow.getRow());
+        order = Bytes.compareTo(currentEntry.getKey(), currentRow.getRow());
       }
 
       Row result;
@@ -1034,19 +1348,16 @@ public abstract class BufferingTable extends AbstractTable implements MeteredDat
         currentRow = persistedScanner.next();
       } else if (order < 0) {
         // buffer row comes first or persisted scanner is empty
-        Map<byte[], byte[]> persistedRow = Maps.newTreeMap(Bytes.BYTES_COMPARATOR);
-        mergeToPersisted(persistedRow, getFromBuffer(buffer, currentKey), null);
-        result = new Result(copy(currentKey), persistedRow);
+        result = new Result(copy(currentEntry.getKey()), mergeRow(null, currentEntry.getValue(), false));
 
-        currentKey = keyIter.hasNext() ? keyIter.next() : null;
+        currentEntry = entryIter.hasNext() ? entryIter.next() : null;
       } else {
         // if currentKey and currentRow are equal, merge and advance both
-        Map<byte[], byte[]> persisted = currentRow.getColumns();
-        mergeToPersisted(persisted, getFromBuffer(buffer, currentKey), null);
-        result = new Result(currentRow.getRow(), persisted);
+        result = new Result(currentRow.getRow(),
+                            mergeRow(currentRow.getColumns(), currentEntry.getValue(), false));
 
         currentRow = persistedScanner.next();
-        currentKey = keyIter.hasNext() ? keyIter.next() : null;
+        currentEntry = entryIter.hasNext() ? entryIter.next() : null;
       }
       return result;
     }
@@ -1054,6 +1365,9 @@ public abstract class BufferingTable extends AbstractTable implements MeteredDat
     @Override
     public void close() {
       this.persistedScanner.close();
+      if (bufferIter instanceof CloseableIterator) {
+        ((CloseableIterator<?>) bufferIter).close();
+      }
     }
   }
 
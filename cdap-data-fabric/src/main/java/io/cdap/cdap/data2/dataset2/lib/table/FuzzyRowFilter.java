@@ -22,6 +22,9 @@ import io.cdap.cdap.common.utils.ImmutablePair;
 
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
 
 /**
  * This is inspired by HBase's FuzzyRowFilter.
@@ -131,6 +134,34 @@ public final class FuzzyRowFilter implements Filter {
     return nextRowKey;
   }
 
+  /**
+   * Returns the rows of the given map with a row key that matches this filter. Rather than testing every row, it skips
+   * to the next row that can possibly match using {@link #getNextRowHint(byte[])}, the same way a table scanner does.
+   *
+   * @param rows rows sorted by {@link Bytes#BYTES_COMPARATOR}
+   * @param <T> type of the row values
+   * @return a new map with the matching rows
+   */
+  public <T> NavigableMap<byte[], T> filter(NavigableMap<byte[], T> rows) {
+    NavigableMap<byte[], T> result = new TreeMap<>(Bytes.BYTES_COMPARATOR);
+    Map.Entry<byte[], T> entry = rows.firstEntry();
+    while (entry != null) {
+      byte[] row = entry.getKey();
+      ReturnCode code = filterRow(row);
+      if (code == ReturnCode.DONE) {
+        break;
+      }
+      if (code == ReturnCode.INCLUDE) {
+        result.put(row, entry.getValue());
+        entry = rows.higherEntry(row);
+      } else {
+        byte[] hint = getNextRowHint(row);
+        entry = Bytes.compareTo(hint, row) > 0 ? rows.ceilingEntry(hint) : rows.higherEntry(row);
+      }
+    }
+    return result;
+  }
+
   @Override
   public String toString() {
     final StringBuilder sb = new StringBuilder();
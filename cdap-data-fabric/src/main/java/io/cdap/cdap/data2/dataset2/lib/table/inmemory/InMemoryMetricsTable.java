@@ -120,10 +120,10 @@ public class InMemoryMetricsTable implements MetricsTable {
 
     // todo: a lot of inefficient copying from one map to another
     NavigableMap<byte[], NavigableMap<byte[], NavigableMap<Long, byte[]>>> rowRange =
-      InMemoryTableService.getRowRange(tableName, start, stop, null);
+      InMemoryTableService.getRowRange(tableName, start, stop, filter, null);
     NavigableMap<byte[], NavigableMap<byte[], byte[]>> rows = getLatest(rowRange);
 
-    return new InMemoryScanner(rows.entrySet().iterator(), filter, null);
+    return new InMemoryScanner(rows.entrySet().iterator());
   }
 
   private NavigableMap<byte[], NavigableMap<byte[], byte[]>> getLatest(
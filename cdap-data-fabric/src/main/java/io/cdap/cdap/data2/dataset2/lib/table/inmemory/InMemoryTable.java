@@ -142,33 +142,23 @@ public class InMemoryTable extends BufferingTable {
     byte[] startRow = scan.getStartRow();
     byte[] stopRow = scan.getStopRow();
     NavigableMap<byte[], NavigableMap<byte[], NavigableMap<Long, byte[]>>> rowRange =
-      InMemoryTableService.getRowRange(getTableName(), startRow, stopRow,
+      InMemoryTableService.getRowRange(getTableName(), startRow, stopRow, getFilter(scan.getFilter()),
           tx == null ? null : tx);
     NavigableMap<byte[], NavigableMap<byte[], byte[]>> visibleRowRange = getLatestNotExcludedRows(rowRange, tx);
     NavigableMap<byte[], NavigableMap<byte[], byte[]>> rows = unwrapDeletesForRows(visibleRowRange);
 
-    rows = applyFilter(rows, scan.getFilter());
-
     return new InMemoryScanner(wrapIterator(rows.entrySet().iterator()));
   }
 
-  private NavigableMap<byte[], NavigableMap<byte[], byte[]>> applyFilter(
-                                                    NavigableMap<byte[], NavigableMap<byte[], byte[]>> map,
-                                                    @Nullable Filter filter) {
-
+  @Nullable
+  private FuzzyRowFilter getFilter(@Nullable Filter filter) {
     if (filter == null) {
-      return map;
+      return null;
     }
 
     // todo: currently we support only FuzzyRowFilter as an experimental feature
     if (filter instanceof FuzzyRowFilter) {
-      NavigableMap<byte[], NavigableMap<byte[], byte[]>> result = Maps.newTreeMap(Bytes.BYTES_COMPARATOR);
-      for (Map.Entry<byte[], NavigableMap<byte[], byte[]>> entry : map.entrySet()) {
-        if (FuzzyRowFilter.ReturnCode.INCLUDE == ((FuzzyRowFilter) filter).filterRow(entry.getKey())) {
-          result.put(entry.getKey(), entry.getValue());
-        }
-      }
-      return result;
+      return (FuzzyRowFilter) filter;
     } else {
       throw new DataSetException("Unknown filter type: " + filter);
     }
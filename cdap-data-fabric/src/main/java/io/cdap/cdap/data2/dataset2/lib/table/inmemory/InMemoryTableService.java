@@ -23,6 +23,7 @@ import com.google.common.collect.Maps;
 import com.google.common.collect.Ordering;
 import com.google.common.primitives.Longs;
 import io.cdap.cdap.api.common.Bytes;
+import io.cdap.cdap.data2.dataset2.lib.table.FuzzyRowFilter;
 import io.cdap.cdap.data2.dataset2.lib.table.IncrementValue;
 import io.cdap.cdap.data2.dataset2.lib.table.PutValue;
 import io.cdap.cdap.data2.dataset2.lib.table.Update;
@@ -253,6 +254,19 @@ public class InMemoryTableService {
                                          byte[] startRow,
                                          byte[] stopRow,
                                          @Nullable Transaction tx) {
+    return getRowRange(tableName, startRow, stopRow, null, tx);
+  }
+
+  /**
+   * Returns a copy of the rows in the given range that match the given filter. Rows that do not match the filter are
+   * skipped without being copied.
+   */
+  public static synchronized NavigableMap<byte[], NavigableMap<byte[], NavigableMap<Long, byte[]>>>
+                             getRowRange(String tableName,
+                                         byte[] startRow,
+                                         byte[] stopRow,
+                                         @Nullable FuzzyRowFilter filter,
+                                         @Nullable Transaction tx) {
     // todo: handle nulls
     ConcurrentNavigableMap<byte[], NavigableMap<byte[], NavigableMap<Long, Update>>> tableData = tables.get(tableName);
     NavigableMap<byte[], NavigableMap<byte[], NavigableMap<Long, Update>>> rows;
@@ -265,6 +279,9 @@ public class InMemoryTableService {
     } else {
       rows = tableData.subMap(startRow, true, stopRow, false);
     }
+    if (filter != null) {
+      rows = filter.filter(rows);
+    }
 
     NavigableMap<byte[], NavigableMap<byte[], NavigableMap<Long, byte[]>>> result =
       Maps.newTreeMap(Bytes.BYTES_COMPARATOR);
@@ -23,6 +23,7 @@ import io.cdap.cdap.common.conf.CConfiguration;
 import io.cdap.cdap.data2.dataset2.lib.table.inmemory.PrefixedNamespaces;
 
 import java.io.IOException;
+import java.util.Map;
 
 /**
  *
@@ -31,11 +32,13 @@ public class LevelDBTableAdmin implements DatasetAdmin {
 
   private final LevelDBTableService service;
   private final String name;
+  private final Map<String, String> properties;
 
   public LevelDBTableAdmin(DatasetContext datasetContext, DatasetSpecification spec,
                            LevelDBTableService service, CConfiguration cConf) throws IOException {
     this.service = service;
     this.name = PrefixedNamespaces.namespace(cConf, datasetContext.getNamespaceId(), spec.getName());
+    this.properties = spec.getProperties();
   }
 
   @Override
@@ -50,7 +53,7 @@ public class LevelDBTableAdmin implements DatasetAdmin {
 
   @Override
   public void create() throws IOException {
-    service.ensureTableExists(name);
+    service.ensureTableExists(name, properties);
   }
 
   @Override
@@ -17,6 +17,7 @@
 package io.cdap.cdap.data2.dataset2.lib.table.leveldb;
 
 import com.google.common.base.Throwables;
+import com.google.common.util.concurrent.Striped;
 import io.cdap.cdap.api.common.Bytes;
 import io.cdap.cdap.api.dataset.table.Result;
 import io.cdap.cdap.api.dataset.table.Row;
@@ -34,13 +35,17 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.NavigableMap;
 import java.util.TreeMap;
+import java.util.concurrent.locks.Lock;
 import javax.annotation.Nullable;
 
 /**
@@ -70,10 +75,12 @@ public class LevelDBTableCore {
 
   private final String tableName;
   private final LevelDBTableService service;
+  private final Striped<Lock> rowLocks;
 
   public LevelDBTableCore(String tableName, LevelDBTableService service) {
     this.tableName = tableName;
     this.service = service;
+    this.rowLocks = service.getRowLocks(tableName);
   }
 
   private DB getDB() throws IOException {
@@ -85,30 +92,66 @@ public class LevelDBTableCore {
   }
 
 
-  public synchronized boolean swap(byte[] row, byte[] column, byte[] oldValue, byte[] newValue) throws IOException {
-    byte[] existing = getRow(row, new byte[][] { column }, null, null, -1, null).get(column);
-    // verify
-    if (oldValue == null && existing != null) {
-      return false;
+  /**
+   * Lock the given rows. Locks are acquired in the order of the lock stripes to avoid deadlocks.
+   *
+   * @return the locks acquired, to be released with {@link #unlock(List)}
+   */
+  private List<Lock> lock(Collection<byte[]> rows) {
+    List<ByteBuffer> keys = new ArrayList<>(rows.size());
+    for (byte[] row : rows) {
+      keys.add(ByteBuffer.wrap(row));
     }
-    if (oldValue != null && (existing == null || !Bytes.equals(oldValue, existing))) {
-      return false;
+    List<Lock> locks = new ArrayList<>(rows.size());
+    for (Lock lock : rowLocks.bulkGet(keys)) {
+      // bulkGet returns one lock per key, hence the same lock can appear multiple times
+      if (!locks.isEmpty() && locks.get(locks.size() - 1) == lock) {
+        continue;
+      }
+      lock.lock();
+      locks.add(lock);
     }
-    // write
-    if (newValue == null) {
-      // to-do
-      deleteColumn(row, column);
-    } else {
-      persist(Collections.singletonMap(row, Collections.singletonMap(column, newValue)), Long.MAX_VALUE);
+    return locks;
+  }
+
+  private void unlock(List<Lock> locks) {
+    for (int i = locks.size() - 1; i >= 0; i--) {
+      locks.get(i).unlock();
     }
-    return true;
   }
 
-  public synchronized Map<byte[], Long> increment(byte[] row, Map<byte[], Long> increments) throws IOException {
+  public boolean swap(byte[] row, byte[] column, byte[] oldValue, byte[] newValue) throws IOException {
+    Lock lock = rowLocks.get(ByteBuffer.wrap(row));
+    lock.lock();
+    try {
+      byte[] existing = getRow(row, new byte[][] { column }, null, null, -1, null).get(column);
+      // verify
+      if (oldValue == null && existing != null) {
+        return false;
+      }
+      if (oldValue != null && (existing == null || !Bytes.equals(oldValue, existing))) {
+        return false;
+      }
+      // write
+      if (newValue == null) {
+        // to-do
+        deleteColumn(row, column);
+      } else {
+        persist(Collections.singletonMap(row, Collections.singletonMap(column, newValue)), Long.MAX_VALUE);
+      }
+      return true;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  public Map<byte[], Long> increment(byte[] row, Map<byte[], Long> increments) throws IOException {
     Map<byte[], Long> result = new TreeMap<>(Bytes.BYTES_COMPARATOR);
 
     DB db = getDB();
     WriteBatch writeBatch = db.createWriteBatch();
+    Lock lock = rowLocks.get(ByteBuffer.wrap(row));
+    lock.lock();
     try (Snapshot snapshot = db.getSnapshot()) {
       ReadOptions readOptions = new ReadOptions().snapshot(snapshot);
 
@@ -120,19 +163,25 @@ public class LevelDBTableCore {
         writeBatch.put(rowKey, Bytes.toBytes(newValue));
       }
       db.write(writeBatch, service.getWriteOptions());
+    } finally {
+      lock.unlock();
     }
 
     return result;
   }
 
-
-  public synchronized void increment(NavigableMap<byte[], NavigableMap<byte[], Long>> updates) throws IOException {
+  /**
+   * Increments multiple rows. All rows of the batch are locked, all existing values are read from one snapshot and
+   * all new values are written with one {@link WriteBatch}.
+   */
+  public void increment(NavigableMap<byte[], NavigableMap<byte[], Long>> updates) throws IOException {
     if (updates.isEmpty()) {
       return;
     }
 
     DB db = getDB();
     WriteBatch writeBatch = db.createWriteBatch();
+    List<Lock> locks = lock(updates.keySet());
     try (Snapshot snapshot = db.getSnapshot()) {
       ReadOptions readOptions = new ReadOptions().snapshot(snapshot);
 
@@ -145,6 +194,8 @@ public class LevelDBTableCore {
         }
       }
       db.write(writeBatch, service.getWriteOptions());
+    } finally {
+      unlock(locks);
     }
   }
 
@@ -490,11 +541,15 @@ public class LevelDBTableCore {
     public Row next() {
       try {
         while (true) {
+          // skip to the next row that matches the filter before reading any of its columns
+          if (filter != null && !seekToMatchingRow()) {
+            return null;
+          }
           ImmutablePair<byte[], NavigableMap<byte[], byte[]>> result = getRow(iterator, endKey, tx, true, columns, -1);
           if (result.getFirst() == null) {
             return null;
           }
-          // apply row filter if any
+          // apply row filter if any. The row read may be past the one checked above if that had no visible columns
           if (filter != null) {
             FuzzyRowFilter.ReturnCode code = filter.filterRow(result.getFirst());
             switch (code) {
@@ -519,6 +574,33 @@ public class LevelDBTableCore {
       }
     }
 
+    /**
+     * Moves the iterator to the first key of the next row that matches the filter, seeking past the non-matching rows
+     * using the filter hints, without reading their columns.
+     *
+     * @return {@code false} if no more rows can match the filter, {@code true} otherwise
+     */
+    private boolean seekToMatchingRow() {
+      while (iterator.hasNext()) {
+        byte[] key = iterator.peekNext().getKey();
+        if (endKey != null && KeyValue.KEY_COMPARATOR.compare(key, endKey) >= 0) {
+          // the scan is done, which getRow() will tell
+          return true;
+        }
+        byte[] row = KeyValue.fromKey(key).getRow();
+        switch (filter.filterRow(row)) {
+          case DONE:
+            return false;
+          case SEEK_NEXT_USING_HINT:
+            iterator.seek(createStartKey(filter.getNextRowHint(row)));
+            break;
+          default:
+            return true;
+        }
+      }
+      return true;
+    }
+
     @Override
     public void close() {
       try {
@@ -0,0 +1,211 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.cdap.data2.dataset2.lib.table.leveldb;
+
+import com.google.common.base.Objects;
+import io.cdap.cdap.common.conf.CConfiguration;
+import io.cdap.cdap.common.conf.Constants;
+import org.iq80.leveldb.CompressionType;
+import org.iq80.leveldb.Options;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * The LevelDB engine options of a table. The defaults come from the {@link CConfiguration}, and each of them can be
+ * overridden per dataset through the dataset properties. The overridden options are stored in the table directory
+ * when the table is created, so that the table is always opened with them, while the other options are resolved from
+ * the {@link CConfiguration} every time the table is opened.
+ */
+public final class LevelDBTableOptions {
+
+  /**
+   * Dataset property for the block size in bytes.
+   */
+  public static final String PROPERTY_BLOCK_SIZE = "leveldb.block.size";
+
+  /**
+   * Dataset property for the block cache size in bytes.
+   */
+  public static final String PROPERTY_CACHE_SIZE = "leveldb.cache.size";
+
+  /**
+   * Dataset property for the write buffer (memtable) size in bytes.
+   */
+  public static final String PROPERTY_WRITE_BUFFER_SIZE = "leveldb.write.buffer.size";
+
+  /**
+   * Dataset property for the block compression, either {@code NONE} or {@code SNAPPY}.
+   */
+  public static final String PROPERTY_COMPRESSION = "leveldb.compression";
+
+  // Name of the file in the table directory that stores the overridden options
+  private static final String OPTIONS_FILE = "CDAP-OPTIONS";
+
+  private static final List<String> PROPERTIES = Arrays.asList(PROPERTY_BLOCK_SIZE, PROPERTY_CACHE_SIZE,
+                                                               PROPERTY_WRITE_BUFFER_SIZE, PROPERTY_COMPRESSION);
+
+  private final int blockSize;
+  private final long cacheSize;
+  private final int writeBufferSize;
+  private final CompressionType compression;
+
+  /**
+   * Creates the default options from the given configuration.
+   */
+  static LevelDBTableOptions fromConfiguration(CConfiguration cConf) {
+    return new LevelDBTableOptions(
+      cConf.getInt(Constants.CFG_DATA_LEVELDB_BLOCKSIZE, Constants.DEFAULT_DATA_LEVELDB_BLOCKSIZE),
+      cConf.getLong(Constants.CFG_DATA_LEVELDB_CACHESIZE, Constants.DEFAULT_DATA_LEVELDB_CACHESIZE),
+      cConf.getInt(Constants.CFG_DATA_LEVELDB_WRITE_BUFFER_SIZE, Constants.DEFAULT_DATA_LEVELDB_WRITE_BUFFER_SIZE),
+      CompressionType.valueOf(cConf.get(Constants.CFG_DATA_LEVELDB_COMPRESSION,
+                                        Constants.DEFAULT_DATA_LEVELDB_COMPRESSION).toUpperCase()));
+  }
+
+  /**
+   * Reads the options stored in the given table directory.
+   *
+   * @param tableDir the table directory
+   * @param defaults the options to use for anything that is not stored
+   * @return the defaults overridden by the stored options
+   */
+  static LevelDBTableOptions read(File tableDir, LevelDBTableOptions defaults) throws IOException {
+    File file = new File(tableDir, OPTIONS_FILE);
+    if (!file.isFile()) {
+      return defaults;
+    }
+    Properties properties = new Properties();
+    try (InputStream is = new FileInputStream(file)) {
+      properties.load(is);
+    }
+    Map<String, String> map = new HashMap<>();
+    for (String name : properties.stringPropertyNames()) {
+      map.put(name, properties.getProperty(name));
+    }
+    return defaults.override(map);
+  }
+
+  LevelDBTableOptions(int blockSize, long cacheSize, int writeBufferSize, CompressionType compression) {
+    this.blockSize = blockSize;
+    this.cacheSize = cacheSize;
+    this.writeBufferSize = writeBufferSize;
+    this.compression = compression;
+  }
+
+  /**
+   * Returns a new options with the values overridden by the given dataset properties.
+   */
+  LevelDBTableOptions override(Map<String, String> properties) {
+    String blockSize = properties.get(PROPERTY_BLOCK_SIZE);
+    String cacheSize = properties.get(PROPERTY_CACHE_SIZE);
+    String writeBufferSize = properties.get(PROPERTY_WRITE_BUFFER_SIZE);
+    String compression = properties.get(PROPERTY_COMPRESSION);
+    try {
+      return new LevelDBTableOptions(
+        blockSize == null ? this.blockSize : Integer.parseInt(blockSize.trim()),
+        cacheSize == null ? this.cacheSize : Long.parseLong(cacheSize.trim()),
+        writeBufferSize == null ? this.writeBufferSize : Integer.parseInt(writeBufferSize.trim()),
+        compression == null ? this.compression : CompressionType.valueOf(compression.trim().toUpperCase()));
+    } catch (IllegalArgumentException e) {
+      throw new IllegalArgumentException("Invalid LevelDB table options in " + properties, e);
+    }
+  }
+
+  /**
+   * Stores the options that are overridden by the given dataset properties in the given table directory.
+   * Nothing is stored if none of the options is overridden.
+   */
+  static void write(File tableDir, Map<String, String> properties) throws IOException {
+    Properties overrides = new Properties();
+    for (String name : PROPERTIES) {
+      String value = properties.get(name);
+      if (value != null) {
+        overrides.setProperty(name, value.trim());
+      }
+    }
+    if (overrides.isEmpty()) {
+      return;
+    }
+    try (OutputStream os = new FileOutputStream(new File(tableDir, OPTIONS_FILE))) {
+      overrides.store(os, null);
+    }
+  }
+
+  /**
+   * Applies the options to the given LevelDB {@link Options}.
+   */
+  Options applyTo(Options options) {
+    return options
+      .blockSize(blockSize)
+      .cacheSize(cacheSize)
+      .writeBufferSize(writeBufferSize)
+      .compressionType(compression);
+  }
+
+  public int getBlockSize() {
+    return blockSize;
+  }
+
+  public long getCacheSize() {
+    return cacheSize;
+  }
+
+  public int getWriteBufferSize() {
+    return writeBufferSize;
+  }
+
+  public CompressionType getCompression() {
+    return compression;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (o == null || getClass() != o.getClass()) {
+      return false;
+    }
+    LevelDBTableOptions that = (LevelDBTableOptions) o;
+    return blockSize == that.blockSize && cacheSize == that.cacheSize
+      && writeBufferSize == that.writeBufferSize && compression == that.compression;
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hashCode(blockSize, cacheSize, writeBufferSize, compression);
+  }
+
+  @Override
+  public String toString() {
+    return Objects.toStringHelper(this)
+      .add("blockSize", blockSize)
+      .add("cacheSize", cacheSize)
+      .add("writeBufferSize", writeBufferSize)
+      .add("compression", compression)
+      .toString();
+  }
+}
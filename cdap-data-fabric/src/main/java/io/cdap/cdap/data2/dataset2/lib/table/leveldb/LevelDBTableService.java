@@ -23,6 +23,7 @@ import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Maps;
 import com.google.common.io.Closeables;
+import com.google.common.util.concurrent.Striped;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
 import io.cdap.cdap.common.conf.CConfiguration;
@@ -41,8 +42,10 @@ import java.io.UnsupportedEncodingException;
 import java.net.URLDecoder;
 import java.net.URLEncoder;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Map;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.Lock;
 
 import static org.iq80.leveldb.impl.Iq80DBFactory.factory;
 
@@ -54,13 +57,15 @@ public class LevelDBTableService implements AutoCloseable {
 
   private static final Logger LOG = LoggerFactory.getLogger(LevelDBTableService.class);
 
-  private int blockSize;
-  private long cacheSize;
+  private LevelDBTableOptions defaultOptions;
   private String basePath;
   private WriteOptions writeOptions;
   private boolean isClosed;
+  private int rowLockStripes = Constants.DEFAULT_DATA_LEVELDB_ROW_LOCK_STRIPES;
 
   private final ConcurrentMap<String, DB> tables = Maps.newConcurrentMap();
+  private final ConcurrentMap<String, LevelDBTableOptions> tableOptions = Maps.newConcurrentMap();
+  private final ConcurrentMap<String, Striped<Lock>> rowLocks = Maps.newConcurrentMap();
 
   /**
    * To avoid database locking issues make sure that the single LevelDBTableService instance
@@ -86,10 +91,11 @@ public class LevelDBTableService implements AutoCloseable {
     basePath = config.get(Constants.CFG_DATA_LEVELDB_DIR);
     Preconditions.checkNotNull(basePath, "No base directory configured for LevelDB.");
 
-    blockSize = config.getInt(Constants.CFG_DATA_LEVELDB_BLOCKSIZE, Constants.DEFAULT_DATA_LEVELDB_BLOCKSIZE);
-    cacheSize = config.getLong(Constants.CFG_DATA_LEVELDB_CACHESIZE, Constants.DEFAULT_DATA_LEVELDB_CACHESIZE);
+    defaultOptions = LevelDBTableOptions.fromConfiguration(config);
     writeOptions = new WriteOptions().sync(
       config.getBoolean(Constants.CFG_DATA_LEVELDB_FSYNC, Constants.DEFAULT_DATA_LEVELDB_FSYNC));
+    rowLockStripes = config.getInt(Constants.CFG_DATA_LEVELDB_ROW_LOCK_STRIPES,
+                                   Constants.DEFAULT_DATA_LEVELDB_ROW_LOCK_STRIPES);
   }
 
   /**
@@ -100,6 +106,7 @@ public class LevelDBTableService implements AutoCloseable {
       Closeables.closeQuietly(entries);
     }
     tables.clear();
+    tableOptions.clear();
   }
 
   private void ensureOpen() {
@@ -144,7 +151,7 @@ public class LevelDBTableService implements AutoCloseable {
       String tableName = getTableName(dir.getName());
       // NOTE: we are using recursion to traverse file tree as we know that leveldb table fs tree is couple levels deep.
       long size = getSize(dir);
-      builder.put(LevelDBNameConverter.from(tableName), new TableStats(size));
+      builder.put(LevelDBNameConverter.from(tableName), new TableStats(size, getTableFileCount(dir)));
     }
     return builder.build();
   }
@@ -167,6 +174,15 @@ public class LevelDBTableService implements AutoCloseable {
     return size;
   }
 
+  /**
+   * Returns the number of table files of a LevelDB table. Since a read may need to look into every level, the more
+   * table files there are, the higher the read amplification is, until they get compacted.
+   */
+  private static int getTableFileCount(File dir) {
+    File[] files = dir.listFiles((d, name) -> name.endsWith(".sst"));
+    return files == null ? 0 : files.length;
+  }
+
   public WriteOptions getWriteOptions() {
     return writeOptions;
   }
@@ -187,18 +203,37 @@ public class LevelDBTableService implements AutoCloseable {
   }
 
   public void ensureTableExists(String tableName) throws IOException {
+    ensureTableExists(tableName, Collections.<String, String>emptyMap());
+  }
+
+  /**
+   * Creates the table if it does not exist yet.
+   *
+   * @param tableName name of the table
+   * @param properties dataset properties that override the default {@link LevelDBTableOptions} of the table.
+   *                   They are only used if the table is created by this call.
+   */
+  public void ensureTableExists(String tableName, Map<String, String> properties) throws IOException {
     ensureOpen();
     DB db = tables.get(tableName);
     if (db == null) {
       synchronized (tables) {
         db = tables.get(tableName);
         if (db == null) {
-          createTable(tableName);
+          createTable(tableName, properties);
         }
       }
     }
   }
 
+  /**
+   * Returns the {@link LevelDBTableOptions} the given table was opened with.
+   */
+  public LevelDBTableOptions getTableOptions(String tableName) throws IOException {
+    getTable(tableName);
+    return tableOptions.get(tableName);
+  }
+
   private DB openTable(String tableName) throws IOException {
     String dbPath = getDBPath(basePath, tableName);
 
@@ -206,8 +241,6 @@ public class LevelDBTableService implements AutoCloseable {
     options.createIfMissing(false);
     options.errorIfExists(false);
     options.comparator(new KeyValueDBComparator());
-    options.blockSize(blockSize);
-    options.cacheSize(cacheSize);
 
     // unfortunately, with the java version of leveldb, with createIfMissing set to false, factory.open will
     // see that there is no table and throw an exception, but it wont clean up after itself and will leave a
@@ -217,31 +250,51 @@ public class LevelDBTableService implements AutoCloseable {
     if (!dbDir.exists()) {
       throw new IOException("Database " + dbPath + " does not exist and the create if missing option is disabled");
     }
-    DB db = factory.open(dbDir, options);
+    LevelDBTableOptions levelDBOptions = LevelDBTableOptions.read(dbDir, defaultOptions);
+    DB db = factory.open(dbDir, levelDBOptions.applyTo(options));
+    this.tableOptions.put(tableName, levelDBOptions);
     tables.put(tableName, db);
     return db;
   }
 
-  private void createTable(String name) throws IOException {
+  private void createTable(String name, Map<String, String> properties) throws IOException {
     String dbPath = getDBPath(basePath, name);
 
     Options options = new Options();
     options.createIfMissing(true);
     options.errorIfExists(false);
     options.comparator(new KeyValueDBComparator());
-    options.blockSize(blockSize);
-    options.cacheSize(cacheSize);
 
-    DB db = factory.open(new File(dbPath), options);
+    // If the table already exists on disk, it keeps the options overridden when it was created
+    File dbDir = new File(dbPath);
+    boolean exists = dbDir.exists();
+    LevelDBTableOptions levelDBOptions = exists
+      ? LevelDBTableOptions.read(dbDir, defaultOptions)
+      : defaultOptions.override(properties);
+    DB db = factory.open(dbDir, levelDBOptions.applyTo(options));
+    if (!exists) {
+      LevelDBTableOptions.write(dbDir, properties);
+    }
+    this.tableOptions.put(name, levelDBOptions);
     tables.put(name, db);
   }
 
+  /**
+   * Returns the striped row locks of the given table. The same instance is returned for the same table name, so that
+   * read-modify-write operations are serialized across all {@link LevelDBTableCore} instances of that table.
+   */
+  Striped<Lock> getRowLocks(String tableName) {
+    return rowLocks.computeIfAbsent(tableName, name -> Striped.lock(rowLockStripes));
+  }
+
   public void dropTable(String name) throws IOException {
     ensureOpen();
     DB db = tables.remove(name);
     if (db != null) {
       db.close();
     }
+    tableOptions.remove(name);
+    rowLocks.remove(name);
     String dbPath = getDBPath(basePath, name);
     factory.destroy(new File(dbPath), new Options());
   }
@@ -289,13 +342,22 @@ public class LevelDBTableService implements AutoCloseable {
    */
   public static final class TableStats {
     private final long diskSizeBytes;
+    private final int tableFileCount;
 
-    public TableStats(long sizeInBytes) {
+    public TableStats(long sizeInBytes, int tableFileCount) {
       this.diskSizeBytes = sizeInBytes;
+      this.tableFileCount = tableFileCount;
     }
 
     public long getDiskSizeBytes() {
       return diskSizeBytes;
     }
+
+    /**
+     * Returns the number of LevelDB table (.sst) files, which bounds the number of files a read may need to look into.
+     */
+    public int getTableFileCount() {
+      return tableFileCount;
+    }
   }
 }
@@ -0,0 +1,211 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.cdap.data2.dataset2.lib.timeseries;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.Iterators;
+import com.google.common.collect.PeekingIterator;
+import io.cdap.cdap.api.dataset.lib.cube.TimeValue;
+import io.cdap.cdap.common.io.BinaryDecoder;
+import io.cdap.cdap.common.io.BinaryEncoder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Encodes the time values of a fact row into a single compact cell.
+ *
+ * Format:
+ * <pre>
+ * {@code
+ *   <format version><covered index><number of values>
+ *   (<run length><delta of delta of the index><value xor previous value>)*
+ * }
+ * </pre>
+ * where the index of a value is its offset from the row timebase in resolution units, and the covered index is the
+ * highest index of the delta columns that were folded into the cell. All numbers are written as
+ * zig-zag variable length integers. A run of length {@code n} holds one value followed by {@code n - 1} values that
+ * have the same index delta and the same value as the previous one. Dense series with constant values are hence
+ * stored in a few bytes.
+ */
+final class CompactTimeValues {
+
+  private static final byte FORMAT_VERSION = 1;
+
+  private CompactTimeValues() {
+  }
+
+  /**
+   * Encodes the given time values, which must be sorted by strictly increasing timestamps.
+   *
+   * @param timeValues the time values to encode
+   * @param timeBase timebase of the row the time values belong to
+   * @param resolution resolution of the timestamps, in seconds
+   * @param coveredIndex highest index of the delta columns that the time values were read from
+   * @return the encoded bytes
+   */
+  static byte[] encode(List<TimeValue> timeValues, long timeBase, int resolution, int coveredIndex) {
+    int size = timeValues.size();
+    int[] runLengths = new int[size];
+    int[] deltaOfDeltas = new int[size];
+    long[] xors = new long[size];
+    int runs = 0;
+
+    int prevIndex = 0;
+    int prevDelta = 0;
+    long prevValue = 0;
+    for (TimeValue timeValue : timeValues) {
+      int index = (int) ((timeValue.getTimestamp() - timeBase) / resolution);
+      Preconditions.checkArgument(runs == 0 || index > prevIndex,
+                                  "Time values must be sorted by strictly increasing timestamps: %s", timeValues);
+      int delta = index - prevIndex;
+      int deltaOfDelta = delta - prevDelta;
+      long xor = timeValue.getValue() ^ prevValue;
+
+      if (runs > 0 && deltaOfDelta == 0 && xor == 0) {
+        runLengths[runs - 1]++;
+      } else {
+        runLengths[runs] = 1;
+        deltaOfDeltas[runs] = deltaOfDelta;
+        xors[runs] = xor;
+        runs++;
+      }
+
+      prevIndex = index;
+      prevDelta = delta;
+      prevValue = timeValue.getValue();
+    }
+
+    ByteArrayOutputStream os = new ByteArrayOutputStream(4 + runs * 3);
+    BinaryEncoder encoder = new BinaryEncoder(os);
+    try {
+      os.write(FORMAT_VERSION);
+      encoder.writeInt(coveredIndex);
+      encoder.writeInt(size);
+      for (int i = 0; i < runs; i++) {
+        encoder.writeInt(runLengths[i]);
+        encoder.writeInt(deltaOfDeltas[i]);
+        encoder.writeLong(xors[i]);
+      }
+    } catch (IOException e) {
+      // Cannot happen when writing to a byte array
+      throw new IllegalStateException(e);
+    }
+    return os.toByteArray();
+  }
+
+  /**
+   * Returns the highest index of the delta columns that were folded into the given bytes created by
+   * {@link #encode(List, long, int, int)}.
+   */
+  static int getCoveredIndex(byte[] encoded) {
+    try {
+      return createDecoder(encoded).readInt();
+    } catch (IOException e) {
+      throw new IllegalArgumentException("Corrupted compact time values", e);
+    }
+  }
+
+  /**
+   * Returns an {@link Iterator} that lazily decodes the given bytes created by
+   * {@link #encode(List, long, int, int)}.
+   *
+   * @param encoded the encoded bytes
+   * @param timeBase timebase of the row the time values belong to
+   * @param resolution resolution of the timestamps, in seconds
+   * @return an iterator of the decoded time values, in increasing timestamp order
+   */
+  static Iterator<TimeValue> decode(byte[] encoded, final long timeBase, final int resolution) {
+    final BinaryDecoder decoder = createDecoder(encoded);
+    final int size;
+    try {
+      // skip the covered index
+      decoder.readInt();
+      size = decoder.readInt();
+    } catch (IOException e) {
+      throw new IllegalArgumentException("Corrupted compact time values", e);
+    }
+
+    return new AbstractIterator<TimeValue>() {
+      private int remaining = size;
+      private int runRemaining;
+      private int index;
+      private int delta;
+      private long value;
+
+      @Override
+      protected TimeValue computeNext() {
+        if (remaining == 0) {
+          return endOfData();
+        }
+        if (runRemaining == 0) {
+          try {
+            runRemaining = decoder.readInt();
+            delta += decoder.readInt();
+            value ^= decoder.readLong();
+          } catch (IOException e) {
+            throw new IllegalArgumentException("Corrupted compact time values", e);
+          }
+        }
+        index += delta;
+        runRemaining--;
+        remaining--;
+        return new TimeValue(timeBase + (long) index * resolution, value);
+      }
+    };
+  }
+
+  private static BinaryDecoder createDecoder(byte[] encoded) {
+    Preconditions.checkArgument(encoded.length > 0 && encoded[0] == FORMAT_VERSION,
+                                "Unsupported compact time values format");
+    return new BinaryDecoder(new ByteArrayInputStream(encoded, 1, encoded.length - 1));
+  }
+
+  /**
+   * Merges the given {@link Iterator}s of time values sorted by timestamp into one sorted {@link Iterator}.
+   * The values of the same timestamp are summed.
+   */
+  static Iterator<TimeValue> merge(Iterator<TimeValue> first, Iterator<TimeValue> second) {
+    final PeekingIterator<TimeValue> left = Iterators.peekingIterator(first);
+    final PeekingIterator<TimeValue> right = Iterators.peekingIterator(second);
+
+    return new AbstractIterator<TimeValue>() {
+      @Override
+      protected TimeValue computeNext() {
+        if (!left.hasNext()) {
+          return right.hasNext() ? right.next() : endOfData();
+        }
+        if (!right.hasNext()) {
+          return left.next();
+        }
+        long leftTs = left.peek().getTimestamp();
+        long rightTs = right.peek().getTimestamp();
+        if (leftTs < rightTs) {
+          return left.next();
+        }
+        if (rightTs < leftTs) {
+          return right.next();
+        }
+        return new TimeValue(leftTs, left.next().getValue() + right.next().getValue());
+      }
+    };
+  }
+}
@@ -101,6 +101,17 @@ public final class EntityTable implements Closeable {
     return entityCache.getUnchecked(new EntityName(type, name)) % maxId;
   }
 
+  /**
+   * Returns whether an id has been assigned to the given name. Unlike {@link #getId(String, String)},
+   * this method never assigns a new id.
+   */
+  public boolean hasId(String type, String name) {
+    if (entityCache.getIfPresent(new EntityName(type, name)) != null) {
+      return true;
+    }
+    return table.get(Bytes.toBytes(type + '.' + name), ID) != null;
+  }
+
   /**
    * Returns the entity name for the given id and type.
    * @param id The id to lookup
@@ -17,15 +17,20 @@
 package io.cdap.cdap.data2.dataset2.lib.timeseries;
 
 import com.google.common.base.Preconditions;
+import com.google.common.collect.Iterators;
 import com.google.common.collect.Lists;
+import com.google.common.collect.PeekingIterator;
 import io.cdap.cdap.api.common.Bytes;
 import io.cdap.cdap.api.dataset.lib.cube.DimensionValue;
+import io.cdap.cdap.api.dataset.lib.cube.TimeValue;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import javax.annotation.Nullable;
 
 /**
@@ -35,6 +40,11 @@ public class FactCodec {
   private static final Logger LOG = LoggerFactory.getLogger(FactCodec.class);
   // current version
   private static final byte[] VERSION = new byte[] {0};
+  // column of the cell that holds the compacted values of a row. Being shorter than the two bytes delta columns,
+  // it sorts before all of them.
+  private static final byte[] COMPACT_COLUMN = new byte[] {0};
+  // column of the cell that holds the end timestamp of the last rollup that was added to a row
+  private static final byte[] ROLLUP_COLUMN = new byte[] {(byte) 0xff};
 
   // encoding types
   private static final String TYPE_MEASURE_NAME = "measureName";
@@ -264,14 +274,147 @@ public class FactCodec {
   }
 
   public long getTimestamp(byte[] rowKey, byte[] column) {
-    // timebase is encoded as int after the encoded agg group
-    int timebase = Bytes.toInt(rowKey, VERSION.length + entityTable.getIdSize());
+    int timebase = getRowTimeBase(rowKey);
     // time leftover is encoded as 2 byte column name
     int leftover = Bytes.toShort(column) * resolution;
 
     return timebase + leftover;
   }
 
+  /**
+   * Returns the timebase of the given row key.
+   */
+  public int getRowTimeBase(byte[] rowKey) {
+    // timebase is encoded as int after the encoded agg group
+    return Bytes.toInt(rowKey, VERSION.length + entityTable.getIdSize());
+  }
+
+  /**
+   * Returns the timebase of the row that stores the facts of the given timestamp.
+   */
+  public int getRowTimeBase(long ts) {
+    return getTimeBase(roundToResolution(ts));
+  }
+
+  /**
+   * Builds a row key that is the prefix of the rows of the same aggregation group as the given row key that
+   * store the facts of the given timestamp.
+   * @param rowKey row key to take the aggregation group from
+   * @param ts timestamp
+   * @return row key prefix
+   */
+  public byte[] createTimeBaseRowKey(byte[] rowKey, long ts) {
+    byte[] result = Arrays.copyOf(rowKey, VERSION.length + entityTable.getIdSize() + Bytes.SIZEOF_INT);
+    Bytes.putInt(result, VERSION.length + entityTable.getIdSize(), getRowTimeBase(ts));
+    return result;
+  }
+
+  /**
+   * Returns the row key prefix shared by all rows of the same aggregation group as the given row key.
+   */
+  public byte[] getAggGroupPrefix(byte[] rowKey) {
+    return Arrays.copyOf(rowKey, VERSION.length + entityTable.getIdSize());
+  }
+
+  /**
+   * Returns the column of the cell that holds the compacted time values of a row.
+   */
+  public byte[] getCompactColumn() {
+    return COMPACT_COLUMN;
+  }
+
+  /**
+   * Returns whether the given column is the column of the compacted time values of a row.
+   */
+  public boolean isCompactColumn(byte[] column) {
+    return Bytes.equals(COMPACT_COLUMN, column);
+  }
+
+  /**
+   * Returns the column of the cell that holds the end timestamp of the last rollup added to a row.
+   */
+  public byte[] getRollupColumn() {
+    return ROLLUP_COLUMN;
+  }
+
+  /**
+   * Returns whether the given column is the column of the end timestamp of the last rollup added to a row.
+   */
+  public boolean isRollupColumn(byte[] column) {
+    return Bytes.equals(ROLLUP_COLUMN, column);
+  }
+
+  /**
+   * Returns the index of the given delta column, which is the offset from the row timebase in resolution units.
+   * Delta columns sort in the order of their indexes.
+   */
+  public int getColumnIndex(byte[] column) {
+    return Bytes.toShort(column) & 0xffff;
+  }
+
+  /**
+   * Encodes the given time values of a row into the value of the compact column.
+   * @param rowKey row key
+   * @param timeValues time values, sorted by strictly increasing timestamps
+   * @param coveredIndex highest index of the delta columns that the time values were read from. Delta columns up to
+   *                     this index are ignored when reading the row, as their values are included in the compact column
+   * @return encoded value
+   */
+  public byte[] createCompactValue(byte[] rowKey, List<TimeValue> timeValues, int coveredIndex) {
+    return CompactTimeValues.encode(timeValues, getRowTimeBase(rowKey), resolution, coveredIndex);
+  }
+
+  /**
+   * Returns the highest index of the delta columns whose values are included in the given value of the compact
+   * column of a row.
+   */
+  public int getCoveredColumnIndex(byte[] compactValue) {
+    return CompactTimeValues.getCoveredIndex(compactValue);
+  }
+
+  /**
+   * Returns the time values stored in the given columns of a row, in increasing timestamp order. The values of the
+   * compact column are decoded lazily and merged with the values of the delta columns that it doesn't cover.
+   * @param rowKey row key
+   * @param columns columns of the row, sorted by column
+   * @return {@link Iterator} of {@link TimeValue}s
+   */
+  public Iterator<TimeValue> getTimeValues(byte[] rowKey, Map<byte[], byte[]> columns) {
+    PeekingIterator<Map.Entry<byte[], byte[]>> columnIterator = Iterators.peekingIterator(
+      Iterators.filter(columns.entrySet().iterator(), column -> !isRollupColumn(column.getKey())));
+    // the compact column always sorts first
+    byte[] compactValue = null;
+    if (columnIterator.hasNext() && isCompactColumn(columnIterator.peek().getKey())) {
+      compactValue = columnIterator.next().getValue();
+    }
+    if (compactValue != null) {
+      // Delta columns that were compacted may remain if the compaction failed before deleting them.
+      // They are skipped to not count their values twice.
+      int coveredIndex = getCoveredColumnIndex(compactValue);
+      while (columnIterator.hasNext() && getColumnIndex(columnIterator.peek().getKey()) <= coveredIndex) {
+        columnIterator.next();
+      }
+    }
+    Iterator<TimeValue> values = Iterators.transform(
+      columnIterator, columnValue -> new TimeValue(getTimestamp(rowKey, columnValue.getKey()),
+                                                   Bytes.toLong(columnValue.getValue())));
+    if (compactValue == null) {
+      return values;
+    }
+    return CompactTimeValues.merge(getCompactTimeValues(rowKey, compactValue), values);
+  }
+
+  /**
+   * Returns the time values encoded in the given value of the compact column of a row, decoded lazily in
+   * increasing timestamp order.
+   * @param rowKey row key
+   * @param compactValue value of the compact column
+   * @return {@link Iterator} of {@link TimeValue}s
+   */
+  public Iterator<TimeValue> getCompactTimeValues(byte[] rowKey, byte[] compactValue) {
+    return CompactTimeValues.decode(compactValue, getRowTimeBase(rowKey), resolution);
+  }
+
   static byte[][] getSplits(int aggGroupsCount) {
     // Row key format:
     // <version><encoded agg group><time base>...
@@ -18,8 +18,8 @@ package io.cdap.cdap.data2.dataset2.lib.timeseries;
 
 import com.google.common.collect.AbstractIterator;
 import com.google.common.collect.ImmutableSet;
-import com.google.common.collect.Lists;
-import io.cdap.cdap.api.common.Bytes;
+import com.google.common.collect.Iterators;
+import com.google.common.collect.PeekingIterator;
 import io.cdap.cdap.api.dataset.lib.cube.DimensionValue;
 import io.cdap.cdap.api.dataset.lib.cube.TimeValue;
 import io.cdap.cdap.api.dataset.table.Row;
@@ -106,31 +106,15 @@ public final class FactScanner implements Iterator<FactScanResult> {
           //       list of dimension names as we *always* know it (it is given) at the time of scanning
           List<DimensionValue> dimensionValues = codec.getDimensionValues(rowKey);
 
-          boolean exhausted = false;
-          List<TimeValue> timeValues = Lists.newLinkedList();
-          // todo: entry set is ordered by ts?
-          for (Map.Entry<byte[], byte[]> columnValue : rowResult.getColumns().entrySet()) {
-            long ts = codec.getTimestamp(rowKey, columnValue.getKey());
-            if (ts < startTs) {
-              continue;
-            }
-
-            if (ts > endTs) {
-              exhausted = true;
-              break;
-            }
-
-            // todo: move Bytes.toLong into codec?
-            TimeValue timeValue = new TimeValue(ts, Bytes.toLong(columnValue.getValue()));
-            timeValues.add(timeValue);
-          }
-
-          if (timeValues.isEmpty() && exhausted) {
+          // The time values are decoded lazily, only up to the endTs
+          PeekingIterator<TimeValue> timeValues = getTimeValues(rowKey, rowResult.getColumns());
+          if (timeValues.hasNext() && timeValues.peek().getTimestamp() > endTs) {
             break;
           }
 
           // todo: can return empty list, if all data is < startTs or > endTs
-          return new FactScanResult(measureName, dimensionValues, timeValues);
+          return new FactScanResult(measureName, dimensionValues, new TimeValues(rowKey, rowResult.getColumns(),
+                                                                                 timeValues));
         }
 
         scanner.close();
@@ -138,4 +122,47 @@ public final class FactScanner implements Iterator<FactScanResult> {
       }
     };
   }
+
+  /**
+   * Returns the time values of a row that are not before the startTs.
+   */
+  private PeekingIterator<TimeValue> getTimeValues(byte[] rowKey, Map<byte[], byte[]> columns) {
+    PeekingIterator<TimeValue> timeValues = Iterators.peekingIterator(codec.getTimeValues(rowKey, columns));
+    while (timeValues.hasNext() && timeValues.peek().getTimestamp() < startTs) {
+      timeValues.next();
+    }
+    return timeValues;
+  }
+
+  /**
+   * The time values of a row in the time range of the scan. The first iteration reuses the iterator that was used
+   * to check the time range of the row, while later iterations decode the row again.
+   */
+  private final class TimeValues implements Iterable<TimeValue> {
+    private final byte[] rowKey;
+    private final Map<byte[], byte[]> columns;
+    private PeekingIterator<TimeValue> firstIterator;
+
+    private TimeValues(byte[] rowKey, Map<byte[], byte[]> columns, PeekingIterator<TimeValue> firstIterator) {
+      this.rowKey = rowKey;
+      this.columns = columns;
+      this.firstIterator = firstIterator;
+    }
+
+    @Override
+    public Iterator<TimeValue> iterator() {
+      final PeekingIterator<TimeValue> timeValues = firstIterator == null ? getTimeValues(rowKey, columns)
+                                                                          : firstIterator;
+      firstIterator = null;
+      return new AbstractIterator<TimeValue>() {
+        @Override
+        protected TimeValue computeNext() {
+          if (!timeValues.hasNext() || timeValues.peek().getTimestamp() > endTs) {
+            return endOfData();
+          }
+          return timeValues.next();
+        }
+      };
+    }
+  }
 }
@@ -27,6 +27,7 @@ import io.cdap.cdap.api.common.Bytes;
 import io.cdap.cdap.api.dataset.lib.cube.DimensionValue;
 import io.cdap.cdap.api.dataset.lib.cube.MeasureType;
 import io.cdap.cdap.api.dataset.lib.cube.Measurement;
+import io.cdap.cdap.api.dataset.lib.cube.TimeValue;
 import io.cdap.cdap.api.dataset.table.Row;
 import io.cdap.cdap.api.dataset.table.Scanner;
 import io.cdap.cdap.api.metrics.MetricsCollector;
@@ -44,6 +45,7 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.NavigableMap;
@@ -61,6 +63,8 @@ import javax.annotation.Nullable;
 public final class FactTable implements Closeable {
   private static final Logger LOG = LoggerFactory.getLogger(FactTable.class);
   private static final int MAX_ROLL_TIME = 0xfffe;
+  // entity type for recording names of gauge measures
+  private static final String TYPE_GAUGE_MEASURE = "gaugeMeasure";
 
   // hard limits on some ops to stay on safe side
   private static final int MAX_RECORDS_TO_SCAN_DURING_SEARCH = 10 * 1000 * 1000;
@@ -175,6 +179,77 @@ public final class FactTable implements Closeable {
     }
   }
 
+  /**
+   * Adds the facts computed by a rollup of a time range that ends at the given timestamp, where each fact holds the
+   * values of one time bucket of the finer resolution. Counters are added to the existing values and gauges are
+   * overwritten by the value of the latest time bucket. The end of the rollup is written to each row in the same put
+   * as its values, and facts before the end already stored in a row are skipped, hence repeating a rollup that
+   * failed part way doesn't add any value twice. The rows must not be compacted or written concurrently.
+   *
+   * @param facts facts of the finer resolution
+   * @param rollupEnd end of the time range of the rollup in seconds, exclusive
+   */
+  public void addRollup(List<Fact> facts, long rollupEnd) {
+    List<Fact> sortedFacts = new ArrayList<>(facts);
+    // Sort by timestamp so that the latest gauge value is written last
+    sortedFacts.sort(Comparator.comparingLong(Fact::getTimestamp));
+
+    NavigableMap<byte[], NavigableMap<byte[], Long>> updates = new TreeMap<>(Bytes.BYTES_COMPARATOR);
+    Map<byte[], Long> rowRollupEnds = new TreeMap<>(Bytes.BYTES_COMPARATOR);
+    for (Fact fact : sortedFacts) {
+      for (Measurement measurement : fact.getMeasurements()) {
+        byte[] rowKey = codec.createRowKey(fact.getDimensionValues(), measurement.getName(), fact.getTimestamp());
+        if (fact.getTimestamp() < rowRollupEnds.computeIfAbsent(rowKey, this::getRollupEnd)) {
+          // Already added by a previous rollup
+          continue;
+        }
+        byte[] column = codec.createColumn(fact.getTimestamp());
+        NavigableMap<byte[], Long> row = updates.computeIfAbsent(rowKey, k -> new TreeMap<>(Bytes.BYTES_COMPARATOR));
+        if (MeasureType.COUNTER == measurement.getType()) {
+          Long value = row.get(column);
+          if (value == null) {
+            byte[] existing = timeSeriesTable.get(rowKey, column);
+            value = existing == null ? 0L : Bytes.toLong(existing);
+          }
+          row.put(column, value + measurement.getValue());
+        } else {
+          row.put(column, measurement.getValue());
+        }
+      }
+    }
+
+    for (NavigableMap<byte[], Long> row : updates.values()) {
+      row.put(codec.getRollupColumn(), rollupEnd);
+    }
+    timeSeriesTable.put(updates);
+    if (metrics != null) {
+      metrics.increment(putCountMetric, updates.size());
+    }
+  }
+
+  /**
+   * Returns the end timestamp of the last rollup added to the given row, or {@link Long#MIN_VALUE} if there is none.
+   */
+  private long getRollupEnd(byte[] rowKey) {
+    byte[] value = timeSeriesTable.get(rowKey, codec.getRollupColumn());
+    return value == null ? Long.MIN_VALUE : Bytes.toLong(value);
+  }
+
+  /**
+   * Records the given measure as a gauge, so that {@link #isGauge(String)} returns {@code true} for it.
+   * The record is persisted in the entity table, hence it is shared by all fact tables using the same entity table.
+   */
+  public void registerGauge(String measureName) {
+    entityTable.getId(TYPE_GAUGE_MEASURE, measureName);
+  }
+
+  /**
+   * Returns whether the given measure was recorded as a gauge through {@link #registerGauge(String)}.
+   */
+  public boolean isGauge(String measureName) {
+    return entityTable.hasId(TYPE_GAUGE_MEASURE, measureName);
+  }
+
   private class MeasureNameComparator implements Comparator<String> {
     private final Map<String, Long> measureNameToEntityIdMap;
 
@@ -251,7 +326,29 @@ public final class FactTable implements Closeable {
         List<byte[]> columns = Lists.newArrayList();
 
         boolean exhausted = false;
+        // Delta columns up to this index are covered by a compact column that is deleted
+        int deletedCoveredIndex = -1;
+        boolean hasRollupColumn = false;
         for (byte[] column : row.getColumns().keySet()) {
+          if (codec.isRollupColumn(column)) {
+            hasRollupColumn = true;
+            continue;
+          }
+          if (codec.isCompactColumn(column)) {
+            byte[] compactValue = row.getColumns().get(column);
+            List<TimeValue> remaining = new ArrayList<>();
+            exhausted = deleteCompacted(row.getRow(), compactValue, scan.getStartTs(), scan.getEndTs(), remaining);
+            if (remaining.isEmpty()) {
+              // All compacted values are deleted, together with the delta columns that are covered by them
+              columns.add(column);
+              deletedCoveredIndex = codec.getCoveredColumnIndex(compactValue);
+            }
+            continue;
+          }
+          if (codec.getColumnIndex(column) <= deletedCoveredIndex) {
+            columns.add(column);
+            continue;
+          }
           long ts = codec.getTimestamp(row.getRow(), column);
           if (ts < scan.getStartTs()) {
             continue;
@@ -264,6 +361,10 @@ public final class FactTable implements Closeable {
 
           columns.add(column);
         }
+        // The end of the last rollup is only kept as long as the row has values
+        if (hasRollupColumn && columns.size() == row.getColumns().size() - 1) {
+          columns.add(codec.getRollupColumn());
+        }
 
         // todo: do deletes efficiently, in batches, not one-by-one
         timeSeriesTable.delete(row.getRow(), columns.toArray(new byte[columns.size()][]));
@@ -275,6 +376,130 @@ public final class FactTable implements Closeable {
     }
   }
 
+  /**
+   * Deletes the compacted values of the given row that are in the given time range. The compact column is rewritten
+   * if some of its values remain, otherwise it is left for the caller to delete.
+   * @param remaining list to add the compacted values that are not deleted to
+   * @return whether the row has compacted values after the time range
+   */
+  private boolean deleteCompacted(byte[] rowKey, byte[] compactValue, long startTs, long endTs,
+                                  List<TimeValue> remaining) {
+    boolean deleted = false;
+    boolean exhausted = false;
+    Iterator<TimeValue> timeValues = codec.getCompactTimeValues(rowKey, compactValue);
+    while (timeValues.hasNext()) {
+      TimeValue timeValue = timeValues.next();
+      if (timeValue.getTimestamp() < startTs || timeValue.getTimestamp() > endTs) {
+        exhausted |= timeValue.getTimestamp() > endTs;
+        remaining.add(timeValue);
+      } else {
+        deleted = true;
+      }
+    }
+
+    if (deleted && !remaining.isEmpty()) {
+      NavigableMap<byte[], NavigableMap<byte[], byte[]>> updates = new TreeMap<>(Bytes.BYTES_COMPARATOR);
+      updates.computeIfAbsent(rowKey, k -> new TreeMap<>(Bytes.BYTES_COMPARATOR))
+        .put(codec.getCompactColumn(),
+             codec.createCompactValue(rowKey, remaining, codec.getCoveredColumnIndex(compactValue)));
+      timeSeriesTable.putBytes(updates);
+    }
+    return exhausted;
+  }
+
+  /**
+   * Rewrites the rows that only store facts of the given time range into the compact row format, in which all the
+   * values of a row are stored in a single cell, with delta-of-delta encoded timestamps and run-length and xor
+   * encoded values. Compacted rows are read and deleted transparently by this table.
+   *
+   * Rows are compacted by writing the compact cell before deleting the original columns. The compact cell records
+   * the columns it covers, which are ignored when reading the row, so that compacting a row again after a failure
+   * doesn't count its values twice. Values written after a row is compacted are only read if they are in a column
+   * after the covered ones. Hence this method should only be called for time ranges that no longer receive writes.
+   *
+   * @param startTs start of the time range, in seconds
+   * @param endTs end of the time range, in seconds; the rows that store facts of this timestamp are not compacted
+   * @return the number of rows compacted
+   */
+  public int compact(long startTs, long endTs) {
+    if (resolution == Integer.MAX_VALUE) {
+      // the total resolution only has a single column per row
+      return 0;
+    }
+
+    int startTimeBase = codec.getRowTimeBase(startTs);
+    int endTimeBase = codec.getRowTimeBase(endTs);
+    int compacted = 0;
+
+    // Rows are sorted by agg group and then by timebase. For every agg group, we jump to the first row of the time
+    // range and then to the next agg group once we are past the time range.
+    Scanner scanner = timeSeriesTable.scan(null, null, null);
+    try {
+      Row row;
+      while ((row = scanner.next()) != null) {
+        byte[] rowKey = row.getRow();
+        int timeBase = codec.getRowTimeBase(rowKey);
+        byte[] nextRow;
+        if (timeBase < startTimeBase) {
+          nextRow = codec.createTimeBaseRowKey(rowKey, startTs);
+        } else if (timeBase >= endTimeBase) {
+          nextRow = Bytes.stopKeyForPrefix(codec.getAggGroupPrefix(rowKey));
+          if (nextRow == null) {
+            break;
+          }
+        } else {
+          if (compactRow(row)) {
+            compacted++;
+          }
+          continue;
+        }
+        scanner.close();
+        scanner = null;
+        scanner = timeSeriesTable.scan(nextRow, null, null);
+      }
+    } finally {
+      if (scanner != null) {
+        scanner.close();
+      }
+    }
+
+    LOG.trace("Compacted {} rows of fact table {} from {} to {}", compacted, timeSeriesTable, startTs, endTs);
+    return compacted;
+  }
+
+  /**
+   * Rewrites the given row into the compact row format.
+   * @return whether the row was rewritten
+   */
+  private boolean compactRow(Row row) {
+    Map<byte[], byte[]> columns = row.getColumns();
+    List<byte[]> deltaColumns = new ArrayList<>();
+    int coveredIndex = -1;
+    for (Map.Entry<byte[], byte[]> column : columns.entrySet()) {
+      if (codec.isCompactColumn(column.getKey())) {
+        coveredIndex = codec.getCoveredColumnIndex(column.getValue());
+      } else if (!codec.isRollupColumn(column.getKey())) {
+        deltaColumns.add(column.getKey());
+      }
+    }
+    if (deltaColumns.isEmpty()) {
+      return false;
+    }
+    for (byte[] column : deltaColumns) {
+      coveredIndex = Math.max(coveredIndex, codec.getColumnIndex(column));
+    }
+
+    // The new compact cell covers all delta columns of the row, hence if the delete of the delta columns below fails,
+    // they are ignored when reading the row and compacting it again
+    List<TimeValue> timeValues = Lists.newArrayList(codec.getTimeValues(row.getRow(), columns));
+    NavigableMap<byte[], NavigableMap<byte[], byte[]>> updates = new TreeMap<>(Bytes.BYTES_COMPARATOR);
+    updates.computeIfAbsent(row.getRow(), k -> new TreeMap<>(Bytes.BYTES_COMPARATOR))
+      .put(codec.getCompactColumn(), codec.createCompactValue(row.getRow(), timeValues, coveredIndex));
+    timeSeriesTable.putBytes(updates);
+    timeSeriesTable.delete(row.getRow(), deltaColumns.toArray(new byte[deltaColumns.size()][]));
+    return true;
+  }
+
   /**
    * Searches for first non-null valued dimensions in records that contain given list of dimensions and match given
    * dimension values in given time range. Returned dimension values are those that are not defined in given
@@ -111,6 +111,7 @@ public class LevelDBDatasetMetricsReporter extends AbstractScheduledService impl
                                                       Constants.Metrics.Tag.DATASET, spec.getName()));
           int sizeInMb = (int) (statEntry.getValue().getDiskSizeBytes() / BYTES_IN_MB);
           collector.gauge("dataset.size.mb", sizeInMb);
+          collector.gauge("dataset.store.files", statEntry.getValue().getTableFileCount());
           break;
         }
       }
@@ -21,6 +21,7 @@ import io.cdap.cdap.api.common.Bytes;
 import io.cdap.cdap.api.dataset.lib.AbstractCloseableIterator;
 import io.cdap.cdap.api.dataset.lib.CloseableIterator;
 import io.cdap.cdap.api.dataset.lib.IndexedTable;
+import io.cdap.cdap.api.dataset.table.Get;
 import io.cdap.cdap.api.dataset.table.Put;
 import io.cdap.cdap.api.dataset.table.Row;
 import io.cdap.cdap.api.dataset.table.Scanner;
@@ -37,8 +38,11 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Optional;
 import java.util.Set;
 import java.util.stream.Collectors;
@@ -67,6 +71,16 @@ public final class NoSqlStructuredTable implements StructuredTable {
     table.put(convertFieldsToBytes(fields));
   }
 
+  @Override
+  public void multiUpsert(Collection<? extends Collection<Field<?>>> multiFields) throws InvalidFieldException {
+    LOG.trace("Table {}: Write multiple fields {}", schema.getTableId(), multiFields);
+    // Writes are buffered by the transactional table and persisted together when the transaction is committed,
+    // hence there is no extra round trip for writing each row.
+    for (Collection<Field<?>> fields : multiFields) {
+      table.put(convertFieldsToBytes(fields));
+    }
+  }
+
   @Override
   public Optional<StructuredRow> read(Collection<Field<?>> keys) throws InvalidFieldException {
     LOG.trace("Table {}: Read with keys {}", schema.getTableId(), keys);
@@ -86,12 +100,41 @@ public final class NoSqlStructuredTable implements StructuredTable {
     return row.isEmpty() ? Optional.empty() : Optional.of(new NoSqlStructuredRow(row, schema));
   }
 
+  @Override
+  public Collection<StructuredRow> multiRead(Collection<? extends Collection<Field<?>>> multiKeys)
+    throws InvalidFieldException {
+    LOG.trace("Table {}: Read with multiple keys {}", schema.getTableId(), multiKeys);
+    List<Get> gets = new ArrayList<>(multiKeys.size());
+    for (Collection<Field<?>> keys : multiKeys) {
+      gets.add(new Get(convertKeyToBytes(keys, false)));
+    }
+    List<StructuredRow> result = new ArrayList<>(gets.size());
+    for (Row row : table.get(gets)) {
+      if (!row.isEmpty()) {
+        result.add(new NoSqlStructuredRow(row, schema));
+      }
+    }
+    return result;
+  }
+
   @Override
   public CloseableIterator<StructuredRow> scan(Range keyRange, int limit) throws InvalidFieldException {
     LOG.trace("Table {}: Scan range {} with limit {}", schema.getTableId(), keyRange, limit);
     return new LimitIterator(new ScannerIterator(getScanner(keyRange), schema), limit);
   }
 
+  @Override
+  public CloseableIterator<StructuredRow> scan(Collection<Range> keyRanges, int limit) throws InvalidFieldException {
+    LOG.trace("Table {}: Scan ranges {} with limit {}", schema.getTableId(), keyRanges, limit);
+    // Scan the ranges in the order of their start keys, so that rows are returned in the key order
+    List<byte[][]> scanKeys = new ArrayList<>(keyRanges.size());
+    for (Range keyRange : keyRanges) {
+      scanKeys.add(getScanKeys(keyRange));
+    }
+    scanKeys.sort((keys1, keys2) -> Bytes.compareTo(keys1[0], keys2[0]));
+    return new MultiRangeScannerIterator(scanKeys, limit);
+  }
+
   @Override
   public CloseableIterator<StructuredRow> scan(Field<?> index) throws InvalidFieldException {
     LOG.trace("Table {}: Scan index {}", schema.getTableId(), index);
@@ -152,6 +195,15 @@ public final class NoSqlStructuredTable implements StructuredTable {
     table.delete(convertKeyToBytes(keys, false));
   }
 
+  @Override
+  public void multiDelete(Collection<? extends Collection<Field<?>>> multiKeys) throws InvalidFieldException {
+    LOG.trace("Table {}: Delete with multiple keys {}", schema.getTableId(), multiKeys);
+    // Deletes are buffered by the transactional table and persisted together when the transaction is committed
+    for (Collection<Field<?>> keys : multiKeys) {
+      table.delete(convertKeyToBytes(keys, false));
+    }
+  }
+
   @Override
   public void deleteAll(Range keyRange) throws InvalidFieldException, IOException {
     LOG.trace("Table {}: DeleteAll with range {}", schema.getTableId(), keyRange);
@@ -297,6 +349,14 @@ public final class NoSqlStructuredTable implements StructuredTable {
   }
 
   private Scanner getScanner(Range keyRange) {
+    byte[][] scanKeys = getScanKeys(keyRange);
+    return table.scan(scanKeys[0], scanKeys[1]);
+  }
+
+  /**
+   * Returns the start key (inclusive) and the stop key (exclusive) for scanning the given range.
+   */
+  private byte[][] getScanKeys(Range keyRange) {
     // the method will always prepend the table name as prefix
     byte[] begin = convertKeyToBytes(keyRange.getBegin(), true);
     byte[] end = convertKeyToBytes(keyRange.getEnd(), true);
@@ -313,7 +373,7 @@ public final class NoSqlStructuredTable implements StructuredTable {
       end = Bytes.stopKeyForPrefix(end);
     }
 
-    return table.scan(begin, end);
+    return new byte[][] { begin, end };
   }
 
   /**
@@ -349,6 +409,64 @@ public final class NoSqlStructuredTable implements StructuredTable {
     }
   }
 
+  /**
+   * A {@link CloseableIterator} that scans multiple ranges one by one. The ranges must be sorted by the start keys.
+   * Rows that were already returned by a previous range are skipped, so that each row is only returned once and
+   * all rows are returned in the key order.
+   */
+  private final class MultiRangeScannerIterator extends AbstractCloseableIterator<StructuredRow> {
+    private final Iterator<byte[][]> scanKeys;
+    private final int limit;
+    private Scanner scanner;
+    private byte[] lastRowKey;
+    private int count;
+
+    MultiRangeScannerIterator(List<byte[][]> scanKeys, int limit) {
+      this.scanKeys = scanKeys.iterator();
+      this.limit = limit;
+    }
+
+    @Override
+    protected StructuredRow computeNext() {
+      if (count >= limit) {
+        return endOfData();
+      }
+      while (true) {
+        if (scanner == null) {
+          if (!scanKeys.hasNext()) {
+            return endOfData();
+          }
+          byte[][] keys = scanKeys.next();
+          byte[] begin = keys[0];
+          if (lastRowKey != null && Bytes.compareTo(begin, lastRowKey) <= 0) {
+            // Skip the part of the range that overlaps with the previous ranges
+            begin = Bytes.add(lastRowKey, new byte[] { 0 });
+          }
+          if (Bytes.compareTo(begin, keys[1]) >= 0) {
+            continue;
+          }
+          scanner = table.scan(begin, keys[1]);
+        }
+        Row row = scanner.next();
+        if (row == null) {
+          scanner.close();
+          scanner = null;
+          continue;
+        }
+        lastRowKey = row.getRow();
+        count++;
+        return new NoSqlStructuredRow(row, schema);
+      }
+    }
+
+    @Override
+    public void close() {
+      if (scanner != null) {
+        scanner.close();
+      }
+    }
+  }
+
   /**
    * Create a {@link CloseableIterator} from a {@link Scanner}.
    */
@@ -17,6 +17,7 @@
 package io.cdap.cdap.spi.data.sql;
 
 import com.google.common.base.Joiner;
+import com.google.common.collect.Iterables;
 import io.cdap.cdap.api.dataset.lib.AbstractCloseableIterator;
 import io.cdap.cdap.api.dataset.lib.CloseableIterator;
 import io.cdap.cdap.spi.data.InvalidFieldException;
@@ -57,15 +58,32 @@ import javax.annotation.Nullable;
  */
 public class PostgresSqlStructuredTable implements StructuredTable {
   private static final Logger LOG = LoggerFactory.getLogger(PostgresSqlStructuredTable.class);
+  // Maximum number of rows addressed by the primary keys in one statement, to keep the number of parameters
+  // in a statement well below the limit of the JDBC driver
+  private static final int MAX_KEYS_PER_STATEMENT = 1000;
+  // Default number of rows to fetch at a time when scanning
+  static final int DEFAULT_FETCH_SIZE = 1000;
 
   private final Connection connection;
   private final StructuredTableSchema tableSchema;
   private final FieldValidator fieldValidator;
+  private final int fetchSize;
 
   public PostgresSqlStructuredTable(Connection connection, StructuredTableSchema tableSchema) {
+    this(connection, tableSchema, DEFAULT_FETCH_SIZE);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param fetchSize number of rows to fetch at a time when scanning. Rows are fetched through a server side
+   *                  cursor if the connection is not in auto commit mode. {@code 0} to fetch all rows at once
+   */
+  public PostgresSqlStructuredTable(Connection connection, StructuredTableSchema tableSchema, int fetchSize) {
     this.connection = connection;
     this.tableSchema = tableSchema;
     this.fieldValidator = new FieldValidator(tableSchema);
+    this.fetchSize = fetchSize;
   }
 
   @Override
@@ -80,6 +98,33 @@ public class PostgresSqlStructuredTable implements StructuredTable {
     upsertInternal(fields);
   }
 
+  @Override
+  public void multiUpsert(Collection<? extends Collection<Field<?>>> multiFields)
+    throws InvalidFieldException, IOException {
+    LOG.trace("Table {}: Write multiple fields {}", tableSchema.getTableId(), multiFields);
+    // Consecutive rows with the same set of columns are written with one batch of the same statement
+    String batchQuery = null;
+    List<Collection<Field<?>>> batch = new ArrayList<>();
+    for (Collection<Field<?>> fields : multiFields) {
+      Set<String> fieldNames = fields.stream().map(Field::getName).collect(Collectors.toSet());
+      if (!fieldNames.containsAll(tableSchema.getPrimaryKeys())) {
+        throw new InvalidFieldException(tableSchema.getTableId(), fields,
+                                        String.format("Given fields %s do not contain all the " +
+                                                        "primary keys %s", fieldNames, tableSchema.getPrimaryKeys()));
+      }
+      String sqlQuery = getWriteSqlQuery(fields, null);
+      if (!sqlQuery.equals(batchQuery) && !batch.isEmpty()) {
+        upsertBatch(batchQuery, batch);
+        batch.clear();
+      }
+      batchQuery = sqlQuery;
+      batch.add(fields);
+    }
+    if (!batch.isEmpty()) {
+      upsertBatch(batchQuery, batch);
+    }
+  }
+
   @Override
   public Optional<StructuredRow> read(Collection<Field<?>> keys) throws InvalidFieldException, IOException {
     return readRow(keys, null);
@@ -98,16 +143,45 @@ public class PostgresSqlStructuredTable implements StructuredTable {
     return readRow(keys, columnFields);
   }
 
+  @Override
+  public Collection<StructuredRow> multiRead(Collection<? extends Collection<Field<?>>> multiKeys)
+    throws InvalidFieldException, IOException {
+    LOG.trace("Table {}: Read with multiple keys {}", tableSchema.getTableId(), multiKeys);
+    for (Collection<Field<?>> keys : multiKeys) {
+      fieldValidator.validatePrimaryKeys(keys, false);
+    }
+
+    List<StructuredRow> result = new ArrayList<>(multiKeys.size());
+    for (List<? extends Collection<Field<?>>> keysBatch : Iterables.partition(multiKeys, MAX_KEYS_PER_STATEMENT)) {
+      String readQuery = "SELECT * FROM " + tableSchema.getTableId().getName() + " WHERE "
+        + getInClause(keysBatch.size()) + getOrderByClause(tableSchema.getPrimaryKeys()) + ";";
+      try {
+        PreparedStatement statement = connection.prepareStatement(readQuery);
+        setKeys(statement, keysBatch);
+        LOG.trace("SQL statement: {}", statement);
+        // The iterator closes the statement
+        try (CloseableIterator<StructuredRow> iterator =
+               new ResultSetIterator(statement, statement.executeQuery(), tableSchema)) {
+          iterator.forEachRemaining(result::add);
+        }
+      } catch (SQLException e) {
+        throw new IOException(String.format("Failed to read from table %s with keys %s",
+                                            tableSchema.getTableId().getName(), keysBatch), e);
+      }
+    }
+    return result;
+  }
+
   @Override
   public CloseableIterator<StructuredRow> scan(Range keyRange, int limit) throws InvalidFieldException, IOException {
     LOG.trace("Table {}: Scan range {} with limit {}", tableSchema.getTableId(), keyRange, limit);
     fieldValidator.validatePrimaryKeys(keyRange.getBegin(), true);
     fieldValidator.validatePrimaryKeys(keyRange.getEnd(), true);
-    String scanQuery = getScanQuery(keyRange, limit);
+    String scanQuery = getScanQuery(keyRange);
 
     // We don't close the statement here because once it is closed, the result set is also closed.
     try {
-      PreparedStatement statement = connection.prepareStatement(scanQuery);
+      PreparedStatement statement = prepareScanStatement(scanQuery);
       int index = 1;
       if (keyRange.getBegin() != null) {
         for (Field<?> key : keyRange.getBegin()) {
@@ -121,6 +195,7 @@ public class PostgresSqlStructuredTable implements StructuredTable {
           index++;
         }
       }
+      statement.setInt(index, limit);
       LOG.trace("SQL statement: {}", statement);
       ResultSet resultSet = statement.executeQuery();
       return new ResultSetIterator(statement, resultSet, tableSchema);
@@ -130,6 +205,58 @@ public class PostgresSqlStructuredTable implements StructuredTable {
     }
   }
 
+  @Override
+  public CloseableIterator<StructuredRow> scan(Collection<Range> keyRanges,
+                                               int limit) throws InvalidFieldException, IOException {
+    LOG.trace("Table {}: Scan ranges {} with limit {}", tableSchema.getTableId(), keyRanges, limit);
+    if (keyRanges.isEmpty()) {
+      return new AbstractCloseableIterator<StructuredRow>() {
+        @Override
+        protected StructuredRow computeNext() {
+          return endOfData();
+        }
+
+        @Override
+        public void close() {
+          // no-op
+        }
+      };
+    }
+    for (Range keyRange : keyRanges) {
+      fieldValidator.validatePrimaryKeys(keyRange.getBegin(), true);
+      fieldValidator.validatePrimaryKeys(keyRange.getEnd(), true);
+    }
+    // If any of the range is unbounded, it is the same as scanning the whole table
+    Collection<Range> ranges = keyRanges;
+    if (keyRanges.stream().anyMatch(r -> r.getBegin().isEmpty() && r.getEnd().isEmpty())) {
+      ranges = Collections.emptyList();
+    }
+    String scanQuery = getScanQuery(ranges);
+
+    // We don't close the statement here because once it is closed, the result set is also closed.
+    try {
+      PreparedStatement statement = prepareScanStatement(scanQuery);
+      int index = 1;
+      for (Range keyRange : ranges) {
+        for (Field<?> key : keyRange.getBegin()) {
+          setField(statement, key, index);
+          index++;
+        }
+        for (Field<?> key : keyRange.getEnd()) {
+          setField(statement, key, index);
+          index++;
+        }
+      }
+      statement.setInt(index, limit);
+      LOG.trace("SQL statement: {}", statement);
+      ResultSet resultSet = statement.executeQuery();
+      return new ResultSetIterator(statement, resultSet, tableSchema);
+    } catch (SQLException e) {
+      throw new IOException(String.format("Failed to scan from table %s with ranges %s",
+                                          tableSchema.getTableId().getName(), keyRanges), e);
+    }
+  }
+
   @Override
   public CloseableIterator<StructuredRow> scan(Field<?> index) throws InvalidFieldException, IOException {
     LOG.trace("Table {}: Scan index {}", tableSchema.getTableId(), index);
@@ -141,7 +268,7 @@ public class PostgresSqlStructuredTable implements StructuredTable {
     String sql = getReadQuery(Collections.singleton(index), null, false);
     // We don't close the statement here because once it is closed, the result set is also closed.
     try {
-      PreparedStatement statement = connection.prepareStatement(sql);
+      PreparedStatement statement = prepareScanStatement(sql);
       setField(statement, index, 1);
       LOG.trace("SQL statement: {}", statement);
       ResultSet resultSet = statement.executeQuery();
@@ -266,6 +393,28 @@ public class PostgresSqlStructuredTable implements StructuredTable {
     }
   }
 
+  @Override
+  public void multiDelete(Collection<? extends Collection<Field<?>>> multiKeys)
+    throws InvalidFieldException, IOException {
+    LOG.trace("Table {}: Delete with multiple keys {}", tableSchema.getTableId(), multiKeys);
+    for (Collection<Field<?>> keys : multiKeys) {
+      fieldValidator.validatePrimaryKeys(keys, false);
+    }
+
+    for (List<? extends Collection<Field<?>>> keysBatch : Iterables.partition(multiKeys, MAX_KEYS_PER_STATEMENT)) {
+      String sqlQuery = String.format("DELETE FROM %s WHERE %s;", tableSchema.getTableId().getName(),
+                                      getInClause(keysBatch.size()));
+      try (PreparedStatement statement = connection.prepareStatement(sqlQuery)) {
+        setKeys(statement, keysBatch);
+        LOG.trace("SQL statement: {}", statement);
+        statement.executeUpdate();
+      } catch (SQLException e) {
+        throw new IOException(String.format("Failed to delete the rows from table %s with keys %s",
+                                            tableSchema.getTableId().getName(), keysBatch), e);
+      }
+    }
+  }
+
   @Override
   public void deleteAll(Range keyRange) throws InvalidFieldException, IOException {
     LOG.trace("Table {}: DeleteAll with range {}", tableSchema.getTableId(), keyRange);
@@ -319,6 +468,51 @@ public class PostgresSqlStructuredTable implements StructuredTable {
     }
   }
 
+  /**
+   * Prepares a statement for scanning, which fetches rows in batches of the fetch size instead of
+   * loading all rows into memory.
+   */
+  private PreparedStatement prepareScanStatement(String sql) throws SQLException {
+    PreparedStatement statement = connection.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY,
+                                                              ResultSet.CONCUR_READ_ONLY);
+    statement.setFetchSize(fetchSize);
+    return statement;
+  }
+
+  private void upsertBatch(String sqlQuery, Collection<Collection<Field<?>>> batch) throws IOException {
+    try (PreparedStatement statement = connection.prepareStatement(sqlQuery)) {
+      for (Collection<Field<?>> fields : batch) {
+        int index = 1;
+        for (Field<?> field : fields) {
+          setField(statement, field, index);
+          index++;
+        }
+        statement.addBatch();
+      }
+      LOG.trace("SQL statement: {} with batch size {}", statement, batch.size());
+      statement.executeBatch();
+    } catch (SQLException e) {
+      throw new IOException(String.format("Failed to write to table %s with fields %s",
+                                          tableSchema.getTableId().getName(), batch), e);
+    }
+  }
+
+  /**
+   * Sets the primary keys of multiple rows to the statement in the order of the primary keys in the schema,
+   * starting from the first parameter.
+   */
+  private void setKeys(PreparedStatement statement,
+                       Collection<? extends Collection<Field<?>>> multiKeys) throws SQLException {
+    int index = 1;
+    for (Collection<Field<?>> keys : multiKeys) {
+      Map<String, Field<?>> keyFields = keys.stream().collect(Collectors.toMap(Field::getName, f -> f));
+      for (String primaryKey : tableSchema.getPrimaryKeys()) {
+        setField(statement, keyFields.get(primaryKey), index);
+        index++;
+      }
+    }
+  }
+
   /**
    * Read a row from the table. Null columns mean read from all columns.
    *
@@ -463,13 +657,13 @@ public class PostgresSqlStructuredTable implements StructuredTable {
   /**
    * Get the scan query for the range given. For example, if the range provides key1, key2 as the begin and end to
    * scan, both rows are inclusive, it will generate the following query:
-   * SELECT * FROM simpletable WHERE (key1,key2)>=(?,?) AND (key1,key2)<=(?,?) LIMIT 10;
+   * SELECT * FROM simpletable WHERE (key1,key2)>=(?,?) AND (key1,key2)<=(?,?) ORDER BY key1, key2 LIMIT ?;
+   * The limit is a parameter of the query, so that the same statement can be reused for different limits.
    *
    * @param range the range to scan.
-   * @param limit limit number of row
    * @return the scan query
    */
-  private String getScanQuery(Range range, int limit) {
+  private String getScanQuery(Range range) {
     StringBuilder queryString = new StringBuilder("SELECT * FROM ").append(tableSchema.getTableId().getName());
     if (!range.getBegin().isEmpty() || !range.getEnd().isEmpty()) {
       queryString.append(" WHERE ");
@@ -477,7 +671,31 @@ public class PostgresSqlStructuredTable implements StructuredTable {
     }
 
     queryString.append(getOrderByClause(tableSchema.getPrimaryKeys()));
-    queryString.append(" LIMIT ").append(limit).append(";");
+    queryString.append(" LIMIT ?;");
+    return queryString.toString();
+  }
+
+  /**
+   * Get the scan query for multiple ranges. For example, if there are two ranges on key1, key2, it will generate
+   * the following query:
+   * SELECT * FROM simpletable WHERE ((key1,key2)>=(?,?) AND (key1,key2)<(?,?)) OR ((key1,key2)>(?,?))
+   * ORDER BY key1, key2 LIMIT ?;
+   *
+   * @param ranges the ranges to scan, empty to scan the whole table
+   * @return the scan query
+   */
+  private String getScanQuery(Collection<Range> ranges) {
+    StringBuilder queryString = new StringBuilder("SELECT * FROM ").append(tableSchema.getTableId().getName());
+    String separator = " WHERE ";
+    for (Range range : ranges) {
+      queryString.append(separator).append("(");
+      appendRange(queryString, range);
+      queryString.append(")");
+      separator = " OR ";
+    }
+
+    queryString.append(getOrderByClause(tableSchema.getPrimaryKeys()));
+    queryString.append(" LIMIT ?;");
     return queryString.toString();
   }
 
@@ -521,6 +739,29 @@ public class PostgresSqlStructuredTable implements StructuredTable {
     return statement.toString();
   }
 
+  /**
+   * Get the clause for matching multiple rows by the primary keys. For example, if "simpletable" has primary keys
+   * (key1, key2), it will generate the following clause for two rows:
+   * (key1,key2) IN ((?,?),(?,?))
+   *
+   * @param numRows number of rows to match
+   * @return the clause
+   */
+  private String getInClause(int numRows) {
+    StringJoiner keyJoiner = new StringJoiner(",", "(", ")");
+    StringJoiner valueJoiner = new StringJoiner(",", "(", ")");
+    for (String key : tableSchema.getPrimaryKeys()) {
+      keyJoiner.add(key);
+      valueJoiner.add("?");
+    }
+    StringJoiner inJoiner = new StringJoiner(",", " IN (", ")");
+    String values = valueJoiner.toString();
+    for (int i = 0; i < numRows; i++) {
+      inJoiner.add(values);
+    }
+    return keyJoiner.toString() + inJoiner.toString();
+  }
+
   private String getEqualsClause(Collection<Field<?>> keys) {
     StringJoiner joiner = new StringJoiner(" AND ");
     for (Field<?> key : keys) {
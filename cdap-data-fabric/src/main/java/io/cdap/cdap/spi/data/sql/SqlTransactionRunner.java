@@ -42,6 +42,7 @@ public class SqlTransactionRunner implements TransactionRunner {
   private final DataSource dataSource;
   private final MetricsCollectionService metricsCollectionService;
   private final boolean emitTimeMetrics;
+  private final int scanFetchSize;
 
   @VisibleForTesting
   public SqlTransactionRunner(StructuredTableAdmin admin, DataSource dataSource) {
@@ -50,10 +51,23 @@ public class SqlTransactionRunner implements TransactionRunner {
 
   public SqlTransactionRunner(StructuredTableAdmin tableAdmin, DataSource dataSource,
                               MetricsCollectionService metricsCollectionService, boolean emitTimeMetrics) {
+    this(tableAdmin, dataSource, metricsCollectionService, emitTimeMetrics,
+         PostgresSqlStructuredTable.DEFAULT_FETCH_SIZE);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param scanFetchSize number of rows to fetch at a time when scanning tables, {@code 0} to fetch all rows at once
+   */
+  public SqlTransactionRunner(StructuredTableAdmin tableAdmin, DataSource dataSource,
+                              MetricsCollectionService metricsCollectionService, boolean emitTimeMetrics,
+                              int scanFetchSize) {
     this.admin = tableAdmin;
     this.dataSource = dataSource;
     this.metricsCollectionService = metricsCollectionService;
     this.emitTimeMetrics = emitTimeMetrics;
+    this.scanFetchSize = scanFetchSize;
   }
 
   @Override
@@ -71,7 +85,8 @@ public class SqlTransactionRunner implements TransactionRunner {
       metricsCollector.increment(Constants.Metrics.StructuredTable.TRANSACTION_COUNT, 1L);
       connection.setTransactionIsolation(Connection.TRANSACTION_REPEATABLE_READ);
       connection.setAutoCommit(false);
-      runnable.run(new SqlStructuredTableContext(admin, connection, metricsCollector, emitTimeMetrics));
+      runnable.run(new SqlStructuredTableContext(admin, connection, metricsCollector, emitTimeMetrics,
+                                                  scanFetchSize));
       connection.commit();
     } catch (Exception e) {
       Throwable cause = e.getCause();
@@ -17,6 +17,7 @@
 package io.cdap.cdap.spi.data.sql.jdbc;
 
 
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Throwables;
 import com.google.inject.Inject;
 import com.google.inject.Provider;
@@ -93,7 +94,7 @@ public class DataSourceProvider implements Provider<DataSource> {
     LOG.info("Creating the DataSource with jdbc url: {}", jdbcUrl);
 
     ConnectionFactory connectionFactory = new DriverManagerConnectionFactory(jdbcUrl, properties);
-    PoolableConnectionFactory poolableConnectionFactory = new PoolableConnectionFactory(connectionFactory, null);
+    PoolableConnectionFactory poolableConnectionFactory = createPoolableConnectionFactory(cConf, connectionFactory);
     // The GenericObjectPool is thread safe according to the javadoc,
     // the PoolingDataSource will be thread safe as long as the connectin pool is thread-safe
     GenericObjectPool<PoolableConnection> connectionPool = new GenericObjectPool<>(poolableConnectionFactory);
@@ -104,6 +105,22 @@ public class DataSourceProvider implements Provider<DataSource> {
     return this.dataSource;
   }
 
+  /**
+   * Creates the factory of the pooled connections, which caches prepared statements per connection, keyed by the
+   * sql query, unless the statement cache size is 0.
+   */
+  @VisibleForTesting
+  static PoolableConnectionFactory createPoolableConnectionFactory(CConfiguration cConf,
+                                                                   ConnectionFactory connectionFactory) {
+    PoolableConnectionFactory poolableConnectionFactory = new PoolableConnectionFactory(connectionFactory, null);
+    int statementCacheSize = cConf.getInt(Constants.Dataset.DATA_STORAGE_SQL_STATEMENT_CACHE_SIZE);
+    if (statementCacheSize > 0) {
+      poolableConnectionFactory.setPoolStatements(true);
+      poolableConnectionFactory.setMaxOpenPreparedStatements(statementCacheSize);
+    }
+    return poolableConnectionFactory;
+  }
+
   private Properties retrieveJDBCConnectionProperties() {
     Properties properties = new Properties();
     String username = sConf.get(Constants.Dataset.DATA_STORAGE_SQL_USERNAME);
@@ -392,6 +392,7 @@ public final class StoreDefinition {
     public static final StructuredTableId APPLICATION_SPECIFICATIONS = new StructuredTableId("application_specs");
     public static final StructuredTableId WORKFLOW_NODE_STATES = new StructuredTableId("workflow_node_states");
     public static final StructuredTableId RUN_RECORDS = new StructuredTableId("run_records");
+    public static final StructuredTableId RUN_RECORDS_TIME_INDEX = new StructuredTableId("run_records_time_index");
     public static final StructuredTableId WORKFLOWS = new StructuredTableId("workflows");
     public static final StructuredTableId PROGRAM_COUNTS = new StructuredTableId("program_counts");
     // TODO: CDAP-14876 Move this table into it's own store, along with associated methods
@@ -409,6 +410,9 @@ public final class StoreDefinition {
     public static final String RUN_STATUS = "run_status";
     public static final String RUN_START_TIME = "run_start_time";
     public static final String RUN_RECORD_DATA = "run_record_data";
+    public static final String RUN_TIME_BUCKET_SIZE = "run_time_bucket_size";
+    public static final String RUN_TIME_BUCKET = "run_time_bucket";
+    public static final String RUN_STOP_TIME = "run_stop_time";
     public static final String WORKFLOW_DATA = "workflow_data";
     public static final String COUNT_TYPE = "count_type";
     public static final String COUNTS = "counts";
@@ -458,6 +462,17 @@ public final class StoreDefinition {
                          PROGRAM_FIELD, RUN_START_TIME, RUN_FIELD)
         .build();
 
+    public static final StructuredTableSpecification RUN_RECORDS_TIME_INDEX_SPEC =
+      new StructuredTableSpecification.Builder()
+        .withId(RUN_RECORDS_TIME_INDEX)
+        .withFields(Fields.longType(RUN_TIME_BUCKET_SIZE),
+                    Fields.longType(RUN_TIME_BUCKET),
+                    Fields.stringType(RUN_FIELD),
+                    Fields.longType(RUN_START_TIME),
+                    Fields.longType(RUN_STOP_TIME))
+        .withPrimaryKeys(RUN_TIME_BUCKET_SIZE, RUN_TIME_BUCKET, RUN_FIELD)
+        .build();
+
     public static final StructuredTableSpecification WORKFLOWS_SPEC =
       new StructuredTableSpecification.Builder()
         .withId(WORKFLOWS)
@@ -506,6 +521,9 @@ public final class StoreDefinition {
       if (overWrite || tableAdmin.getSpecification(RUN_RECORDS) == null) {
         tableAdmin.create(RUN_RECORDS_SPEC);
       }
+      if (overWrite || tableAdmin.getSpecification(RUN_RECORDS_TIME_INDEX) == null) {
+        tableAdmin.create(RUN_RECORDS_TIME_INDEX_SPEC);
+      }
       if (overWrite || tableAdmin.getSpecification(WORKFLOWS) == null) {
         tableAdmin.create(WORKFLOWS_SPEC);
       }
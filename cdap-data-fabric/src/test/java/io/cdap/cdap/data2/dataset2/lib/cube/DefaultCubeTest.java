@@ -16,13 +16,19 @@
 
 package io.cdap.cdap.data2.dataset2.lib.cube;
 
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import io.cdap.cdap.api.dataset.lib.cube.AggregationFunction;
 import io.cdap.cdap.api.dataset.lib.cube.Cube;
+import io.cdap.cdap.api.dataset.lib.cube.TimeSeries;
 import io.cdap.cdap.data2.dataset2.lib.table.inmemory.InMemoryMetricsTable;
 import io.cdap.cdap.data2.dataset2.lib.table.inmemory.InMemoryTableService;
 import io.cdap.cdap.data2.dataset2.lib.timeseries.EntityTable;
 import io.cdap.cdap.data2.dataset2.lib.timeseries.FactTable;
+import org.junit.Assert;
+import org.junit.Test;
 
+import java.util.Collections;
 import java.util.Map;
 
 /**
@@ -32,6 +38,11 @@ public class DefaultCubeTest extends AbstractCubeTest {
 
   @Override
   protected Cube getCube(final String name, int[] resolutions, Map<String, ? extends Aggregation> aggregations) {
+    return getCube(name, resolutions, aggregations, false);
+  }
+
+  private DefaultCube getCube(final String name, int[] resolutions,
+                              Map<String, ? extends Aggregation> aggregations, boolean rollup) {
     FactTableSupplier supplier = new FactTableSupplier() {
       @Override
       public FactTable get(int resolution, int rollTime) {
@@ -46,6 +57,87 @@ public class DefaultCubeTest extends AbstractCubeTest {
       }
     };
 
-    return new DefaultCube(resolutions, supplier, aggregations, ImmutableMap.<String, AggregationAlias>of());
+    return new DefaultCube(resolutions, supplier, aggregations, ImmutableMap.<String, AggregationAlias>of(), 0, rollup);
+  }
+
+  @Test
+  public void testRollup() throws Exception {
+    Aggregation agg1 = new DefaultAggregation(ImmutableList.of("dim1"));
+    Aggregation agg2 = new DefaultAggregation(ImmutableList.of("dim1", "dim2"));
+
+    int res1 = 1;
+    int res100 = 100;
+    int totals = Integer.MAX_VALUE;
+    DefaultCube cube = getCube("myRollupCube", new int[] {res1, res100, totals},
+                               ImmutableMap.of("agg1", agg1, "agg2", agg2), true);
+
+    writeInc(cube, "metric1", 1, 1, "1", "1");
+    writeInc(cube, "metric1", 1, 2, "2", "1");
+    writeInc(cube, "metric1", 10, 6, "1", "1");
+    writeInc(cube, "metric1", 101, 7, "1", "2");
+    writeGauge(cube, "metric2", 5, 3, "1", "1");
+    writeGauge(cube, "metric2", 50, 4, "1", "1");
+
+    // Only the finest resolution is written when facts are added
+    verifyCountQuery(cube, 0, 200, res1, "metric1", AggregationFunction.SUM,
+                     ImmutableMap.of("dim1", "1"), Collections.emptyList(),
+                     ImmutableList.of(new TimeSeries("metric1", Collections.emptyMap(),
+                                                     timeValues(1, 1, 10, 6, 101, 7))));
+    verifyCountQuery(cube, 0, 200, res100, "metric1", AggregationFunction.SUM,
+                     ImmutableMap.of("dim1", "1"), Collections.emptyList(), Collections.emptyList());
+
+    cube.rollup(res100, 0, 100);
+    cube.rollup(res100, 100, 200);
+    // Rolling up complete time buckets again must not change the result
+    cube.rollup(res100, 0, 100);
+
+    verifyCountQuery(cube, 0, 200, res100, "metric1", AggregationFunction.SUM,
+                     ImmutableMap.of("dim1", "1"), Collections.emptyList(),
+                     ImmutableList.of(new TimeSeries("metric1", Collections.emptyMap(),
+                                                     timeValues(0, 7, 100, 7))));
+    verifyCountQuery(cube, 0, 200, res100, "metric1", AggregationFunction.SUM,
+                     ImmutableMap.of("dim1", "1", "dim2", "1"), Collections.emptyList(),
+                     ImmutableList.of(new TimeSeries("metric1", Collections.emptyMap(),
+                                                     timeValues(0, 7))));
+    verifyCountQuery(cube, 0, 200, res100, "metric2", AggregationFunction.LATEST,
+                     ImmutableMap.of("dim1", "1"), Collections.emptyList(),
+                     ImmutableList.of(new TimeSeries("metric2", Collections.emptyMap(),
+                                                     timeValues(0, 4))));
+
+    // Totals are computed from the next finer resolution
+    cube.rollup(totals, 0, 100);
+    cube.rollup(totals, 100, 200);
+    // Repeating the rollup of totals, also over a range overlapping with the rolled up one, must not count twice
+    cube.rollup(totals, 100, 200);
+    cube.rollup(totals, 0, 200);
+    verifyCountQuery(cube, 0, 200, totals, "metric1", AggregationFunction.SUM,
+                     ImmutableMap.of("dim1", "1"), Collections.emptyList(),
+                     ImmutableList.of(new TimeSeries("metric1", Collections.emptyMap(),
+                                                     timeValues(0, 14))));
+    verifyCountQuery(cube, 0, 200, totals, "metric2", AggregationFunction.LATEST,
+                     ImmutableMap.of("dim1", "1"), Collections.emptyList(),
+                     ImmutableList.of(new TimeSeries("metric2", Collections.emptyMap(),
+                                                     timeValues(0, 4))));
+  }
+
+  @Test
+  public void testCompact() throws Exception {
+    Aggregation agg1 = new DefaultAggregation(ImmutableList.of("dim1"));
+    int res1 = 1;
+    DefaultCube cube = getCube("myCompactCube", new int[] {res1}, ImmutableMap.of("agg1", agg1), false);
+
+    // Rows of the resolution span 3600 seconds
+    writeInc(cube, "metric1", 1, 1, "1", "1");
+    writeInc(cube, "metric1", 10, 6, "1", "1");
+    writeInc(cube, "metric1", 3601, 7, "1", "1");
+
+    // Only the row that ends before the end of the range is compacted
+    Assert.assertEquals(1, cube.compact(res1, 0, 3700));
+    Assert.assertEquals(0, cube.compact(res1, 0, 3599));
+
+    verifyCountQuery(cube, 0, 4000, res1, "metric1", AggregationFunction.SUM,
+                     ImmutableMap.of("dim1", "1"), Collections.emptyList(),
+                     ImmutableList.of(new TimeSeries("metric1", Collections.emptyMap(),
+                                                     timeValues(1, 1, 10, 6, 3601, 7))));
   }
 }
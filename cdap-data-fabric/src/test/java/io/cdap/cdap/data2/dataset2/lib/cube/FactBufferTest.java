@@ -0,0 +1,76 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.cdap.data2.dataset2.lib.cube;
+
+import com.google.common.collect.ImmutableList;
+import io.cdap.cdap.api.dataset.lib.cube.DimensionValue;
+import io.cdap.cdap.api.dataset.lib.cube.MeasureType;
+import io.cdap.cdap.api.dataset.lib.cube.Measurement;
+import io.cdap.cdap.data2.dataset2.lib.timeseries.Fact;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.List;
+
+/**
+ * Unit tests for {@link FactBuffer}.
+ */
+public class FactBufferTest {
+
+  private static final List<DimensionValue> DIMS1 = ImmutableList.of(new DimensionValue("dim1", "1"));
+  private static final List<DimensionValue> DIMS2 = ImmutableList.of(new DimensionValue("dim1", "2"));
+
+  @Test
+  public void testMerge() {
+    FactBuffer buffer = new FactBuffer(60);
+
+    buffer.add(ImmutableList.of(
+      new Fact(1, DIMS1, new Measurement("count", MeasureType.COUNTER, 1)),
+      new Fact(30, DIMS1, new Measurement("count", MeasureType.COUNTER, 2)),
+      new Fact(59, DIMS2, new Measurement("count", MeasureType.COUNTER, 4)),
+      new Fact(60, DIMS1, new Measurement("count", MeasureType.COUNTER, 8)),
+      new Fact(10, DIMS1, new Measurement("gauge", MeasureType.GAUGE, 3)),
+      new Fact(20, DIMS1, new Measurement("gauge", MeasureType.GAUGE, 5))
+    ));
+    // Counter added after a gauge is added on top of the gauge value
+    buffer.add(ImmutableList.of(new Fact(40, DIMS1, new Measurement("gauge", MeasureType.COUNTER, 2))));
+    // Gauge added after a counter replaces the counter value
+    buffer.add(ImmutableList.of(new Fact(61, DIMS1, new Measurement("count", MeasureType.GAUGE, 7))));
+
+    Assert.assertEquals(4, buffer.size());
+    List<Fact> facts = buffer.drain();
+    Assert.assertEquals(0, buffer.size());
+    Assert.assertEquals(4, facts.size());
+
+    assertFact(facts.get(0), 0, DIMS1, "count", MeasureType.COUNTER, 3);
+    assertFact(facts.get(1), 0, DIMS2, "count", MeasureType.COUNTER, 4);
+    assertFact(facts.get(2), 60, DIMS1, "count", MeasureType.GAUGE, 7);
+    assertFact(facts.get(3), 0, DIMS1, "gauge", MeasureType.GAUGE, 7);
+
+    Assert.assertTrue(buffer.drain().isEmpty());
+  }
+
+  private void assertFact(Fact fact, long timestamp, List<DimensionValue> dimensionValues,
+                          String measureName, MeasureType type, long value) {
+    Assert.assertEquals(timestamp, fact.getTimestamp());
+    Assert.assertEquals(dimensionValues, fact.getDimensionValues());
+    Measurement measurement = fact.getMeasurements().iterator().next();
+    Assert.assertEquals(measureName, measurement.getName());
+    Assert.assertEquals(type, measurement.getType());
+    Assert.assertEquals(value, measurement.getValue());
+  }
+}
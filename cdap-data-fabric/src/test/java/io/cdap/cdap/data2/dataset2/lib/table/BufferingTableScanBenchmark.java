@@ -0,0 +1,130 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.cdap.data2.dataset2.lib.table;
+
+import io.cdap.cdap.api.common.Bytes;
+import io.cdap.cdap.api.dataset.table.Get;
+import io.cdap.cdap.api.dataset.table.Row;
+import io.cdap.cdap.api.dataset.table.Scanner;
+import io.cdap.cdap.data2.dataset2.lib.table.inmemory.InMemoryTable;
+import io.cdap.cdap.data2.dataset2.lib.table.inmemory.InMemoryTableService;
+import org.apache.tephra.Transaction;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH benchmark for reading wide rows through a {@link BufferingTable} in a transaction that has a large write buffer,
+ * which requires merging the buffered updates with the persisted rows. It can be run with the {@link #main(String[])}
+ * method from the test classpath.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BufferingTableScanBenchmark {
+
+  private static final String TABLE_NAME = "benchmark";
+
+  @Param({"1000"})
+  private int rows;
+
+  @Param({"10", "100"})
+  private int columns;
+
+  private InMemoryTable table;
+  private List<Get> gets;
+
+  @Setup
+  public void setup() throws Exception {
+    InMemoryTableService.create(TABLE_NAME);
+    table = new InMemoryTable(TABLE_NAME);
+
+    // Persist all rows with the even columns
+    table.startTx(new Transaction(1L, 2L, new long[0], new long[0], Transaction.NO_TX_IN_PROGRESS));
+    for (int row = 0; row < rows; row++) {
+      for (int column = 0; column < columns; column += 2) {
+        table.put(Bytes.toBytes(row), Bytes.toBytes(column), Bytes.toBytes((long) column));
+      }
+    }
+    table.commitTx();
+    table.postTxCommit();
+
+    // Buffer updates for all odd columns and increments for a quarter of the even ones in a new transaction
+    table.startTx(new Transaction(2L, 3L, new long[0], new long[0], Transaction.NO_TX_IN_PROGRESS));
+    gets = new ArrayList<>(rows);
+    for (int row = 0; row < rows; row++) {
+      for (int column = 0; column < columns; column++) {
+        if (column % 2 == 1) {
+          table.put(Bytes.toBytes(row), Bytes.toBytes(column), Bytes.toBytes((long) column));
+        } else if (column % 8 == 0) {
+          table.increment(Bytes.toBytes(row), Bytes.toBytes(column), 1L);
+        }
+      }
+      gets.add(new Get(Bytes.toBytes(row)));
+    }
+  }
+
+  @TearDown
+  public void teardown() throws Exception {
+    table.rollbackTx();
+    table.close();
+    InMemoryTableService.drop(TABLE_NAME);
+  }
+
+  @Benchmark
+  public void scan(Blackhole blackhole) {
+    try (Scanner scanner = table.scan(null, null)) {
+      Row row;
+      while ((row = scanner.next()) != null) {
+        blackhole.consume(row.getColumns());
+      }
+    }
+  }
+
+  @Benchmark
+  public void multiGet(Blackhole blackhole) {
+    blackhole.consume(table.get(gets));
+  }
+
+  public static void main(String[] args) throws RunnerException {
+    Options options = new OptionsBuilder()
+      .include(BufferingTableScanBenchmark.class.getSimpleName())
+      .build();
+    new Runner(options).run();
+  }
+}
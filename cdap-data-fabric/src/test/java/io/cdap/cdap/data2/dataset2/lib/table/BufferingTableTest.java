@@ -502,6 +502,72 @@ public abstract class BufferingTableTest<T extends BufferingTable> extends Table
     }
   }
 
+  @Test
+  public void testSpillBuffer() throws Exception {
+    // spill the buffer after every write
+    DatasetProperties props = TableProperties.builder()
+      .setReadlessIncrementSupport(isReadlessIncrementSupported())
+      .add(BufferingTable.PROPERTY_BUFFER_SPILL_THRESHOLD, "1")
+      .build();
+    DatasetAdmin admin = getTableAdmin(CONTEXT1, MY_TABLE, props);
+    admin.create();
+    try {
+      BufferingTable table = getTable(CONTEXT1, MY_TABLE, props);
+      Transaction tx1 = txClient.startShort();
+      table.startTx(tx1);
+      table.put(R1, a(C1, C2), lb(1, 2));
+      table.put(R2, a(C1, C2), lb(3, 4));
+      table.put(R1, a(C2), lb(5));
+      table.delete(R2, a(C1));
+      table.increment(R3, C1, 1L);
+      table.increment(R3, C1, 2L);
+
+      // reads see the spilled updates merged with the in-memory ones
+      TableAssert.assertRow(table.get(R1), R1, a(C1, C2), lb(1, 5));
+      TableAssert.assertRow(table.get(R2, a(C1, C2)), R2, a(C2), lb(4));
+      TableAssert.assertRow(table.get(R3, a(C1)), R3, a(C1), lb(3));
+      List<Row> rows = table.get(Lists.newArrayList(new Get(R1, C2), new Get(R3)));
+      TableAssert.assertRow(rows.get(0), R1, a(C2), lb(5));
+      TableAssert.assertRow(rows.get(1), R3, a(C1), lb(3));
+      try (Scanner scanner = table.scan(null, R2)) {
+        TableAssert.assertRow(scanner.next(), R1, a(C1, C2), lb(1, 5));
+        Assert.assertNull(scanner.next());
+      }
+      try (Scanner scanner = table.scan(R3, null)) {
+        TableAssert.assertRow(scanner.next(), R3, a(C1), lb(3));
+        Assert.assertNull(scanner.next());
+      }
+      Assert.assertEquals(3, table.getTxChanges().size());
+
+      txClient.canCommitOrThrow(tx1, table.getTxChanges());
+      Assert.assertTrue(table.commitTx());
+      txClient.commitOrThrow(tx1);
+      table.postTxCommit();
+
+      // write more data, persist it and then roll back
+      Transaction tx2 = txClient.startShort();
+      table.startTx(tx2);
+      table.put(R1, a(C1), lb(6));
+      table.put(R4, a(C1), lb(7));
+      Assert.assertTrue(table.commitTx());
+      Assert.assertTrue(table.rollbackTx());
+      txClient.abort(tx2);
+
+      // only the committed data is visible
+      Transaction tx3 = txClient.startShort();
+      table.startTx(tx3);
+      TableAssert.assertRow(table.get(R1), R1, a(C1, C2), lb(1, 5));
+      TableAssert.assertRow(table.get(R2), R2, a(C2), lb(4));
+      TableAssert.assertRow(table.get(R3), R3, a(C1), lb(3));
+      Assert.assertTrue(table.get(R4).isEmpty());
+      Assert.assertTrue(table.commitTx());
+      txClient.commitOrThrow(tx3);
+      table.postTxCommit();
+    } finally {
+      admin.drop();
+    }
+  }
+
   private void verify123(BufferingTable table) throws Exception {
     byte[] row = new byte[] {1};
     byte[] col = new byte[] {2};
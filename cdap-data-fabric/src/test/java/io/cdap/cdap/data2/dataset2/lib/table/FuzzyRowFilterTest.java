@@ -0,0 +1,76 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.cdap.data2.dataset2.lib.table;
+
+import com.google.common.collect.ImmutableList;
+import io.cdap.cdap.api.common.Bytes;
+import io.cdap.cdap.common.utils.ImmutablePair;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * Unit test for {@link FuzzyRowFilter}.
+ */
+public class FuzzyRowFilterTest {
+
+  @Test
+  public void testFilterMap() {
+    // rows are three bytes: two dimensions and a time slot
+    NavigableMap<byte[], Integer> rows = new TreeMap<>(Bytes.BYTES_COMPARATOR);
+    for (int i = 0; i < 16; i++) {
+      for (int j = 0; j < 16; j++) {
+        for (int k = 0; k < 4; k++) {
+          rows.put(new byte[] {(byte) i, (byte) j, (byte) k}, rows.size());
+        }
+      }
+    }
+
+    List<FuzzyRowFilter> filters = ImmutableList.of(
+      // any first dimension, fixed second dimension and time slot
+      new FuzzyRowFilter(ImmutableList.of(ImmutablePair.of(new byte[] {0, 7, 2}, new byte[] {1, 0, 0}))),
+      // fixed first dimension, any second dimension and time slot
+      new FuzzyRowFilter(ImmutableList.of(ImmutablePair.of(new byte[] {3, 0, 0}, new byte[] {0, 1, 1}))),
+      // multiple fuzzy keys
+      new FuzzyRowFilter(ImmutableList.of(ImmutablePair.of(new byte[] {0, 7, 2}, new byte[] {1, 0, 0}),
+                                          ImmutablePair.of(new byte[] {9, 0, 1}, new byte[] {0, 1, 0}))),
+      // no row matches
+      new FuzzyRowFilter(ImmutableList.of(ImmutablePair.of(new byte[] {0, 0, 9}, new byte[] {1, 1, 0})))
+    );
+
+    for (FuzzyRowFilter filter : filters) {
+      // the result must be the same as testing every row
+      List<Integer> expected = new ArrayList<>();
+      for (Map.Entry<byte[], Integer> entry : rows.entrySet()) {
+        if (filter.filterRow(entry.getKey()) == FuzzyRowFilter.ReturnCode.INCLUDE) {
+          expected.add(entry.getValue());
+        }
+      }
+      Assert.assertEquals(filter.toString(), expected, new ArrayList<>(filter.filter(rows).values()));
+    }
+
+    Assert.assertEquals(16, filters.get(0).filter(rows).size());
+    Assert.assertEquals(64, filters.get(1).filter(rows).size());
+    Assert.assertEquals(32, filters.get(2).filter(rows).size());
+    Assert.assertTrue(filters.get(3).filter(rows).isEmpty());
+  }
+}
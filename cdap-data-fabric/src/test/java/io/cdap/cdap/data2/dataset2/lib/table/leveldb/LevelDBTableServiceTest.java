@@ -16,6 +16,8 @@
 
 package io.cdap.cdap.data2.dataset2.lib.table.leveldb;
 
+import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.Striped;
 import com.google.inject.Guice;
 import com.google.inject.Injector;
 import io.cdap.cdap.api.common.Bytes;
@@ -30,6 +32,7 @@ import io.cdap.cdap.data2.util.TableId;
 import io.cdap.cdap.security.auth.context.AuthenticationContextModules;
 import io.cdap.cdap.security.authorization.AuthorizationEnforcementModule;
 import io.cdap.cdap.security.authorization.AuthorizationTestModule;
+import org.iq80.leveldb.CompressionType;
 import org.junit.Assert;
 import org.junit.BeforeClass;
 import org.junit.ClassRule;
@@ -37,8 +40,17 @@ import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NavigableMap;
 import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
 
 /**
  *
@@ -110,6 +122,116 @@ public class LevelDBTableServiceTest {
     Assert.assertEquals(table2Size, service.getTableStats().get(tableId2).getDiskSizeBytes());
   }
 
+  @Test
+  public void testTableOptions() throws Exception {
+    String defaultTable = "cdap_default.defaultOptions";
+    String customTable = "cdap_default.customOptions";
+
+    service.ensureTableExists(defaultTable);
+    service.ensureTableExists(customTable, ImmutableMap.of(
+      LevelDBTableOptions.PROPERTY_BLOCK_SIZE, "4096",
+      LevelDBTableOptions.PROPERTY_CACHE_SIZE, "1048576",
+      LevelDBTableOptions.PROPERTY_WRITE_BUFFER_SIZE, "65536",
+      LevelDBTableOptions.PROPERTY_COMPRESSION, "none"));
+
+    LevelDBTableOptions defaultOptions = service.getTableOptions(defaultTable);
+    Assert.assertEquals(Constants.DEFAULT_DATA_LEVELDB_BLOCKSIZE, defaultOptions.getBlockSize());
+    Assert.assertEquals(Constants.DEFAULT_DATA_LEVELDB_WRITE_BUFFER_SIZE, defaultOptions.getWriteBufferSize());
+
+    LevelDBTableOptions customOptions = service.getTableOptions(customTable);
+    Assert.assertEquals(4096, customOptions.getBlockSize());
+    Assert.assertEquals(1048576L, customOptions.getCacheSize());
+    Assert.assertEquals(65536, customOptions.getWriteBufferSize());
+    Assert.assertEquals(CompressionType.NONE, customOptions.getCompression());
+
+    // Reopening the tables should use the options they were created with
+    service.clearTables();
+    Assert.assertEquals(defaultOptions, service.getTableOptions(defaultTable));
+    Assert.assertEquals(customOptions, service.getTableOptions(customTable));
+
+    // Properties are ignored for a table that already exists
+    service.ensureTableExists(customTable, ImmutableMap.of(LevelDBTableOptions.PROPERTY_BLOCK_SIZE, "8192"));
+    Assert.assertEquals(customOptions, service.getTableOptions(customTable));
+
+    // Options that are not overridden by dataset properties are resolved from the configuration on every open
+    CConfiguration cConf = CConfiguration.copy(injector.getInstance(CConfiguration.class));
+    cConf.setInt(Constants.CFG_DATA_LEVELDB_BLOCKSIZE, 2 * Constants.DEFAULT_DATA_LEVELDB_BLOCKSIZE);
+    service.clearTables();
+    LevelDBTableService reconfigured = new LevelDBTableService();
+    reconfigured.setConfiguration(cConf);
+    try {
+      Assert.assertEquals(2 * Constants.DEFAULT_DATA_LEVELDB_BLOCKSIZE,
+                          reconfigured.getTableOptions(defaultTable).getBlockSize());
+      Assert.assertEquals(customOptions, reconfigured.getTableOptions(customTable));
+    } finally {
+      reconfigured.close();
+    }
+
+    service.dropTable(defaultTable);
+    service.dropTable(customTable);
+  }
+
+  @Test
+  public void testConcurrentIncrements() throws Exception {
+    String tableName = "cdap_default.increments";
+    service.ensureTableExists(tableName);
+
+    int threads = 8;
+    int iterations = 200;
+    byte[][] rows = new byte[10][];
+    for (int i = 0; i < rows.length; i++) {
+      rows[i] = Bytes.toBytes("row" + i);
+    }
+    byte[] column = Bytes.toBytes("c");
+
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    try {
+      CyclicBarrier barrier = new CyclicBarrier(threads);
+      List<Future<?>> futures = new ArrayList<>();
+      for (int t = 0; t < threads; t++) {
+        // Each thread uses its own core, the row locks must still be shared across them
+        LevelDBTableCore core = new LevelDBTableCore(tableName, service);
+        boolean batch = t % 2 == 0;
+        futures.add(executor.submit(() -> {
+          barrier.await();
+          for (int i = 0; i < iterations; i++) {
+            if (batch) {
+              NavigableMap<byte[], NavigableMap<byte[], Long>> updates = new TreeMap<>(Bytes.BYTES_COMPARATOR);
+              for (byte[] row : rows) {
+                NavigableMap<byte[], Long> increments = new TreeMap<>(Bytes.BYTES_COMPARATOR);
+                increments.put(column, 1L);
+                updates.put(row, increments);
+              }
+              core.increment(updates);
+            } else {
+              for (byte[] row : rows) {
+                core.increment(row, ImmutableMap.of(column, 1L));
+              }
+            }
+          }
+          return null;
+        }));
+      }
+      for (Future<?> future : futures) {
+        future.get(60, TimeUnit.SECONDS);
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+
+    LevelDBTableCore core = new LevelDBTableCore(tableName, service);
+    for (byte[] row : rows) {
+      byte[] value = core.getRow(row, new byte[][] { column }, null, null, -1, null).get(column);
+      Assert.assertEquals((long) threads * iterations, Bytes.toLong(value));
+    }
+    Assert.assertSame(service.getRowLocks(tableName), service.getRowLocks(tableName));
+
+    // The row locks of a dropped table are released
+    Striped<Lock> rowLocks = service.getRowLocks(tableName);
+    service.dropTable(tableName);
+    Assert.assertNotSame(rowLocks, service.getRowLocks(tableName));
+  }
+
   private void writeSome(String tableName) throws IOException {
     LevelDBTableCore table = new LevelDBTableCore(tableName, service);
     Random r = new Random();
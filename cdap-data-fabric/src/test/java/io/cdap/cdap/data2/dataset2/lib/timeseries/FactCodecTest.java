@@ -17,7 +17,9 @@
 package io.cdap.cdap.data2.dataset2.lib.timeseries;
 
 import com.google.common.collect.ImmutableList;
+import io.cdap.cdap.api.common.Bytes;
 import io.cdap.cdap.api.dataset.lib.cube.DimensionValue;
+import io.cdap.cdap.api.dataset.lib.cube.TimeValue;
 import io.cdap.cdap.common.utils.ImmutablePair;
 import io.cdap.cdap.data2.dataset2.lib.table.FuzzyRowFilter;
 import io.cdap.cdap.data2.dataset2.lib.table.MetricsTable;
@@ -28,6 +30,8 @@ import org.junit.Test;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.NavigableMap;
+import java.util.TreeMap;
 
 /**
  *
@@ -153,4 +157,47 @@ public class FactCodecTest {
     // todo: test prefix of multi dimension valued row key is not same one dimension valued row key
     // todo: test that rollTimebaseInterval applies well
   }
+
+  @Test
+  public void testCompactValues() {
+    InMemoryTableService.create("FactCodecCompactTest");
+    MetricsTable table = new InMemoryMetricsTable("FactCodecCompactTest");
+    int resolution = 5;
+    FactCodec codec = new FactCodec(new EntityTable(table), resolution, 3600);
+
+    long ts = 1422312000;
+    byte[] rowKey = codec.createRowKey(ImmutableList.of(new DimensionValue("dim", "value")), "metric", ts);
+
+    // dense constant values, gaps, negative values, a value using all bits and a value at the end of the row
+    List<TimeValue> timeValues = new ArrayList<>();
+    for (int i = 0; i < 100; i++) {
+      timeValues.add(new TimeValue(ts + i * resolution, 1L));
+    }
+    timeValues.add(new TimeValue(ts + 200 * resolution, -3L));
+    timeValues.add(new TimeValue(ts + 210 * resolution, Long.MIN_VALUE));
+    timeValues.add(new TimeValue(ts + 220 * resolution, 0L));
+    timeValues.add(new TimeValue(ts + 719 * resolution, Long.MAX_VALUE));
+
+    int lastIndex = codec.getColumnIndex(codec.createColumn(ts + 719 * resolution));
+    byte[] encoded = codec.createCompactValue(rowKey, timeValues, lastIndex);
+    Assert.assertEquals(timeValues, ImmutableList.copyOf(codec.getCompactTimeValues(rowKey, encoded)));
+    Assert.assertEquals(lastIndex, codec.getCoveredColumnIndex(encoded));
+    // the run of constant values is stored in a few bytes
+    Assert.assertTrue(encoded.length < 64);
+
+    Assert.assertFalse(codec.getCompactTimeValues(rowKey, codec.createCompactValue(rowKey, ImmutableList.of(), -1))
+                         .hasNext());
+
+    // compact values are merged with the values of the delta columns that are not covered by the compact column
+    NavigableMap<byte[], byte[]> columns = new TreeMap<>(Bytes.BYTES_COMPARATOR);
+    columns.put(codec.getCompactColumn(), codec.createCompactValue(
+      rowKey, ImmutableList.of(new TimeValue(ts, 1L), new TimeValue(ts + 2 * resolution, 2L)),
+      codec.getColumnIndex(codec.createColumn(ts + 2 * resolution))));
+    columns.put(codec.createColumn(ts + resolution), Bytes.toBytes(10L));
+    columns.put(codec.createColumn(ts + 2 * resolution), Bytes.toBytes(20L));
+    columns.put(codec.createColumn(ts + 3 * resolution), Bytes.toBytes(30L));
+    Assert.assertEquals(ImmutableList.of(new TimeValue(ts, 1L), new TimeValue(ts + 2 * resolution, 2L),
+                                         new TimeValue(ts + 3 * resolution, 30L)),
+                        ImmutableList.copyOf(codec.getTimeValues(rowKey, columns)));
+  }
 }
@@ -38,9 +38,12 @@ import org.junit.Test;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.NavigableMap;
 import java.util.Set;
+import java.util.TreeMap;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -631,6 +634,99 @@ public class FactTableTest {
     }
   }
 
+  @Test
+  public void testCompact() throws Exception {
+    String tableName = "testCompactTable";
+    String entityTableName = "testCompactEntityTable";
+    InMemoryTableService.create(tableName);
+    InMemoryTableService.create(entityTableName);
+    int resolution = 1;
+    int rollTime = 60;
+
+    InMemoryMetricsTable metricsTable = new InMemoryMetricsTable(tableName);
+    FactTable table = new FactTable(metricsTable,
+                                    new EntityTable(new InMemoryMetricsTable(entityTableName)), resolution, rollTime);
+
+    // three rows for every measure of two agg groups, with a constant gauge and a counter with gaps
+    long ts = 1422312900L;
+    List<DimensionValue> dims1 = dimValues("dim1", "value1");
+    List<DimensionValue> dims2 = dimValues("dim1", "value1", "dim2", "value2");
+    List<Fact> facts = new ArrayList<>();
+    for (int i = 0; i < 3 * rollTime; i++) {
+      for (List<DimensionValue> dims : ImmutableList.of(dims1, dims2)) {
+        facts.add(new Fact(ts + i, dims, new Measurement("gauge", MeasureType.GAUGE, 5)));
+        if (i % 7 != 0) {
+          facts.add(new Fact(ts + i, dims, new Measurement("counter", MeasureType.COUNTER, i * i)));
+        }
+      }
+    }
+    table.add(facts);
+
+    FactScan fullScan = new FactScan(ts, ts + 3 * rollTime, ImmutableList.of(), dims1);
+    FactScan partialScan = new FactScan(ts + 30, ts + 90, "counter", dims2);
+    Table<String, List<DimensionValue>, List<TimeValue>> full = readScan(table, fullScan);
+    Table<String, List<DimensionValue>, List<TimeValue>> partial = readScan(table, partialScan);
+    Assert.assertEquals(3 * rollTime, full.get("gauge", dims1).size());
+    Assert.assertEquals(53, partial.get("counter", dims2).size());
+
+    // compact the first two rows of every measure, the last row contains the end of the time range
+    Assert.assertEquals(8, table.compact(ts, ts + 2 * rollTime));
+    assertScan(table, full, fullScan);
+    assertScan(table, partial, partialScan);
+    int compactRows = 0;
+    try (Scanner scanner = metricsTable.scan(null, null, null)) {
+      Row row;
+      while ((row = scanner.next()) != null) {
+        if (row.getColumns().size() == 1) {
+          Assert.assertArrayEquals(new byte[] {0}, row.getColumns().keySet().iterator().next());
+          compactRows++;
+        }
+      }
+    }
+    Assert.assertEquals(8, compactRows);
+    // nothing more to compact
+    Assert.assertEquals(0, table.compact(ts, ts + 2 * rollTime));
+
+    // late writes to the columns covered by the compacted values are ignored
+    writeInc(table, "counter", ts + 7, 100, "dim1", "value1");
+    assertScan(table, full, fullScan);
+    Assert.assertEquals(1, table.compact(ts, ts + 2 * rollTime));
+    assertScan(table, full, fullScan);
+
+    // a compaction that failed before deleting the compacted columns doesn't count values twice
+    FactCodec codec = new FactCodec(new EntityTable(new InMemoryMetricsTable(entityTableName)), resolution, rollTime);
+    NavigableMap<byte[], NavigableMap<byte[], byte[]>> leftover = new TreeMap<>(Bytes.BYTES_COMPARATOR);
+    try (Scanner scanner = metricsTable.scan(null, null, null)) {
+      Row row;
+      while ((row = scanner.next()) != null) {
+        byte[] compactValue = row.get(codec.getCompactColumn());
+        if (compactValue == null) {
+          continue;
+        }
+        NavigableMap<byte[], byte[]> columns = new TreeMap<>(Bytes.BYTES_COMPARATOR);
+        Iterator<TimeValue> compacted = codec.getCompactTimeValues(row.getRow(), compactValue);
+        while (compacted.hasNext()) {
+          TimeValue timeValue = compacted.next();
+          columns.put(codec.createColumn(timeValue.getTimestamp()), Bytes.toBytes(timeValue.getValue()));
+        }
+        leftover.put(row.getRow(), columns);
+      }
+    }
+    Assert.assertEquals(8, leftover.size());
+    metricsTable.putBytes(leftover);
+    assertScan(table, full, fullScan);
+    assertScan(table, partial, partialScan);
+    Assert.assertEquals(8, table.compact(ts, ts + 2 * rollTime));
+    assertScan(table, full, fullScan);
+    assertScan(table, partial, partialScan);
+
+    // delete a time range that spans compacted and not compacted rows
+    table.delete(new FactScan(ts + 50, ts + 130, "counter", dims1));
+    full.get("counter", dims1).removeIf(timeValue -> timeValue.getTimestamp() >= ts + 50
+      && timeValue.getTimestamp() <= ts + 130);
+    assertScan(table, full, fullScan);
+  }
+
   private List<TimeValue> timeValues(long ts, int resolution, long... values) {
     List<TimeValue> timeValues = Lists.newArrayList();
     for (int i = 0; i < values.length; i++) {
@@ -653,6 +749,10 @@ public class FactTableTest {
 
   private void assertScan(FactTable table, Table<String, List<DimensionValue>, List<TimeValue>> expected,
                           FactScan scan) {
+    Assert.assertEquals(expected, readScan(table, scan));
+  }
+
+  private Table<String, List<DimensionValue>, List<TimeValue>> readScan(FactTable table, FactScan scan) {
     Table<String, List<DimensionValue>, List<TimeValue>> resultTable = HashBasedTable.create();
     FactScanner scanner = table.scan(scan);
     try {
@@ -668,8 +768,7 @@ public class FactTableTest {
     } finally {
       scanner.close();
     }
-
-    Assert.assertEquals(expected, resultTable);
+    return resultTable;
   }
 
   /**
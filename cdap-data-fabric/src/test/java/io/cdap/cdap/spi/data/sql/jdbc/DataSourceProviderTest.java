@@ -21,6 +21,7 @@ import io.cdap.cdap.common.conf.Constants;
 import io.cdap.cdap.common.conf.SConfiguration;
 import io.cdap.cdap.common.metrics.NoOpMetricsCollectionService;
 import io.cdap.cdap.common.test.AppJarHelper;
+import org.apache.commons.dbcp2.PoolableConnectionFactory;
 import org.apache.twill.filesystem.LocalLocationFactory;
 import org.junit.Assert;
 import org.junit.ClassRule;
@@ -79,6 +80,25 @@ public class DataSourceProviderTest {
     Assert.assertNotNull(loadedDriver);
   }
 
+  @Test
+  public void testStatementCache() {
+    // Prepared statements are cached by default
+    CConfiguration cConf = CConfiguration.create();
+    PoolableConnectionFactory factory = DataSourceProvider.createPoolableConnectionFactory(cConf, () -> null);
+    Assert.assertTrue(factory.getPoolStatements());
+    Assert.assertEquals(100, factory.getMaxOpenPreparedStatements());
+
+    cConf.setInt(Constants.Dataset.DATA_STORAGE_SQL_STATEMENT_CACHE_SIZE, 10);
+    factory = DataSourceProvider.createPoolableConnectionFactory(cConf, () -> null);
+    Assert.assertTrue(factory.getPoolStatements());
+    Assert.assertEquals(10, factory.getMaxOpenPreparedStatements());
+
+    // A cache size of 0 disables the cache
+    cConf.setInt(Constants.Dataset.DATA_STORAGE_SQL_STATEMENT_CACHE_SIZE, 0);
+    factory = DataSourceProvider.createPoolableConnectionFactory(cConf, () -> null);
+    Assert.assertFalse(factory.getPoolStatements());
+  }
+
   public static final class NoopDriver implements Driver {
 
     @Override
@@ -93,6 +93,7 @@ import java.net.InetSocketAddress;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -105,6 +106,7 @@ public class LogHandlerTest {
 
   private static final Type LIST_LOGLINE_TYPE = new TypeToken<List<LogLine>>() { }.getType();
   private static final Type LIST_LOGDATA_OFFSET_TYPE = new TypeToken<List<LogDataOffset>>() { }.getType();
+  private static final Type LIST_OFFSET_TYPE = new TypeToken<List<Map<String, String>>>() { }.getType();
   private static final Gson GSON =
     new GsonBuilder().registerTypeAdapter(LogOffset.class, new LogOffsetAdapter()).create();
   private static final String[] FORMATS = new String[] { "text", "json" };
@@ -331,6 +333,43 @@ public class LogHandlerTest {
     testLogsFilter("testTemplate1", "workflows", "testWorkflow1", MockLogReader.TEST_NAMESPACE);
   }
 
+  @Test
+  public void testSearch() throws Exception {
+    String appId = "testApp1";
+    String entityType = "workers";
+    String entityId = "testWorker1";
+    long startTime = MockLogReader.getMockTimeSecs(20);
+    long stopTime = MockLogReader.getMockTimeSecs(35);
+    String searchUrl = String.format("apps/%s/%s/%s/logs/search?start=%s&stop=%s",
+                                     appId, entityType, entityId, startTime, stopTime);
+
+    Assert.assertEquals(ImmutableList.of(getSearchOffset(25)), search(searchUrl + "&q=testWorker1%2025"));
+    Assert.assertEquals(ImmutableList.of(getSearchOffset(20), getSearchOffset(21), getSearchOffset(22)),
+                        search(searchUrl + "&q=img&max=3"));
+    Assert.assertEquals(8, search(searchUrl + "&q=img&filter=loglevel=ERROR").size());
+    Assert.assertTrue(search(searchUrl + "&q=nothing").isEmpty());
+
+    // Queries without any token are rejected
+    HttpResponse response = doGet(getVersionedAPIPath(searchUrl + "&q=!", MockLogReader.TEST_NAMESPACE));
+    Assert.assertEquals(HttpURLConnection.HTTP_BAD_REQUEST, response.getResponseCode());
+  }
+
+  private List<String> search(String searchUrl) throws IOException {
+    HttpResponse response = doGet(getVersionedAPIPath(searchUrl, MockLogReader.TEST_NAMESPACE));
+    Assert.assertEquals(HttpURLConnection.HTTP_OK, response.getResponseCode());
+    List<Map<String, String>> offsets = GSON.fromJson(response.getResponseBodyAsString(), LIST_OFFSET_TYPE);
+    List<String> result = new ArrayList<>();
+    for (Map<String, String> offset : offsets) {
+      result.add(offset.get("offset"));
+    }
+    return result;
+  }
+
+  private String getSearchOffset(long offset) {
+    // MockLogReader uses the index of the event as both the Kafka offset and the time of the offset
+    return FormattedTextLogEvent.formatLogOffset(new LogOffset(offset, offset));
+  }
+
   @Test
   public void testWorkflowLogsNext() throws Exception {
     testNext("testTemplate1", "workflows", "testWorkflow1", true, MockLogReader.TEST_NAMESPACE);
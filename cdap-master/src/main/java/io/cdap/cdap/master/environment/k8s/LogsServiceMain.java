@@ -94,6 +94,7 @@ public class LogsServiceMain extends AbstractServiceMain<EnvironmentOptions> {
         protected void configure() {
           // Current impersonation is not supported
           bind(UGIProvider.class).to(CurrentUGIProvider.class).in(Scopes.SINGLETON);
+          bind(FileLogReader.class).in(Scopes.SINGLETON);
           bind(LogReader.class).to(FileLogReader.class);
           expose(LogReader.class);
 
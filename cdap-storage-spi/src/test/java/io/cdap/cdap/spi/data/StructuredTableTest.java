@@ -43,7 +43,10 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 /**
  * This is a test base for {@link StructuredTable}.
@@ -175,6 +178,92 @@ public abstract class StructuredTableTest {
     // TODO: test end only range
   }
 
+  @Test
+  public void testMultiRangeScan() throws Exception {
+    int max = 100;
+    List<Collection<Field<?>>> expected = writeSimpleStructuredRows(max, "");
+
+    // Overlapping ranges in reverse order, rows should be returned once in the key order
+    List<Range> ranges = Arrays.asList(
+      Range.create(Collections.singleton(Fields.intField(KEY, 50)), Range.Bound.INCLUSIVE,
+                   Collections.singleton(Fields.intField(KEY, 60)), Range.Bound.EXCLUSIVE),
+      Range.create(Collections.singleton(Fields.intField(KEY, 5)), Range.Bound.INCLUSIVE,
+                   Collections.singleton(Fields.intField(KEY, 15)), Range.Bound.EXCLUSIVE),
+      Range.create(Collections.singleton(Fields.intField(KEY, 10)), Range.Bound.EXCLUSIVE,
+                   Collections.singleton(Fields.intField(KEY, 20)), Range.Bound.INCLUSIVE),
+      Range.singleton(Collections.singleton(Fields.intField(KEY, 46))));
+    List<Collection<Field<?>>> expectedRows = new ArrayList<>(expected.subList(5, 21));
+    expectedRows.addAll(expected.subList(46, 47));
+    expectedRows.addAll(expected.subList(50, 60));
+    Assert.assertEquals(expectedRows, scanSimpleStructuredRows(ranges, max));
+
+    // Scan with limit
+    Assert.assertEquals(expectedRows.subList(0, 12), scanSimpleStructuredRows(ranges, 12));
+
+    // Scan with an unbounded range
+    Assert.assertEquals(expected, scanSimpleStructuredRows(Arrays.asList(ranges.get(0), Range.all()), max));
+
+    // Scan without any range
+    Assert.assertEquals(Collections.emptyList(), scanSimpleStructuredRows(Collections.emptyList(), max));
+  }
+
+  @Test
+  public void testMultiReadWriteDelete() throws Exception {
+    int max = 10;
+    List<Collection<Field<?>>> expected = new ArrayList<>();
+    List<Collection<Field<?>>> keys = new ArrayList<>();
+    for (int i = 0; i < max; i++) {
+      List<Field<?>> key = Arrays.asList(Fields.intField(KEY, i), Fields.longField(KEY2, (long) i));
+      List<Field<?>> fields = new ArrayList<>(key);
+      fields.add(Fields.stringField(STRING_COL, VAL + i));
+      if (i % 2 == 0) {
+        // Rows with different columns
+        fields.add(Fields.longField(LONG_COL, (long) i));
+      }
+      keys.add(key);
+      expected.add(fields);
+    }
+
+    getTransactionRunner().run(context -> {
+      StructuredTable table = context.getTable(SIMPLE_TABLE);
+      table.multiUpsert(expected);
+    });
+
+    // Read existing and non-existing rows
+    List<Collection<Field<?>>> readKeys = new ArrayList<>(keys);
+    readKeys.add(Arrays.asList(Fields.intField(KEY, max), Fields.longField(KEY2, (long) max)));
+    List<String> columns = Arrays.asList(KEY, KEY2, STRING_COL, LONG_COL);
+    Map<Integer, Collection<Field<?>>> actual = new HashMap<>();
+    getTransactionRunner().run(context -> {
+      StructuredTable table = context.getTable(SIMPLE_TABLE);
+      for (StructuredRow row : table.multiRead(readKeys)) {
+        List<Field<?>> fields = convertRowToFields(row, columns);
+        if (row.getLong(LONG_COL) == null) {
+          fields.remove(fields.size() - 1);
+        }
+        actual.put(row.getInteger(KEY), fields);
+      }
+    });
+    Assert.assertEquals(max, actual.size());
+    for (int i = 0; i < max; i++) {
+      Assert.assertEquals(expected.get(i), actual.get(i));
+    }
+
+    // Delete half of the rows
+    getTransactionRunner().run(context -> {
+      StructuredTable table = context.getTable(SIMPLE_TABLE);
+      table.multiDelete(keys.subList(0, max / 2));
+    });
+    getTransactionRunner().run(context -> {
+      StructuredTable table = context.getTable(SIMPLE_TABLE);
+      Set<Integer> remaining = new HashSet<>();
+      for (StructuredRow row : table.multiRead(keys)) {
+        remaining.add(row.getInteger(KEY));
+      }
+      Assert.assertEquals(IntStream.range(max / 2, max).boxed().collect(Collectors.toSet()), remaining);
+    });
+  }
+
   @Test
   public void testSimpleUpdate() throws Exception {
     int max = 10;
@@ -561,10 +650,15 @@ public abstract class StructuredTableTest {
   }
 
   private List<Collection<Field<?>>> scanSimpleStructuredRows(Range range, int max) throws Exception {
+    return scanSimpleStructuredRows(Collections.singleton(range), max);
+  }
+
+  private List<Collection<Field<?>>> scanSimpleStructuredRows(Collection<Range> ranges, int max) throws Exception {
     List<Collection<Field<?>>> actual = new ArrayList<>(max);
     getTransactionRunner().run(context -> {
       StructuredTable table = context.getTable(SIMPLE_TABLE);
-      try (CloseableIterator<StructuredRow> iterator = table.scan(range, max)) {
+      try (CloseableIterator<StructuredRow> iterator = ranges.size() == 1
+        ? table.scan(ranges.iterator().next(), max) : table.scan(ranges, max)) {
         while (iterator.hasNext()) {
           StructuredRow row = iterator.next();
           actual.add(Arrays.asList(Fields.intField(KEY, row.getInteger(KEY)),
@@ -19,22 +19,27 @@ package io.cdap.cdap.messaging.cache;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.ImmutableList;
 import io.cdap.cdap.api.dataset.lib.CloseableIterator;
 import io.cdap.cdap.api.metrics.MetricsContext;
 import io.cdap.cdap.messaging.store.MessageFilter;
+import org.apache.twill.common.Cancellable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Comparator;
 import java.util.ConcurrentModificationException;
 import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
-import java.util.NavigableSet;
-import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
-import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 import javax.annotation.Nullable;
 
 /**
@@ -44,6 +49,13 @@ import javax.annotation.Nullable;
  * - Single writer, concurrent fetchers
  * - Ordered, unique entry (row key)
  *
+ * Entries are stored in a list of append-only segments, in ascending order. Only the last segment is appended to,
+ * and a new segment is started when it reaches its size or weight limit. Fetchers scan the segments without
+ * acquiring any lock. This is possible because entries in a segment are never modified or cleared once added;
+ * removal of entries is done by advancing the start position of the first segment, and by dropping
+ * whole segments from the head of the list once all their entries are removed. A fetcher that is scanning
+ * while entries are being removed will see the cache as it was before the removal.
+ *
  * This cache uses three memory limits to balance between publish and consume efficiency as well as
  * bounding the memory usage. It uses a provided {@link Weigher} to compute the weight of each entry
  * being stored inside the cache.
@@ -55,25 +67,41 @@ import javax.annotation.Nullable;
  *   by the consumer. On adding entries to the cache, the cache can keep growing without blocking as long as
  *   the hard limit is not hit so that the publisher doesn't need to be blocked.
  *   The room between the reduce trigger and hard limits is basically the buffer for non-blocking addition.
- *   - On addition, once the hard limit is reached, a blocking operation is needed to reduce the weight of the
- *     cache back to min retain.
+ *   - On addition, once the hard limit is reached, the weight of the cache is reduced back to min retain.
  *   - On fetching entries from the cache, the fetcher will check whether it needs to reduce the cache weight and reduce
- *     it if needed. This essentially is to amortize the cost of the blocking weight reduction operations among all
+ *     it if needed. This essentially is to amortize the cost of the weight reduction operations among all
  *     fetchers (which typically has multiple of them), without blocking the single publish as much as possible.
  *
+ * Since segments are released as a whole, memory held by removed entries is only reclaimed when the segment
+ * containing them is dropped. The weight limit of each segment is a fraction of the hard limit to bound the
+ * amount of memory held this way.
+ *
+ * Listeners can be added through the {@link #addListener(Runnable)} method to get notified when new entries are
+ * added to the cache. This allows fetchers that are waiting for new entries to avoid repeatedly scanning the cache.
+ *
  * @param <T> type of entry stored in the cache
  */
 public class MessageCache<T> {
 
+  private static final Logger LOG = LoggerFactory.getLogger(MessageCache.class);
+
   private static final String METRICS_WEIGHT = "cache.weight";
   private static final String METRICS_ENTRIES_ADDED = "cache.entries.added";
   private static final String METRICS_ENTRIES_REMOVED = "cache.entries.removed";
+  private static final String METRICS_SEGMENTS_REMOVED = "cache.segments.removed";
   private static final String METRICS_ADD_REQUESTS = "cache.add.requests";
   private static final String METRICS_ADD_REDUCE_WEIGHT = "cache.add.reduce.weight";
   private static final String METRICS_SCAN_REQUESTS = "cache.scan.requests";
   private static final String METRICS_SCAN_REDUCE_WEIGHT = "cache.scan.reduce.weight";
 
-  private final NavigableSet<CacheEntry<T>> cache;
+  // Maximum number of entries in a segment
+  private static final int MAX_SEGMENT_ENTRIES = 4096;
+  // Initial capacity of a segment. The capacity grows up to MAX_SEGMENT_ENTRIES as entries are added.
+  private static final int INITIAL_SEGMENT_CAPACITY = 16;
+  // The weight limit of each segment is the hard limit divided by this value
+  private static final int SEGMENTS_PER_HARD_LIMIT = 16;
+
+  private volatile List<Segment<T>> segments;
   private final Comparator<T> comparator;
   private final AtomicReference<Limits> limits;
   private final MetricsContext metricsContext;
@@ -81,7 +109,10 @@ public class MessageCache<T> {
   private final AtomicBoolean needReduceWeight;
   private final AtomicBoolean adding;
   private final Weigher<T> weigher;
-  private final ReadWriteLock cacheLock;
+  private final Queue<Runnable> listeners;
+  // Lock for serializing modifications to the segment list, entries removal and entries update.
+  // Scanning of the cache doesn't need to acquire this lock.
+  private final Lock modifyLock;
 
   /**
    * Creates a new instance of the cache.
@@ -92,7 +123,7 @@ public class MessageCache<T> {
    * @param metricsContext a {@link MetricsContext} for emitting metrics about this cache.
    */
   public MessageCache(Comparator<T> comparator, Weigher<T> weigher, Limits limits, MetricsContext metricsContext) {
-    this.cache = new ConcurrentSkipListSet<>(new CacheEntryComparator<>(comparator));
+    this.segments = ImmutableList.of();
     this.comparator = comparator;
     this.limits = new AtomicReference<>(limits);
     this.metricsContext = metricsContext;
@@ -100,7 +131,8 @@ public class MessageCache<T> {
     this.needReduceWeight = new AtomicBoolean();
     this.adding = new AtomicBoolean();
     this.weigher = weigher;
-    this.cacheLock = new ReentrantReadWriteLock();
+    this.listeners = new ConcurrentLinkedQueue<>();
+    this.modifyLock = new ReentrantLock();
   }
 
   /**
@@ -128,7 +160,8 @@ public class MessageCache<T> {
 
     try {
       long newWeight = 0L;
-      CacheEntry<T> largestCacheEntry = null;
+      T largestEntry = null;
+      boolean first = true;
 
       int entriesAdded = 0;
       while (entries.hasNext()) {
@@ -142,27 +175,28 @@ public class MessageCache<T> {
         }
 
         // Make sure new entries are also in increasing order.
-        // For the first entry from the provided iterator, it must be larger than everything in the cache, hence
-        // the ceiling call must be returning null.
+        // For the first entry from the provided iterator, it must be larger than everything in the cache.
         // For sub-sequence entries in the iterator, they must be in strictly increasing order
-        largestCacheEntry = largestCacheEntry == null ? cache.ceiling(cacheEntry) : largestCacheEntry;
-        if (largestCacheEntry != null && comparator.compare(largestCacheEntry.getEntry(), cacheEntry.getEntry()) >= 0) {
+        if (first) {
+          largestEntry = getLastEntry();
+          first = false;
+        }
+        if (largestEntry != null && comparator.compare(largestEntry, entry) >= 0) {
           // Entries must be in strictly increasing order
           // Clear the cache to reset state. This is just for precaution, as this shouldn't happen,
           // unless there is bug in the TMS system (from the caller side).
           currentWeight.addAndGet(-1 * cacheEntry.getWeight());
           clear();
           throw new IllegalArgumentException("Cache entry must be in strictly increasing order. " +
-                                               "Entry " + entry + " is smaller than or equal to " +
-                                               largestCacheEntry.getEntry());
+                                               "Entry " + entry + " is smaller than or equal to " + largestEntry);
         }
 
         // It's ok to "leak" this to reader even if the new weight is larger than the hard limit
         // The entry will get removed eventually and the read/write operations as a whole still give valid
         // results
-        cache.add(cacheEntry);
+        getWritableSegment().append(cacheEntry);
         entriesAdded++;
-        largestCacheEntry = cacheEntry;
+        largestEntry = entry;
       }
 
       metricsContext.increment(METRICS_ADD_REQUESTS, 1L);
@@ -175,11 +209,31 @@ public class MessageCache<T> {
       } else if (newWeight > limits.get().getReduceTrigger()) {
         needReduceWeight.compareAndSet(false, true);
       }
+
+      if (entriesAdded > 0) {
+        notifyListeners();
+      }
     } finally {
       adding.set(false);
     }
   }
 
+  /**
+   * Adds a listener to get notified when new entries are added to the cache. The listener is only called once,
+   * from the thread that calls the {@link #addAll(Iterator)} method after the new entries are visible to
+   * {@link #scan(Object, boolean, int, MessageFilter)}. The listener should return quickly and should not
+   * call back to this cache, since it blocks the addition of entries.
+   *
+   * @param listener the listener to call when there are new entries
+   * @return a {@link Cancellable} to remove the listener if it has not been called yet
+   */
+  public Cancellable addListener(Runnable listener) {
+    // Wraps the listener so that the same listener can be added multiple times and removed independently
+    Runnable wrapped = listener::run;
+    listeners.add(wrapped);
+    return () -> listeners.remove(wrapped);
+  }
+
   /**
    * Creates a {@link Scanner} for fetching cached entries in ascending order.
    *
@@ -190,29 +244,58 @@ public class MessageCache<T> {
    * @return a {@link Scanner} for accessing to the fetched entries
    */
   public Scanner<T> scan(T startEntry, boolean includeStart, int limit, MessageFilter<T> filter) {
-    List<T> entries = new LinkedList<>();
+    List<T> entries = new ArrayList<>();
+
+    // No lock is needed. Entries in a segment are never modified once added, hence copying from the
+    // snapshot of the segment list always gives a valid view of the cache, even if there are concurrent
+    // weight reduction.
+    List<Segment<T>> segments = this.segments;
+    T firstInCache = null;
+    boolean located = false;
+    boolean done = false;
+
+    for (Segment<T> segment : segments) {
+      // Read the size before reading the entries array. See Segment.append.
+      int end = segment.size;
+      CacheEntry<T>[] segmentEntries = segment.entries;
+
+      // Only the first non-empty segment can have entries removed from the front.
+      int start = 0;
+      if (firstInCache == null) {
+        start = segment.start;
+        if (start >= end) {
+          continue;
+        }
+        firstInCache = segmentEntries[start].getEntry();
+      }
 
-    // Acquire the read lock and copy the entries. This is to guard against weight reduction while the caller
-    // is iterating using the returned Scanner.
-    cacheLock.readLock().lock();
-    T firstInCache;
-    try {
-      firstInCache = cache.isEmpty() ? null : cache.first().getEntry();
-      for (CacheEntry<T> cacheEntry : cache.tailSet(new CacheEntry<>(startEntry, 0), includeStart)) {
+      // Locate the position of the start entry. Since entries are in ascending order,
+      // all entries after it are included.
+      if (!located) {
+        start = search(segmentEntries, start, end, startEntry, includeStart);
+        located = start < end;
+      }
+
+      for (int i = start; i < end; i++) {
         if (entries.size() >= limit) {
+          done = true;
           break;
         }
 
-        MessageFilter.Result result = filter.apply(cacheEntry.getEntry());
+        T entry = segmentEntries[i].getEntry();
+        MessageFilter.Result result = filter.apply(entry);
         if (result == MessageFilter.Result.ACCEPT) {
-          entries.add(cacheEntry.getEntry());
+          entries.add(entry);
         } else if (result == MessageFilter.Result.HOLD) {
           // Hold means not to scan more, so just break
+          done = true;
           break;
         }
       }
-    } finally {
-      cacheLock.readLock().unlock();
+
+      if (done) {
+        break;
+      }
     }
 
     metricsContext.increment(METRICS_SCAN_REQUESTS, 1L);
@@ -239,20 +322,42 @@ public class MessageCache<T> {
    * @param updater a {@link EntryUpdater} to update the content of a entry
    */
   public void updateEntries(T startEntry, T endEntry, EntryUpdater<T> updater) {
-    CacheEntry<T> startCacheEntry = new CacheEntry<>(startEntry, 0);
-
-    cacheLock.writeLock().lock();
+    modifyLock.lock();
     try {
-      CacheEntry<T> lower = cache.lower(startCacheEntry);
-      Iterator<CacheEntry<T>> iterator = cache.subSet(startCacheEntry, true,
-                                                      new CacheEntry<>(endEntry, 0), true).iterator();
-      CacheEntry<T> cacheEntry = iterator.hasNext() ? iterator.next() : null;
-      while (cacheEntry != null) {
-        CacheEntry<T> nextCacheEntry = iterator.hasNext() ? iterator.next() : null;
-        CacheEntry<T> higher = nextCacheEntry == null ? cache.higher(cacheEntry) : nextCacheEntry;
+      // Collect all entries currently in the cache that are in the update range, with the entry right before
+      // and right after the range for validating the ordering after update.
+      T lower = null;
+      T higher = null;
+      List<T> toUpdate = new ArrayList<>();
+
+      boolean first = true;
+      for (Segment<T> segment : segments) {
+        int end = segment.size;
+        CacheEntry<T>[] segmentEntries = segment.entries;
+        int start = first ? segment.start : 0;
+        first = false;
+
+        for (int i = start; i < end && higher == null; i++) {
+          T entry = segmentEntries[i].getEntry();
+          if (comparator.compare(entry, startEntry) < 0) {
+            lower = entry;
+          } else if (comparator.compare(entry, endEntry) <= 0) {
+            toUpdate.add(entry);
+          } else {
+            higher = entry;
+          }
+        }
+        if (higher != null) {
+          break;
+        }
+      }
+
+      for (int i = 0; i < toUpdate.size(); i++) {
+        T entry = toUpdate.get(i);
+        T next = i + 1 < toUpdate.size() ? toUpdate.get(i + 1) : higher;
 
         try {
-          updater.updateEntry(cacheEntry.getEntry());
+          updater.updateEntry(entry);
         } catch (RuntimeException e) {
           clear();
           throw e;
@@ -260,19 +365,17 @@ public class MessageCache<T> {
 
         // A quick check that the ordering hasn't been altered.
         // It doesn't cover all possible case though. This is just a quick catch for bug in the caller.
-        if ((lower != null && comparator.compare(lower.getEntry(), cacheEntry.getEntry()) >= 0)
-            || (higher != null && comparator.compare(higher.getEntry(), cacheEntry.getEntry()) <= 0)) {
+        if ((lower != null && comparator.compare(lower, entry) >= 0)
+          || (next != null && comparator.compare(next, entry) <= 0)) {
           // This shouldn't happen, unless there is bug in the caller.
           clear();
           throw new IllegalStateException("Entry order should not be altered after update.");
         }
 
-        lower = cacheEntry;
-        cacheEntry = nextCacheEntry;
+        lower = entry;
       }
-
     } finally {
-      cacheLock.writeLock().unlock();
+      modifyLock.unlock();
     }
   }
 
@@ -293,12 +396,12 @@ public class MessageCache<T> {
    * @param limits the new limits for this cache.
    */
   public void resize(Limits limits) {
-    cacheLock.writeLock().lock();
+    modifyLock.lock();
     try {
       this.limits.set(limits);
       reduceWeight();
     } finally {
-      cacheLock.writeLock().unlock();
+      modifyLock.unlock();
     }
   }
 
@@ -317,29 +420,159 @@ public class MessageCache<T> {
     return currentWeight.get();
   }
 
+  /**
+   * Returns the number of segments currently in the cache.
+   */
+  @VisibleForTesting
+  int getSegmentCount() {
+    return segments.size();
+  }
+
   /**
    * Reduces the cache weight. Cached entries will be removed until the cache weight is smaller than the soft limit.
+   * Segments that have all entries removed are dropped from the cache, except for the last one, which
+   * can still be appended to by the writer.
    */
   private void reduceWeight() {
     int entriesRemoved = 0;
-    cacheLock.writeLock().lock();
+    int segmentsRemoved = 0;
+    modifyLock.lock();
     try {
       long newWeight = currentWeight.get();
-      Iterator<CacheEntry<T>> iterator = cache.iterator();
-      while (iterator.hasNext()) {
-        CacheEntry<T> cacheEntry = iterator.next();
-        // If removing the next entry is smaller than the min weight, we are done with the reduce logic
-        if (newWeight - cacheEntry.getWeight() < limits.get().getMinRetain()) {
+      long minRetain = limits.get().getMinRetain();
+      List<Segment<T>> segments = this.segments;
+
+      for (int i = 0; i < segments.size(); i++) {
+        Segment<T> segment = segments.get(i);
+        boolean last = i == segments.size() - 1;
+        // Read the size before reading the entries array and the weight. See Segment.append.
+        int end = segment.size;
+        int start = segment.start;
+
+        // For segment that is no longer appended to, drop it as a whole if possible
+        if (!last) {
+          long liveWeight = segment.weight - segment.removedWeight;
+          if (newWeight - liveWeight >= minRetain) {
+            newWeight = currentWeight.addAndGet(-1 * liveWeight);
+            entriesRemoved += end - start;
+            segmentsRemoved++;
+            continue;
+          }
+        }
+
+        // Otherwise remove entries one by one from the front of the segment
+        CacheEntry<T>[] segmentEntries = segment.entries;
+        long removedWeight = 0L;
+        while (start < end) {
+          int weight = segmentEntries[start].getWeight();
+          // If removing the next entry is smaller than the min weight, we are done with the reduce logic
+          if (newWeight - weight < minRetain) {
+            break;
+          }
+          start++;
+          entriesRemoved++;
+          removedWeight += weight;
+          newWeight = currentWeight.addAndGet(-1 * weight);
+        }
+        segment.removedWeight += removedWeight;
+        segment.start = start;
+
+        if (start < end || last) {
           break;
         }
-        iterator.remove();
-        entriesRemoved++;
-        newWeight = currentWeight.addAndGet(-1 * cacheEntry.getWeight());
+        segmentsRemoved++;
+      }
+
+      if (segmentsRemoved > 0) {
+        this.segments = ImmutableList.copyOf(segments.subList(segmentsRemoved, segments.size()));
       }
     } finally {
-      cacheLock.writeLock().unlock();
+      modifyLock.unlock();
     }
     metricsContext.increment(METRICS_ENTRIES_REMOVED, entriesRemoved);
+    metricsContext.increment(METRICS_SEGMENTS_REMOVED, segmentsRemoved);
+  }
+
+  /**
+   * Calls and removes all listeners added through {@link #addListener(Runnable)}.
+   */
+  private void notifyListeners() {
+    Runnable listener = listeners.poll();
+    while (listener != null) {
+      try {
+        listener.run();
+      } catch (Throwable t) {
+        LOG.warn("Exception raised when notifying message cache listener {}", listener, t);
+      }
+      listener = listeners.poll();
+    }
+  }
+
+  /**
+   * Returns the largest entry in the cache or {@code null} if the cache is empty.
+   */
+  @Nullable
+  private T getLastEntry() {
+    List<Segment<T>> segments = this.segments;
+    if (segments.isEmpty()) {
+      return null;
+    }
+    // Only the last segment can be empty. If it is empty, all entries in the cache were removed.
+    Segment<T> segment = segments.get(segments.size() - 1);
+    int end = segment.size;
+    return end > segment.start ? segment.entries[end - 1].getEntry() : null;
+  }
+
+  /**
+   * Returns the {@link Segment} for appending a new entry. A new segment will be added to the cache if
+   * the last segment is full or all of its entries were removed.
+   * This method should only be called from the {@link #addAll(Iterator)} method.
+   */
+  private Segment<T> getWritableSegment() {
+    List<Segment<T>> segments = this.segments;
+    Segment<T> segment = segments.isEmpty() ? null : segments.get(segments.size() - 1);
+    if (segment != null && !segment.isFull() && segment.start < segment.size) {
+      return segment;
+    }
+
+    modifyLock.lock();
+    try {
+      segments = this.segments;
+      int size = segments.size();
+      segment = size == 0 ? null : segments.get(size - 1);
+
+      // Replace the last segment if it is empty, otherwise append to the segment list
+      List<Segment<T>> newSegments = new ArrayList<>(segments);
+      if (segment != null && segment.start >= segment.size) {
+        newSegments.remove(size - 1);
+      }
+      Segment<T> newSegment = new Segment<>(Math.max(1L, limits.get().getHardLimit() / SEGMENTS_PER_HARD_LIMIT));
+      newSegments.add(newSegment);
+      this.segments = ImmutableList.copyOf(newSegments);
+      return newSegment;
+    } finally {
+      modifyLock.unlock();
+    }
+  }
+
+  /**
+   * Returns the index of the first entry in the given range that is larger than the given entry,
+   * or larger than or equal to if {@code inclusive} is {@code true}.
+   * If there is no such entry, {@code end} is returned.
+   */
+  private int search(CacheEntry<T>[] entries, int start, int end, T entry, boolean inclusive) {
+    int low = start;
+    int high = end;
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      int cmp = comparator.compare(entries[mid].getEntry(), entry);
+      if (cmp < 0 || (cmp == 0 && !inclusive)) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    return low;
   }
 
   /**
@@ -492,22 +725,51 @@ public class MessageCache<T> {
   }
 
   /**
-   * A {@link Comparator} for {@link CacheEntry} that only compares with the user entry of type {@code T},
-   * using the provided {@link Comparator}.
+   * An append-only segment of cache entries. Only the writer thread appends to a segment,
+   * while the start position is only advanced while holding the cache modify lock.
    *
-   * @param <T> type of the user entry
+   * @param <T> type of the entry
    */
-  private static final class CacheEntryComparator<T> implements Comparator<CacheEntry<T>> {
-
-    private final Comparator<T> comparator;
+  private static final class Segment<T> {
+
+    private final long weightLimit;
+    private volatile CacheEntry<T>[] entries;
+    private volatile int size;
+    private volatile int start;
+    // Total weight of all entries appended to this segment. Only updated by the writer.
+    private long weight;
+    // Total weight of entries before the start position. Only updated while holding the modify lock.
+    private long removedWeight;
+
+    @SuppressWarnings("unchecked")
+    Segment(long weightLimit) {
+      this.weightLimit = weightLimit;
+      this.entries = (CacheEntry<T>[]) new CacheEntry[INITIAL_SEGMENT_CAPACITY];
+    }
 
-    private CacheEntryComparator(Comparator<T> comparator) {
-      this.comparator = comparator;
+    /**
+     * Returns {@code true} if no more entry should be appended to this segment.
+     */
+    boolean isFull() {
+      return size >= MAX_SEGMENT_ENTRIES || weight >= weightLimit;
     }
 
-    @Override
-    public int compare(CacheEntry<T> entry1, CacheEntry<T> entry2) {
-      return comparator.compare(entry1.getEntry(), entry2.getEntry());
+    /**
+     * Appends an entry to this segment. Readers always read the {@link #size} before reading the
+     * {@link #entries}, hence will see the entries array that contains all entries up to the size.
+     */
+    void append(CacheEntry<T> cacheEntry) {
+      CacheEntry<T>[] entries = this.entries;
+      int size = this.size;
+      if (size == entries.length) {
+        entries = Arrays.copyOf(entries, Math.min(entries.length * 2, MAX_SEGMENT_ENTRIES));
+        entries[size] = cacheEntry;
+        this.entries = entries;
+      } else {
+        entries[size] = cacheEntry;
+      }
+      weight += cacheEntry.getWeight();
+      this.size = size + 1;
     }
   }
 }
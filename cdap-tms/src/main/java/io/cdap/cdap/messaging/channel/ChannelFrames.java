@@ -0,0 +1,136 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.cdap.messaging.channel;
+
+import io.cdap.cdap.messaging.Schemas;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.handler.codec.LengthFieldBasedFrameDecoder;
+
+import java.nio.charset.StandardCharsets;
+import javax.annotation.Nullable;
+
+/**
+ * Helper class for the framing protocol used by the binary messaging channel. Each frame has the following layout:
+ *
+ * <pre>
+ * {@code
+ *   [int frame length][long request id][byte frame type][body]
+ * }
+ * </pre>
+ *
+ * The frame length excludes the length field itself. Request ids are assigned by the client so that multiple
+ * requests can be in flight on the same channel, with responses matched by the request id.
+ *
+ * Request frames have the topic namespace and name as the first two strings in the body, followed by the
+ * avro encoded {@link Schemas.V1.PublishRequest} or {@link Schemas.V1.ConsumeRequest}.
+ * A fetch request is answered by zero or more {@link #MESSAGES} frames followed by an {@link #END} frame.
+ * Any request can be answered by an {@link #ERROR} frame, which carries a http status code and an error message.
+ */
+public final class ChannelFrames {
+
+  // Request frame types
+  public static final byte PUBLISH = 1;
+  public static final byte STORE = 2;
+  public static final byte FETCH = 3;
+
+  // Response frame types
+  public static final byte OK = 10;
+  public static final byte MESSAGES = 11;
+  public static final byte END = 12;
+  public static final byte ERROR = 13;
+
+  private static final int LENGTH_FIELD_SIZE = 4;
+
+  /**
+   * Creates a {@link LengthFieldBasedFrameDecoder} for decoding frames. The decoded frame has the length field
+   * stripped, hence starting with the request id.
+   *
+   * @param maxFrameSize maximum size of a frame in bytes
+   */
+  public static LengthFieldBasedFrameDecoder createFrameDecoder(int maxFrameSize) {
+    return new LengthFieldBasedFrameDecoder(maxFrameSize, 0, LENGTH_FIELD_SIZE, 0, LENGTH_FIELD_SIZE);
+  }
+
+  /**
+   * Creates a new frame buffer with the header written. Caller should write the body to the returned buffer
+   * and call {@link #complete(ByteBuf)} before sending it out.
+   */
+  public static ByteBuf newFrame(ByteBufAllocator allocator, long requestId, byte type) {
+    ByteBuf frame = allocator.buffer();
+    frame.writeInt(0);
+    frame.writeLong(requestId);
+    frame.writeByte(type);
+    return frame;
+  }
+
+  /**
+   * Updates the length field of the given frame based on the number of bytes written to it.
+   *
+   * @return the same frame buffer
+   */
+  public static ByteBuf complete(ByteBuf frame) {
+    return frame.setInt(0, frame.writerIndex() - LENGTH_FIELD_SIZE);
+  }
+
+  /**
+   * Writes a UTF-8 string prefixed with its length.
+   */
+  public static void writeString(ByteBuf buf, String str) {
+    writeBytes(buf, str.getBytes(StandardCharsets.UTF_8));
+  }
+
+  /**
+   * Reads a UTF-8 string written by {@link #writeString(ByteBuf, String)}.
+   */
+  public static String readString(ByteBuf buf) {
+    int len = buf.readInt();
+    String str = buf.toString(buf.readerIndex(), len, StandardCharsets.UTF_8);
+    buf.skipBytes(len);
+    return str;
+  }
+
+  /**
+   * Writes a byte array prefixed with its length. A {@code null} array is written with length {@code -1}.
+   */
+  public static void writeBytes(ByteBuf buf, @Nullable byte[] bytes) {
+    if (bytes == null) {
+      buf.writeInt(-1);
+      return;
+    }
+    buf.writeInt(bytes.length);
+    buf.writeBytes(bytes);
+  }
+
+  /**
+   * Reads a byte array written by {@link #writeBytes(ByteBuf, byte[])}.
+   */
+  @Nullable
+  public static byte[] readBytes(ByteBuf buf) {
+    int len = buf.readInt();
+    if (len < 0) {
+      return null;
+    }
+    byte[] bytes = new byte[len];
+    buf.readBytes(bytes);
+    return bytes;
+  }
+
+  private ChannelFrames() {
+    // no-op
+  }
+}
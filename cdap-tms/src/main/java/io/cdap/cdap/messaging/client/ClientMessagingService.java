@@ -31,6 +31,7 @@ import io.cdap.cdap.api.dataset.lib.CloseableIterator;
 import io.cdap.cdap.api.messaging.TopicAlreadyExistsException;
 import io.cdap.cdap.api.messaging.TopicNotFoundException;
 import io.cdap.cdap.common.ServiceUnavailableException;
+import io.cdap.cdap.common.conf.CConfiguration;
 import io.cdap.cdap.common.conf.Constants;
 import io.cdap.cdap.common.http.DefaultHttpRequestConfig;
 import io.cdap.cdap.common.internal.remote.RemoteClient;
@@ -40,6 +41,7 @@ import io.cdap.cdap.messaging.RollbackDetail;
 import io.cdap.cdap.messaging.Schemas;
 import io.cdap.cdap.messaging.StoreRequest;
 import io.cdap.cdap.messaging.TopicMetadata;
+import io.cdap.cdap.messaging.channel.ChannelFrames;
 import io.cdap.cdap.messaging.data.RawMessage;
 import io.cdap.cdap.proto.id.NamespaceId;
 import io.cdap.cdap.proto.id.TopicId;
@@ -62,6 +64,7 @@ import org.apache.tephra.TransactionCodec;
 import org.apache.twill.discovery.DiscoveryServiceClient;
 
 import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
 import java.lang.reflect.Type;
@@ -83,9 +86,14 @@ import javax.annotation.Nullable;
  * The client implementation of {@link MessagingService}. This client is intended for internal
  * higher level API implementation only.
  *
+ * If {@link Constants.MessagingSystem#CHANNEL_ENABLED} is {@code true}, publish, store and fetch calls are made
+ * through a persistent binary channel to the messaging service when it is available, with fallback to HTTP.
+ * The channel is not used if {@link Constants.Security#ENABLED} is {@code true}, since it doesn't support
+ * authentication. Call {@link #close()} to release the connection of the channel.
+ *
  * NOTE: This class shouldn't expose to end user (e.g. cdap-client module).
  */
-public final class ClientMessagingService implements MessagingService {
+public final class ClientMessagingService implements MessagingService, Closeable {
 
   private static final HttpRequestConfig HTTP_REQUEST_CONFIG = new DefaultHttpRequestConfig();
   private static final TransactionCodec TRANSACTION_CODEC = new TransactionCodec();
@@ -95,12 +103,30 @@ public final class ClientMessagingService implements MessagingService {
   private static final Type TOPIC_LIST_TYPE = new TypeToken<List<String>>() { }.getType();
 
   private final RemoteClient remoteClient;
+  private final MessagingChannelClient channelClient;
 
   @VisibleForTesting
+  public ClientMessagingService(DiscoveryServiceClient discoveryServiceClient) {
+    this(CConfiguration.create(), discoveryServiceClient);
+  }
+
   @Inject
-  public ClientMessagingService(final DiscoveryServiceClient discoveryServiceClient) {
+  public ClientMessagingService(CConfiguration cConf, DiscoveryServiceClient discoveryServiceClient) {
     this.remoteClient = new RemoteClient(discoveryServiceClient, Constants.Service.MESSAGING_SERVICE,
                                          HTTP_REQUEST_CONFIG, "/v1/namespaces/");
+    int maxFrameSize = cConf.getInt(Constants.MessagingSystem.HTTP_SERVER_MAX_REQUEST_SIZE_MB) * 1024 * 1024;
+    this.channelClient = cConf.getBoolean(Constants.MessagingSystem.CHANNEL_ENABLED)
+      && !cConf.getBoolean(Constants.Security.ENABLED)
+      ? new MessagingChannelClient(discoveryServiceClient, maxFrameSize,
+                                   HTTP_REQUEST_CONFIG.getConnectTimeout(), HTTP_REQUEST_CONFIG.getReadTimeout())
+      : null;
+  }
+
+  @Override
+  public void close() {
+    if (channelClient != null) {
+      channelClient.close();
+    }
   }
 
   @Override
@@ -181,6 +207,11 @@ public final class ClientMessagingService implements MessagingService {
   @Nullable
   @Override
   public RollbackDetail publish(StoreRequest request) throws TopicNotFoundException, IOException {
+    if (isChannelAvailable()) {
+      byte[] body = performChannelWriteRequest(request, true);
+      return body.length == 0 ? null : new ClientRollbackDetail(body);
+    }
+
     HttpResponse response = performWriteRequest(request, true);
 
     byte[] body = response.getResponseBody();
@@ -195,6 +226,10 @@ public final class ClientMessagingService implements MessagingService {
 
   @Override
   public void storePayload(StoreRequest request) throws TopicNotFoundException, IOException {
+    if (isChannelAvailable()) {
+      performChannelWriteRequest(request, false);
+      return;
+    }
     performWriteRequest(request, false);
   }
 
@@ -229,6 +264,50 @@ public final class ClientMessagingService implements MessagingService {
    */
   private HttpResponse performWriteRequest(StoreRequest request,
                                            boolean publish) throws IOException, TopicNotFoundException {
+    // Make the publish request
+    String writeType = publish ? "publish" : "store";
+    TopicId topicId = request.getTopicId();
+    HttpRequest httpRequest = remoteClient.requestBuilder(HttpMethod.POST, createTopicPath(topicId) + "/" + writeType)
+      .addHeader(HttpHeaders.CONTENT_TYPE, "avro/binary")
+      .withBody(encodePublishRequest(request))
+      .build();
+
+    HttpResponse response = remoteClient.execute(httpRequest);
+
+    if (response.getResponseCode() == HttpURLConnection.HTTP_NOT_FOUND) {
+      throw new TopicNotFoundException(topicId.getNamespace(), topicId.getTopic());
+    }
+    handleError(response, "Failed to " + writeType + " message to topic " + topicId);
+    return response;
+  }
+
+  /**
+   * Makes a request through the messaging channel for writing to the messaging system.
+   *
+   * @param request contains information about what to write
+   * @param publish {@code true} to make publish call, {@code false} to make store call.
+   * @return the response body from the server
+   * @throws IOException if failed to perform the write operation
+   * @throws TopicNotFoundException if the topic to write to does not exist
+   */
+  private byte[] performChannelWriteRequest(StoreRequest request,
+                                            boolean publish) throws IOException, TopicNotFoundException {
+    String writeType = publish ? "publish" : "store";
+    TopicId topicId = request.getTopicId();
+    try {
+      return channelClient.write(topicId, publish ? ChannelFrames.PUBLISH : ChannelFrames.STORE,
+                                 encodePublishRequest(request));
+    } catch (MessagingChannelException e) {
+      handleChannelError(e, topicId, "Failed to " + writeType + " message to topic " + topicId);
+      // Not reachable as handleChannelError always throws
+      throw e;
+    }
+  }
+
+  /**
+   * Encodes the given {@link StoreRequest} as avro record based on the {@link Schemas.V1.PublishRequest#SCHEMA}.
+   */
+  private ByteBuffer encodePublishRequest(StoreRequest request) throws IOException {
     GenericRecord record = new GenericData.Record(Schemas.V1.PublishRequest.SCHEMA);
     if (request.isTransactional()) {
       record.put("transactionWritePointer", request.getTransactionWritePointer());
@@ -241,22 +320,26 @@ public final class ClientMessagingService implements MessagingService {
 
     DatumWriter<GenericRecord> datumWriter = new GenericDatumWriter<>(Schemas.V1.PublishRequest.SCHEMA);
     datumWriter.write(record, encoder);
+    return os.toByteBuffer();
+  }
 
-    // Make the publish request
-    String writeType = publish ? "publish" : "store";
-    TopicId topicId = request.getTopicId();
-    HttpRequest httpRequest = remoteClient.requestBuilder(HttpMethod.POST, createTopicPath(topicId) + "/" + writeType)
-      .addHeader(HttpHeaders.CONTENT_TYPE, "avro/binary")
-      .withBody(os.toByteBuffer())
-      .build();
-
-    HttpResponse response = remoteClient.execute(httpRequest);
+  /**
+   * Returns {@code true} if requests should be made through the messaging channel.
+   */
+  private boolean isChannelAvailable() {
+    return channelClient != null && channelClient.isAvailable();
+  }
 
-    if (response.getResponseCode() == HttpURLConnection.HTTP_NOT_FOUND) {
+  /**
+   * Handles error response received from the messaging channel. This method always throws.
+   */
+  private void handleChannelError(MessagingChannelException e, TopicId topicId,
+                                  String errorPrefix) throws IOException, TopicNotFoundException {
+    if (e.getResponseCode() == HttpURLConnection.HTTP_NOT_FOUND) {
       throw new TopicNotFoundException(topicId.getNamespace(), topicId.getTopic());
     }
-    handleError(response, "Failed to " + writeType + " message to topic " + topicId);
-    return response;
+    handleError(e.getResponseCode(), e::getMessage, errorPrefix);
+    throw e;
   }
 
   /**
@@ -396,12 +479,34 @@ public final class ClientMessagingService implements MessagingService {
         record.put("transaction", ByteBuffer.wrap(TRANSACTION_CODEC.encode(getTransaction())));
       }
 
+      // Fetch that waits for new messages always goes through http so that it won't occupy the channel server
+      // executor threads while waiting
+      long waitTimeoutMillis = getTransaction() == null ? getWaitTimeoutMillis() : 0L;
+      if (waitTimeoutMillis <= 0 && isChannelAvailable()) {
+        ExposedByteArrayOutputStream os = new ExposedByteArrayOutputStream();
+        Encoder encoder = EncoderFactory.get().directBinaryEncoder(os, null);
+        DatumWriter<GenericRecord> datumWriter = new GenericDatumWriter<>(Schemas.V1.ConsumeRequest.SCHEMA);
+        datumWriter.write(record, encoder);
+        try {
+          return channelClient.fetch(topicId, os.toByteBuffer());
+        } catch (MessagingChannelException e) {
+          handleChannelError(e, topicId, "Failed to fetch messages from topic " + topicId);
+        }
+      }
+
       // The cask common http library doesn't support read streaming, and we don't want to buffer all messages
       // in memory, hence we use the HttpURLConnection directly instead.
-      URL url = remoteClient.resolve(createTopicPath(topicId) + "/poll");
+      String path = createTopicPath(topicId) + "/poll";
+      int readTimeout = HTTP_REQUEST_CONFIG.getReadTimeout();
+      if (waitTimeoutMillis > 0) {
+        path += "?waitMillis=" + waitTimeoutMillis;
+        // Extends the read timeout by the wait time. A zero read timeout means infinite timeout.
+        readTimeout = readTimeout <= 0 ? 0 : (int) Math.min(Integer.MAX_VALUE, readTimeout + waitTimeoutMillis);
+      }
+      URL url = remoteClient.resolve(path);
       final HttpURLConnection urlConn = (HttpURLConnection)  url.openConnection();
       urlConn.setConnectTimeout(HTTP_REQUEST_CONFIG.getConnectTimeout());
-      urlConn.setReadTimeout(HTTP_REQUEST_CONFIG.getReadTimeout());
+      urlConn.setReadTimeout(readTimeout);
       urlConn.setRequestMethod("POST");
       urlConn.setRequestProperty(HttpHeaders.CONTENT_TYPE, "avro/binary");
       urlConn.setDoInput(true);
@@ -0,0 +1,466 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.cdap.messaging.client;
+
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
+import com.google.common.base.Throwables;
+import com.google.common.util.concurrent.SettableFuture;
+import io.cdap.cdap.api.dataset.lib.AbstractCloseableIterator;
+import io.cdap.cdap.api.dataset.lib.CloseableIterator;
+import io.cdap.cdap.common.ServiceUnavailableException;
+import io.cdap.cdap.common.conf.Constants;
+import io.cdap.cdap.common.discovery.EndpointStrategy;
+import io.cdap.cdap.common.discovery.RandomEndpointStrategy;
+import io.cdap.cdap.messaging.channel.ChannelFrames;
+import io.cdap.cdap.messaging.data.RawMessage;
+import io.cdap.cdap.proto.id.TopicId;
+import io.netty.bootstrap.Bootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import org.apache.twill.common.Cancellable;
+import org.apache.twill.common.Threads;
+import org.apache.twill.discovery.Discoverable;
+import org.apache.twill.discovery.DiscoveryServiceClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.Nullable;
+
+/**
+ * Client for the binary messaging channel served by the {@code MessagingChannelServer}. It keeps a single
+ * long-lived connection to the messaging service and multiplexes concurrent requests over it using the
+ * framing protocol defined in {@link ChannelFrames}. Requests are pipelined, meaning a new request can be
+ * sent before responses of earlier requests are received, and fetched messages are pushed by the server
+ * as they are read from the storage.
+ *
+ * The IO thread of the client only lives as long as the connection. Calling {@link #close()} closes the
+ * connection and releases the IO thread, after which the client is no longer available.
+ */
+final class MessagingChannelClient implements Closeable {
+
+  private static final Logger LOG = LoggerFactory.getLogger(MessagingChannelClient.class);
+
+  private final Supplier<EndpointStrategy> endpointStrategySupplier;
+  private final int maxFrameSize;
+  private final int connectTimeoutMillis;
+  private final long readTimeoutMillis;
+  private final AtomicLong requestIds;
+  private EventLoopGroup eventLoopGroup;
+  private volatile Channel channel;
+  private ResponseHandler responseHandler;
+  private volatile boolean closed;
+
+  MessagingChannelClient(DiscoveryServiceClient discoveryClient, int maxFrameSize,
+                         int connectTimeoutMillis, long readTimeoutMillis) {
+    // Use a supplier to delay the discovery until the first time it is being used.
+    this.endpointStrategySupplier = Suppliers.memoize(
+      () -> new RandomEndpointStrategy(() -> discoveryClient.discover(Constants.Service.MESSAGING_CHANNEL)));
+    this.maxFrameSize = maxFrameSize;
+    this.connectTimeoutMillis = connectTimeoutMillis;
+    this.readTimeoutMillis = readTimeoutMillis;
+    this.requestIds = new AtomicLong();
+  }
+
+  /**
+   * Returns {@code true} if there is an active connection or the channel server has been discovered.
+   */
+  boolean isAvailable() {
+    if (closed) {
+      return false;
+    }
+    Channel channel = this.channel;
+    return (channel != null && channel.isActive()) || endpointStrategySupplier.get().pick() != null;
+  }
+
+  /**
+   * Sends a publish or store request.
+   *
+   * @param topicId the topic to write to
+   * @param frameType either {@link ChannelFrames#PUBLISH} or {@link ChannelFrames#STORE}
+   * @param request the avro encoded publish request
+   * @return the body of the response, which is an empty array if there is no content
+   * @throws MessagingChannelException if the server responded with an error
+   * @throws IOException if failed to communicate with the server
+   */
+  byte[] write(TopicId topicId, byte frameType, ByteBuffer request) throws IOException {
+    SettableFuture<byte[]> future = SettableFuture.create();
+    Cancellable cancellable = send(topicId, frameType, request, new ResponseListener() {
+      @Override
+      public boolean onFrame(byte type, ByteBuf frame) {
+        if (type == ChannelFrames.ERROR) {
+          future.setException(decodeError(frame));
+        } else {
+          byte[] body = new byte[frame.readableBytes()];
+          frame.readBytes(body);
+          future.set(body);
+        }
+        return true;
+      }
+
+      @Override
+      public void onFailure(Throwable t) {
+        future.setException(t);
+      }
+    });
+
+    try {
+      return future.get(readTimeoutMillis, TimeUnit.MILLISECONDS);
+    } catch (InterruptedException e) {
+      cancellable.cancel();
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while waiting for response from messaging service", e);
+    } catch (TimeoutException e) {
+      cancellable.cancel();
+      throw new SocketTimeoutException("Timeout while waiting for response from messaging service");
+    } catch (ExecutionException e) {
+      Throwables.propagateIfInstanceOf(e.getCause(), IOException.class);
+      throw Throwables.propagate(e.getCause());
+    }
+  }
+
+  /**
+   * Sends a fetch request. This method blocks until the first response frame is received, so that errors
+   * such as topic not found are surfaced from this method.
+   *
+   * @param topicId the topic to fetch from
+   * @param request the avro encoded consume request
+   * @return a {@link CloseableIterator} of fetched messages
+   * @throws MessagingChannelException if the server responded with an error
+   * @throws IOException if failed to communicate with the server
+   */
+  CloseableIterator<RawMessage> fetch(TopicId topicId, ByteBuffer request) throws IOException {
+    FetchListener listener = new FetchListener();
+    Cancellable cancellable = send(topicId, ChannelFrames.FETCH, request, listener);
+    try {
+      listener.awaitFirst(readTimeoutMillis);
+    } catch (IOException e) {
+      cancellable.cancel();
+      throw e;
+    }
+    return new AbstractCloseableIterator<RawMessage>() {
+
+      private Iterator<RawMessage> messages = Collections.emptyIterator();
+
+      @Override
+      protected RawMessage computeNext() {
+        try {
+          while (!messages.hasNext()) {
+            List<RawMessage> next = listener.take(readTimeoutMillis);
+            if (next == null) {
+              return endOfData();
+            }
+            messages = next.iterator();
+          }
+          return messages.next();
+        } catch (IOException e) {
+          throw Throwables.propagate(e);
+        }
+      }
+
+      @Override
+      public void close() {
+        // Frames arriving after this will be dropped
+        cancellable.cancel();
+      }
+    };
+  }
+
+  /**
+   * Closes the connection to the server and shuts down the IO thread. Pending requests will fail.
+   */
+  @Override
+  public void close() {
+    EventLoopGroup eventLoopGroup;
+    synchronized (this) {
+      if (closed) {
+        return;
+      }
+      closed = true;
+      eventLoopGroup = this.eventLoopGroup;
+      this.eventLoopGroup = null;
+      if (channel != null) {
+        channel.close().awaitUninterruptibly();
+      }
+    }
+    if (eventLoopGroup != null) {
+      eventLoopGroup.shutdownGracefully(0, 5, TimeUnit.SECONDS).awaitUninterruptibly();
+    }
+  }
+
+  /**
+   * Sends a request frame to the server.
+   *
+   * @return a {@link Cancellable} to stop receiving responses for the request
+   */
+  private Cancellable send(TopicId topicId, byte frameType,
+                           ByteBuffer request, ResponseListener listener) throws IOException {
+    Channel channel;
+    Map<Long, ResponseListener> listeners;
+    synchronized (this) {
+      channel = getChannel();
+      listeners = responseHandler.listeners;
+    }
+    long requestId = requestIds.incrementAndGet();
+
+    ByteBuf frame = ChannelFrames.newFrame(channel.alloc(), requestId, frameType);
+    ChannelFrames.writeString(frame, topicId.getNamespace());
+    ChannelFrames.writeString(frame, topicId.getTopic());
+    frame.writeBytes(request);
+
+    listeners.put(requestId, listener);
+    channel.writeAndFlush(ChannelFrames.complete(frame)).addListener(future -> {
+      if (!future.isSuccess()) {
+        ResponseListener removed = listeners.remove(requestId);
+        if (removed != null) {
+          removed.onFailure(future.cause());
+        }
+      }
+    });
+    return () -> listeners.remove(requestId);
+  }
+
+  /**
+   * Returns an active {@link Channel} to the server, connecting to it if necessary.
+   */
+  private synchronized Channel getChannel() throws IOException {
+    if (closed) {
+      throw new IOException("Messaging channel client is closed");
+    }
+    if (channel != null && channel.isActive()) {
+      return channel;
+    }
+
+    Discoverable discoverable = endpointStrategySupplier.get().pick(1L, TimeUnit.SECONDS);
+    if (discoverable == null) {
+      throw new ServiceUnavailableException(Constants.Service.MESSAGING_CHANNEL);
+    }
+
+    // The event loop group is shut down when the connection is closed, hence always create a new one
+    EventLoopGroup eventLoopGroup = new NioEventLoopGroup(
+      1, Threads.createDaemonThreadFactory("messaging-channel-client"));
+
+    ResponseHandler handler = new ResponseHandler();
+    Bootstrap bootstrap = new Bootstrap()
+      .group(eventLoopGroup)
+      .channel(NioSocketChannel.class)
+      .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, connectTimeoutMillis)
+      .option(ChannelOption.TCP_NODELAY, true)
+      .handler(new ChannelInitializer<SocketChannel>() {
+        @Override
+        protected void initChannel(SocketChannel ch) {
+          ch.pipeline()
+            .addLast("frame-decoder", ChannelFrames.createFrameDecoder(maxFrameSize))
+            .addLast("response-handler", handler);
+        }
+      });
+
+    ChannelFuture connectFuture = bootstrap.connect(discoverable.getSocketAddress()).awaitUninterruptibly();
+    if (!connectFuture.isSuccess()) {
+      eventLoopGroup.shutdownGracefully(0, 5, TimeUnit.SECONDS);
+      throw new ServiceUnavailableException(Constants.Service.MESSAGING_CHANNEL, connectFuture.cause());
+    }
+    channel = connectFuture.channel();
+    channel.closeFuture().addListener(future -> eventLoopGroup.shutdownGracefully(0, 5, TimeUnit.SECONDS));
+    this.eventLoopGroup = eventLoopGroup;
+    responseHandler = handler;
+    LOG.debug("Connected to messaging channel at {}", discoverable.getSocketAddress());
+    return channel;
+  }
+
+  /**
+   * Decodes an {@link ChannelFrames#ERROR} frame into a {@link MessagingChannelException}.
+   */
+  private static MessagingChannelException decodeError(ByteBuf frame) {
+    int responseCode = frame.readInt();
+    return new MessagingChannelException(responseCode, ChannelFrames.readString(frame));
+  }
+
+  /**
+   * Listener for response frames of a request.
+   */
+  private interface ResponseListener {
+
+    /**
+     * Called from the IO thread when a response frame is received.
+     *
+     * @return {@code true} if this is the last frame for the request
+     */
+    boolean onFrame(byte type, ByteBuf frame);
+
+    /**
+     * Called when the request failed without a response from the server.
+     */
+    void onFailure(Throwable t);
+  }
+
+  /**
+   * A {@link ResponseListener} for fetch requests that queues up messages pushed from the server.
+   */
+  private static final class FetchListener implements ResponseListener {
+
+    private static final Object END = new Object();
+
+    private final BlockingQueue<Object> queue = new LinkedBlockingQueue<>();
+    private Object head;
+
+    @Override
+    public boolean onFrame(byte type, ByteBuf frame) {
+      switch (type) {
+        case ChannelFrames.MESSAGES:
+          int count = frame.readInt();
+          List<RawMessage> messages = new ArrayList<>(count);
+          for (int i = 0; i < count; i++) {
+            messages.add(new RawMessage(ChannelFrames.readBytes(frame), ChannelFrames.readBytes(frame)));
+          }
+          queue.add(messages);
+          return false;
+        case ChannelFrames.END:
+          queue.add(END);
+          return true;
+        case ChannelFrames.ERROR:
+          queue.add(decodeError(frame));
+          return true;
+        default:
+          queue.add(new IOException("Unexpected frame type " + type + " for fetch request"));
+          return true;
+      }
+    }
+
+    @Override
+    public void onFailure(Throwable t) {
+      queue.add(t);
+    }
+
+    /**
+     * Waits for the first response and throws if it is a failure.
+     */
+    void awaitFirst(long timeoutMillis) throws IOException {
+      head = poll(timeoutMillis);
+      if (head instanceof Throwable) {
+        throwFailure((Throwable) head);
+      }
+    }
+
+    /**
+     * Returns the next batch of messages or {@code null} if there is no more messages.
+     */
+    @Nullable
+    @SuppressWarnings("unchecked")
+    List<RawMessage> take(long timeoutMillis) throws IOException {
+      Object next = head;
+      head = null;
+      if (next == null) {
+        next = poll(timeoutMillis);
+      }
+      if (next == END) {
+        // Put it back so that subsequent calls also see the end
+        head = END;
+        return null;
+      }
+      if (next instanceof Throwable) {
+        throwFailure((Throwable) next);
+      }
+      return (List<RawMessage>) next;
+    }
+
+    private Object poll(long timeoutMillis) throws IOException {
+      try {
+        Object next = queue.poll(timeoutMillis, TimeUnit.MILLISECONDS);
+        if (next == null) {
+          throw new SocketTimeoutException("Timeout while waiting for messages from messaging service");
+        }
+        return next;
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IOException("Interrupted while waiting for messages from messaging service", e);
+      }
+    }
+
+    private void throwFailure(Throwable t) throws IOException {
+      // Keep the failure so that subsequent calls fail the same way
+      head = t;
+      Throwables.propagateIfInstanceOf(t, IOException.class);
+      throw Throwables.propagate(t);
+    }
+  }
+
+  /**
+   * Handler for response frames from the server.
+   */
+  private static final class ResponseHandler extends SimpleChannelInboundHandler<ByteBuf> {
+
+    // Listeners of requests sent through the channel that this handler belongs to
+    private final Map<Long, ResponseListener> listeners = new ConcurrentHashMap<>();
+
+    @Override
+    protected void channelRead0(ChannelHandlerContext ctx, ByteBuf frame) {
+      long requestId = frame.readLong();
+      byte type = frame.readByte();
+      ResponseListener listener = listeners.get(requestId);
+      if (listener == null) {
+        // The request is already cancelled
+        return;
+      }
+      if (listener.onFrame(type, frame)) {
+        listeners.remove(requestId);
+      }
+    }
+
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) {
+      // Fail all pending requests on this channel
+      Iterator<ResponseListener> iterator = listeners.values().iterator();
+      while (iterator.hasNext()) {
+        iterator.next().onFailure(new ClosedChannelException());
+        iterator.remove();
+      }
+    }
+
+    @Override
+    public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+      LOG.debug("Closing messaging channel due to exception", cause);
+      ctx.close();
+    }
+  }
+}
@@ -0,0 +1,39 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.cdap.messaging.client;
+
+import java.io.IOException;
+
+/**
+ * Exception to represent an error response received from the messaging channel.
+ */
+final class MessagingChannelException extends IOException {
+
+  private final int responseCode;
+
+  MessagingChannelException(int responseCode, String message) {
+    super(message);
+    this.responseCode = responseCode;
+  }
+
+  /**
+   * Returns the http status code that represents the error.
+   */
+  int getResponseCode() {
+    return responseCode;
+  }
+}
@@ -29,6 +29,7 @@ import org.apache.tephra.TransactionAware;
 import java.io.IOException;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.concurrent.TimeUnit;
 import javax.annotation.Nullable;
 
 /**
@@ -38,11 +39,13 @@ import javax.annotation.Nullable;
 final class BasicMessageFetcher implements MessageFetcher, TransactionAware {
 
   private final MessagingService messagingService;
+  private final long waitTimeoutMillis;
   private final String name;
   private Transaction transaction;
 
-  BasicMessageFetcher(MessagingService messagingService) {
+  BasicMessageFetcher(MessagingService messagingService, long waitTimeoutMillis) {
     this.messagingService = messagingService;
+    this.waitTimeoutMillis = waitTimeoutMillis;
     this.name = "MessageFetcher-" + Thread.currentThread().getName();
   }
 
@@ -56,6 +59,8 @@ final class BasicMessageFetcher implements MessageFetcher, TransactionAware {
 
     if (transaction != null) {
       fetcher.setTransaction(transaction);
+    } else {
+      fetcher.setWaitTimeout(waitTimeoutMillis, TimeUnit.MILLISECONDS);
     }
 
     return new MessageIterator(fetcher.fetch());
@@ -74,6 +79,8 @@ final class BasicMessageFetcher implements MessageFetcher, TransactionAware {
 
     if (transaction != null) {
       fetcher.setTransaction(transaction);
+    } else {
+      fetcher.setWaitTimeout(waitTimeoutMillis, TimeUnit.MILLISECONDS);
     }
 
     return new MessageIterator(fetcher.fetch());
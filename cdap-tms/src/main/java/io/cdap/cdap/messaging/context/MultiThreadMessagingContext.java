@@ -34,9 +34,22 @@ public class MultiThreadMessagingContext extends MultiThreadTransactionAware<Bas
                                          implements MessagingContext {
 
   private final MessagingService messagingService;
+  private final long fetchWaitMillis;
 
   public MultiThreadMessagingContext(final MessagingService messagingService) {
+    this(messagingService, 0L);
+  }
+
+  /**
+   * Creates a new instance.
+   *
+   * @param messagingService the {@link MessagingService} for interacting with the messaging system
+   * @param fetchWaitMillis maximum number of milliseconds for the {@link MessageFetcher} to wait for new messages
+   *                        when fetching without a transaction and there is no message available
+   */
+  public MultiThreadMessagingContext(MessagingService messagingService, long fetchWaitMillis) {
     this.messagingService = messagingService;
+    this.fetchWaitMillis = fetchWaitMillis;
   }
 
   @Override
@@ -56,6 +69,6 @@ public class MultiThreadMessagingContext extends MultiThreadTransactionAware<Bas
 
   @Override
   protected BasicMessagingContext createTransactionAwareForCurrentThread() {
-    return new BasicMessagingContext(messagingService);
+    return new BasicMessagingContext(messagingService, fetchWaitMillis);
   }
 }
@@ -44,6 +44,7 @@ import io.cdap.cdap.messaging.store.TableFactory;
 import io.cdap.cdap.messaging.store.cache.CachingTableFactory;
 import io.cdap.cdap.messaging.store.cache.DefaultMessageTableCacheProvider;
 import io.cdap.cdap.messaging.store.cache.MessageTableCacheProvider;
+import io.cdap.cdap.messaging.store.cache.OffHeapPayloadBuffer;
 import io.cdap.cdap.messaging.store.hbase.HBaseTableFactory;
 import io.cdap.cdap.messaging.store.leveldb.LevelDBTableFactory;
 import io.cdap.cdap.proto.id.TopicId;
@@ -115,6 +116,12 @@ public class MessagingServerRuntimeModule extends RuntimeModule {
           return null;
         }
 
+        @Nullable
+        @Override
+        public OffHeapPayloadBuffer getPayloadBuffer(TopicId topicId) {
+          return null;
+        }
+
         @Override
         public void clear() {
           // no-op
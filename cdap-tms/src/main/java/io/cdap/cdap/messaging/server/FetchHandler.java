@@ -30,15 +30,22 @@ import io.cdap.cdap.common.logging.Loggers;
 import io.cdap.cdap.messaging.MessageFetcher;
 import io.cdap.cdap.messaging.MessagingService;
 import io.cdap.cdap.messaging.Schemas;
+import io.cdap.cdap.messaging.cache.MessageCache;
 import io.cdap.cdap.messaging.data.RawMessage;
+import io.cdap.cdap.messaging.store.MessageTable;
+import io.cdap.cdap.messaging.store.cache.MessageTableCacheProvider;
 import io.cdap.cdap.proto.id.NamespaceId;
 import io.cdap.cdap.proto.id.TopicId;
 import io.cdap.http.AbstractHttpHandler;
 import io.cdap.http.BodyProducer;
+import io.cdap.http.HandlerContext;
 import io.cdap.http.HttpResponder;
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
 import io.netty.buffer.ByteBufInputStream;
 import io.netty.buffer.ByteBufOutputStream;
+import io.netty.buffer.CompositeByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
 import io.netty.buffer.Unpooled;
 import io.netty.handler.codec.http.DefaultHttpHeaders;
 import io.netty.handler.codec.http.FullHttpRequest;
@@ -55,6 +62,8 @@ import org.apache.avro.io.DecoderFactory;
 import org.apache.avro.io.Encoder;
 import org.apache.avro.io.EncoderFactory;
 import org.apache.tephra.TransactionCodec;
+import org.apache.twill.common.Cancellable;
+import org.apache.twill.common.Threads;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -65,10 +74,21 @@ import java.nio.channels.ClosedChannelException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import javax.annotation.Nullable;
+import javax.ws.rs.DefaultValue;
 import javax.ws.rs.POST;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
+import javax.ws.rs.QueryParam;
 
 /**
  * A netty http handler for handling message fetching REST API for the messaging system.
@@ -86,19 +106,55 @@ public final class FetchHandler extends AbstractHttpHandler {
   );
 
   private final MessagingService messagingService;
-  private int messageChunkSize;
+  private final MessageTableCacheProvider cacheProvider;
+  private final int messageChunkSize;
+  private final boolean zeroCopy;
+  private final long maxWaitMillis;
+  private final int waitThreads;
+  private ScheduledExecutorService waitExecutor;
+  private ExecutorService waitFetchExecutor;
 
   @Inject
-  FetchHandler(CConfiguration cConf, MessagingService messagingService) {
+  FetchHandler(CConfiguration cConf, MessagingService messagingService, MessageTableCacheProvider cacheProvider) {
     this.messagingService = messagingService;
+    this.cacheProvider = cacheProvider;
     this.messageChunkSize = cConf.getInt(Constants.MessagingSystem.HTTP_SERVER_CONSUME_CHUNK_SIZE);
+    this.zeroCopy = cConf.getBoolean(Constants.MessagingSystem.HTTP_SERVER_CONSUME_ZERO_COPY);
+    this.maxWaitMillis = cConf.getLong(Constants.MessagingSystem.HTTP_SERVER_CONSUME_MAX_WAIT_MS, 0L);
+    this.waitThreads = cConf.getInt(Constants.MessagingSystem.HTTP_SERVER_CONSUME_WAIT_THREADS);
   }
 
+  @Override
+  public void init(HandlerContext context) {
+    super.init(context);
+    // The scheduler only triggers the timeouts, while fetching and responding are done in the fetch executor
+    waitExecutor = Executors.newSingleThreadScheduledExecutor(Threads.createDaemonThreadFactory("fetch-wait"));
+    ThreadPoolExecutor executor = new ThreadPoolExecutor(waitThreads, waitThreads, 60L, TimeUnit.SECONDS,
+                                                         new LinkedBlockingQueue<>(),
+                                                         Threads.createDaemonThreadFactory("fetch-wait-executor-%d"));
+    executor.allowCoreThreadTimeOut(true);
+    waitFetchExecutor = executor;
+  }
+
+  @Override
+  public void destroy(HandlerContext context) {
+    super.destroy(context);
+    waitExecutor.shutdownNow();
+    waitFetchExecutor.shutdownNow();
+  }
+
+  /**
+   * Fetches messages from the given topic. If the {@code waitMillis} query parameter is positive and there is no
+   * message available, the response will be held until new messages are added to the {@link MessageCache} of
+   * the topic or the wait time expired, whichever comes first. Waiting is only supported for non-transactional
+   * fetch on topics that are cached.
+   */
   @POST
   @Path("poll")
   public void poll(FullHttpRequest request, HttpResponder responder,
                    @PathParam("namespace") String namespace,
-                   @PathParam("topic") String topic) throws Exception {
+                   @PathParam("topic") String topic,
+                   @QueryParam("waitMillis") @DefaultValue("0") long waitMillis) throws Exception {
 
     TopicId topicId = new NamespaceId(namespace).topic(topic);
 
@@ -111,10 +167,32 @@ public final class FetchHandler extends AbstractHttpHandler {
     Decoder decoder = DecoderFactory.get().directBinaryDecoder(new ByteBufInputStream(request.content()), null);
     DatumReader<GenericRecord> datumReader = new GenericDatumReader<>(Schemas.V1.ConsumeRequest.SCHEMA);
 
-    // Fetch the messages
-    CloseableIterator<RawMessage> iterator = fetchMessages(datumReader.read(null, decoder), topicId);
+    GenericRecord fetchRequest = datumReader.read(null, decoder);
+
+    long timeoutMillis = Math.min(waitMillis, maxWaitMillis);
+    MessageCache<MessageTable.Entry> messageCache = null;
+    if (timeoutMillis > 0 && fetchRequest.get("transaction") == null) {
+      messageCache = cacheProvider.getMessageCache(topicId);
+    }
+
+    // Fetch the messages and respond immediately
+    if (messageCache == null) {
+      sendMessages(responder, fetchMessages(messagingService, fetchRequest, topicId));
+      return;
+    }
+
+    new WaitingFetch(responder, fetchRequest, topicId).start(messageCache, timeoutMillis);
+  }
+
+  /**
+   * Sends the messages provided by the given {@link CloseableIterator} to the client.
+   */
+  private void sendMessages(HttpResponder responder, CloseableIterator<RawMessage> iterator) {
     try {
-      responder.sendContent(HttpResponseStatus.OK, new MessagesBodyProducer(iterator, messageChunkSize),
+      BodyProducer bodyProducer = zeroCopy
+        ? new ZeroCopyMessagesBodyProducer(iterator, messageChunkSize, PooledByteBufAllocator.DEFAULT)
+        : new MessagesBodyProducer(iterator, messageChunkSize);
+      responder.sendContent(HttpResponseStatus.OK, bodyProducer,
                             new DefaultHttpHeaders().set(HttpHeaderNames.CONTENT_TYPE, "avro/binary"));
     } catch (Throwable t) {
       iterator.close();
@@ -125,8 +203,8 @@ public final class FetchHandler extends AbstractHttpHandler {
   /**
    * Creates a {@link CloseableIterator} of {@link RawMessage} based on the given fetch request.
    */
-  private CloseableIterator<RawMessage> fetchMessages(GenericRecord fetchRequest,
-                                                      TopicId topicId) throws IOException, TopicNotFoundException {
+  static CloseableIterator<RawMessage> fetchMessages(MessagingService messagingService, GenericRecord fetchRequest,
+                                                     TopicId topicId) throws IOException, TopicNotFoundException {
     MessageFetcher fetcher = messagingService.prepareFetch(topicId);
 
     Object startFrom = fetchRequest.get("startFrom");
@@ -156,12 +234,123 @@ public final class FetchHandler extends AbstractHttpHandler {
     return fetcher.fetch();
   }
 
+  /**
+   * A fetch request that waits for new messages to be added to the {@link MessageCache} before responding.
+   * The response is sent from the wait fetch executor threads, hence it doesn't block the http server threads
+   * while waiting.
+   */
+  private final class WaitingFetch {
+
+    private final HttpResponder responder;
+    private final GenericRecord fetchRequest;
+    private final TopicId topicId;
+    private final AtomicBoolean completed;
+    private volatile Cancellable cancelListener;
+    private volatile ScheduledFuture<?> timeoutFuture;
+
+    WaitingFetch(HttpResponder responder, GenericRecord fetchRequest, TopicId topicId) {
+      this.responder = responder;
+      this.fetchRequest = fetchRequest;
+      this.topicId = topicId;
+      this.completed = new AtomicBoolean();
+    }
+
+    /**
+     * Fetches messages and starts waiting if there is no message available.
+     */
+    void start(MessageCache<MessageTable.Entry> messageCache, long timeoutMillis) throws Exception {
+      // Add the listener before fetching, so that messages added after the fetch won't be missed
+      cancelListener = messageCache.addListener(this::submitComplete);
+
+      CloseableIterator<RawMessage> iterator;
+      boolean hasMessages;
+      try {
+        iterator = fetchMessages(messagingService, fetchRequest, topicId);
+      } catch (Throwable t) {
+        cancelListener.cancel();
+        throw t;
+      }
+      try {
+        hasMessages = iterator.hasNext();
+      } catch (Throwable t) {
+        cancelListener.cancel();
+        iterator.close();
+        throw t;
+      }
+
+      if (hasMessages) {
+        // Respond with the messages, unless the listener already triggered a response
+        if (completed.compareAndSet(false, true)) {
+          cancelListener.cancel();
+          sendMessages(responder, iterator);
+        } else {
+          iterator.close();
+        }
+        return;
+      }
+
+      // No message is available, wait for new messages or the timeout
+      iterator.close();
+      try {
+        timeoutFuture = waitExecutor.schedule(this::submitComplete, timeoutMillis, TimeUnit.MILLISECONDS);
+      } catch (RejectedExecutionException e) {
+        // The handler is being destroyed, just respond with what is available now
+        complete();
+        return;
+      }
+      // If the response was sent before the timeout was scheduled, cancel the timeout
+      if (completed.get()) {
+        timeoutFuture.cancel(false);
+      }
+    }
+
+    /**
+     * Called by the {@link MessageCache} when new messages are added to the cache, or by the wait executor when
+     * the wait timed out.
+     */
+    private void submitComplete() {
+      // Not to fetch from the cache writer thread nor to block the timeouts of other requests
+      try {
+        waitFetchExecutor.execute(this::complete);
+      } catch (RejectedExecutionException e) {
+        complete();
+      }
+    }
+
+    /**
+     * Fetches messages and responds to the client. Only the first call to this method has effect.
+     */
+    private void complete() {
+      if (!completed.compareAndSet(false, true)) {
+        return;
+      }
+      // The listener can be called before it is assigned, in which case it has been removed from the cache already
+      Cancellable cancelListener = this.cancelListener;
+      if (cancelListener != null) {
+        cancelListener.cancel();
+      }
+      ScheduledFuture<?> timeoutFuture = this.timeoutFuture;
+      if (timeoutFuture != null) {
+        timeoutFuture.cancel(false);
+      }
+
+      try {
+        sendMessages(responder, fetchMessages(messagingService, fetchRequest, topicId));
+      } catch (TopicNotFoundException e) {
+        responder.sendString(HttpResponseStatus.NOT_FOUND, e.getMessage());
+      } catch (Throwable t) {
+        LOG.warn("Failed to fetch messages from topic {}", topicId, t);
+        responder.sendString(HttpResponseStatus.INTERNAL_SERVER_ERROR, t.getMessage() == null ? "" : t.getMessage());
+      }
+    }
+  }
+
   /**
    * A {@link BodyProducer} to encode and send back messages.
    * Instead of using GenericDatumWriter, we perform the array encoding manually so that we don't have to buffer
    * all messages in memory before sending out.
    */
-  private static class MessagesBodyProducer extends BodyProducer {
+  static final class MessagesBodyProducer extends BodyProducer {
 
     private final CloseableIterator<RawMessage> iterator;
     private final List<RawMessage> messages;
@@ -250,18 +439,147 @@ public final class FetchHandler extends AbstractHttpHandler {
     @Override
     public void handleError(@Nullable Throwable cause) {
       iterator.close();
-      // Since response header is already sent, there is nothing we can send back to client. Simply log the failure
-      if (cause instanceof SocketException
-        || cause instanceof ClosedChannelException
-        || (cause instanceof IOException && KNOWN_IO_EXCEPTION_MESSAGES.contains(cause.getMessage()))) {
-        // This can easily caused by client close connection prematurely. Don't want to flood the log.
-        LOG.trace("Connection closed by client prematurely while sending messages back to client", cause);
-      } else {
-        // Use sampling logger to log to avoid flooding the log if there is any systematic failure
-        SAMPLING_LOG.warn("Exception raised when sending messages back to client", cause);
-        // Also log a trace to provide a way to see every error if needed
-        LOG.trace("Exception raised when sending messages back to client", cause);
+      logSendFailure(cause);
+    }
+  }
+
+  /**
+   * A {@link BodyProducer} that produces the same avro encoded response as {@link MessagesBodyProducer},
+   * but without copying the message payloads. Each chunk is a {@link CompositeByteBuf}, with the avro framing
+   * (item count, length prefixes and message ids) written to a pooled buffer, and the payload byte arrays
+   * returned by the message and payload table scans wrapped as-is. The ownership of each chunk is passed
+   * to Netty, which releases it after it is written to the channel.
+   */
+  static final class ZeroCopyMessagesBodyProducer extends BodyProducer {
+
+    // Payloads smaller than this are copied into the framing buffer, since it is cheaper than
+    // adding a separate component for them.
+    private static final int MIN_WRAP_SIZE = 256;
+
+    private final CloseableIterator<RawMessage> iterator;
+    private final List<RawMessage> messages;
+    private final int messageChunkSize;
+    private final ByteBufAllocator allocator;
+    private boolean arrayEnded;
+
+    ZeroCopyMessagesBodyProducer(CloseableIterator<RawMessage> iterator, int messageChunkSize,
+                                 ByteBufAllocator allocator) {
+      this.iterator = iterator;
+      this.messages = new ArrayList<>();
+      this.messageChunkSize = messageChunkSize;
+      this.allocator = allocator;
+    }
+
+    @Override
+    public ByteBuf nextChunk() throws Exception {
+      // Already sent all messages, return empty to signal the end of response
+      if (arrayEnded) {
+        return Unpooled.EMPTY_BUFFER;
+      }
+
+      // Collect messages up to the chunk size, also computing the size of the framing buffer.
+      // Each avro long can take up to 10 bytes (item count, block end and the length prefixes).
+      int size = 0;
+      int framingSize = 20;
+      messages.clear();
+      while (iterator.hasNext() && size < messageChunkSize) {
+        RawMessage message = iterator.next();
+        messages.add(message);
+
+        size += message.getId().length + message.getPayload().length + 8;
+        framingSize += message.getId().length + 20;
+        if (message.getPayload().length < MIN_WRAP_SIZE) {
+          framingSize += message.getPayload().length;
+        }
       }
+
+      CompositeByteBuf chunk = allocator.compositeBuffer(messages.size() * 2 + 1);
+      ByteBuf framing = allocator.buffer(framingSize);
+      try {
+        // The avro array block starts with the item count. An empty block is not written.
+        if (!messages.isEmpty()) {
+          writeLong(framing, messages.size());
+        }
+        for (RawMessage message : messages) {
+          writeLong(framing, message.getId().length);
+          framing.writeBytes(message.getId());
+
+          byte[] payload = message.getPayload();
+          writeLong(framing, payload.length);
+          if (payload.length < MIN_WRAP_SIZE) {
+            framing.writeBytes(payload);
+          } else {
+            // Add everything in the framing buffer written so far, followed by the payload itself
+            addFraming(chunk, framing);
+            chunk.addComponent(true, Unpooled.wrappedBuffer(payload));
+          }
+        }
+
+        if (!iterator.hasNext()) {
+          arrayEnded = true;
+          // A block with zero count signals the end of the avro array
+          writeLong(framing, 0L);
+        }
+        addFraming(chunk, framing);
+        return chunk;
+      } catch (Throwable t) {
+        chunk.release();
+        throw t;
+      } finally {
+        framing.release();
+      }
+    }
+
+    @Override
+    public void finished() throws Exception {
+      iterator.close();
+    }
+
+    @Override
+    public void handleError(@Nullable Throwable cause) {
+      iterator.close();
+      logSendFailure(cause);
+    }
+
+    /**
+     * Adds the unread portion of the framing buffer to the given {@link CompositeByteBuf} as a retained slice,
+     * and marks that portion as read.
+     */
+    private void addFraming(CompositeByteBuf chunk, ByteBuf framing) {
+      int readable = framing.readableBytes();
+      if (readable > 0) {
+        chunk.addComponent(true, framing.readRetainedSlice(readable));
+      }
+    }
+
+    /**
+     * Writes a long value to the given {@link ByteBuf} using the avro zig-zag variable length encoding.
+     */
+    private void writeLong(ByteBuf buf, long value) {
+      long n = (value << 1) ^ (value >> 63);
+      while ((n & ~0x7FL) != 0) {
+        buf.writeByte((int) ((n & 0x7F) | 0x80));
+        n >>>= 7;
+      }
+      buf.writeByte((int) n);
+    }
+  }
+
+  /**
+   * Logs the failure raised when sending messages back to client.
+   */
+  private static void logSendFailure(@Nullable Throwable cause) {
+    // Since response header is already sent, there is nothing we can send back to client. Simply log the failure
+    if (cause instanceof SocketException
+      || cause instanceof ClosedChannelException
+      || (cause instanceof IOException && KNOWN_IO_EXCEPTION_MESSAGES.contains(cause.getMessage()))) {
+      // This can easily caused by client close connection prematurely. Don't want to flood the log.
+      LOG.trace("Connection closed by client prematurely while sending messages back to client", cause);
+    } else {
+      // Use sampling logger to log to avoid flooding the log if there is any systematic failure
+      SAMPLING_LOG.warn("Exception raised when sending messages back to client", cause);
+      // Also log a trace to provide a way to see every error if needed
+      LOG.trace("Exception raised when sending messages back to client", cause);
     }
   }
 }
@@ -0,0 +1,319 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.cdap.messaging.server;
+
+import com.google.common.util.concurrent.AbstractIdleService;
+import com.google.inject.Inject;
+import io.cdap.cdap.api.common.HttpErrorStatusProvider;
+import io.cdap.cdap.api.dataset.lib.CloseableIterator;
+import io.cdap.cdap.api.messaging.TopicNotFoundException;
+import io.cdap.cdap.common.BadRequestException;
+import io.cdap.cdap.common.ServiceUnavailableException;
+import io.cdap.cdap.common.conf.CConfiguration;
+import io.cdap.cdap.common.conf.Constants;
+import io.cdap.cdap.common.discovery.ResolvingDiscoverable;
+import io.cdap.cdap.messaging.MessagingService;
+import io.cdap.cdap.messaging.RollbackDetail;
+import io.cdap.cdap.messaging.Schemas;
+import io.cdap.cdap.messaging.StoreRequest;
+import io.cdap.cdap.messaging.channel.ChannelFrames;
+import io.cdap.cdap.messaging.data.RawMessage;
+import io.cdap.cdap.proto.id.NamespaceId;
+import io.cdap.cdap.proto.id.TopicId;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufInputStream;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.group.ChannelGroup;
+import io.netty.channel.group.DefaultChannelGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.util.concurrent.ImmediateEventExecutor;
+import org.apache.avro.generic.GenericDatumReader;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.avro.io.DatumReader;
+import org.apache.avro.io.Decoder;
+import org.apache.avro.io.DecoderFactory;
+import org.apache.twill.common.Cancellable;
+import org.apache.twill.common.Threads;
+import org.apache.twill.discovery.Discoverable;
+import org.apache.twill.discovery.DiscoveryService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.ClosedChannelException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A server for the binary messaging channel. It accepts long-lived connections from
+ * {@link io.cdap.cdap.messaging.client.ClientMessagingService} and serves publish, store and fetch requests
+ * using the framing protocol defined in {@link ChannelFrames}. Requests are handled asynchronously, hence
+ * multiple requests can be pipelined on the same connection.
+ *
+ * The channel does not authenticate clients, hence it refuses to start if security is enabled.
+ */
+public class MessagingChannelServer extends AbstractIdleService {
+
+  private static final Logger LOG = LoggerFactory.getLogger(MessagingChannelServer.class);
+
+  private final CConfiguration cConf;
+  private final DiscoveryService discoveryService;
+  private final MessagingService messagingService;
+  private final int messageChunkSize;
+  private ChannelGroup channelGroup;
+  private EventLoopGroup bossGroup;
+  private EventLoopGroup workerGroup;
+  private ExecutorService executor;
+  private Cancellable cancelDiscovery;
+
+  @Inject
+  MessagingChannelServer(CConfiguration cConf, DiscoveryService discoveryService, MessagingService messagingService) {
+    this.cConf = cConf;
+    this.discoveryService = discoveryService;
+    this.messagingService = messagingService;
+    this.messageChunkSize = cConf.getInt(Constants.MessagingSystem.HTTP_SERVER_CONSUME_CHUNK_SIZE);
+  }
+
+  @Override
+  protected void startUp() throws Exception {
+    // The channel doesn't go through the authentication handler of the http service, hence cannot be exposed
+    if (cConf.getBoolean(Constants.Security.ENABLED)) {
+      throw new IllegalStateException("Messaging channel server cannot be started when security is enabled");
+    }
+
+    int workerThreads = cConf.getInt(Constants.MessagingSystem.HTTP_SERVER_WORKER_THREADS);
+    int executorThreads = cConf.getInt(Constants.MessagingSystem.HTTP_SERVER_EXECUTOR_THREADS);
+    int maxFrameSize = cConf.getInt(Constants.MessagingSystem.HTTP_SERVER_MAX_REQUEST_SIZE_MB) * 1024 * 1024;
+
+    channelGroup = new DefaultChannelGroup(ImmediateEventExecutor.INSTANCE);
+    bossGroup = new NioEventLoopGroup(1, Threads.createDaemonThreadFactory("messaging-channel-boss-%d"));
+    workerGroup = new NioEventLoopGroup(workerThreads,
+                                        Threads.createDaemonThreadFactory("messaging-channel-worker-%d"));
+    // Requests are blocking calls to the MessagingService, hence cannot be executed in the IO threads
+    executor = Executors.newFixedThreadPool(executorThreads > 0 ? executorThreads : workerThreads,
+                                            Threads.createDaemonThreadFactory("messaging-channel-executor-%d"));
+
+    ServerBootstrap bootstrap = new ServerBootstrap()
+      .group(bossGroup, workerGroup)
+      .channel(NioServerSocketChannel.class)
+      .childHandler(new ChannelInitializer<SocketChannel>() {
+        @Override
+        protected void initChannel(SocketChannel ch) {
+          channelGroup.add(ch);
+          ch.pipeline()
+            .addLast("frame-decoder", ChannelFrames.createFrameDecoder(maxFrameSize))
+            .addLast("request-handler", new RequestHandler());
+        }
+      });
+
+    Channel serverChannel = bootstrap.bind(cConf.get(Constants.MessagingSystem.HTTP_SERVER_BIND_ADDRESS),
+                                           cConf.getInt(Constants.MessagingSystem.CHANNEL_SERVER_BIND_PORT, 0))
+      .sync().channel();
+    channelGroup.add(serverChannel);
+
+    InetSocketAddress bindAddress = (InetSocketAddress) serverChannel.localAddress();
+    cancelDiscovery = discoveryService.register(
+      ResolvingDiscoverable.of(new Discoverable(Constants.Service.MESSAGING_CHANNEL, bindAddress)));
+    LOG.info("Messaging channel server started on {}", bindAddress);
+  }
+
+  @Override
+  protected void shutDown() throws Exception {
+    try {
+      cancelDiscovery.cancel();
+    } finally {
+      channelGroup.close().awaitUninterruptibly();
+      bossGroup.shutdownGracefully(0, 5, TimeUnit.SECONDS).awaitUninterruptibly();
+      workerGroup.shutdownGracefully(0, 5, TimeUnit.SECONDS).awaitUninterruptibly();
+      executor.shutdownNow();
+    }
+    LOG.info("Messaging channel server stopped");
+  }
+
+  /**
+   * Handles a request frame. This method is called from the executor thread.
+   */
+  private void handleRequest(Channel channel, long requestId, byte type, ByteBuf frame) {
+    try {
+      TopicId topicId = new NamespaceId(ChannelFrames.readString(frame)).topic(ChannelFrames.readString(frame));
+      switch (type) {
+        case ChannelFrames.PUBLISH: {
+          StoreRequest storeRequest = StoreHandler.decodeStoreRequest(topicId, frame);
+          StoreHandler.validatePublishRequest(storeRequest);
+          RollbackDetail rollbackDetail = messagingService.publish(storeRequest);
+          ByteBuf response = ChannelFrames.newFrame(channel.alloc(), requestId, ChannelFrames.OK);
+          if (rollbackDetail != null) {
+            ByteBuf encoded = StoreHandler.encodeRollbackDetail(rollbackDetail);
+            response.writeBytes(encoded);
+            encoded.release();
+          }
+          channel.writeAndFlush(ChannelFrames.complete(response));
+          break;
+        }
+        case ChannelFrames.STORE: {
+          StoreRequest storeRequest = StoreHandler.decodeStoreRequest(topicId, frame);
+          StoreHandler.validateStoreRequest(storeRequest);
+          messagingService.storePayload(storeRequest);
+          channel.writeAndFlush(ChannelFrames.complete(ChannelFrames.newFrame(channel.alloc(), requestId,
+                                                                              ChannelFrames.OK)));
+          break;
+        }
+        case ChannelFrames.FETCH:
+          fetch(channel, requestId, topicId, frame);
+          break;
+        default:
+          throw new BadRequestException("Unsupported frame type " + type);
+      }
+    } catch (Throwable t) {
+      sendError(channel, requestId, t);
+    } finally {
+      frame.release();
+    }
+  }
+
+  /**
+   * Fetches messages and sends them back in one or more {@link ChannelFrames#MESSAGES} frames,
+   * followed by an {@link ChannelFrames#END} frame.
+   */
+  private void fetch(Channel channel, long requestId, TopicId topicId, ByteBuf frame) throws Exception {
+    Decoder decoder = DecoderFactory.get().directBinaryDecoder(new ByteBufInputStream(frame), null);
+    DatumReader<GenericRecord> datumReader = new GenericDatumReader<>(Schemas.V1.ConsumeRequest.SCHEMA);
+
+    try (CloseableIterator<RawMessage> iterator = FetchHandler.fetchMessages(messagingService,
+                                                                            datumReader.read(null, decoder),
+                                                                            topicId)) {
+      ByteBuf response = null;
+      int countIndex = 0;
+      int count = 0;
+      try {
+        while (iterator.hasNext()) {
+          if (response == null) {
+            response = ChannelFrames.newFrame(channel.alloc(), requestId, ChannelFrames.MESSAGES);
+            countIndex = response.writerIndex();
+            response.writeInt(0);
+            count = 0;
+          }
+          RawMessage message = iterator.next();
+          ChannelFrames.writeBytes(response, message.getId());
+          ChannelFrames.writeBytes(response, message.getPayload());
+          count++;
+
+          if (response.readableBytes() >= messageChunkSize) {
+            ByteBuf chunk = response;
+            response = null;
+            chunk.setInt(countIndex, count);
+            write(channel, chunk);
+          }
+        }
+        if (response != null) {
+          ByteBuf chunk = response;
+          response = null;
+          chunk.setInt(countIndex, count);
+          write(channel, chunk);
+        }
+      } finally {
+        if (response != null) {
+          response.release();
+        }
+      }
+    }
+    channel.writeAndFlush(ChannelFrames.complete(ChannelFrames.newFrame(channel.alloc(), requestId,
+                                                                        ChannelFrames.END)));
+  }
+
+  /**
+   * Writes a frame to the channel. If the channel is not writable, block until the write completes to avoid
+   * buffering too much data in memory.
+   */
+  private void write(Channel channel, ByteBuf frame) throws IOException {
+    if (!channel.isActive()) {
+      frame.release();
+      throw new ClosedChannelException();
+    }
+    ChannelFuture future = channel.writeAndFlush(ChannelFrames.complete(frame));
+    if (!channel.isWritable()) {
+      future.awaitUninterruptibly();
+    }
+  }
+
+  /**
+   * Sends an {@link ChannelFrames#ERROR} frame for the given failure.
+   */
+  private void sendError(Channel channel, long requestId, Throwable t) {
+    // Use the same status codes as the http handlers
+    int status;
+    if (t instanceof TopicNotFoundException) {
+      status = HttpResponseStatus.NOT_FOUND.code();
+    } else if (t instanceof IllegalArgumentException) {
+      status = HttpResponseStatus.BAD_REQUEST.code();
+    } else if (t instanceof HttpErrorStatusProvider) {
+      status = ((HttpErrorStatusProvider) t).getStatusCode();
+    } else {
+      status = HttpResponseStatus.INTERNAL_SERVER_ERROR.code();
+      LOG.warn("Exception raised when handling request {} from {}", requestId, channel.remoteAddress(), t);
+    }
+
+    if (!channel.isActive()) {
+      return;
+    }
+    ByteBuf response = ChannelFrames.newFrame(channel.alloc(), requestId, ChannelFrames.ERROR);
+    response.writeInt(status);
+    ChannelFrames.writeString(response, String.valueOf(t.getMessage()));
+    channel.writeAndFlush(ChannelFrames.complete(response));
+  }
+
+  /**
+   * Handler for request frames on a client connection.
+   */
+  private final class RequestHandler extends SimpleChannelInboundHandler<ByteBuf> {
+
+    RequestHandler() {
+      // The frame is released after the request is handled in the executor thread
+      super(false);
+    }
+
+    @Override
+    protected void channelRead0(ChannelHandlerContext ctx, ByteBuf frame) {
+      long requestId = frame.readLong();
+      byte type = frame.readByte();
+      try {
+        executor.execute(() -> handleRequest(ctx.channel(), requestId, type, frame));
+      } catch (RejectedExecutionException e) {
+        frame.release();
+        sendError(ctx.channel(), requestId, new ServiceUnavailableException(Constants.Service.MESSAGING_SERVICE));
+      }
+    }
+
+    @Override
+    public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+      LOG.debug("Closing messaging channel from {} due to exception", ctx.channel().remoteAddress(), cause);
+      ctx.close();
+    }
+  }
+}
@@ -53,17 +53,20 @@ public class MessagingHttpService extends AbstractIdleService {
   private final DiscoveryService discoveryService;
   private final MetricsCollectionService metricsCollectionService;
   private final Set<HttpHandler> handlers;
+  private final MessagingChannelServer channelServer;
   private NettyHttpService httpService;
   private Cancellable cancelDiscovery;
 
   @Inject
   public MessagingHttpService(CConfiguration cConf, DiscoveryService discoveryService,
                               MetricsCollectionService metricsCollectionService,
-                              @Named(Constants.MessagingSystem.HANDLER_BINDING_NAME) Set<HttpHandler> handlers) {
+                              @Named(Constants.MessagingSystem.HANDLER_BINDING_NAME) Set<HttpHandler> handlers,
+                              MessagingChannelServer channelServer) {
     this.cConf = cConf;
     this.discoveryService = discoveryService;
     this.metricsCollectionService = metricsCollectionService;
     this.handlers = handlers;
+    this.channelServer = channelServer;
   }
 
   @Override
@@ -99,14 +102,28 @@ public class MessagingHttpService extends AbstractIdleService {
     cancelDiscovery = discoveryService.register(
       ResolvingDiscoverable.of(new Discoverable(Constants.Service.MESSAGING_SERVICE, httpService.getBindAddress())));
     LOG.info("Messaging HTTP server started on {}", httpService.getBindAddress());
+
+    if (cConf.getBoolean(Constants.MessagingSystem.CHANNEL_ENABLED)) {
+      if (cConf.getBoolean(Constants.Security.ENABLED)) {
+        LOG.warn("Messaging channel is not started since it is not supported when security is enabled");
+      } else {
+        channelServer.startAndWait();
+      }
+    }
   }
 
   @Override
   protected void shutDown() throws Exception {
     try {
-      cancelDiscovery.cancel();
+      if (channelServer.isRunning()) {
+        channelServer.stopAndWait();
+      }
     } finally {
-      httpService.stop();
+      try {
+        cancelDiscovery.cancel();
+      } finally {
+        httpService.stop();
+      }
     }
     LOG.info("Messaging HTTP server stopped");
   }
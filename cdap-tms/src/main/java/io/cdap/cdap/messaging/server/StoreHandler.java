@@ -77,12 +77,7 @@ public final class StoreHandler extends AbstractHttpHandler {
 
     TopicId topicId = new NamespaceId(namespace).topic(topic);
     StoreRequest storeRequest = createStoreRequest(topicId, request);
-
-    // Empty payload is only allowed for transactional publish
-    if (!storeRequest.isTransactional() && !storeRequest.hasPayload()) {
-      throw new BadRequestException("Empty payload is only allowed for publishing transactional message. Topic: "
-                                      + topicId);
-    }
+    validatePublishRequest(storeRequest);
 
     // Publish the message and response with the rollback information
     RollbackDetail rollbackInfo = messagingService.publish(storeRequest);
@@ -104,11 +99,7 @@ public final class StoreHandler extends AbstractHttpHandler {
 
     TopicId topicId = new NamespaceId(namespace).topic(topic);
     StoreRequest storeRequest = createStoreRequest(topicId, request);
-
-    // It must be transactional with payload for store request
-    if (!storeRequest.isTransactional() || !storeRequest.hasPayload()) {
-      throw new BadRequestException("Store request must be transactional with payload. Topic: " + topicId);
-    }
+    validateStoreRequest(storeRequest);
 
     messagingService.storePayload(storeRequest);
     responder.sendStatus(HttpResponseStatus.OK);
@@ -136,15 +127,45 @@ public final class StoreHandler extends AbstractHttpHandler {
       throw new BadRequestException("Only avro/binary content type is supported.");
     }
 
-    Decoder decoder = DecoderFactory.get().directBinaryDecoder(new ByteBufInputStream(request.content()), null);
+    return decodeStoreRequest(topicId, request.content());
+  }
+
+  /**
+   * Decodes a {@link StoreRequest} from the given buffer, which contains an avro record of the
+   * {@link Schemas.V1.PublishRequest#SCHEMA}.
+   */
+  static StoreRequest decodeStoreRequest(TopicId topicId, ByteBuf content) throws IOException {
+    Decoder decoder = DecoderFactory.get().directBinaryDecoder(new ByteBufInputStream(content), null);
     DatumReader<GenericRecord> datumReader = new GenericDatumReader<>(Schemas.V1.PublishRequest.SCHEMA);
     return new GenericRecordStoreRequest(topicId, datumReader.read(null, decoder));
   }
 
+  /**
+   * Validates the given {@link StoreRequest} is valid for the publish call.
+   */
+  static void validatePublishRequest(StoreRequest storeRequest) throws BadRequestException {
+    // Empty payload is only allowed for transactional publish
+    if (!storeRequest.isTransactional() && !storeRequest.hasPayload()) {
+      throw new BadRequestException("Empty payload is only allowed for publishing transactional message. Topic: "
+                                      + storeRequest.getTopicId());
+    }
+  }
+
+  /**
+   * Validates the given {@link StoreRequest} is valid for the store call.
+   */
+  static void validateStoreRequest(StoreRequest storeRequest) throws BadRequestException {
+    // It must be transactional with payload for store request
+    if (!storeRequest.isTransactional() || !storeRequest.hasPayload()) {
+      throw new BadRequestException("Store request must be transactional with payload. Topic: "
+                                      + storeRequest.getTopicId());
+    }
+  }
+
   /**
    * Encodes the {@link RollbackDetail} object as avro record based on the {@link Schemas.V1.PublishResponse#SCHEMA}.
    */
-  private ByteBuf encodeRollbackDetail(RollbackDetail rollbackDetail) throws IOException {
+  static ByteBuf encodeRollbackDetail(RollbackDetail rollbackDetail) throws IOException {
     Schema schema = Schemas.V1.PublishResponse.SCHEMA;
 
     // Constructs the response object as GenericRecord
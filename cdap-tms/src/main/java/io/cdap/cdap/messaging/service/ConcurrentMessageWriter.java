@@ -31,7 +31,10 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Queue;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
 import javax.annotation.Nullable;
 import javax.annotation.concurrent.ThreadSafe;
 
@@ -58,6 +61,11 @@ import javax.annotation.concurrent.ThreadSafe;
  *
  * The spin lock between step 2 to step 8 is necessary as it guarantees events enqueued by all threads would eventually
  * get written and flushed.
+ *
+ * Optionally, the writer can be configured with a flush interval and a flush size. In that case, after a thread
+ * becomes the writer in step 3, it waits until either the flush interval has passed or there are at least flush size
+ * requests in the queue before proceeding to step 4. This allows more requests to be grouped into one batch
+ * (group commit) at the cost of extra latency, which is useful when the writer is shared by many low-volume topics.
  */
 @ThreadSafe
 final class ConcurrentMessageWriter implements Closeable {
@@ -67,6 +75,8 @@ final class ConcurrentMessageWriter implements Closeable {
   private final PendingStoreQueue pendingStoreQueue;
   private final AtomicBoolean writerFlag;
   private final AtomicBoolean closed;
+  private final long flushIntervalNanos;
+  private final int flushSize;
 
   /**
    * Constructor with a {@link NoopMetricsContext}. This constructor should only be used in unit-testing.
@@ -83,11 +93,26 @@ final class ConcurrentMessageWriter implements Closeable {
    * @param metricsCollector the {@link MetricsCollector} for collecting metrics emitted by this class.
    */
   ConcurrentMessageWriter(StoreRequestWriter<?> messagesWriter, MetricsCollector metricsCollector) {
+    this(messagesWriter, metricsCollector, 0L, 1);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param messagesWriter the {@link StoreRequestWriter} for persisting {@link StoreRequest}.
+   * @param metricsCollector the {@link MetricsCollector} for collecting metrics emitted by this class.
+   * @param flushIntervalMillis the maximum time in milliseconds to wait for more requests before persisting a batch
+   * @param flushSize the number of pending requests that triggers persisting a batch without further waiting
+   */
+  ConcurrentMessageWriter(StoreRequestWriter<?> messagesWriter, MetricsCollector metricsCollector,
+                          long flushIntervalMillis, int flushSize) {
     this.messagesWriter = messagesWriter;
     this.metricsCollector = metricsCollector;
     this.pendingStoreQueue = new PendingStoreQueue(metricsCollector);
     this.writerFlag = new AtomicBoolean();
     this.closed = new AtomicBoolean();
+    this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(flushIntervalMillis);
+    this.flushSize = flushSize;
   }
 
   /**
@@ -112,7 +137,7 @@ final class ConcurrentMessageWriter implements Closeable {
     metricsCollector.increment("persist.requested", 1L);
 
     while (!pendingStoreRequest.isCompleted()) {
-      if (!tryWrite()) {
+      if (!tryWrite(true)) {
         Thread.yield();
       }
     }
@@ -136,14 +161,18 @@ final class ConcurrentMessageWriter implements Closeable {
   /**
    * Tries to acquire the writer flag and persist the pending requests.
    *
+   * @param waitForFlush {@code true} to wait for the flush interval or the flush size to be reached before persisting
    * @return {@code true} if acquired the writer flag and called {@link PendingStoreQueue#persist(StoreRequestWriter)};
    *         otherwise {@code false} will be returned.
    */
-  private boolean tryWrite() {
+  private boolean tryWrite(boolean waitForFlush) {
     if (!writerFlag.compareAndSet(false, true)) {
       return false;
     }
     try {
+      if (waitForFlush) {
+        pendingStoreQueue.awaitFlush(flushIntervalNanos, flushSize);
+      }
       pendingStoreQueue.persist(messagesWriter);
     } finally {
       writerFlag.set(false);
@@ -159,7 +188,7 @@ final class ConcurrentMessageWriter implements Closeable {
     // Flush everything in the queue.
     // When this thread can grab the writer flag, all pending write requests must be completed since the closed
     // flag was already set to false.
-    while (!tryWrite()) {
+    while (!tryWrite(false)) {
       Thread.yield();
     }
     messagesWriter.close();
@@ -172,13 +201,18 @@ final class ConcurrentMessageWriter implements Closeable {
    */
   private static final class PendingStoreQueue {
 
+    // Maximum time to park in each iteration while waiting for the flush condition
+    private static final long MAX_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+
     private final MetricsCollector metricsCollector;
     private final Queue<PendingStoreRequest> writeQueue;
+    private final AtomicInteger writeQueueSize;
     private final List<PendingStoreRequest> inflightRequests;
 
     private PendingStoreQueue(MetricsCollector metricsCollector) {
       this.metricsCollector = metricsCollector;
       this.writeQueue = new ConcurrentLinkedQueue<>();
+      this.writeQueueSize = new AtomicInteger();
       this.inflightRequests = new ArrayList<>(100);
     }
 
@@ -187,6 +221,24 @@ final class ConcurrentMessageWriter implements Closeable {
      */
     void enqueue(PendingStoreRequest storeRequest) {
       writeQueue.add(storeRequest);
+      writeQueueSize.incrementAndGet();
+    }
+
+    /**
+     * Waits until there are at least {@code flushSize} requests in the queue or the given interval has passed.
+     */
+    void awaitFlush(long intervalNanos, int flushSize) {
+      if (intervalNanos <= 0L) {
+        return;
+      }
+      long deadline = System.nanoTime() + intervalNanos;
+      while (writeQueueSize.get() < flushSize) {
+        long remaining = deadline - System.nanoTime();
+        if (remaining <= 0L) {
+          return;
+        }
+        LockSupport.parkNanos(Math.min(remaining, MAX_PARK_NANOS));
+      }
     }
 
     /**
@@ -202,6 +254,7 @@ final class ConcurrentMessageWriter implements Closeable {
       inflightRequests.clear();
       PendingStoreRequest request = writeQueue.poll();
       while (request != null) {
+        writeQueueSize.decrementAndGet();
         inflightRequests.add(request);
         request = writeQueue.poll();
       }
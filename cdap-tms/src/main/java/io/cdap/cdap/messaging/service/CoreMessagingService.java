@@ -85,6 +85,8 @@ public class CoreMessagingService extends AbstractIdleService implements Messagi
   private final TimeProvider timeProvider;
   private final MetricsCollectionService metricsCollectionService;
   private final long txMaxLifeTimeInMillis;
+  private final boolean groupCommit;
+  private volatile ConcurrentMessageWriter groupCommitWriter;
 
   @Inject
   protected CoreMessagingService(CConfiguration cConf, TableFactory tableFactory,
@@ -114,6 +116,10 @@ public class CoreMessagingService extends AbstractIdleService implements Messagi
     this.metricsCollectionService = metricsCollectionService;
     this.txMaxLifeTimeInMillis = TimeUnit.SECONDS.toMillis(cConf.getLong(TxConstants.Manager.CFG_TX_MAX_LIFETIME,
                                                                          TxConstants.Manager.DEFAULT_TX_MAX_LIFETIME));
+
+    // Group commit across topics is only possible if the message table is shared by all topics
+    this.groupCommit = cConf.getBoolean(Constants.MessagingSystem.GROUP_COMMIT_ENABLED)
+      && tableFactory.isMessageTableShared();
   }
 
   @Override
@@ -179,7 +185,10 @@ public class CoreMessagingService extends AbstractIdleService implements Messagi
       if (request.isTransactional()) {
         ensureValidTxLifetime(request.getTransactionWritePointer());
       }
-      return messageTableWriterCache.get(request.getTopicId()).persist(request, metadata);
+      ConcurrentMessageWriter writer = groupCommit
+        ? getGroupCommitWriter(metadata)
+        : messageTableWriterCache.get(request.getTopicId());
+      return writer.persist(request, metadata);
     } catch (ExecutionException e) {
       Throwable cause = Objects.firstNonNull(e.getCause(), e);
       Throwables.propagateIfPossible(cause, TopicNotFoundException.class, IOException.class);
@@ -252,6 +261,7 @@ public class CoreMessagingService extends AbstractIdleService implements Messagi
     messageTableWriterCache.invalidateAll();
     messageTableWriterCache.invalidateAll();
     payloadTableWriterCache.invalidateAll();
+    closeGroupCommitWriter();
     LOG.info("Core Messaging Service stopped");
   }
 
@@ -370,6 +380,53 @@ public class CoreMessagingService extends AbstractIdleService implements Messagi
       });
   }
 
+  /**
+   * Returns the {@link ConcurrentMessageWriter} shared by all topics for writing to the {@link MessageTable}.
+   * All publishes go through the same writer so that concurrent publishes to different topics are persisted
+   * in one batch.
+   *
+   * @param metadata the {@link TopicMetadata} of the topic being published to, used only for creating the
+   *                 shared {@link MessageTable} on the first call
+   */
+  private ConcurrentMessageWriter getGroupCommitWriter(TopicMetadata metadata) throws IOException {
+    ConcurrentMessageWriter writer = groupCommitWriter;
+    if (writer != null) {
+      return writer;
+    }
+    synchronized (this) {
+      writer = groupCommitWriter;
+      if (writer == null) {
+        MetricsContext metricsContext = metricsCollectionService.getContext(ImmutableMap.of(
+          Constants.Metrics.Tag.COMPONENT, Constants.Service.MESSAGING_SERVICE,
+          Constants.Metrics.Tag.INSTANCE_ID, cConf.get(Constants.MessagingSystem.CONTAINER_INSTANCE_ID, "0"),
+          Constants.Metrics.Tag.NAMESPACE, NamespaceId.SYSTEM.getNamespace(),
+          Constants.Metrics.Tag.TABLE, "message"
+        ));
+        writer = new ConcurrentMessageWriter(
+          new MessageTableStoreRequestWriter(createMessageTable(metadata), timeProvider), metricsContext,
+          cConf.getLong(Constants.MessagingSystem.GROUP_COMMIT_FLUSH_INTERVAL_MS),
+          cConf.getInt(Constants.MessagingSystem.GROUP_COMMIT_FLUSH_SIZE));
+        groupCommitWriter = writer;
+      }
+      return writer;
+    }
+  }
+
+  /**
+   * Closes the group commit {@link ConcurrentMessageWriter} if it was created.
+   */
+  private synchronized void closeGroupCommitWriter() {
+    ConcurrentMessageWriter writer = groupCommitWriter;
+    groupCommitWriter = null;
+    if (writer != null) {
+      try {
+        writer.close();
+      } catch (IOException e) {
+        LOG.warn("Exception raised when closing group commit message writer", e);
+      }
+    }
+  }
+
   /**
    * Creates a new instance of {@link MetadataTable}.
    */
@@ -30,4 +30,10 @@ public interface TableFactory {
   MessageTable createMessageTable(TopicMetadata topicMetadata) throws IOException;
 
   PayloadTable createPayloadTable(TopicMetadata topicMetadata) throws IOException;
+
+  /**
+   * Returns {@code true} if all {@link MessageTable} created by this factory share the same underlying storage,
+   * in which case a single {@link MessageTable} instance can store entries of any topic.
+   */
+  boolean isMessageTableShared();
 }
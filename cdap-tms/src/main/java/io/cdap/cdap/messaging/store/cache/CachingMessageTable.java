@@ -87,13 +87,15 @@ final class CachingMessageTable implements MessageTable {
                                                             limit, createFilter(metadata, transaction));
 
     // No need to scan the table if there is no adjustment on the start time and the cache has everything needed
+    CloseableIterator<Entry> iterator;
     if (lookupEntry == adjustedEntry && cacheHasAllEntries(lookupEntry, scanner, messageCache.getComparator())) {
-      return scanner;
+      iterator = scanner;
+    } else {
+      // Otherwise scan the table and return a combine result.
+      CloseableIterator<Entry> tableIterator = messageTable.fetch(metadata, startTime, limit, transaction);
+      iterator = new CombineMessageEntryIterator(tableIterator, scanner, messageCache.getComparator(), limit);
     }
-
-    // Otherwise scan the table and return a combine result.
-    CloseableIterator<Entry> tableIterator = messageTable.fetch(metadata, startTime, limit, transaction);
-    return new CombineMessageEntryIterator(tableIterator, scanner, messageCache.getComparator(), limit);
+    return loadPayloads(metadata, iterator, limit, transaction);
   }
 
   @Override
@@ -116,19 +118,21 @@ final class CachingMessageTable implements MessageTable {
                                                             limit, createFilter(metadata, transaction));
 
     // No need to scan the table if there is no adjustment on the start messageId and the cache has everything needed
+    CloseableIterator<Entry> iterator;
     if (lookupEntry == adjustedEntry && cacheHasAllEntries(lookupEntry, scanner, messageCache.getComparator())) {
-      return scanner;
+      iterator = scanner;
+    } else {
+      // Otherwise scan the table and return a combine result.
+      CloseableIterator<Entry> tableIterator = messageTable.fetch(metadata, messageId, inclusive, limit, transaction);
+      iterator = new CombineMessageEntryIterator(tableIterator, scanner, messageCache.getComparator(), limit);
     }
-
-    // Otherwise scan the table and return a combine result.
-    CloseableIterator<Entry> tableIterator = messageTable.fetch(metadata, messageId, inclusive, limit, transaction);
-    return new CombineMessageEntryIterator(tableIterator, scanner, messageCache.getComparator(), limit);
+    return loadPayloads(metadata, iterator, limit, transaction);
   }
 
   @Override
   public void store(Iterator<? extends Entry> entries) throws IOException {
     // Write it to the message table first
-    CopyingIterator iterator = new CopyingIterator(entries);
+    CopyingIterator iterator = new CopyingIterator(entries, cacheProvider);
     messageTable.store(iterator);
 
     Multimap<TopicId, Entry> topicEntries = iterator.getEntries();
@@ -192,6 +196,20 @@ final class CachingMessageTable implements MessageTable {
     return new CacheMessageTableEntry(metadata, minStartTime, (short) 0);
   }
 
+  /**
+   * If payloads of cached entries for the given topic are stored off-heap, returns a {@link CloseableIterator}
+   * that loads payloads from the {@link OffHeapPayloadBuffer} while iterating. Otherwise the given
+   * iterator is returned.
+   */
+  private CloseableIterator<Entry> loadPayloads(TopicMetadata metadata, CloseableIterator<Entry> iterator,
+                                                int limit, @Nullable Transaction transaction) {
+    if (cacheProvider.getPayloadBuffer(metadata.getTopicId()) == null) {
+      return iterator;
+    }
+    return new PayloadLoadingIterator(iterator, limit, (messageId, remaining) ->
+      messageTable.fetch(metadata, messageId, true, remaining, transaction));
+  }
+
   /**
    * Returns {@code true} if the scanner created from the message cache contains all entries starting from the given
    * start entry; otherwise return {@code false}.
@@ -296,16 +314,78 @@ final class CachingMessageTable implements MessageTable {
     }
   }
 
+  /**
+   * A {@link CloseableIterator} of {@link Entry} that loads payloads of cached entries from the
+   * {@link OffHeapPayloadBuffer}. If the payload of an entry has already been overwritten in the buffer, it
+   * switches to fetch from the {@link MessageTable}, starting from that entry.
+   */
+  private static final class PayloadLoadingIterator extends AbstractCloseableIterator<Entry> {
+
+    private final TableFetcher tableFetcher;
+    private CloseableIterator<Entry> iterator;
+    private boolean fromTable;
+    private int remaining;
+
+    private PayloadLoadingIterator(CloseableIterator<Entry> iterator, int limit, TableFetcher tableFetcher) {
+      this.iterator = iterator;
+      this.remaining = limit;
+      this.tableFetcher = tableFetcher;
+    }
+
+    @Override
+    protected Entry computeNext() {
+      if (remaining <= 0 || !iterator.hasNext()) {
+        return endOfData();
+      }
+
+      Entry entry = iterator.next();
+      if (!fromTable && entry instanceof CacheMessageTableEntry) {
+        CacheMessageTableEntry loaded = ((CacheMessageTableEntry) entry).loadPayload();
+        if (loaded == null) {
+          // Payload is no longer in the buffer, fetch the rest from the table, starting from this entry.
+          byte[] rawId = new byte[MessageId.RAW_ID_SIZE];
+          MessageId.putRawId(entry.getPublishTimestamp(), entry.getSequenceId(), 0L, (short) 0, rawId, 0);
+          iterator.close();
+          try {
+            iterator = tableFetcher.fetch(new MessageId(rawId), remaining);
+          } catch (IOException e) {
+            throw new RuntimeException("Failed to fetch messages from table for topic " + entry.getTopicId(), e);
+          }
+          fromTable = true;
+          return computeNext();
+        }
+        entry = loaded;
+      }
+
+      remaining--;
+      return entry;
+    }
+
+    @Override
+    public void close() {
+      iterator.close();
+    }
+  }
+
+  /**
+   * Functional interface for fetching entries from the {@link MessageTable}.
+   */
+  private interface TableFetcher {
+    CloseableIterator<Entry> fetch(MessageId messageId, int limit) throws IOException;
+  }
+
   /**
    * An {@link Iterator} of {@link Entry} that memorize the entries that have been iterated on.
    */
   private static final class CopyingIterator extends AbstractIterator<Entry> {
 
     private final Iterator<? extends Entry> iterator;
+    private final MessageTableCacheProvider cacheProvider;
     private final Multimap<TopicId, Entry> entries;
 
-    private CopyingIterator(Iterator<? extends Entry> iterator) {
+    private CopyingIterator(Iterator<? extends Entry> iterator, MessageTableCacheProvider cacheProvider) {
       this.iterator = iterator;
+      this.cacheProvider = cacheProvider;
       this.entries = LinkedListMultimap.create();
     }
 
@@ -325,7 +405,7 @@ final class CachingMessageTable implements MessageTable {
     }
 
     private Entry copyEntry(Entry other) {
-      return new CacheMessageTableEntry(other);
+      return new CacheMessageTableEntry(other, cacheProvider.getPayloadBuffer(other.getTopicId()));
     }
   }
 
@@ -341,10 +421,14 @@ final class CachingMessageTable implements MessageTable {
     private final int generation;
     private final boolean transactional;
     private final byte[] payload;
+    private final OffHeapPayloadBuffer payloadBuffer;
+    private final long payloadPosition;
+    private final int payloadLength;
     private final long publishTimestamp;
     private final short sequenceId;
     private long transactionWritePointer;
-    private boolean rollback;
+    // Set by rollback while fetchers may be scanning the cache without holding its lock
+    private volatile boolean rollback;
 
     CacheMessageTableEntry(TopicMetadata topicMetadata, long publishTimestamp, short sequenceId) {
       this.lookupOnly = true;
@@ -352,19 +436,87 @@ final class CachingMessageTable implements MessageTable {
       this.generation = topicMetadata.getGeneration();
       this.transactional = false;
       this.payload = null;
+      this.payloadBuffer = null;
+      this.payloadPosition = -1L;
+      this.payloadLength = 0;
       this.publishTimestamp = publishTimestamp;
       this.sequenceId = sequenceId;
     }
 
     CacheMessageTableEntry(Entry other) {
+      this(other, null);
+    }
+
+    /**
+     * Creates a copy of the given {@link Entry}. If a {@link OffHeapPayloadBuffer} is provided,
+     * the payload will be written to it instead of being kept on heap.
+     */
+    CacheMessageTableEntry(Entry other, @Nullable OffHeapPayloadBuffer payloadBuffer) {
       this.lookupOnly = false;
       this.topicId = other.getTopicId();
       this.generation = other.getGeneration();
       this.transactional = other.isTransactional();
       this.transactionWritePointer = other.getTransactionWritePointer();
-      this.payload = other.getPayload();
       this.publishTimestamp = other.getPublishTimestamp();
       this.sequenceId = other.getSequenceId();
+
+      byte[] payload = other.getPayload();
+      long position = payload == null || payloadBuffer == null ? -1L : payloadBuffer.write(payload);
+      if (position >= 0) {
+        this.payload = null;
+        this.payloadBuffer = payloadBuffer;
+        this.payloadPosition = position;
+        this.payloadLength = payload.length;
+      } else {
+        // Payload is kept on heap if it is a payload reference, or it is too large for the buffer.
+        this.payload = payload;
+        this.payloadBuffer = null;
+        this.payloadPosition = -1L;
+        this.payloadLength = 0;
+      }
+    }
+
+    /**
+     * Copy constructor that replaces the off-heap payload with the given payload.
+     */
+    private CacheMessageTableEntry(CacheMessageTableEntry other, byte[] payload) {
+      this.lookupOnly = false;
+      this.topicId = other.topicId;
+      this.generation = other.generation;
+      this.transactional = other.transactional;
+      this.transactionWritePointer = other.transactionWritePointer;
+      this.rollback = other.rollback;
+      this.publishTimestamp = other.publishTimestamp;
+      this.sequenceId = other.sequenceId;
+      this.payload = payload;
+      this.payloadBuffer = null;
+      this.payloadPosition = -1L;
+      this.payloadLength = 0;
+    }
+
+    /**
+     * Returns the size of the payload, regardless of whether it is stored on heap or off-heap.
+     */
+    int getPayloadSize() {
+      if (payloadBuffer != null) {
+        return payloadLength;
+      }
+      return payload == null ? 0 : payload.length;
+    }
+
+    /**
+     * Returns an entry with the payload loaded on heap. If the payload is already on heap, this instance is returned.
+     *
+     * @return a {@link CacheMessageTableEntry} or {@code null} if the payload has already been overwritten
+     *         in the {@link OffHeapPayloadBuffer}
+     */
+    @Nullable
+    CacheMessageTableEntry loadPayload() {
+      if (payloadBuffer == null) {
+        return this;
+      }
+      byte[] payload = payloadBuffer.read(payloadPosition, payloadLength);
+      return payload == null ? null : new CacheMessageTableEntry(this, payload);
     }
 
     void rollback() {
@@ -389,7 +541,7 @@ final class CachingMessageTable implements MessageTable {
 
     @Override
     public boolean isPayloadReference() {
-      return getPayload() == null;
+      return payloadBuffer == null && getPayload() == null;
     }
 
     @Override
@@ -414,6 +566,10 @@ final class CachingMessageTable implements MessageTable {
       if (lookupOnly) {
         throw new UnsupportedOperationException();
       }
+      if (payloadBuffer != null) {
+        // Payload should be loaded with the loadPayload method before calling this method
+        throw new IllegalStateException("Payload is stored off-heap and not loaded");
+      }
       return payload;
     }
 
@@ -41,6 +41,7 @@ public class DefaultMessageTableCacheProvider implements MessageTableCacheProvid
   private final CConfiguration cConf;
   private final MetricsCollectionService metricsCollectionService;
   private Map<TopicId, MessageCache<MessageTable.Entry>> topicMessageCaches;
+  private Map<TopicId, OffHeapPayloadBuffer> topicPayloadBuffers;
   private volatile boolean initialized;
 
   @Inject
@@ -55,12 +56,51 @@ public class DefaultMessageTableCacheProvider implements MessageTableCacheProvid
   @Nullable
   @Override
   public MessageCache<MessageTable.Entry> getMessageCache(TopicId topicId) {
+    initialize();
+    return topicMessageCaches.get(topicId);
+  }
+
+  @Nullable
+  @Override
+  public OffHeapPayloadBuffer getPayloadBuffer(TopicId topicId) {
+    initialize();
+    return topicPayloadBuffers.get(topicId);
+  }
+
+  @Override
+  public void clear() {
+    Collection<MessageCache<MessageTable.Entry>> caches;
+
+    synchronized (this) {
+      initialized = false;
+      caches = topicMessageCaches == null ? null : topicMessageCaches.values();
+      topicMessageCaches = null;
+      // Direct memory of the payload buffers will be released when they are garbage collected
+      topicPayloadBuffers = null;
+    }
+
+    if (caches != null) {
+      for (MessageCache<MessageTable.Entry> cache : caches) {
+        cache.clear();
+      }
+    }
+  }
+
+  /**
+   * Creates the {@link MessageCache} for all system topics if it has not been done yet.
+   */
+  private void initialize() {
     if (!initialized) {
       synchronized (this) {
         if (!initialized) {
           Map<TopicId, MessageCache<MessageTable.Entry>> caches = new HashMap<>();
+          Map<TopicId, OffHeapPayloadBuffer> payloadBuffers = new HashMap<>();
 
-          long cacheSize = cConf.getInt(Constants.MessagingSystem.CACHE_SIZE_MB) * 1024 * 1024;
+          // If off-heap storage is enabled, the cache size is determined by the off-heap size.
+          long offHeapSize = cConf.getLong(Constants.MessagingSystem.CACHE_OFFHEAP_SIZE_MB, 0L) * 1024 * 1024;
+          long cacheSize = offHeapSize > 0
+            ? offHeapSize
+            : cConf.getInt(Constants.MessagingSystem.CACHE_SIZE_MB) * 1024 * 1024;
           Set<TopicId> systemTopics = MessagingServiceUtils.getSystemTopics(cConf, true);
           if (cacheSize > 0 && !systemTopics.isEmpty()) {
             MessageTableEntryWeigher weigher = new MessageTableEntryWeigher();
@@ -70,7 +110,10 @@ public class DefaultMessageTableCacheProvider implements MessageTableCacheProvid
             // More sophisticated logic can be employed at runtime to monitor the metrics from MessageCache
             // for each topic and adjust the soft/hard limit accordingly to maximize efficiency in
             // memory usage and performance
-            long hardLimit = cacheSize / systemTopics.size();
+            // Each payload buffer is backed by a single direct ByteBuffer, hence can't be larger than 2GB.
+            long hardLimit = offHeapSize > 0
+              ? Math.min(cacheSize / systemTopics.size(), Integer.MAX_VALUE)
+              : cacheSize / systemTopics.size();
             if (hardLimit > 0) {
               // Have reduce trigger as 70% of the hard limit and min retain as 50% of the hard limit
               // In future, it can be adjusted dynamically based on metrics
@@ -78,34 +121,21 @@ public class DefaultMessageTableCacheProvider implements MessageTableCacheProvid
               for (TopicId topic : systemTopics) {
                 caches.put(topic, new MessageCache<>(comparator, weigher, limits,
                                                      createMetricsContext(cConf, topic, metricsCollectionService)));
+                // The payload buffer has the same size as the cache hard limit, so that payloads of
+                // entries that are still in the cache are very unlikely to be overwritten.
+                if (offHeapSize > 0) {
+                  payloadBuffers.put(topic, new OffHeapPayloadBuffer((int) hardLimit));
+                }
               }
             }
           }
 
           topicMessageCaches = caches;
+          topicPayloadBuffers = payloadBuffers;
           initialized = true;
         }
       }
     }
-
-    return topicMessageCaches.get(topicId);
-  }
-
-  @Override
-  public void clear() {
-    Collection<MessageCache<MessageTable.Entry>> caches;
-
-    synchronized (this) {
-      initialized = false;
-      caches = topicMessageCaches == null ? null : topicMessageCaches.values();
-      topicMessageCaches = null;
-    }
-
-    if (caches != null) {
-      for (MessageCache<MessageTable.Entry> cache : caches) {
-        cache.clear();
-      }
-    }
   }
 
   /**
@@ -36,6 +36,15 @@ public interface MessageTableCacheProvider {
   @Nullable
   MessageCache<MessageTable.Entry> getMessageCache(TopicId topicId);
 
+  /**
+   * Returns a {@link OffHeapPayloadBuffer} for storing payloads of the cached entries for the given topic.
+   *
+   * @param topicId the topic id
+   * @return a {@link OffHeapPayloadBuffer} or {@code null} if payloads of cached entries are stored on heap.
+   */
+  @Nullable
+  OffHeapPayloadBuffer getPayloadBuffer(TopicId topicId);
+
   /**
    * Resets all {@link MessageCache} created by this cache provider.
    */
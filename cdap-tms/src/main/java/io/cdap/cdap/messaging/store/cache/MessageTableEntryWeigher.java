@@ -28,6 +28,10 @@ final class MessageTableEntryWeigher implements MessageCache.Weigher<MessageTabl
   public int weight(MessageTable.Entry entry) {
     // Some fixed overhead for the primitive and reference fields
     int weight = 40;
+    if (entry instanceof CachingMessageTable.CacheMessageTableEntry) {
+      // Avoid loading the payload if it is stored off-heap
+      return weight + ((CachingMessageTable.CacheMessageTableEntry) entry).getPayloadSize();
+    }
     byte[] payload = entry.getPayload();
     weight += payload == null ? 0 : payload.length;
     return weight;
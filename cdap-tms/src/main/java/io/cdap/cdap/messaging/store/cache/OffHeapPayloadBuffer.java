@@ -0,0 +1,141 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.cdap.messaging.store.cache;
+
+import com.google.common.base.Preconditions;
+import io.cdap.cdap.messaging.store.MessageTable;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.locks.StampedLock;
+import javax.annotation.Nullable;
+
+/**
+ * A ring buffer in direct memory for storing message payloads of cached {@link MessageTable.Entry}.
+ * Payloads are written sequentially and older payloads are overwritten once the buffer wraps around.
+ * A payload is addressed by the absolute position returned by {@link #write(byte[])}, which allows
+ * the reader to tell if a payload has been overwritten.
+ *
+ * This class expects a single writer, which is the case for the message table cache since there is only
+ * one writer per topic. Reads can happen concurrently with the write.
+ */
+public final class OffHeapPayloadBuffer {
+
+  private final ByteBuffer buffer;
+  private final int capacity;
+  private final StampedLock lock;
+  // The absolute position of the end of the last write. Only updated while holding the write lock.
+  private long writePosition;
+
+  /**
+   * Creates a new instance with the given capacity in bytes.
+   */
+  public OffHeapPayloadBuffer(int capacity) {
+    Preconditions.checkArgument(capacity > 0, "Capacity must be positive");
+    this.buffer = ByteBuffer.allocateDirect(capacity);
+    this.capacity = capacity;
+    this.lock = new StampedLock();
+  }
+
+  /**
+   * Returns the capacity of this buffer in bytes.
+   */
+  public int getCapacity() {
+    return capacity;
+  }
+
+  /**
+   * Writes the given payload to the buffer.
+   *
+   * @param payload the payload to write
+   * @return the absolute position of the payload in the buffer, or {@code -1} if the payload is larger than the
+   *         capacity of this buffer
+   */
+  public long write(byte[] payload) {
+    if (payload.length > capacity) {
+      return -1L;
+    }
+
+    long stamp = lock.writeLock();
+    try {
+      long position = writePosition;
+      int offset = (int) (position % capacity);
+      // Payload never wraps around the end of the buffer. Skip to the beginning of the buffer if it doesn't fit.
+      if (offset + payload.length > capacity) {
+        position += capacity - offset;
+        offset = 0;
+      }
+      ByteBuffer dup = buffer.duplicate();
+      dup.position(offset);
+      dup.put(payload);
+      writePosition = position + payload.length;
+      return position;
+    } finally {
+      lock.unlockWrite(stamp);
+    }
+  }
+
+  /**
+   * Reads a payload from the buffer.
+   *
+   * @param position the absolute position of the payload as returned by {@link #write(byte[])}
+   * @param length the length of the payload
+   * @return the payload or {@code null} if it has already been overwritten
+   */
+  @Nullable
+  public byte[] read(long position, int length) {
+    byte[] payload = new byte[length];
+
+    // Optimistically copy without locking. It is valid if there is no write during the copy.
+    long stamp = lock.tryOptimisticRead();
+    if (stamp != 0L) {
+      boolean valid = isValid(position);
+      if (valid) {
+        copy(position, payload);
+      }
+      if (lock.validate(stamp)) {
+        return valid ? payload : null;
+      }
+    }
+
+    stamp = lock.readLock();
+    try {
+      if (!isValid(position)) {
+        return null;
+      }
+      copy(position, payload);
+      return payload;
+    } finally {
+      lock.unlockRead(stamp);
+    }
+  }
+
+  /**
+   * Returns {@code true} if the payload at the given position hasn't been overwritten.
+   */
+  private boolean isValid(long position) {
+    return position >= 0 && writePosition - capacity <= position;
+  }
+
+  /**
+   * Copies from the given absolute position to the given byte array.
+   */
+  private void copy(long position, byte[] payload) {
+    ByteBuffer dup = buffer.duplicate();
+    dup.position((int) (position % capacity));
+    dup.get(payload);
+  }
+}
@@ -199,6 +199,12 @@ public final class HBaseTableFactory implements TableFactory {
     );
   }
 
+  @Override
+  public boolean isMessageTableShared() {
+    // All topics are stored in the same HBase table
+    return true;
+  }
+
   public void upgradeMessageTable(String tableName) throws IOException {
     upgradeCoProcessor(tableUtil.createHTableId(NamespaceId.SYSTEM, tableName),
                        tableUtil.getMessageTableRegionObserverClassForVersion());
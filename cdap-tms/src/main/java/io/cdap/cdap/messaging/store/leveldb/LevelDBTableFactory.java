@@ -31,6 +31,7 @@ import io.cdap.cdap.messaging.store.TableFactory;
 import io.cdap.cdap.proto.id.NamespaceId;
 import io.cdap.cdap.proto.id.TopicId;
 import org.apache.twill.common.Threads;
+import org.iq80.leveldb.CompressionType;
 import org.iq80.leveldb.DB;
 import org.iq80.leveldb.Options;
 import org.iq80.leveldb.impl.Iq80DBFactory;
@@ -72,6 +73,10 @@ public final class LevelDBTableFactory implements TableFactory {
     this.dbOptions = new Options()
       .blockSize(cConf.getInt(Constants.CFG_DATA_LEVELDB_BLOCKSIZE, Constants.DEFAULT_DATA_LEVELDB_BLOCKSIZE))
       .cacheSize(cConf.getLong(Constants.CFG_DATA_LEVELDB_CACHESIZE, Constants.DEFAULT_DATA_LEVELDB_CACHESIZE))
+      .writeBufferSize(cConf.getInt(Constants.CFG_DATA_LEVELDB_WRITE_BUFFER_SIZE,
+                                    Constants.DEFAULT_DATA_LEVELDB_WRITE_BUFFER_SIZE))
+      .compressionType(CompressionType.valueOf(cConf.get(Constants.CFG_DATA_LEVELDB_COMPRESSION,
+                                                         Constants.DEFAULT_DATA_LEVELDB_COMPRESSION).toUpperCase()))
       .errorIfExists(false)
       .createIfMissing(true);
     ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(
@@ -108,6 +113,12 @@ public final class LevelDBTableFactory implements TableFactory {
     return new LevelDBPayloadTable(getLevelDB(topicMetadata, payloadTableName), topicMetadata);
   }
 
+  @Override
+  public boolean isMessageTableShared() {
+    // Each topic has its own LevelDB
+    return false;
+  }
+
   /**
    * Returns the LevelDB {@link DB} object for the given {@link TopicMetadata}, which stores on the given file path.
    */
@@ -26,6 +26,7 @@ import io.cdap.cdap.messaging.store.MessageFilter;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
@@ -36,7 +37,12 @@ import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Callable;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Unit test for {@link MessageCache}.
@@ -375,6 +381,125 @@ public class MessageCacheTest {
   }
 
 
+  @Test
+  public void testSegmentRemoval() {
+    // With hard limit of 64, each segment can hold at most 4 entries of unit weight
+    MessageCache<Integer> cache = new MessageCache<>(new IntComparator(), new UnitWeigher<Integer>(),
+                                                     new MessageCache.Limits(16, 32, 64), NOOP_METRICS);
+    List<Integer> entries = new ArrayList<>();
+    for (int i = 0; i < 64; i++) {
+      entries.add(i);
+    }
+    cache.addAll(entries.iterator());
+    Assert.assertEquals(64, cache.getCurrentWeight());
+    Assert.assertEquals(16, cache.getSegmentCount());
+
+    // Adding one more entry triggers weight reduction, which should drop the whole segments from the head.
+    // The cache should retain 15 existing entries (49 - 63), plus the new entry.
+    cache.addAll(Collections.singletonList(64).iterator());
+    entries.add(64);
+    Assert.assertEquals(16, cache.getCurrentWeight());
+    Assert.assertEquals(5, cache.getSegmentCount());
+
+    try (MessageCache.Scanner<Integer> scanner = cache.scan(0, true, 100, MessageFilter.<Integer>alwaysAccept())) {
+      Assert.assertEquals(Integer.valueOf(49), scanner.getFirstInCache());
+      Assert.assertEquals(entries.subList(49, 65), Lists.newArrayList(scanner));
+    }
+
+    // Clearing the cache should remove all entries
+    cache.clear();
+    Assert.assertEquals(0, cache.getCurrentWeight());
+    try (MessageCache.Scanner<Integer> scanner = cache.scan(0, true, 100, MessageFilter.<Integer>alwaysAccept())) {
+      Assert.assertNull(scanner.getFirstInCache());
+      Assert.assertFalse(scanner.hasNext());
+    }
+
+    // Entries smaller than the removed ones can be added after clearing
+    cache.addAll(Arrays.asList(1, 2, 3).iterator());
+    try (MessageCache.Scanner<Integer> scanner = cache.scan(0, true, 100, MessageFilter.<Integer>alwaysAccept())) {
+      Assert.assertEquals(Arrays.asList(1, 2, 3), Lists.newArrayList(scanner));
+    }
+  }
+
+  @Test
+  public void testConcurrentScan() throws Exception {
+    // Single writer keeps adding entries while multiple readers scan concurrently.
+    // Each scan should always give consecutive entries starting from the requested entry or the first in cache.
+    MessageCache<Integer> cache = new MessageCache<>(new IntComparator(), new UnitWeigher<Integer>(),
+                                                     new MessageCache.Limits(100, 150, 200), NOOP_METRICS);
+    AtomicBoolean stopped = new AtomicBoolean();
+    ExecutorService executor = Executors.newFixedThreadPool(5);
+    try {
+      List<Future<?>> futures = new ArrayList<>();
+      for (int i = 0; i < 4; i++) {
+        futures.add(executor.submit(() -> {
+          MessageFilter<Integer> filter = MessageFilter.alwaysAccept();
+          int start = 0;
+          while (!stopped.get()) {
+            try (MessageCache.Scanner<Integer> scanner = cache.scan(start, true, 50, filter)) {
+              Integer firstInCache = scanner.getFirstInCache();
+              int expected = firstInCache == null ? start : Math.max(start, firstInCache);
+              while (scanner.hasNext()) {
+                Assert.assertEquals(Integer.valueOf(expected++), scanner.next());
+              }
+              start = expected;
+            }
+          }
+          return null;
+        }));
+      }
+
+      futures.add(executor.submit(() -> {
+        for (int i = 0; i < 100000; i += 10) {
+          List<Integer> entries = new ArrayList<>();
+          for (int j = i; j < i + 10; j++) {
+            entries.add(j);
+          }
+          cache.addAll(entries.iterator());
+        }
+        stopped.set(true);
+        return null;
+      }));
+
+      for (Future<?> future : futures) {
+        future.get(60, TimeUnit.SECONDS);
+      }
+    } finally {
+      stopped.set(true);
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void testListener() {
+    MessageCache<Integer> cache = new MessageCache<>(new IntComparator(), new UnitWeigher<Integer>(),
+                                                     new MessageCache.Limits(10, 14, 20), NOOP_METRICS);
+    AtomicInteger notified = new AtomicInteger();
+    AtomicInteger cancelled = new AtomicInteger();
+
+    cache.addListener(notified::incrementAndGet);
+    cache.addListener(cancelled::incrementAndGet).cancel();
+
+    // Adding nothing shouldn't trigger the listener
+    cache.addAll(Collections.<Integer>emptyIterator());
+    Assert.assertEquals(0, notified.get());
+
+    // The listener should see the newly added entries when it is called
+    cache.addListener(() -> {
+      try (MessageCache.Scanner<Integer> scanner = cache.scan(0, true, 10, MessageFilter.alwaysAccept())) {
+        Assert.assertEquals(Arrays.asList(1, 2, 3), Lists.newArrayList(scanner));
+      }
+      notified.incrementAndGet();
+    });
+    cache.addAll(Arrays.asList(1, 2, 3).iterator());
+    Assert.assertEquals(2, notified.get());
+    Assert.assertEquals(0, cancelled.get());
+
+    // Listeners are only called once
+    cache.addAll(Arrays.asList(4, 5).iterator());
+    Assert.assertEquals(2, notified.get());
+  }
+
   /**
    * A {@link Comparator} for {@link Integer}.
    */
@@ -0,0 +1,96 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.cdap.messaging.server;
+
+import com.google.common.base.Strings;
+import io.cdap.cdap.api.common.Bytes;
+import io.cdap.cdap.api.dataset.lib.AbstractCloseableIterator;
+import io.cdap.cdap.api.dataset.lib.CloseableIterator;
+import io.cdap.cdap.messaging.data.RawMessage;
+import io.cdap.http.BodyProducer;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.PooledByteBufAllocator;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Unit tests for the {@link BodyProducer}s used by {@link FetchHandler}.
+ */
+public class FetchHandlerTest {
+
+  @Test
+  public void testZeroCopyEncoding() throws Exception {
+    // Mix of small payloads that get copied and large payloads that get wrapped
+    List<RawMessage> messages = new ArrayList<>();
+    for (int i = 0; i < 100; i++) {
+      String payload = i % 3 == 0 ? Strings.repeat("Message " + i, 100) : "Message " + i;
+      messages.add(new RawMessage(Bytes.toBytes(i), Bytes.toBytes(payload)));
+    }
+
+    for (int chunkSize : new int[] { 1, 128, 4096, 1 << 20 }) {
+      byte[] expected = produce(new FetchHandler.MessagesBodyProducer(createIterator(messages), chunkSize));
+      byte[] actual = produce(new FetchHandler.ZeroCopyMessagesBodyProducer(createIterator(messages), chunkSize,
+                                                                            PooledByteBufAllocator.DEFAULT));
+      Assert.assertArrayEquals("Mismatch for chunk size " + chunkSize, expected, actual);
+    }
+  }
+
+  @Test
+  public void testZeroCopyEmpty() throws Exception {
+    List<RawMessage> messages = new ArrayList<>();
+    byte[] expected = produce(new FetchHandler.MessagesBodyProducer(createIterator(messages), 128));
+    byte[] actual = produce(new FetchHandler.ZeroCopyMessagesBodyProducer(createIterator(messages), 128,
+                                                                          PooledByteBufAllocator.DEFAULT));
+    Assert.assertArrayEquals(expected, actual);
+  }
+
+  /**
+   * Drains the given {@link BodyProducer} and returns the concatenation of all chunks.
+   */
+  private byte[] produce(BodyProducer producer) throws Exception {
+    ByteArrayOutputStream os = new ByteArrayOutputStream();
+    ByteBuf chunk = producer.nextChunk();
+    while (chunk.isReadable()) {
+      os.write(ByteBufUtil.getBytes(chunk));
+      chunk.release();
+      chunk = producer.nextChunk();
+    }
+    producer.finished();
+    return os.toByteArray();
+  }
+
+  private CloseableIterator<RawMessage> createIterator(List<RawMessage> messages) {
+    Iterator<RawMessage> iterator = messages.iterator();
+    return new AbstractCloseableIterator<RawMessage>() {
+      @Override
+      protected RawMessage computeNext() {
+        return iterator.hasNext() ? iterator.next() : endOfData();
+      }
+
+      @Override
+      public void close() {
+        // no-op
+      }
+    };
+  }
+}
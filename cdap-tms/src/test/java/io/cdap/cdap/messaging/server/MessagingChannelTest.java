@@ -0,0 +1,108 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.cdap.messaging.server;
+
+import io.cdap.cdap.api.common.Bytes;
+import io.cdap.cdap.api.dataset.lib.CloseableIterator;
+import io.cdap.cdap.common.conf.CConfiguration;
+import io.cdap.cdap.common.conf.Constants;
+import io.cdap.cdap.messaging.TopicMetadata;
+import io.cdap.cdap.messaging.client.StoreRequestBuilder;
+import io.cdap.cdap.messaging.data.RawMessage;
+import io.cdap.cdap.proto.id.NamespaceId;
+import io.cdap.cdap.proto.id.TopicId;
+import org.apache.twill.discovery.InMemoryDiscoveryService;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs all tests in {@link MessagingHttpServiceTest} with publish and fetch going through the
+ * {@link MessagingChannelServer}.
+ */
+public class MessagingChannelTest extends MessagingHttpServiceTest {
+
+  @BeforeClass
+  public static void init() throws IOException {
+    init(true);
+  }
+
+  @Test
+  public void testPipelinedPublish() throws Exception {
+    TopicId topicId = new NamespaceId("ns1").topic("testPipelinedPublish");
+    client.createTopic(new TopicMetadata(topicId));
+
+    int threads = 10;
+    int messagesPerThread = 50;
+
+    // Publish concurrently from multiple threads, which share the same channel
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    try {
+      List<Future<?>> futures = new ArrayList<>();
+      for (int i = 0; i < threads; i++) {
+        int threadId = i;
+        futures.add(executor.submit(() -> {
+          for (int j = 0; j < messagesPerThread; j++) {
+            client.publish(StoreRequestBuilder.of(topicId).addPayload(threadId + "-" + j).build());
+          }
+          return null;
+        }));
+      }
+      for (Future<?> future : futures) {
+        future.get(1, TimeUnit.MINUTES);
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+
+    Set<String> payloads = new HashSet<>();
+    try (CloseableIterator<RawMessage> iterator = client.prepareFetch(topicId).setLimit(Integer.MAX_VALUE).fetch()) {
+      while (iterator.hasNext()) {
+        payloads.add(Bytes.toString(iterator.next().getPayload()));
+      }
+    }
+    Assert.assertEquals(threads * messagesPerThread, payloads.size());
+
+    client.deleteTopic(topicId);
+  }
+
+  @Test
+  public void testSecurityEnabled() {
+    CConfiguration cConf = CConfiguration.create();
+    cConf.setBoolean(Constants.Security.ENABLED, true);
+
+    // The channel doesn't authenticate clients, hence it shouldn't be started when security is enabled
+    MessagingChannelServer server = new MessagingChannelServer(cConf, new InMemoryDiscoveryService(), client);
+    try {
+      server.startAndWait();
+      Assert.fail("Expected messaging channel server fails to start when security is enabled");
+    } catch (Exception e) {
+      // expected
+    }
+    Assert.assertFalse(server.isRunning());
+  }
+}
@@ -56,9 +56,11 @@ import java.io.IOException;
 import java.net.InetAddress;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 /**
@@ -71,11 +73,21 @@ public class MessagingHttpServiceTest {
 
   private static CConfiguration cConf;
   private static MessagingHttpService httpService;
-  private static MessagingService client;
+  static MessagingService client;
 
   @BeforeClass
   public static void init() throws IOException {
+    init(false);
+  }
+
+  /**
+   * Starts the messaging http service and creates the client.
+   *
+   * @param channelEnabled {@code true} to have the client talking to the server through the binary channel
+   */
+  static void init(boolean channelEnabled) throws IOException {
     cConf = CConfiguration.create();
+    cConf.setBoolean(Constants.MessagingSystem.CHANNEL_ENABLED, channelEnabled);
     cConf.set(Constants.CFG_LOCAL_DATA_DIR, TEMP_FOLDER.newFolder().getAbsolutePath());
     cConf.set(Constants.MessagingSystem.HTTP_SERVER_BIND_ADDRESS, InetAddress.getLocalHost().getHostName());
     cConf.setInt(Constants.MessagingSystem.HTTP_SERVER_CONSUME_CHUNK_SIZE, 128);
@@ -97,11 +109,12 @@ public class MessagingHttpServiceTest {
     httpService = injector.getInstance(MessagingHttpService.class);
     httpService.startAndWait();
 
-    client = new ClientMessagingService(injector.getInstance(DiscoveryServiceClient.class));
+    client = new ClientMessagingService(cConf, injector.getInstance(DiscoveryServiceClient.class));
   }
 
   @AfterClass
   public static void finish() {
+    ((ClientMessagingService) client).close();
     httpService.stopAndWait();
   }
 
@@ -596,4 +609,32 @@ public class MessagingHttpServiceTest {
                           .map(RawMessage::getPayload)
                           .map(Bytes::toString).collect(Collectors.toList()));
   }
+
+  @Test
+  public void testWaitFetch() throws Exception {
+    // Topics that are not cached don't support waiting, hence fetch should return immediately
+    TopicId topicId = new NamespaceId("ns1").topic("testWaitFetch");
+    client.createTopic(new TopicMetadata(topicId));
+
+    List<RawMessage> messages = new ArrayList<>();
+    long startTime = System.currentTimeMillis();
+    try (CloseableIterator<RawMessage> iterator = client.prepareFetch(topicId)
+                                                        .setWaitTimeout(1, TimeUnit.MINUTES).fetch()) {
+      Iterators.addAll(messages, iterator);
+    }
+    Assert.assertTrue(messages.isEmpty());
+    Assert.assertTrue(System.currentTimeMillis() - startTime < TimeUnit.MINUTES.toMillis(1));
+
+    client.publish(StoreRequestBuilder.of(topicId).addPayload("m1").build());
+    try (CloseableIterator<RawMessage> iterator = client.prepareFetch(topicId)
+                                                        .setWaitTimeout(1, TimeUnit.MINUTES).fetch()) {
+      Iterators.addAll(messages, iterator);
+    }
+    Assert.assertEquals(Collections.singletonList("m1"),
+                        messages.stream()
+                          .map(RawMessage::getPayload)
+                          .map(Bytes::toString).collect(Collectors.toList()));
+
+    client.deleteTopic(topicId);
+  }
 }
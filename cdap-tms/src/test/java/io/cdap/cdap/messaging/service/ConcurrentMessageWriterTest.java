@@ -22,6 +22,7 @@ import com.google.common.collect.ListMultimap;
 import com.google.common.util.concurrent.Uninterruptibles;
 import io.cdap.cdap.api.common.Bytes;
 import io.cdap.cdap.api.metrics.MetricsCollector;
+import io.cdap.cdap.api.metrics.NoopMetricsContext;
 import io.cdap.cdap.common.utils.TimeProvider;
 import io.cdap.cdap.messaging.StoreRequest;
 import io.cdap.cdap.messaging.TopicMetadata;
@@ -268,6 +269,45 @@ public class ConcurrentMessageWriterTest {
     }
   }
 
+  @Test
+  public void testGroupCommit() throws InterruptedException, BrokenBarrierException {
+    int threadCount = 10;
+
+    TestStoreRequestWriter testWriter = new TestStoreRequestWriter(new TimeProvider.IncrementalTimeProvider());
+    // Use a long flush interval so that the batch is only flushed when requests from all threads are pending
+    final ConcurrentMessageWriter writer = new ConcurrentMessageWriter(testWriter, new NoopMetricsContext(),
+                                                                       TimeUnit.MINUTES.toMillis(1), threadCount);
+
+    ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+    final CyclicBarrier barrier = new CyclicBarrier(threadCount + 1);
+    for (int i = 0; i < threadCount; i++) {
+      final TopicId topicId = NamespaceId.DEFAULT.topic("t" + i);
+      final TopicMetadata metadata = new TopicMetadata(topicId, new HashMap<String, String>(), 1);
+      executor.submit(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            barrier.await();
+            writer.persist(new TestStoreRequest(topicId, Arrays.asList("1", "2")), metadata);
+          } catch (Exception e) {
+            LOG.error("Exception raised when persisting.", e);
+          }
+        }
+      });
+    }
+
+    barrier.await();
+    executor.shutdown();
+    Assert.assertTrue(executor.awaitTermination(1, TimeUnit.MINUTES));
+
+    // Requests to all topics should be written in one batch
+    Assert.assertEquals(1, testWriter.getWriteCount());
+    for (int i = 0; i < threadCount; i++) {
+      List<RawMessage> messages = testWriter.getMessages().get(NamespaceId.DEFAULT.topic("t" + i));
+      Assert.assertEquals(2, messages.size());
+    }
+  }
+
   /**
    * A {@link StoreRequestWriter} that turns all payloads to {@link RawMessage} and stores it in a List.
    */
@@ -275,6 +315,7 @@ public class ConcurrentMessageWriterTest {
 
     private final ListMultimap<TopicId, RawMessage> messages = ArrayListMultimap.create();
     private long writeDelayMillis;
+    private int writeCount;
 
     TestStoreRequestWriter(TimeProvider timeProvider) {
       super(timeProvider, false);
@@ -297,6 +338,7 @@ public class ConcurrentMessageWriterTest {
 
     @Override
     protected void doWrite(Iterator<TestEntry> entries) throws IOException {
+      writeCount++;
       while (entries.hasNext()) {
         TestEntry entry = entries.next();
         byte[] rawId = new byte[MessageId.RAW_ID_SIZE];
@@ -315,6 +357,10 @@ public class ConcurrentMessageWriterTest {
       return messages;
     }
 
+    int getWriteCount() {
+      return writeCount;
+    }
+
     @Override
     public void close() throws IOException {
       // No-op
@@ -80,6 +80,11 @@ public class CachingMessageTableTest extends LevelDBMessageTableTest {
         return caches.getUnchecked(topicId);
       }
 
+      @Override
+      public OffHeapPayloadBuffer getPayloadBuffer(TopicId topicId) {
+        return null;
+      }
+
       @Override
       public void clear() {
         caches.invalidateAll();
@@ -172,4 +177,67 @@ public class CachingMessageTableTest extends LevelDBMessageTableTest {
       Assert.assertTrue(iterator.next() instanceof CachingMessageTable.CacheMessageTableEntry);
     }
   }
+
+  @Test
+  public void testOffHeapPayload() throws Exception {
+    TopicMetadata metadata = new TopicMetadata(NamespaceId.DEFAULT.topic("offheap"),
+                                               TopicMetadata.GENERATION_KEY, 1,
+                                               TopicMetadata.TTL_KEY, 86400);
+
+    // A cache that can hold all entries, but with a payload buffer that can only hold the last few payloads
+    MessageCache<MessageTable.Entry> messageCache = new MessageCache<>(new MessageTableEntryComparator(),
+                                                                       new MessageTableEntryWeigher(),
+                                                                       new MessageCache.Limits(500, 700, 1000),
+                                                                       new NoopMetricsContext());
+    OffHeapPayloadBuffer payloadBuffer = new OffHeapPayloadBuffer(32);
+    MessageTableCacheProvider offHeapCacheProvider = new MessageTableCacheProvider() {
+      @Override
+      public MessageCache<MessageTable.Entry> getMessageCache(TopicId topicId) {
+        return messageCache;
+      }
+
+      @Override
+      public OffHeapPayloadBuffer getPayloadBuffer(TopicId topicId) {
+        return payloadBuffer;
+      }
+
+      @Override
+      public void clear() {
+        messageCache.clear();
+      }
+    };
+
+    MessageTable messageTable = new CachingMessageTable(CConfiguration.create(), super.getMessageTable(metadata),
+                                                        offHeapCacheProvider);
+    for (int i = 0; i < 10; i++) {
+      byte[] key = Bytes.concat(MessagingUtils.toDataKeyPrefix(metadata.getTopicId(), metadata.getGeneration()),
+                                Bytes.toBytes((long) i), Bytes.toBytes((short) 0));
+      messageTable.store(
+        Collections.singleton(new ImmutableMessageTableEntry(key, Bytes.toBytes("Payload " + i), null)).iterator());
+    }
+
+    // Fetch all entries. The first payload was overwritten in the buffer, hence all entries should be fetched
+    // from the table instead.
+    try (CloseableIterator<MessageTable.Entry> iter = messageTable.fetch(metadata, 0, 100, null)) {
+      List<MessageTable.Entry> entries = Lists.newArrayList(iter);
+      Assert.assertEquals(10, entries.size());
+      for (int i = 0; i < 10; i++) {
+        MessageTable.Entry entry = entries.get(i);
+        Assert.assertEquals(i, entry.getPublishTimestamp());
+        Assert.assertFalse(entry.isPayloadReference());
+        Assert.assertEquals("Payload " + i, Bytes.toString(entry.getPayload()));
+      }
+    }
+
+    // Fetch the last three entries, which should all be served from the cache
+    try (CloseableIterator<MessageTable.Entry> iter = messageTable.fetch(metadata, 7, 100, null)) {
+      List<MessageTable.Entry> entries = Lists.newArrayList(iter);
+      Assert.assertEquals(3, entries.size());
+      for (int i = 0; i < 3; i++) {
+        MessageTable.Entry entry = entries.get(i);
+        Assert.assertTrue(entry instanceof CachingMessageTable.CacheMessageTableEntry);
+        Assert.assertEquals("Payload " + (i + 7), Bytes.toString(entry.getPayload()));
+      }
+    }
+  }
 }
@@ -0,0 +1,54 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.cdap.messaging.store.cache;
+
+import io.cdap.cdap.api.common.Bytes;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Unit test for {@link OffHeapPayloadBuffer}.
+ */
+public class OffHeapPayloadBufferTest {
+
+  @Test
+  public void testReadWrite() {
+    OffHeapPayloadBuffer buffer = new OffHeapPayloadBuffer(16);
+
+    long pos1 = buffer.write(Bytes.toBytes("12345678"));
+    long pos2 = buffer.write(Bytes.toBytes("abcdef"));
+    Assert.assertEquals("12345678", Bytes.toString(buffer.read(pos1, 8)));
+    Assert.assertEquals("abcdef", Bytes.toString(buffer.read(pos2, 6)));
+
+    // This write doesn't fit at the end of the buffer, hence will be written at the beginning,
+    // overwriting the first payload
+    long pos3 = buffer.write(Bytes.toBytes("ghij"));
+    Assert.assertEquals(16L, pos3);
+    Assert.assertNull(buffer.read(pos1, 8));
+    Assert.assertEquals("abcdef", Bytes.toString(buffer.read(pos2, 6)));
+    Assert.assertEquals("ghij", Bytes.toString(buffer.read(pos3, 4)));
+
+    // Overwrite the second payload
+    long pos4 = buffer.write(Bytes.toBytes("klmnop"));
+    Assert.assertNull(buffer.read(pos2, 6));
+    Assert.assertEquals("ghij", Bytes.toString(buffer.read(pos3, 4)));
+    Assert.assertEquals("klmnop", Bytes.toString(buffer.read(pos4, 6)));
+
+    // Payload larger than the capacity cannot be written
+    Assert.assertEquals(-1L, buffer.write(new byte[17]));
+  }
+}
@@ -42,6 +42,30 @@ public interface MetricStore {
    */
   void add(Collection<? extends MetricValues> metricValues);
 
+  /**
+   * Writes out {@link MetricValues} that were added to this store but are still buffered in memory.
+   * Implementations that don't buffer metrics can leave this method as a no-op.
+   */
+  default void flush() {
+    // no-op
+  }
+
+  /**
+   * Computes metrics of coarser resolutions from metrics of finer resolutions that were added since the last call.
+   * Implementations that write metrics of all resolutions when they are added can leave this method as a no-op.
+   */
+  default void rollup() {
+    // no-op
+  }
+
+  /**
+   * Rewrites metrics that no longer receive writes into a more compact storage format.
+   * Implementations that don't support compaction can leave this method as a no-op.
+   */
+  default void compact() {
+    // no-op
+  }
+
   /**
    * Queries metrics data.
    * @param query query to execute
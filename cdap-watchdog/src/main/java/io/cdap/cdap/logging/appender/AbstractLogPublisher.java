@@ -73,6 +73,16 @@ public abstract class AbstractLogPublisher<MESSAGE> extends AbstractRetryableSch
     messageQueue.put(logMessage);
   }
 
+  /**
+   * Adds a log message for publishing if the queue is not full, without blocking.
+   *
+   * @param logMessage the log message to add for publishing
+   * @return {@code true} if the message was added, {@code false} if the queue is full
+   */
+  public final boolean offerMessage(LogMessage logMessage) {
+    return messageQueue.offer(logMessage);
+  }
+
   @Override
   protected long runTask() throws Exception {
     // Only block for messages if it is not a failure retry
@@ -59,6 +59,9 @@ public class CDAPLogAppender extends AppenderBase<ILoggingEvent> implements Flus
   private String dirPermissions;
   private String filePermissions;
   private int syncIntervalBytes;
+  private int indexIntervalBytes;
+  private int maxIndexTokens;
+  private int columnarStripeEvents;
   private long maxFileLifetimeMs;
   private long maxFileSizeInBytes;
   private ScheduledExecutorService scheduledExecutorService;
@@ -91,6 +94,30 @@ public class CDAPLogAppender extends AppenderBase<ILoggingEvent> implements Flus
     this.syncIntervalBytes = syncIntervalBytes;
   }
 
+  /**
+   * Sets the approximate number of bytes of log events in each block of the index written next to a log file,
+   * or {@code 0} to not write the index. This is called by the logback framework.
+   */
+  public void setIndexIntervalBytes(int indexIntervalBytes) {
+    this.indexIntervalBytes = indexIntervalBytes;
+  }
+
+  /**
+   * Sets the maximum number of distinct tokens held in memory for the token indexes of all the open log files,
+   * or {@code 0} to not write the token index. This is called by the logback framework.
+   */
+  public void setMaxIndexTokens(int maxIndexTokens) {
+    this.maxIndexTokens = maxIndexTokens;
+  }
+
+  /**
+   * Sets the number of log events in each stripe of the columnar copy written for every closed log file,
+   * or {@code 0} to not write the columnar copy. This is called by the logback framework.
+   */
+  public void setColumnarStripeEvents(int columnarStripeEvents) {
+    this.columnarStripeEvents = columnarStripeEvents;
+  }
+
   /**
    * Sets the maximum lifetime of a file. This is called by the logback framework.
    */
@@ -134,6 +161,9 @@ public class CDAPLogAppender extends AppenderBase<ILoggingEvent> implements Flus
     Preconditions.checkState(dirPermissions != null, "Property dirPermissions cannot be null");
     Preconditions.checkState(filePermissions != null, "Property filePermissions cannot be null");
     Preconditions.checkState(syncIntervalBytes > 0, "Property syncIntervalBytes must be > 0.");
+    Preconditions.checkState(indexIntervalBytes >= 0, "Property indexIntervalBytes must be >= 0.");
+    Preconditions.checkState(maxIndexTokens >= 0, "Property maxIndexTokens must be >= 0.");
+    Preconditions.checkState(columnarStripeEvents >= 0, "Property columnarStripeEvents must be >= 0.");
     Preconditions.checkState(maxFileLifetimeMs > 0, "Property maxFileLifetimeMs must be > 0");
     Preconditions.checkState(maxFileSizeInBytes > 0, "Property maxFileSizeInBytes must be > 0");
     Preconditions.checkState(fileRetentionDurationDays > 0, "Property fileRetentionDurationDays must be > 0");
@@ -143,7 +173,7 @@ public class CDAPLogAppender extends AppenderBase<ILoggingEvent> implements Flus
     if (context instanceof AppenderContext) {
       AppenderContext context = (AppenderContext) this.context;
       logFileManager = new LogFileManager(dirPermissions, filePermissions, maxFileLifetimeMs, maxFileSizeInBytes,
-                                          syncIntervalBytes,
+                                          syncIntervalBytes, indexIntervalBytes, maxIndexTokens, columnarStripeEvents,
                                           new FileMetaDataWriter(context.getTransactionRunner()),
                                           context.getLocationFactory());
       if (context.getInstanceId() == 0) {
@@ -0,0 +1,107 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.cdap.logging.appender.system;
+
+import io.cdap.cdap.logging.serialize.LogSchema;
+import io.cdap.cdap.logging.serialize.LoggingEvent;
+import io.cdap.cdap.logging.write.ColumnarLogFile;
+import org.apache.avro.file.DataFileStream;
+import org.apache.avro.generic.GenericDatumReader;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.twill.common.Threads;
+import org.apache.twill.filesystem.Location;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Rewrites closed log files into {@link ColumnarLogFile}s in the background. Used by {@link LogFileManager}.
+ */
+class LogFileCompactor {
+  private static final Logger LOG = LoggerFactory.getLogger(LogFileCompactor.class);
+
+  private final String filePermissions;
+  private final int stripeEvents;
+  private final ExecutorService executor;
+
+  LogFileCompactor(String filePermissions, int stripeEvents) {
+    this.filePermissions = filePermissions;
+    this.stripeEvents = stripeEvents;
+    this.executor = Executors.newSingleThreadExecutor(Threads.createDaemonThreadFactory("log-file-compactor"));
+  }
+
+  /**
+   * Schedules the compaction of the given closed log file.
+   */
+  void compact(final Location location) {
+    try {
+      executor.execute(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            compactNow(location);
+          } catch (Exception e) {
+            // Not fatal, as the log file is read directly if it has no columnar file
+            LOG.warn("Failed to compact log file {}", location, e);
+          }
+        }
+      });
+    } catch (RejectedExecutionException e) {
+      LOG.debug("Log file compactor is stopped, not compacting log file {}", location);
+    }
+  }
+
+  /**
+   * Stops accepting new log files. The log files already scheduled are still compacted by the daemon thread.
+   */
+  void stop() {
+    executor.shutdown();
+  }
+
+  /**
+   * Writes the columnar file of the given log file.
+   */
+  void compactNow(Location location) throws IOException {
+    if (!location.exists()) {
+      // The file may have been deleted after failing to write its metadata
+      return;
+    }
+    long startTime = System.currentTimeMillis();
+    int events = 0;
+    try (
+      DataFileStream<GenericRecord> reader = new DataFileStream<>(
+        location.getInputStream(), new GenericDatumReader<GenericRecord>(LogSchema.LoggingEvent.SCHEMA));
+      ColumnarLogFile.Writer writer = ColumnarLogFile.createWriter(location, filePermissions, stripeEvents)
+    ) {
+      while (reader.hasNext()) {
+        // Records are not reused, as the writer buffers the events of a stripe
+        writer.append(new LoggingEvent(reader.next()));
+        events++;
+        if (Thread.currentThread().isInterrupted()) {
+          throw new IOException("Compaction of log file " + location + " interrupted");
+        }
+      }
+      writer.finish();
+    }
+    LOG.debug("Compacted {} events of log file {} in {} ms", events, location,
+              System.currentTimeMillis() - startTime);
+  }
+}
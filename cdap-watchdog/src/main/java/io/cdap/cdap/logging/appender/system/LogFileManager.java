@@ -22,6 +22,7 @@ import com.google.common.util.concurrent.Uninterruptibles;
 import io.cdap.cdap.common.io.Locations;
 import io.cdap.cdap.common.io.Syncable;
 import io.cdap.cdap.logging.meta.FileMetaDataWriter;
+import io.cdap.cdap.logging.write.LogTokenIndex;
 import org.apache.twill.filesystem.Location;
 import org.apache.twill.filesystem.LocationFactory;
 import org.slf4j.Logger;
@@ -49,23 +50,32 @@ final class LogFileManager implements Flushable, Syncable {
   private final String dirPermissions;
   private final String filePermissions;
   private final int syncIntervalBytes;
+  private final int indexIntervalBytes;
+  @Nullable
+  private final LogTokenIndex.Budget tokenBudget;
   private final long maxLifetimeMillis;
   private final long maxFileSizeInBytes;
   private final Map<LogPathIdentifier, LogFileOutputStream> outputStreamMap;
   private final Location logsDirectoryLocation;
   private final FileMetaDataWriter fileMetaDataWriter;
+  @Nullable
+  private final LogFileCompactor compactor;
 
   LogFileManager(String dirPermissions, String filePermissions,
-                 long maxFileLifetimeMs, long maxFileSizeInBytes, int syncIntervalBytes,
-                 FileMetaDataWriter fileMetaDataWriter, LocationFactory locationFactory) {
+                 long maxFileLifetimeMs, long maxFileSizeInBytes, int syncIntervalBytes, int indexIntervalBytes,
+                 int maxIndexTokens, int columnarStripeEvents, FileMetaDataWriter fileMetaDataWriter,
+                 LocationFactory locationFactory) {
     this.dirPermissions = dirPermissions;
     this.filePermissions = filePermissions;
     this.maxLifetimeMillis = maxFileLifetimeMs;
     this.maxFileSizeInBytes = maxFileSizeInBytes;
     this.syncIntervalBytes = syncIntervalBytes;
+    this.indexIntervalBytes = indexIntervalBytes;
+    this.tokenBudget = maxIndexTokens > 0 ? new LogTokenIndex.Budget(maxIndexTokens) : null;
     this.fileMetaDataWriter = fileMetaDataWriter;
     this.logsDirectoryLocation = locationFactory.create("logs");
     this.outputStreamMap = new HashMap<>();
+    this.compactor = columnarStripeEvents > 0 ? new LogFileCompactor(filePermissions, columnarStripeEvents) : null;
   }
 
   /**
@@ -90,14 +100,19 @@ final class LogFileManager implements Flushable, Syncable {
 
   private LogFileOutputStream createOutputStream(final LogPathIdentifier identifier,
                                                  long timestamp) throws IOException {
-    TimeStampLocation location = createLocation(identifier);
+    final TimeStampLocation location = createLocation(identifier);
     LogFileOutputStream logFileOutputStream = new LogFileOutputStream(
-      location.getLocation(), filePermissions, syncIntervalBytes, location.getTimeStamp(), new Closeable() {
-      @Override
-      public void close() throws IOException {
-        outputStreamMap.remove(identifier);
-      }
-    });
+      location.getLocation(), filePermissions, syncIntervalBytes, indexIntervalBytes, tokenBudget,
+      location.getTimeStamp(),
+      new Closeable() {
+        @Override
+        public void close() throws IOException {
+          outputStreamMap.remove(identifier);
+          if (compactor != null) {
+            compactor.compact(location.getLocation());
+          }
+        }
+      });
     logFileOutputStream.flush();
     LOG.info("Created Avro file at {}", location);
 
@@ -163,6 +178,9 @@ final class LogFileManager implements Flushable, Syncable {
     for (LogFileOutputStream stream : streams) {
       Closeables.closeQuietly(stream);
     }
+    if (compactor != null) {
+      compactor.stop();
+    }
   }
 
   /**
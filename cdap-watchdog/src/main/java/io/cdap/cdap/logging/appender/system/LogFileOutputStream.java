@@ -22,6 +22,8 @@ import io.cdap.cdap.common.io.ByteBuffers;
 import io.cdap.cdap.common.io.Syncable;
 import io.cdap.cdap.logging.serialize.LoggingEvent;
 import io.cdap.cdap.logging.serialize.LoggingEventSerializer;
+import io.cdap.cdap.logging.write.LogFileIndex;
+import io.cdap.cdap.logging.write.LogTokenIndex;
 import org.apache.avro.Schema;
 import org.apache.avro.file.DataFileWriter;
 import org.apache.avro.generic.GenericDatumWriter;
@@ -35,6 +37,7 @@ import java.io.Flushable;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.nio.ByteBuffer;
+import javax.annotation.Nullable;
 
 /**
  * Represents output stream for a log file.
@@ -46,20 +49,44 @@ import java.nio.ByteBuffer;
 class LogFileOutputStream implements Closeable, Flushable, Syncable {
   private static final Logger LOG = LoggerFactory.getLogger(LogFileOutputStream.class);
 
+  // Estimated size of an event without the message when the encoded size is unknown
+  private static final int EVENT_OVERHEAD_BYTES = 128;
+
   private final Location location;
+  private final String filePermissions;
   private final long createTime;
   private final Closeable closeable;
   private final LoggingEventSerializer serializer;
+  private final int indexIntervalBytes;
 
   private OutputStream outputStream;
   private DataFileWriter<GenericRecord> dataFileWriter;
   private long fileSize;
 
-  LogFileOutputStream(Location location, String filePermissions,
-                      int syncIntervalBytes, long createTime, Closeable closeable) throws IOException {
+  @Nullable
+  private LogFileIndex.Builder indexBuilder;
+  private long indexBlockBytes;
+  private int indexedBlocks;
+  @Nullable
+  private LogTokenIndex.Builder tokenIndexBuilder;
+
+  /**
+   * Creates a new log file.
+   *
+   * @param indexIntervalBytes approximate number of bytes of events in each block of the {@link LogFileIndex} written
+   *                           next to the log file, or {@code 0} to not index the file
+   * @param tokenBudget budget of distinct tokens shared by the open log files, for building the {@link LogTokenIndex}
+   *                    written next to the log file when it is closed, or {@code null} to not write the token index.
+   *                    The token index is only written if the file is also indexed by time.
+   */
+  LogFileOutputStream(Location location, String filePermissions, int syncIntervalBytes, int indexIntervalBytes,
+                      @Nullable LogTokenIndex.Budget tokenBudget, long createTime,
+                      Closeable closeable) throws IOException {
     this.location = location;
+    this.filePermissions = filePermissions;
     this.closeable = closeable;
     this.serializer = new LoggingEventSerializer();
+    this.indexIntervalBytes = indexIntervalBytes;
 
     Schema schema = serializer.getAvroSchema();
     try {
@@ -70,6 +97,12 @@ class LogFileOutputStream implements Closeable, Flushable, Syncable {
       this.dataFileWriter.setSyncInterval(syncIntervalBytes);
       this.createTime = createTime;
       this.fileSize = 0;
+      if (indexIntervalBytes > 0) {
+        this.indexBuilder = new LogFileIndex.Builder(dataFileWriter.sync());
+        if (tokenBudget != null) {
+          this.tokenIndexBuilder = new LogTokenIndex.Builder(tokenBudget);
+        }
+      }
     } catch (IOException e) {
       Closeables.closeQuietly(outputStream);
       Closeables.closeQuietly(dataFileWriter);
@@ -83,17 +116,32 @@ class LogFileOutputStream implements Closeable, Flushable, Syncable {
 
   void append(ILoggingEvent event) throws IOException {
     // If the event is already a LoggingEvent, we don't need to re-encode.
+    int encodedSize = -1;
     if (event instanceof LoggingEvent) {
       ByteBuffer encoded = ((LoggingEvent) event).getEncoded();
       if (encoded != null) {
+        encodedSize = encoded.remaining();
         // TODO: CDAP-8735 Remove the copying after upgraded to Avro 1.7.4+
         dataFileWriter.appendEncoded(ByteBuffers.copy(encoded));
       } else {
         dataFileWriter.append(((LoggingEvent) event).getRecord());
       }
-      return;
+    } else {
+      dataFileWriter.append(serializer.toGenericRecord(event));
+    }
+
+    if (indexBuilder != null) {
+      indexBuilder.add(event);
+      if (tokenIndexBuilder != null) {
+        tokenIndexBuilder.add(event);
+      }
+      indexBlockBytes += encodedSize >= 0 ? encodedSize : estimateSize(event);
+      if (indexBlockBytes >= indexIntervalBytes) {
+        // End the index block at an Avro sync point, so that readers can seek to the next block
+        endIndexBlock();
+        indexBlockBytes = 0;
+      }
     }
-    dataFileWriter.append(serializer.toGenericRecord(event));
   }
 
   /**
@@ -115,6 +163,10 @@ class LogFileOutputStream implements Closeable, Flushable, Syncable {
   @Override
   public void flush() throws IOException {
     fileSize = dataFileWriter.sync();
+    // Only rewrite the index if there are new blocks, which are written every indexIntervalBytes at most
+    if (indexBuilder != null && indexBuilder.getBlockCount() > indexedBlocks) {
+      writeIndex();
+    }
   }
 
   @Override
@@ -131,9 +183,66 @@ class LogFileOutputStream implements Closeable, Flushable, Syncable {
   public void close() throws IOException {
     LOG.trace("Closing file {}", location);
     try {
+      if (indexBuilder != null) {
+        endIndexBlock();
+        writeIndex();
+        writeTokenIndex();
+      }
       dataFileWriter.close();
     } finally {
+      if (tokenIndexBuilder != null) {
+        tokenIndexBuilder.release();
+      }
       closeable.close();
     }
   }
+
+  /**
+   * Writes the index of the blocks ended so far. Failure to write the index is not fatal, as readers fall back to
+   * reading the log file without the index.
+   */
+  private void writeIndex() {
+    LogFileIndex.Builder builder = indexBuilder;
+    if (builder == null) {
+      return;
+    }
+    try {
+      builder.build().write(location, filePermissions);
+      indexedBlocks = builder.getBlockCount();
+    } catch (IOException e) {
+      LOG.warn("Failed to write index for log file {}", location, e);
+    }
+  }
+
+  private void endIndexBlock() throws IOException {
+    if (indexBuilder != null && indexBuilder.endBlock(dataFileWriter.sync()) && tokenIndexBuilder != null) {
+      tokenIndexBuilder.endBlock();
+    }
+  }
+
+  /**
+   * Writes the token index of the closed file. Failure to write the token index is not fatal, as readers fall back to
+   * reading all the blocks of the file.
+   */
+  private void writeTokenIndex() {
+    LogTokenIndex.Builder builder = tokenIndexBuilder;
+    if (builder == null) {
+      return;
+    }
+    LogTokenIndex tokenIndex = builder.build();
+    if (tokenIndex == null) {
+      LOG.debug("Not writing token index for log file {} as its distinct tokens did not fit in memory", location);
+      return;
+    }
+    try {
+      tokenIndex.write(location, filePermissions);
+    } catch (IOException e) {
+      LOG.warn("Failed to write token index for log file {}", location, e);
+    }
+  }
+
+  private static int estimateSize(ILoggingEvent event) {
+    String message = event.getFormattedMessage();
+    return EVENT_OVERHEAD_BYTES + (message == null ? 0 : message.length());
+  }
 }
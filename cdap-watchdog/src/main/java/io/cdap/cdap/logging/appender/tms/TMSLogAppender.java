@@ -29,6 +29,7 @@ import io.cdap.cdap.logging.appender.AbstractLogPublisher;
 import io.cdap.cdap.logging.appender.LogAppender;
 import io.cdap.cdap.logging.appender.LogMessage;
 import io.cdap.cdap.logging.appender.kafka.LogPartitionType;
+import io.cdap.cdap.logging.serialize.LoggingEventBlock;
 import io.cdap.cdap.logging.serialize.LoggingEventSerializer;
 import io.cdap.cdap.messaging.MessagingService;
 import io.cdap.cdap.messaging.context.MultiThreadMessagingContext;
@@ -40,25 +41,37 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
- * Log appender that publishes log messages to TMS.
+ * Log appender that publishes log messages to TMS. The serialized events of the same partition are published
+ * in compressed {@link LoggingEventBlock}s, and the events are dropped if the publishing falls behind and the
+ * queue is full, unless configured to block the logging thread instead.
  */
 public final class TMSLogAppender extends LogAppender {
 
   private static final String APPENDER_NAME = "TMSLogAppender";
 
   private final TMSLogPublisher tmsLogPublisher;
+  private final boolean dropOnFullQueue;
+  private final AtomicLong droppedMessages;
 
   @Inject
   TMSLogAppender(CConfiguration cConf, MessagingService messagingService) {
     setName(APPENDER_NAME);
     int queueSize = cConf.getInt(Constants.Logging.APPENDER_QUEUE_SIZE);
     this.tmsLogPublisher = new TMSLogPublisher(cConf, messagingService, queueSize);
+    this.dropOnFullQueue = cConf.getBoolean(Constants.Logging.TMS_DROP_ON_FULL_QUEUE);
+    this.droppedMessages = new AtomicLong();
   }
 
   @Override
   public void start() {
+    // Reported here rather than in the constructor, as the status manager is only available once the context is set
+    if (tmsLogPublisher.compression != tmsLogPublisher.requestedCompression) {
+      addWarn("Compression " + tmsLogPublisher.requestedCompression
+                + " is not supported, publishing uncompressed log messages");
+    }
     tmsLogPublisher.startAndWait();
     addInfo("Successfully started " + APPENDER_NAME);
     super.start();
@@ -76,6 +89,14 @@ public final class TMSLogAppender extends LogAppender {
     logMessage.prepareForDeferredProcessing();
     logMessage.getCallerData();
 
+    if (dropOnFullQueue) {
+      // Don't block the logging thread if the publishing falls behind
+      if (!tmsLogPublisher.offerMessage(logMessage)) {
+        droppedMessages.incrementAndGet();
+      }
+      return;
+    }
+
     try {
       tmsLogPublisher.addMessage(logMessage);
     } catch (InterruptedException e) {
@@ -83,6 +104,14 @@ public final class TMSLogAppender extends LogAppender {
     }
   }
 
+  /**
+   * Returns the number of log messages dropped so far because the queue was full.
+   */
+  @VisibleForTesting
+  long getDroppedMessages() {
+    return droppedMessages.get();
+  }
+
   // Based off of StringPartitioner, but that class can not be used in Standalone, as kafka dependencies do not exist
   // in Standalone
   @VisibleForTesting
@@ -100,6 +129,11 @@ public final class TMSLogAppender extends LogAppender {
     private final LoggingEventSerializer loggingEventSerializer;
     private final MessagingContext messagingContext;
     private final LogPartitionType logPartitionType;
+    private final int blockSize;
+    private final LoggingEventBlock.Compression requestedCompression;
+    private final LoggingEventBlock.Compression compression;
+
+    private long reportedDroppedMessages;
 
     private TMSLogPublisher(CConfiguration cConf, MessagingService messagingService, int queueSize) {
       super(queueSize, RetryStrategies.fromConfiguration(cConf, "system.log.process."));
@@ -109,6 +143,12 @@ public final class TMSLogAppender extends LogAppender {
       this.logPartitionType =
               LogPartitionType.valueOf(cConf.get(Constants.Logging.LOG_PUBLISH_PARTITION_KEY).toUpperCase());
       this.messagingContext = new MultiThreadMessagingContext(messagingService);
+      this.blockSize = cConf.getInt(Constants.Logging.TMS_BLOCK_SIZE_BYTES);
+
+      this.requestedCompression =
+        LoggingEventBlock.Compression.valueOf(cConf.get(Constants.Logging.TMS_COMPRESSION).toUpperCase());
+      this.compression = requestedCompression.isSupported() ? requestedCompression
+                                                            : LoggingEventBlock.Compression.NONE;
     }
 
     @Override
@@ -122,6 +162,12 @@ public final class TMSLogAppender extends LogAppender {
     protected void publish(List<Map.Entry<Integer, byte[]>> logMessages) throws TopicNotFoundException, IOException {
       MessagePublisher directMessagePublisher = messagingContext.getDirectMessagePublisher();
 
+      long dropped = droppedMessages.get();
+      if (dropped > reportedDroppedMessages) {
+        addWarn("Dropped " + (dropped - reportedDroppedMessages) + " log messages because the queue was full");
+        reportedDroppedMessages = dropped;
+      }
+
       // Group the log messages by partition and then publish all messages to their respective partitions
       Map<Integer, List<byte[]>> partitionedMessages = new HashMap<>();
       for (Map.Entry<Integer, byte[]> logMessage : logMessages) {
@@ -130,9 +176,33 @@ public final class TMSLogAppender extends LogAppender {
       }
 
       for (Map.Entry<Integer, List<byte[]>> partition : partitionedMessages.entrySet()) {
+        List<byte[]> payloads = blockSize > 0 ? toBlocks(partition.getValue()) : partition.getValue();
         directMessagePublisher.publish(NamespaceId.SYSTEM.getNamespace(),
-                topicPrefix + partition.getKey(), partition.getValue().iterator());
+                topicPrefix + partition.getKey(), payloads.iterator());
+      }
+    }
+
+    /**
+     * Encodes the given serialized events into blocks of at most {@link #blockSize} bytes, unless a single event is
+     * larger, preserving their order.
+     */
+    private List<byte[]> toBlocks(List<byte[]> events) throws IOException {
+      List<byte[]> blocks = new ArrayList<>();
+      List<byte[]> blockEvents = new ArrayList<>();
+      int size = 0;
+      for (byte[] event : events) {
+        if (!blockEvents.isEmpty() && size + event.length > blockSize) {
+          blocks.add(LoggingEventBlock.encode(blockEvents, compression));
+          blockEvents.clear();
+          size = 0;
+        }
+        blockEvents.add(event);
+        size += event.length;
+      }
+      if (!blockEvents.isEmpty()) {
+        blocks.add(LoggingEventBlock.encode(blockEvents, compression));
       }
+      return blocks;
     }
 
     @Override
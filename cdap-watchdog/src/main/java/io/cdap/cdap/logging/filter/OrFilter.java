@@ -32,6 +32,10 @@ public class OrFilter implements Filter {
     this.expressions = ImmutableList.copyOf(expressions);
   }
 
+  public List<? extends Filter> getExpressions() {
+    return expressions;
+  }
+
   @Override
   public boolean match(ILoggingEvent event) {
     for (Filter expression : expressions) {
@@ -0,0 +1,107 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.cdap.logging.filter;
+
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.classic.spi.IThrowableProxy;
+import com.google.common.base.Objects;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableSet;
+
+import java.util.HashSet;
+import java.util.Set;
+import javax.annotation.Nullable;
+
+/**
+ * Represents an expression that matches the events having all the tokens of a text query in the message or in the
+ * class name and message of the exception. Tokens are the lower cased sequences of letters and digits, ignoring the
+ * ones shorter than {@link #MIN_TOKEN_LENGTH} or longer than {@link #MAX_TOKEN_LENGTH} characters.
+ */
+public class SearchExpression implements Filter {
+
+  public static final int MIN_TOKEN_LENGTH = 2;
+  public static final int MAX_TOKEN_LENGTH = 64;
+
+  private final String query;
+  private final Set<String> tokens;
+
+  public SearchExpression(String query) {
+    Set<String> tokens = new HashSet<>();
+    addTokens(query, tokens);
+    Preconditions.checkArgument(!tokens.isEmpty(), "Search query '%s' has no word of at least %s characters",
+                                query, MIN_TOKEN_LENGTH);
+    this.query = query;
+    this.tokens = ImmutableSet.copyOf(tokens);
+  }
+
+  @Override
+  public boolean match(ILoggingEvent event) {
+    return getTokens(event).containsAll(tokens);
+  }
+
+  public String getQuery() {
+    return query;
+  }
+
+  /**
+   * Returns the tokens that the events must have to match this expression.
+   */
+  public Set<String> getTokens() {
+    return tokens;
+  }
+
+  /**
+   * Returns the tokens of the message and of the exceptions, including the causes, of the given event.
+   */
+  public static Set<String> getTokens(ILoggingEvent event) {
+    Set<String> tokens = new HashSet<>();
+    addTokens(event.getFormattedMessage(), tokens);
+    IThrowableProxy throwable = event.getThrowableProxy();
+    while (throwable != null) {
+      addTokens(throwable.getClassName(), tokens);
+      addTokens(throwable.getMessage(), tokens);
+      throwable = throwable.getCause();
+    }
+    return tokens;
+  }
+
+  private static void addTokens(@Nullable String text, Set<String> tokens) {
+    if (text == null) {
+      return;
+    }
+    int start = -1;
+    for (int i = 0; i <= text.length(); i++) {
+      boolean tokenChar = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+      if (tokenChar && start < 0) {
+        start = i;
+      } else if (!tokenChar && start >= 0) {
+        int length = i - start;
+        if (length >= MIN_TOKEN_LENGTH && length <= MAX_TOKEN_LENGTH) {
+          tokens.add(text.substring(start, i).toLowerCase());
+        }
+        start = -1;
+      }
+    }
+  }
+
+  @Override
+  public String toString() {
+    return Objects.toStringHelper(this)
+      .add("query", query)
+      .toString();
+  }
+}
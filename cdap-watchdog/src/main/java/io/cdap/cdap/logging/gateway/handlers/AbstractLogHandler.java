@@ -16,13 +16,18 @@
 
 package io.cdap.cdap.logging.gateway.handlers;
 
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.gson.Gson;
 import io.cdap.cdap.api.dataset.lib.CloseableIterator;
 import io.cdap.cdap.common.conf.CConfiguration;
 import io.cdap.cdap.common.logging.LoggingContext;
 import io.cdap.cdap.internal.app.store.RunRecordMeta;
 import io.cdap.cdap.logging.LoggingConfiguration;
+import io.cdap.cdap.logging.filter.AndFilter;
 import io.cdap.cdap.logging.filter.Filter;
 import io.cdap.cdap.logging.filter.FilterParser;
+import io.cdap.cdap.logging.filter.SearchExpression;
 import io.cdap.cdap.logging.read.Callback;
 import io.cdap.cdap.logging.read.LogEvent;
 import io.cdap.cdap.logging.read.LogOffset;
@@ -34,6 +39,7 @@ import io.netty.handler.codec.http.HttpResponseStatus;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
 import javax.annotation.Nullable;
@@ -44,6 +50,7 @@ import javax.annotation.Nullable;
 public abstract class AbstractLogHandler extends AbstractHttpHandler {
 
   private static final Logger LOG = LoggerFactory.getLogger(AbstractLogHandler.class);
+  private static final Gson GSON = new Gson();
 
   private final String logPattern;
 
@@ -130,6 +137,41 @@ public abstract class AbstractLogHandler extends AbstractHttpHandler {
     }
   }
 
+  protected void doSearch(LogReader logReader, HttpResponder responder, LoggingContext loggingContext,
+                          long fromTimeSecsParam, long toTimeSecsParam, String query, int maxEvents,
+                          String filterStr, @Nullable RunRecordMeta runRecord) {
+    try {
+      TimeRange timeRange = parseTime(fromTimeSecsParam, toTimeSecsParam, responder);
+      if (timeRange == null) {
+        return;
+      }
+      Preconditions.checkArgument(maxEvents > 0, "Parameter 'max' should be greater than 0.");
+
+      // Files with a token index only read the blocks having all the tokens of the query
+      Filter filter = new AndFilter(ImmutableList.of(new SearchExpression(query), FilterParser.parse(filterStr)));
+
+      ReadRange readRange = new ReadRange(timeRange.getFromMillis(), timeRange.getToMillis(),
+                                          LogOffset.INVALID_KAFKA_OFFSET);
+      readRange = adjustReadRange(readRange, runRecord, fromTimeSecsParam != -1);
+      List<FormattedLogOffset> offsets = new ArrayList<>();
+      try (CloseableIterator<LogEvent> logIter = logReader.getLog(loggingContext, readRange.getFromMillis(),
+                                                                  readRange.getToMillis(), filter)) {
+        while (logIter.hasNext() && offsets.size() < maxEvents) {
+          offsets.add(new FormattedLogOffset(logIter.next().getOffset()));
+        }
+      } catch (Exception ex) {
+        LOG.debug("Exception while searching logs for logging context {}", loggingContext, ex);
+        responder.sendStatus(HttpResponseStatus.INTERNAL_SERVER_ERROR);
+        return;
+      }
+      responder.sendJson(HttpResponseStatus.OK, GSON.toJson(offsets));
+    } catch (SecurityException e) {
+      responder.sendStatus(HttpResponseStatus.UNAUTHORIZED);
+    } catch (IllegalArgumentException e) {
+      responder.sendString(HttpResponseStatus.BAD_REQUEST, e.getMessage());
+    }
+  }
+
   private Callback getNextOrPrevLogsCallback(String format, HttpResponder responder,
                                              List<String> suppress, boolean escape) {
     LogFormatType formatType = getFormatType(format);
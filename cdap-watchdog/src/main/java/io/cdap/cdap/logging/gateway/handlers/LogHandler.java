@@ -170,6 +170,42 @@ public class LogHandler extends AbstractLogHandler {
            escape, filterStr, runRecord, format, suppress);
   }
 
+  @GET
+  @Path("/namespaces/{namespace-id}/apps/{app-id}/{program-type}/{program-id}/logs/search")
+  public void search(HttpRequest request, HttpResponder responder, @PathParam("namespace-id") String namespaceId,
+                     @PathParam("app-id") String appId, @PathParam("program-type") String programType,
+                     @PathParam("program-id") String programId, @QueryParam("q") @DefaultValue("") String query,
+                     @QueryParam("start") @DefaultValue("-1") long fromTimeSecsParam,
+                     @QueryParam("stop") @DefaultValue("-1") long toTimeSecsParam,
+                     @QueryParam("max") @DefaultValue("50") int maxEvents,
+                     @QueryParam("filter") @DefaultValue("") String filterStr) {
+    LoggingContext loggingContext =
+      LoggingContextHelper.getLoggingContext(namespaceId, appId, programId,
+                                             ProgramType.valueOfCategoryName(programType));
+    doSearch(logReader, responder, loggingContext, fromTimeSecsParam, toTimeSecsParam, query, maxEvents,
+             filterStr, null);
+  }
+
+  @GET
+  @Path("/namespaces/{namespace-id}/apps/{app-id}/{program-type}/{program-id}/runs/{run-id}/logs/search")
+  public void runIdSearch(HttpRequest request, HttpResponder responder, @PathParam("namespace-id") String namespaceId,
+                          @PathParam("app-id") String appId, @PathParam("program-type") String programType,
+                          @PathParam("program-id") String programId, @PathParam("run-id") String runId,
+                          @QueryParam("q") @DefaultValue("") String query,
+                          @QueryParam("start") @DefaultValue("-1") long fromTimeSecsParam,
+                          @QueryParam("stop") @DefaultValue("-1") long toTimeSecsParam,
+                          @QueryParam("max") @DefaultValue("50") int maxEvents,
+                          @QueryParam("filter") @DefaultValue("") String filterStr) throws NotFoundException {
+    ProgramType type = ProgramType.valueOfCategoryName(programType);
+    ProgramRunId programRunId = new ProgramRunId(namespaceId, appId, type, programId, runId);
+    RunRecordMeta runRecord = getRunRecordMeta(programRunId);
+    LoggingContext loggingContext = LoggingContextHelper.getLoggingContextWithRunId(programRunId,
+                                                                                    runRecord.getSystemArgs());
+
+    doSearch(logReader, responder, loggingContext, fromTimeSecsParam, toTimeSecsParam, query, maxEvents,
+             filterStr, runRecord);
+  }
+
   @GET
   @Path("/system/{component-id}/{service-id}/logs")
   public void sysList(HttpRequest request, HttpResponder responder, @PathParam("component-id") String componentId,
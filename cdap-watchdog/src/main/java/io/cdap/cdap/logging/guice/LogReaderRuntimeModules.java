@@ -36,6 +36,8 @@ public final class LogReaderRuntimeModules extends RuntimeModule {
     return new AbstractModule() {
       @Override
       protected void configure() {
+        // Singleton so that all reads share the thread pool of the reader
+        bind(FileLogReader.class).in(Scopes.SINGLETON);
         bind(LogReader.class).to(FileLogReader.class);
       }
     };
@@ -46,6 +48,8 @@ public final class LogReaderRuntimeModules extends RuntimeModule {
     return new AbstractModule() {
       @Override
       protected void configure() {
+        // Singleton so that all reads share the thread pool of the reader
+        bind(FileLogReader.class).in(Scopes.SINGLETON);
         bind(LogReader.class).to(FileLogReader.class);
       }
     };
@@ -56,6 +60,7 @@ public final class LogReaderRuntimeModules extends RuntimeModule {
     return new AbstractModule() {
       @Override
       protected void configure() {
+        bind(FileLogReader.class).in(Scopes.SINGLETON);
         bind(LogReader.class).to(DistributedLogReader.class);
         bind(UGIProvider.class).to(RemoteUGIProvider.class).in(Scopes.SINGLETON);
       }
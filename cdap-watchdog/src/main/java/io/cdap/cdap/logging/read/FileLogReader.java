@@ -20,36 +20,80 @@ import com.google.common.base.Preconditions;
 import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Iterables;
+import com.google.common.collect.Iterators;
 import com.google.common.collect.Lists;
+import com.google.common.collect.PeekingIterator;
 import com.google.inject.Inject;
 import io.cdap.cdap.api.dataset.lib.AbstractCloseableIterator;
 import io.cdap.cdap.api.dataset.lib.CloseableIterator;
+import io.cdap.cdap.common.conf.CConfiguration;
+import io.cdap.cdap.common.conf.Constants;
 import io.cdap.cdap.common.logging.LoggingContext;
 import io.cdap.cdap.logging.context.LoggingContextHelper;
 import io.cdap.cdap.logging.filter.AndFilter;
 import io.cdap.cdap.logging.filter.Filter;
 import io.cdap.cdap.logging.meta.FileMetaDataReader;
 import io.cdap.cdap.logging.write.LogLocation;
+import org.apache.twill.common.Threads;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Comparator;
+import java.util.Deque;
 import java.util.Iterator;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nullable;
 
 /**
  * Reads log events from a file.
+ *
+ * If {@link Constants.Logging#LOG_READER_PREFETCH_FILES} is larger than one, {@link #getLogNext} and
+ * {@link #getLogPrev} read that many log files ahead concurrently on a shared thread pool, and merge the events of
+ * the files into the callback in timestamp order. The callback is always called from the request thread.
  */
 public class FileLogReader implements LogReader {
   private static final Logger LOG = LoggerFactory.getLogger(FileLogReader.class);
 
+  // Orders the events of the files being merged by timestamp, then by file order
+  private static final Comparator<FileEvents> FILE_EVENTS_COMPARATOR = new Comparator<FileEvents>() {
+    @Override
+    public int compare(FileEvents o1, FileEvents o2) {
+      int cmp = Long.compare(o1.getTimestamp(), o2.getTimestamp());
+      return cmp != 0 ? cmp : Integer.compare(o1.fileIndex, o2.fileIndex);
+    }
+  };
+
   private final FileMetaDataReader fileMetadataReader;
+  private final int prefetchFiles;
+  @Nullable
+  private final ExecutorService readExecutor;
 
   @Inject
-  public FileLogReader(FileMetaDataReader fileMetadataReader) {
+  public FileLogReader(CConfiguration cConf, FileMetaDataReader fileMetadataReader) {
     this.fileMetadataReader = fileMetadataReader;
+    this.prefetchFiles = cConf.getInt(Constants.Logging.LOG_READER_PREFETCH_FILES);
+    if (prefetchFiles > 1) {
+      // Threads time out when there is no read, so that no explicit shutdown is needed
+      ThreadPoolExecutor executor = new ThreadPoolExecutor(prefetchFiles, prefetchFiles, 60, TimeUnit.SECONDS,
+                                                           new LinkedBlockingQueue<Runnable>(),
+                                                           Threads.createDaemonThreadFactory("file-log-reader-%d"));
+      executor.allowCoreThreadTimeOut(true);
+      this.readExecutor = executor;
+    } else {
+      this.readExecutor = null;
+    }
   }
 
   @Override
@@ -75,6 +119,11 @@ public class FileLogReader implements LogReader {
         return;
       }
 
+      if (readExecutor != null && sortedFilesInRange.size() > 1) {
+        readNextParallel(readExecutor, sortedFilesInRange, logFilter, fromTimeMs, maxEvents, callback);
+        return;
+      }
+
       for (LogLocation file : sortedFilesInRange) {
         LOG.trace("Reading file {}", file);
         file.readLog(logFilter, fromTimeMs, Long.MAX_VALUE, maxEvents - callback.getCount(), callback);
@@ -107,6 +156,11 @@ public class FileLogReader implements LogReader {
       long fromTimeMs = readRange.getToMillis() - 1;
 
       LOG.trace("Using fromTimeMs={}, readRange={}", fromTimeMs, readRange);
+      if (readExecutor != null && sortedFilesInRange.size() > 1) {
+        readPrevParallel(readExecutor, sortedFilesInRange, logFilter, fromTimeMs, maxEvents, callback);
+        return;
+      }
+
       List<Collection<LogEvent>> logSegments = Lists.newLinkedList();
       int count = 0;
       for (LogLocation file : Lists.reverse(sortedFilesInRange)) {
@@ -201,6 +255,129 @@ public class FileLogReader implements LogReader {
     }
   }
 
+  /**
+   * Reads the given files concurrently, with at most {@link #prefetchFiles} files being read ahead, and calls the
+   * callback with the events of the files in timestamp order. Since the events of a file are not earlier than the
+   * event time of the file, the events up to the event time of the first file not read yet can be called back.
+   */
+  private void readNextParallel(ExecutorService executor, List<LogLocation> sortedFiles, final Filter logFilter,
+                                final long fromTimeMs, final int maxEvents, Callback callback) throws Exception {
+    Deque<Future<List<LogEvent>>> pending = new LinkedList<>();
+    PriorityQueue<FileEvents> fileEvents = new PriorityQueue<>(prefetchFiles, FILE_EVENTS_COMPARATOR);
+    int nextFile = 0;
+    int prevFileIndex = -1;
+    long prevTimestamp = -1;
+
+    try {
+      while (true) {
+        while (nextFile < sortedFiles.size() && pending.size() < prefetchFiles) {
+          final LogLocation file = sortedFiles.get(nextFile++);
+          pending.add(executor.submit(new Callable<List<LogEvent>>() {
+            @Override
+            public List<LogEvent> call() {
+              LOG.trace("Reading file {}", file);
+              try (CloseableIterator<LogEvent> events = file.readLog(logFilter, fromTimeMs,
+                                                                     Long.MAX_VALUE, maxEvents)) {
+                return Lists.newArrayList(events);
+              }
+            }
+          }));
+        }
+
+        long maxTimestamp = pending.isEmpty()
+          ? Long.MAX_VALUE : sortedFiles.get(nextFile - pending.size()).getEventTimeMs();
+        while (!fileEvents.isEmpty() && fileEvents.peek().getTimestamp() <= maxTimestamp) {
+          FileEvents events = fileEvents.poll();
+          LogEvent event = events.events.next();
+          long timestamp = event.getLoggingEvent().getTimeStamp();
+          // Same as reading the files one at a time, returns all the events of the file with the same timestamp
+          // as the last one returned
+          if (callback.getCount() >= maxEvents && (timestamp != prevTimestamp || events.fileIndex != prevFileIndex)) {
+            return;
+          }
+          callback.handle(event);
+          prevFileIndex = events.fileIndex;
+          prevTimestamp = timestamp;
+          if (events.events.hasNext()) {
+            fileEvents.add(events);
+          }
+        }
+
+        if (pending.isEmpty()) {
+          return;
+        }
+        List<LogEvent> events = pending.poll().get();
+        if (!events.isEmpty()) {
+          fileEvents.add(new FileEvents(nextFile - pending.size() - 1, events));
+        }
+      }
+    } finally {
+      cancel(pending);
+    }
+  }
+
+  /**
+   * Reads the given files backward concurrently, with at most {@link #prefetchFiles} files being read ahead, until
+   * {@code maxEvents} events are read, and calls the callback with the events of the files in timestamp order.
+   */
+  private void readPrevParallel(ExecutorService executor, List<LogLocation> sortedFiles, final Filter logFilter,
+                                final long fromTimeMs, final int maxEvents, Callback callback) throws Exception {
+    List<LogLocation> files = Lists.reverse(sortedFiles);
+    Deque<Future<Collection<LogEvent>>> pending = new LinkedList<>();
+    List<FileEvents> segments = new ArrayList<>();
+    int nextFile = 0;
+    int count = 0;
+
+    try {
+      while (count < maxEvents && (nextFile < files.size() || !pending.isEmpty())) {
+        while (nextFile < files.size() && pending.size() < prefetchFiles) {
+          final LogLocation file = files.get(nextFile++);
+          pending.add(executor.submit(new Callable<Collection<LogEvent>>() {
+            @Override
+            public Collection<LogEvent> call() {
+              LOG.trace("Reading file {}", file);
+              try {
+                return file.readLogPrev(logFilter, fromTimeMs, maxEvents);
+              } catch (IOException e) {
+                LOG.warn("Got exception reading log file {}", file, e);
+                return ImmutableList.of();
+              }
+            }
+          }));
+        }
+
+        List<LogEvent> events = Lists.newArrayList(pending.poll().get());
+        // Only keep the latest events of the file up to maxEvents in total
+        if (count + events.size() > maxEvents) {
+          events = events.subList(events.size() - (maxEvents - count), events.size());
+        }
+        if (!events.isEmpty()) {
+          // Index the files from the oldest one, so that events with the same timestamp keep the file order
+          segments.add(new FileEvents(files.size() - (nextFile - pending.size()), events));
+          count += events.size();
+        }
+      }
+    } finally {
+      cancel(pending);
+    }
+
+    PriorityQueue<FileEvents> fileEvents = new PriorityQueue<>(Math.max(1, segments.size()), FILE_EVENTS_COMPARATOR);
+    fileEvents.addAll(segments);
+    while (!fileEvents.isEmpty()) {
+      FileEvents events = fileEvents.poll();
+      callback.handle(events.events.next());
+      if (events.events.hasNext()) {
+        fileEvents.add(events);
+      }
+    }
+  }
+
+  private void cancel(Collection<? extends Future<?>> futures) {
+    for (Future<?> future : futures) {
+      future.cancel(false);
+    }
+  }
+
   /**
    * See {@link com.google.common.collect.Iterators#concat(Iterator)}. The difference is that the input types and return
    * type are CloseableIterator, which closes the inputs that it has opened.
@@ -276,4 +453,21 @@ public class FileLogReader implements LogReader {
       }
     };
   }
+
+  /**
+   * The remaining events of a log file being merged with the events of other files.
+   */
+  private static final class FileEvents {
+    private final int fileIndex;
+    private final PeekingIterator<LogEvent> events;
+
+    FileEvents(int fileIndex, List<LogEvent> events) {
+      this.fileIndex = fileIndex;
+      this.events = Iterators.peekingIterator(events.iterator());
+    }
+
+    long getTimestamp() {
+      return events.peek().getLoggingEvent().getTimeStamp();
+    }
+  }
 }
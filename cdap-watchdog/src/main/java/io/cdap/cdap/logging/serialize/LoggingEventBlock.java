@@ -0,0 +1,176 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.cdap.logging.serialize;
+
+import com.google.common.collect.ImmutableList;
+import org.xerial.snappy.Snappy;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Encodes a list of logging events serialized by {@link LoggingEventSerializer} into a single, optionally compressed,
+ * message payload, and decodes such payloads back into the serialized events.
+ *
+ * A block starts with a header that can never be the start of a serialized event: an event starts with the zig-zag
+ * encoded timestamp followed by the level, and the level of every event takes more than one byte, hence a zero byte
+ * is never followed by a byte without the varint continuation bit. This allows {@link #decode(ByteBuffer)} to accept
+ * both blocks and single serialized events, which are still published by older log appenders.
+ */
+public final class LoggingEventBlock {
+
+  private static final byte[] MAGIC = { 0, 'L', 'B' };
+  private static final byte VERSION = 1;
+  // MAGIC + VERSION + compression + number of events + length of the uncompressed events
+  private static final int HEADER_SIZE = MAGIC.length + 2 + 2 * Integer.BYTES;
+
+  /**
+   * Compression of the events of a block.
+   */
+  public enum Compression {
+    NONE,
+    SNAPPY;
+
+    /**
+     * Returns whether this compression can be used, which is not the case if the native library is not available
+     * on the current platform.
+     */
+    public boolean isSupported() {
+      if (this == NONE) {
+        return true;
+      }
+      try {
+        Snappy.compress(new byte[1]);
+        return true;
+      } catch (Throwable t) {
+        return false;
+      }
+    }
+  }
+
+  private LoggingEventBlock() {
+    // no-op
+  }
+
+  /**
+   * Returns whether the given payload is a block created by {@link #encode(List, Compression)}.
+   */
+  public static boolean isBlock(ByteBuffer payload) {
+    if (payload.remaining() < HEADER_SIZE) {
+      return false;
+    }
+    for (int i = 0; i < MAGIC.length; i++) {
+      if (payload.get(payload.position() + i) != MAGIC[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Encodes the given serialized events into a block.
+   *
+   * @param events the events serialized by {@link LoggingEventSerializer#toBytes}
+   * @param compression the compression of the events. The events are not compressed if it doesn't reduce their size.
+   * @return the block
+   * @throws IOException if failed to compress the events
+   */
+  public static byte[] encode(List<byte[]> events, Compression compression) throws IOException {
+    int length = 0;
+    for (byte[] event : events) {
+      length += Integer.BYTES + event.length;
+    }
+    ByteBuffer raw = ByteBuffer.allocate(length);
+    for (byte[] event : events) {
+      raw.putInt(event.length).put(event);
+    }
+
+    byte[] data = raw.array();
+    if (compression == Compression.SNAPPY) {
+      byte[] compressed = Snappy.compress(data);
+      if (compressed.length < data.length) {
+        data = compressed;
+      } else {
+        compression = Compression.NONE;
+      }
+    }
+
+    ByteBuffer block = ByteBuffer.allocate(HEADER_SIZE + data.length);
+    block.put(MAGIC).put(VERSION).put((byte) compression.ordinal());
+    block.putInt(events.size()).putInt(length).put(data);
+    return block.array();
+  }
+
+  /**
+   * Decodes the given payload into serialized events, which can be decoded with
+   * {@link LoggingEventSerializer#fromBytes(ByteBuffer)}.
+   *
+   * @param payload a block created by {@link #encode(List, Compression)} or a single serialized event
+   * @return the serialized events of the block, or the payload itself if it is not a block
+   * @throws IOException if the payload is an invalid block
+   */
+  public static List<ByteBuffer> decode(ByteBuffer payload) throws IOException {
+    if (!isBlock(payload)) {
+      return ImmutableList.of(payload);
+    }
+    ByteBuffer block = payload.duplicate();
+    block.position(block.position() + MAGIC.length);
+    byte version = block.get();
+    if (version != VERSION) {
+      throw new IOException("Unsupported logging event block version " + version);
+    }
+    int compression = block.get();
+    if (compression < 0 || compression >= Compression.values().length) {
+      throw new IOException("Unsupported logging event block compression " + compression);
+    }
+    int count = block.getInt();
+    int length = block.getInt();
+    if (count < 0 || length < 0) {
+      throw new IOException("Invalid logging event block with " + count + " events of length " + length);
+    }
+
+    ByteBuffer raw;
+    if (Compression.values()[compression] == Compression.SNAPPY) {
+      byte[] compressed = new byte[block.remaining()];
+      block.get(compressed);
+      raw = ByteBuffer.wrap(Snappy.uncompress(compressed));
+    } else {
+      raw = block.slice();
+    }
+    if (raw.remaining() != length) {
+      throw new IOException("Invalid logging event block length " + raw.remaining() + ", expected " + length);
+    }
+
+    List<ByteBuffer> events = new ArrayList<>(Math.min(count, length / Integer.BYTES));
+    for (int i = 0; i < count; i++) {
+      if (raw.remaining() < Integer.BYTES) {
+        throw new IOException("Missing logging event " + i + " of " + count + " in block");
+      }
+      int eventLength = raw.getInt();
+      if (eventLength < 0 || eventLength > raw.remaining()) {
+        throw new IOException("Invalid logging event length " + eventLength + " in block");
+      }
+      ByteBuffer event = raw.slice();
+      event.limit(eventLength);
+      events.add(event);
+      raw.position(raw.position() + eventLength);
+    }
+    return events;
+  }
+}
@@ -0,0 +1,680 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.cdap.logging.write;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.io.CountingOutputStream;
+import io.cdap.cdap.api.dataset.lib.AbstractCloseableIterator;
+import io.cdap.cdap.api.dataset.lib.CloseableIterator;
+import io.cdap.cdap.common.io.BinaryDecoder;
+import io.cdap.cdap.common.io.BinaryEncoder;
+import io.cdap.cdap.common.io.Locations;
+import io.cdap.cdap.common.io.SeekableInputStream;
+import io.cdap.cdap.common.logging.LogSamplers;
+import io.cdap.cdap.common.logging.Loggers;
+import io.cdap.cdap.logging.filter.AndFilter;
+import io.cdap.cdap.logging.filter.Filter;
+import io.cdap.cdap.logging.filter.MdcExpression;
+import io.cdap.cdap.logging.read.LogEvent;
+import io.cdap.cdap.logging.read.LogOffset;
+import io.cdap.cdap.logging.serialize.LoggingEvent;
+import io.cdap.cdap.logging.serialize.LoggingEventSerializer;
+import org.apache.twill.filesystem.Location;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import javax.annotation.Nullable;
+
+/**
+ * A columnar copy of a closed log file, stored in a sidecar file next to the log file. Events are grouped in stripes
+ * of a fixed number of events. Each stripe stores the MDC, level, logger and thread name of the events in dictionary
+ * encoded columns, the timestamps as deltas, and the Avro encoded events in a payload column. The footer has the
+ * minimum and maximum timestamp and the maximum level of each stripe.
+ *
+ * Readers skip the stripes outside of the time range and the stripes without events of the level required by the
+ * filter based on the footer, and the stripes without the MDC values required by the filter after only reading their
+ * MDC column. The filter is evaluated on the events projected from the columns, and only the payload of the matching
+ * events is decoded.
+ *
+ * Format:
+ * <pre>
+ * {@code
+ *   <magic><version>(<stripe>)*<footer><footer length><magic>
+ *   stripe: <mdc column><level column><timestamp column><logger column><thread column><payload column>
+ *   footer: <number of stripes>(<position><events><min timestamp><max timestamp><max level>)*
+ * }
+ * </pre>
+ * where each column is written as length prefixed bytes. Dictionary encoded columns start with their dictionary,
+ * followed by the dictionary index of the value of each event, {@code -1} for {@code null}.
+ */
+public final class ColumnarLogFile implements Closeable {
+
+  /**
+   * Suffix of the columnar file name, which is appended to the log file name.
+   */
+  public static final String FILE_SUFFIX = ".col";
+
+  private static final Logger LOG = LoggerFactory.getLogger(ColumnarLogFile.class);
+  private static final Logger READ_FAILURE_LOG = Loggers.sampling(LOG, LogSamplers.limitRate(60000));
+
+  private static final int MAGIC = 0x4c4f4743;
+  private static final int VERSION = 1;
+  // Footer length and magic
+  private static final int TRAILER_SIZE = 8;
+
+  private final Location location;
+  private final SeekableInputStream input;
+  private final List<Stripe> stripes;
+  private final LoggingEventSerializer serializer;
+
+  private ColumnarLogFile(Location location, SeekableInputStream input, List<Stripe> stripes) {
+    this.location = location;
+    this.input = input;
+    this.stripes = stripes;
+    this.serializer = new LoggingEventSerializer();
+  }
+
+  /**
+   * Returns the {@link Location} of the columnar file of the given log file.
+   */
+  public static Location getColumnarLocation(Location logFile) throws IOException {
+    Location parent = Locations.getParent(logFile);
+    if (parent == null) {
+      throw new IOException("Log file " + logFile + " has no parent directory");
+    }
+    return parent.append(logFile.getName() + FILE_SUFFIX);
+  }
+
+  /**
+   * Opens the columnar file of the given log file.
+   *
+   * @param logFile the log file
+   * @return the columnar file, or {@code null} if the log file has no columnar file
+   * @throws IOException if failed to open the columnar file
+   */
+  @Nullable
+  public static ColumnarLogFile open(Location logFile) throws IOException {
+    Location location = getColumnarLocation(logFile);
+    if (!location.exists()) {
+      return null;
+    }
+
+    SeekableInputStream input = Locations.newInputSupplier(location).getInput();
+    try {
+      long length = input.size();
+      if (length < 2 * TRAILER_SIZE) {
+        throw new IOException("Invalid columnar log file " + location);
+      }
+      input.seek(length - TRAILER_SIZE);
+      DataInputStream trailer = new DataInputStream(input);
+      int footerLength = trailer.readInt();
+      if (trailer.readInt() != MAGIC) {
+        throw new IOException("Invalid columnar log file " + location);
+      }
+
+      input.seek(length - TRAILER_SIZE - footerLength);
+      BinaryDecoder footer = new BinaryDecoder(new BufferedInputStream(input));
+      int size = footer.readInt();
+      List<Stripe> stripes = new ArrayList<>(size);
+      for (int i = 0; i < size; i++) {
+        stripes.add(new Stripe(footer.readLong(), footer.readInt(), footer.readLong(), footer.readLong(),
+                               footer.readInt()));
+      }
+      return new ColumnarLogFile(location, input, stripes);
+    } catch (IOException e) {
+      input.close();
+      throw e;
+    }
+  }
+
+  /**
+   * Creates a {@link Writer} of the columnar file of the given log file. The columnar file only becomes visible to
+   * readers when {@link Writer#finish()} is called.
+   *
+   * @param logFile the log file
+   * @param filePermissions permissions of the columnar file, or an empty string to use the default permissions
+   * @param stripeEvents number of events in each stripe
+   */
+  public static Writer createWriter(Location logFile, String filePermissions, int stripeEvents) throws IOException {
+    Location location = getColumnarLocation(logFile);
+    Location tmpLocation = location.getTempFile(".tmp");
+    OutputStream os = filePermissions.isEmpty() ? tmpLocation.getOutputStream()
+                                                : tmpLocation.getOutputStream(filePermissions);
+    return new Writer(location, tmpLocation, os, stripeEvents);
+  }
+
+  /**
+   * Returns the number of stripes in this file.
+   */
+  public int getStripeCount() {
+    return stripes.size();
+  }
+
+  /**
+   * Reads the events of this file with the same semantics as {@link LogLocation#readLog(Filter, long, long, int)}.
+   * The returned iterator closes this file when it is closed.
+   */
+  public CloseableIterator<LogEvent> readLog(final Filter logFilter, final long fromTimeMs, final long toTimeMs,
+                                             final int maxEvents) {
+    final StripeFilter stripeFilter = new StripeFilter(logFilter);
+
+    return new AbstractCloseableIterator<LogEvent>() {
+      private final Iterator<Stripe> stripeIterator = stripes.iterator();
+      private Iterator<Row> rows = Collections.emptyIterator();
+      private int count;
+      private long prevTimestamp = -1;
+
+      @Override
+      protected LogEvent computeNext() {
+        try {
+          while (!rows.hasNext()) {
+            if (!stripeIterator.hasNext()) {
+              return endOfData();
+            }
+            Stripe stripe = stripeIterator.next();
+            if (stripe.minTimestamp >= toTimeMs && stripe.minTimestamp > prevTimestamp) {
+              // All the events of the remaining stripes are after the time range
+              return endOfData();
+            }
+            if (stripe.maxTimestamp >= fromTimeMs && stripeFilter.mayMatch(stripe)) {
+              rows = readStripe(stripe, stripeFilter, fromTimeMs, Long.MAX_VALUE).iterator();
+            }
+          }
+
+          Row row = rows.next();
+          count++;
+          if ((count > maxEvents || row.timestamp >= toTimeMs) && row.timestamp != prevTimestamp) {
+            return endOfData();
+          }
+          prevTimestamp = row.timestamp;
+          return row.decode();
+        } catch (IOException e) {
+          READ_FAILURE_LOG.error("Got exception while reading columnar log file {}", location, e);
+          return endOfData();
+        }
+      }
+
+      @Override
+      public void close() {
+        ColumnarLogFile.this.close();
+      }
+    };
+  }
+
+  /**
+   * Reads the events of this file with the same semantics as {@link LogLocation#readLogPrev(Filter, long, int)},
+   * by reading the stripes backwards.
+   */
+  public Collection<LogEvent> readLogPrev(Filter logFilter, long fromTimeMs, int maxEvents) throws IOException {
+    StripeFilter stripeFilter = new StripeFilter(logFilter);
+    Deque<List<Row>> segments = new LinkedList<>();
+    int count = 0;
+
+    for (int i = stripes.size() - 1; i >= 0 && count < maxEvents; i--) {
+      Stripe stripe = stripes.get(i);
+      if (stripe.minTimestamp > fromTimeMs || !stripeFilter.mayMatch(stripe)) {
+        continue;
+      }
+      List<Row> rows = readStripe(stripe, stripeFilter, Long.MIN_VALUE, fromTimeMs);
+      if (!rows.isEmpty()) {
+        segments.addFirst(rows);
+        count += rows.size();
+      }
+    }
+
+    // Only decode the last maxEvents events
+    List<LogEvent> events = new ArrayList<>(Math.min(count, maxEvents));
+    int skip = count > maxEvents ? count - maxEvents : 0;
+    for (List<Row> rows : segments) {
+      for (Row row : rows) {
+        if (skip > 0) {
+          skip--;
+        } else {
+          events.add(row.decode());
+        }
+      }
+    }
+    return events;
+  }
+
+  @Override
+  public void close() {
+    try {
+      input.close();
+    } catch (IOException e) {
+      LOG.debug("Failed to close columnar log file {}", location, e);
+    }
+  }
+
+  /**
+   * Reads the events of the given stripe that have timestamps in the given inclusive range and match the filter.
+   * The payload column is only read if at least one event matches.
+   */
+  private List<Row> readStripe(Stripe stripe, StripeFilter stripeFilter,
+                               long minTimestamp, long maxTimestamp) throws IOException {
+    input.seek(stripe.position);
+    BinaryDecoder decoder = new BinaryDecoder(new BufferedInputStream(input));
+
+    // Skip the stripe without reading the other columns if it doesn't have the MDC values required by the filter
+    BinaryDecoder mdcColumn = readColumn(decoder);
+    String[] mdcDictionary = readDictionary(mdcColumn);
+    if (!stripeFilter.mayMatch(mdcDictionary)) {
+      return ImmutableList.of();
+    }
+
+    BinaryDecoder levelColumn = readColumn(decoder);
+    String[] levelDictionary = readDictionary(levelColumn);
+    BinaryDecoder timestampColumn = readColumn(decoder);
+    BinaryDecoder loggerColumn = readColumn(decoder);
+    String[] loggerDictionary = readDictionary(loggerColumn);
+    BinaryDecoder threadColumn = readColumn(decoder);
+    String[] threadDictionary = readDictionary(threadColumn);
+
+    long timestamp = 0;
+    long[] timestamps = new long[stripe.events];
+    boolean[] matches = new boolean[stripe.events];
+    int matchCount = 0;
+    for (int i = 0; i < stripe.events; i++) {
+      timestamp += timestampColumn.readLong();
+      String level = getValue(levelDictionary, levelColumn.readInt());
+      String loggerName = getValue(loggerDictionary, loggerColumn.readInt());
+      String threadName = getValue(threadDictionary, threadColumn.readInt());
+      int mdcSize = mdcColumn.readInt();
+      Map<String, String> mdc = new HashMap<>();
+      for (int j = 0; j < mdcSize; j++) {
+        mdc.put(getValue(mdcDictionary, mdcColumn.readInt()), getValue(mdcDictionary, mdcColumn.readInt()));
+      }
+      if (timestamp < minTimestamp || timestamp > maxTimestamp) {
+        continue;
+      }
+
+      // Evaluate the filter on an event projected from the columns
+      ch.qos.logback.classic.spi.LoggingEvent event = new ch.qos.logback.classic.spi.LoggingEvent();
+      event.setTimeStamp(timestamp);
+      event.setLevel(level == null ? null : Level.toLevel(level));
+      event.setLoggerName(loggerName);
+      event.setThreadName(threadName);
+      event.setMDCPropertyMap(mdc);
+
+      timestamps[i] = timestamp;
+      matches[i] = stripeFilter.match(event);
+      if (matches[i]) {
+        matchCount++;
+      }
+    }
+    if (matchCount == 0) {
+      return ImmutableList.of();
+    }
+
+    ByteBuffer payloadColumn = decoder.readBytes();
+    List<Row> rows = new ArrayList<>(matchCount);
+    for (int i = 0; i < stripe.events; i++) {
+      // Payload lengths are fixed length ints, so that the payloads can be sliced from the buffer
+      int length = payloadColumn.getInt();
+      if (matches[i]) {
+        ByteBuffer payload = payloadColumn.slice();
+        payload.limit(length);
+        rows.add(new Row(timestamps[i], payload));
+      }
+      payloadColumn.position(payloadColumn.position() + length);
+    }
+    return rows;
+  }
+
+  private static BinaryDecoder readColumn(BinaryDecoder decoder) throws IOException {
+    ByteBuffer column = decoder.readBytes();
+    return new BinaryDecoder(new ByteArrayInputStream(column.array(), column.arrayOffset() + column.position(),
+                                                      column.remaining()));
+  }
+
+  private static String[] readDictionary(BinaryDecoder column) throws IOException {
+    String[] dictionary = new String[column.readInt()];
+    for (int i = 0; i < dictionary.length; i++) {
+      dictionary[i] = column.readString();
+    }
+    return dictionary;
+  }
+
+  @Nullable
+  private static String getValue(String[] dictionary, int index) {
+    return index < 0 ? null : dictionary[index];
+  }
+
+  /**
+   * A stripe in the footer of the file.
+   */
+  private static final class Stripe {
+    private final long position;
+    private final int events;
+    private final long minTimestamp;
+    private final long maxTimestamp;
+    private final int maxLevel;
+
+    private Stripe(long position, int events, long minTimestamp, long maxTimestamp, int maxLevel) {
+      this.position = position;
+      this.events = events;
+      this.minTimestamp = minTimestamp;
+      this.maxTimestamp = maxTimestamp;
+      this.maxLevel = maxLevel;
+    }
+  }
+
+  /**
+   * An event of a stripe that matched the filter, which is only decoded when returned.
+   */
+  private final class Row {
+    private final long timestamp;
+    private final ByteBuffer payload;
+
+    private Row(long timestamp, ByteBuffer payload) {
+      this.timestamp = timestamp;
+      this.payload = payload;
+    }
+
+    private LogEvent decode() throws IOException {
+      ILoggingEvent event = serializer.fromBytes(payload);
+      event.prepareForDeferredProcessing();
+      return new LogEvent(event, new LogOffset(LogOffset.INVALID_KAFKA_OFFSET, timestamp));
+    }
+  }
+
+  /**
+   * The parts of a {@link Filter} that are pushed down to the stripes.
+   */
+  private static final class StripeFilter {
+    private final Filter filter;
+    private final int minLevel;
+    private final Map<String, String> requiredMdc;
+
+    private StripeFilter(Filter filter) {
+      this.filter = filter;
+      this.minLevel = LogFileIndex.getMinimumLevel(filter).toInt();
+      this.requiredMdc = new HashMap<>();
+      collectRequiredMdc(filter, requiredMdc);
+    }
+
+    /**
+     * Returns whether the given stripe may have events matching the filter, based on the footer.
+     */
+    boolean mayMatch(Stripe stripe) {
+      return stripe.maxLevel >= minLevel;
+    }
+
+    /**
+     * Returns whether a stripe with the given MDC dictionary may have events matching the filter.
+     */
+    boolean mayMatch(String[] mdcDictionary) {
+      if (requiredMdc.isEmpty()) {
+        return true;
+      }
+      Set<String> values = new HashSet<>(Arrays.asList(mdcDictionary));
+      for (Map.Entry<String, String> entry : requiredMdc.entrySet()) {
+        if (!values.contains(entry.getKey()) || !values.contains(entry.getValue())) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    boolean match(ILoggingEvent event) {
+      return filter.match(event);
+    }
+
+    /**
+     * Collects the MDC values that all the events matching the given filter must have.
+     */
+    private static void collectRequiredMdc(Filter filter, Map<String, String> requiredMdc) {
+      if (filter instanceof MdcExpression && ((MdcExpression) filter).getValue() != null) {
+        requiredMdc.put(((MdcExpression) filter).getKey(), ((MdcExpression) filter).getValue());
+      } else if (filter instanceof AndFilter) {
+        for (Filter expression : ((AndFilter) filter).getExpressions()) {
+          collectRequiredMdc(expression, requiredMdc);
+        }
+      }
+    }
+  }
+
+  /**
+   * Writes the columnar file of a log file. It must be closed after use, which deletes the file
+   * if {@link #finish()} was not called.
+   */
+  public static final class Writer implements Closeable {
+    private final Location location;
+    private final Location tmpLocation;
+    private final CountingOutputStream output;
+    private final int stripeEvents;
+    private final LoggingEventSerializer serializer;
+    private final List<Stripe> stripes;
+    private final List<ILoggingEvent> events;
+    private boolean finished;
+    private boolean closed;
+
+    private Writer(Location location, Location tmpLocation, OutputStream os, int stripeEvents) throws IOException {
+      this.location = location;
+      this.tmpLocation = tmpLocation;
+      this.output = new CountingOutputStream(new BufferedOutputStream(os));
+      this.stripeEvents = stripeEvents;
+      this.serializer = new LoggingEventSerializer();
+      this.stripes = new ArrayList<>();
+      this.events = new ArrayList<>(stripeEvents);
+
+      DataOutputStream header = new DataOutputStream(output);
+      header.writeInt(MAGIC);
+      header.writeInt(VERSION);
+    }
+
+    /**
+     * Appends an event. Events are expected to be appended in the order of the log file.
+     */
+    public void append(ILoggingEvent event) throws IOException {
+      events.add(event);
+      if (events.size() >= stripeEvents) {
+        writeStripe();
+      }
+    }
+
+    /**
+     * Writes the remaining events and the footer, and makes the columnar file visible to readers.
+     */
+    public void finish() throws IOException {
+      writeStripe();
+
+      ByteArrayOutputStream footerBytes = new ByteArrayOutputStream();
+      BinaryEncoder footer = new BinaryEncoder(footerBytes);
+      footer.writeInt(stripes.size());
+      for (Stripe stripe : stripes) {
+        footer.writeLong(stripe.position);
+        footer.writeInt(stripe.events);
+        footer.writeLong(stripe.minTimestamp);
+        footer.writeLong(stripe.maxTimestamp);
+        footer.writeInt(stripe.maxLevel);
+      }
+      footerBytes.writeTo(output);
+
+      DataOutputStream trailer = new DataOutputStream(output);
+      trailer.writeInt(footerBytes.size());
+      trailer.writeInt(MAGIC);
+      output.close();
+      closed = true;
+
+      if (tmpLocation.renameTo(location) == null) {
+        throw new IOException("Failed to rename " + tmpLocation + " to " + location);
+      }
+      finished = true;
+    }
+
+    @Override
+    public void close() throws IOException {
+      try {
+        if (!closed) {
+          output.close();
+        }
+      } finally {
+        if (!finished) {
+          Locations.deleteQuietly(tmpLocation);
+        }
+      }
+    }
+
+    private void writeStripe() throws IOException {
+      if (events.isEmpty()) {
+        return;
+      }
+
+      Dictionary mdcDictionary = new Dictionary();
+      Dictionary levelDictionary = new Dictionary();
+      Dictionary loggerDictionary = new Dictionary();
+      Dictionary threadDictionary = new Dictionary();
+      ColumnWriter mdcColumn = new ColumnWriter();
+      ColumnWriter levelColumn = new ColumnWriter();
+      ColumnWriter timestampColumn = new ColumnWriter();
+      ColumnWriter loggerColumn = new ColumnWriter();
+      ColumnWriter threadColumn = new ColumnWriter();
+      ByteArrayOutputStream payloadColumn = new ByteArrayOutputStream();
+      DataOutputStream payloadOutput = new DataOutputStream(payloadColumn);
+
+      long minTimestamp = Long.MAX_VALUE;
+      long maxTimestamp = Long.MIN_VALUE;
+      int maxLevel = Integer.MIN_VALUE;
+      long prevTimestamp = 0;
+      for (ILoggingEvent event : events) {
+        long timestamp = event.getTimeStamp();
+        minTimestamp = Math.min(minTimestamp, timestamp);
+        maxTimestamp = Math.max(maxTimestamp, timestamp);
+        timestampColumn.encoder.writeLong(timestamp - prevTimestamp);
+        prevTimestamp = timestamp;
+
+        Level level = event.getLevel();
+        // Same as the LoggingEventSerializer, events without level are considered as errors
+        maxLevel = Math.max(maxLevel, level == null ? Level.ERROR_INT : level.toInt());
+        levelColumn.encoder.writeInt(levelDictionary.getIndex(level == null ? null : level.toString()));
+        loggerColumn.encoder.writeInt(loggerDictionary.getIndex(event.getLoggerName()));
+        threadColumn.encoder.writeInt(threadDictionary.getIndex(event.getThreadName()));
+
+        Map<String, String> mdc = event.getMDCPropertyMap();
+        mdcColumn.encoder.writeInt(mdc.size());
+        for (Map.Entry<String, String> entry : mdc.entrySet()) {
+          mdcColumn.encoder.writeInt(mdcDictionary.getIndex(entry.getKey()));
+          mdcColumn.encoder.writeInt(mdcDictionary.getIndex(entry.getValue()));
+        }
+
+        byte[] payload = getPayload(event);
+        payloadOutput.writeInt(payload.length);
+        payloadOutput.write(payload);
+      }
+
+      long position = output.getCount();
+      BinaryEncoder encoder = new BinaryEncoder(output);
+      mdcColumn.writeTo(encoder, mdcDictionary);
+      levelColumn.writeTo(encoder, levelDictionary);
+      timestampColumn.writeTo(encoder, null);
+      loggerColumn.writeTo(encoder, loggerDictionary);
+      threadColumn.writeTo(encoder, threadDictionary);
+      encoder.writeInt(payloadColumn.size());
+      payloadColumn.writeTo(output);
+
+      stripes.add(new Stripe(position, events.size(), minTimestamp, maxTimestamp, maxLevel));
+      events.clear();
+    }
+
+    private byte[] getPayload(ILoggingEvent event) {
+      if (event instanceof LoggingEvent) {
+        ByteBuffer encoded = ((LoggingEvent) event).getEncoded();
+        if (encoded != null) {
+          byte[] bytes = new byte[encoded.remaining()];
+          encoded.duplicate().get(bytes);
+          return bytes;
+        }
+      }
+      return serializer.toBytes(event);
+    }
+  }
+
+  /**
+   * A dictionary of the string values of a column in a stripe.
+   */
+  private static final class Dictionary {
+    private final Map<String, Integer> indices = new LinkedHashMap<>();
+
+    int getIndex(@Nullable String value) {
+      if (value == null) {
+        return -1;
+      }
+      Integer index = indices.get(value);
+      if (index == null) {
+        index = indices.size();
+        indices.put(value, index);
+      }
+      return index;
+    }
+
+    Collection<String> getValues() {
+      return Lists.newArrayList(indices.keySet());
+    }
+  }
+
+  /**
+   * Buffers the values of a column in a stripe.
+   */
+  private static final class ColumnWriter {
+    private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    private final BinaryEncoder encoder = new BinaryEncoder(bytes);
+
+    /**
+     * Writes the column, prefixed with the given dictionary if not {@code null}, as length prefixed bytes.
+     */
+    void writeTo(BinaryEncoder output, @Nullable Dictionary dictionary) throws IOException {
+      ByteArrayOutputStream column = new ByteArrayOutputStream(bytes.size() + 64);
+      if (dictionary != null) {
+        BinaryEncoder encoder = new BinaryEncoder(column);
+        Collection<String> values = dictionary.getValues();
+        encoder.writeInt(values.size());
+        for (String value : values) {
+          encoder.writeString(value);
+        }
+      }
+      bytes.writeTo(column);
+      output.writeBytes(column.toByteArray());
+    }
+  }
+}
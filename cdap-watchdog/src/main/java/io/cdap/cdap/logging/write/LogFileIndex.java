@@ -0,0 +1,386 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.cdap.logging.write;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import com.google.common.collect.ImmutableList;
+import io.cdap.cdap.common.io.Locations;
+import io.cdap.cdap.logging.filter.AndFilter;
+import io.cdap.cdap.logging.filter.Filter;
+import io.cdap.cdap.logging.filter.LogLevelExpression;
+import io.cdap.cdap.logging.filter.OrFilter;
+import org.apache.twill.filesystem.Location;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import javax.annotation.Nullable;
+
+/**
+ * A sparse time index of a log file, stored in a sidecar file next to the log file. The index divides the log file
+ * into blocks that start at Avro sync points, and records the minimum and maximum event timestamps and the number of
+ * events per log level of each block. Readers use it to seek directly to the blocks of a time range and to skip the
+ * blocks that cannot have events matching the log level of a filter.
+ *
+ * The index of a file that is still being written only covers the file up to {@link #getEndPosition()}.
+ */
+public final class LogFileIndex {
+
+  /**
+   * Suffix of the index file name, which is appended to the log file name.
+   */
+  public static final String FILE_SUFFIX = ".idx";
+
+  private static final int MAGIC = 0x4c494458;
+  private static final int VERSION = 1;
+
+  // Levels counted by the index. An event is counted in the highest level that is lower or equal to its level.
+  private static final Level[] LEVELS = { Level.TRACE, Level.DEBUG, Level.INFO, Level.WARN, Level.ERROR };
+
+  private final List<Block> blocks;
+  private final long endPosition;
+
+  private LogFileIndex(List<Block> blocks, long endPosition) {
+    this.blocks = ImmutableList.copyOf(blocks);
+    this.endPosition = endPosition;
+  }
+
+  /**
+   * Returns the {@link Location} of the index file of the given log file.
+   */
+  public static Location getIndexLocation(Location logFile) throws IOException {
+    Location parent = Locations.getParent(logFile);
+    if (parent == null) {
+      throw new IOException("Log file " + logFile + " has no parent directory");
+    }
+    return parent.append(logFile.getName() + FILE_SUFFIX);
+  }
+
+  /**
+   * Reads the index of the given log file.
+   *
+   * @param logFile the log file
+   * @return the index or {@code null} if the log file has no index
+   * @throws IOException if failed to read the index
+   */
+  @Nullable
+  public static LogFileIndex read(Location logFile) throws IOException {
+    Location indexLocation = getIndexLocation(logFile);
+    if (!indexLocation.exists()) {
+      return null;
+    }
+    try (InputStream is = indexLocation.getInputStream()) {
+      return read(is);
+    }
+  }
+
+  /**
+   * Reads an index from the given {@link InputStream}.
+   */
+  public static LogFileIndex read(InputStream is) throws IOException {
+    DataInputStream input = new DataInputStream(new BufferedInputStream(is));
+    if (input.readInt() != MAGIC) {
+      throw new IOException("Invalid log file index");
+    }
+    int version = input.readInt();
+    if (version != VERSION) {
+      throw new IOException("Unsupported log file index version " + version);
+    }
+    long endPosition = input.readLong();
+    int size = input.readInt();
+    List<Block> blocks = new ArrayList<>(size);
+    for (int i = 0; i < size; i++) {
+      long position = input.readLong();
+      long minTimestamp = input.readLong();
+      long maxTimestamp = input.readLong();
+      int[] levelCounts = new int[LEVELS.length];
+      for (int j = 0; j < levelCounts.length; j++) {
+        levelCounts[j] = input.readInt();
+      }
+      blocks.add(new Block(position, minTimestamp, maxTimestamp, levelCounts));
+    }
+    return new LogFileIndex(blocks, endPosition);
+  }
+
+  /**
+   * Writes this index as the index of the given log file, replacing the existing one.
+   *
+   * @param logFile the log file
+   * @param filePermissions permissions of the index file, or an empty string to use the default permissions
+   */
+  public void write(Location logFile, String filePermissions) throws IOException {
+    Location indexLocation = getIndexLocation(logFile);
+    try (OutputStream os = filePermissions.isEmpty() ? indexLocation.getOutputStream()
+                                                     : indexLocation.getOutputStream(filePermissions)) {
+      write(os);
+    }
+  }
+
+  /**
+   * Writes this index to the given {@link OutputStream}.
+   */
+  public void write(OutputStream os) throws IOException {
+    DataOutputStream output = new DataOutputStream(new BufferedOutputStream(os));
+    output.writeInt(MAGIC);
+    output.writeInt(VERSION);
+    output.writeLong(endPosition);
+    output.writeInt(blocks.size());
+    for (Block block : blocks) {
+      output.writeLong(block.getPosition());
+      output.writeLong(block.getMinTimestamp());
+      output.writeLong(block.getMaxTimestamp());
+      for (int count : block.levelCounts) {
+        output.writeInt(count);
+      }
+    }
+    output.flush();
+  }
+
+  /**
+   * Returns the number of blocks in this index.
+   */
+  public int getBlockCount() {
+    return blocks.size();
+  }
+
+  /**
+   * Returns the block of the given index.
+   */
+  public Block getBlock(int index) {
+    return blocks.get(index);
+  }
+
+  /**
+   * Returns the position in the log file where the given block ends, which is the start of the next block.
+   */
+  public long getBlockEndPosition(int index) {
+    return index + 1 < blocks.size() ? blocks.get(index + 1).getPosition() : endPosition;
+  }
+
+  /**
+   * Returns the Avro sync position in the log file up to which the file is indexed.
+   * Events written after this position are not covered by any block.
+   */
+  public long getEndPosition() {
+    return endPosition;
+  }
+
+  /**
+   * Finds the first block starting from the given block that may have events at or after the given time
+   * with at least the given level.
+   *
+   * @param fromBlock index of the block to start from
+   * @param fromTimeMs start timestamp in millis
+   * @param minLevel the minimum level of the events
+   * @return the index of the block, or {@link #getBlockCount()} if no block may have such events
+   */
+  public int findBlock(int fromBlock, long fromTimeMs, Level minLevel) {
+    int index = fromBlock;
+    while (index < blocks.size()) {
+      Block block = blocks.get(index);
+      if (block.getMaxTimestamp() >= fromTimeMs && block.hasLevel(minLevel)) {
+        break;
+      }
+      index++;
+    }
+    return index;
+  }
+
+  /**
+   * Returns the minimum level of the events that may match the given filter, based on the
+   * {@link LogLevelExpression}s in it.
+   */
+  public static Level getMinimumLevel(Filter filter) {
+    if (filter instanceof LogLevelExpression) {
+      return ((LogLevelExpression) filter).getLevel();
+    }
+    if (filter instanceof AndFilter) {
+      // all the expressions must match, hence the highest level of them
+      Level level = Level.ALL;
+      for (Filter expression : ((AndFilter) filter).getExpressions()) {
+        Level expressionLevel = getMinimumLevel(expression);
+        if (expressionLevel.isGreaterOrEqual(level)) {
+          level = expressionLevel;
+        }
+      }
+      return level;
+    }
+    if (filter instanceof OrFilter) {
+      // any of the expressions may match, hence the lowest level of them
+      Level level = null;
+      for (Filter expression : ((OrFilter) filter).getExpressions()) {
+        Level expressionLevel = getMinimumLevel(expression);
+        if (level == null || level.isGreaterOrEqual(expressionLevel)) {
+          level = expressionLevel;
+        }
+      }
+      return level == null ? Level.ALL : level;
+    }
+    return Level.ALL;
+  }
+
+  private static int getLevelIndex(@Nullable Level level) {
+    if (level == null) {
+      // Same as the LoggingEventSerializer
+      return LEVELS.length - 1;
+    }
+    for (int i = LEVELS.length - 1; i > 0; i--) {
+      if (level.isGreaterOrEqual(LEVELS[i])) {
+        return i;
+      }
+    }
+    return 0;
+  }
+
+  /**
+   * A block of a log file.
+   */
+  public static final class Block {
+    private final long position;
+    private final long minTimestamp;
+    private final long maxTimestamp;
+    private final int[] levelCounts;
+
+    private Block(long position, long minTimestamp, long maxTimestamp, int[] levelCounts) {
+      this.position = position;
+      this.minTimestamp = minTimestamp;
+      this.maxTimestamp = maxTimestamp;
+      this.levelCounts = levelCounts;
+    }
+
+    /**
+     * Returns the Avro sync position of the start of the block, which can be used to seek a
+     * {@link org.apache.avro.file.DataFileReader}.
+     */
+    public long getPosition() {
+      return position;
+    }
+
+    public long getMinTimestamp() {
+      return minTimestamp;
+    }
+
+    public long getMaxTimestamp() {
+      return maxTimestamp;
+    }
+
+    /**
+     * Returns the number of events in this block with level between the given level, inclusive, and the next
+     * higher level counted by the index.
+     */
+    public int getLevelCount(Level level) {
+      return levelCounts[getLevelIndex(level)];
+    }
+
+    /**
+     * Returns whether this block may have events with at least the given level.
+     */
+    public boolean hasLevel(Level minLevel) {
+      for (int i = LEVELS.length - 1; i >= 0; i--) {
+        if (levelCounts[i] > 0) {
+          // The highest level of the events counted in this bucket is right below the next bucket level
+          return i == LEVELS.length - 1 || LEVELS[i + 1].toInt() > minLevel.toInt();
+        }
+      }
+      return false;
+    }
+
+    @Override
+    public String toString() {
+      return "Block{" +
+        "position=" + position +
+        ", minTimestamp=" + minTimestamp +
+        ", maxTimestamp=" + maxTimestamp +
+        ", levelCounts=" + Arrays.toString(levelCounts) +
+        '}';
+    }
+  }
+
+  /**
+   * Builds the index of a log file while the file is being written.
+   */
+  public static final class Builder {
+    private final List<Block> blocks = new ArrayList<>();
+
+    private long blockPosition;
+    private long minTimestamp;
+    private long maxTimestamp;
+    private int[] levelCounts;
+    private int events;
+
+    /**
+     * Creates a builder for a log file with the first block starting at the given position.
+     */
+    public Builder(long position) {
+      startBlock(position);
+    }
+
+    /**
+     * Adds an event written to the current block.
+     */
+    public void add(ILoggingEvent event) {
+      long timestamp = event.getTimeStamp();
+      minTimestamp = events == 0 ? timestamp : Math.min(minTimestamp, timestamp);
+      maxTimestamp = events == 0 ? timestamp : Math.max(maxTimestamp, timestamp);
+      levelCounts[getLevelIndex(event.getLevel())]++;
+      events++;
+    }
+
+    /**
+     * Ends the current block and starts a new one. It is a no-op if no event was added to the current block.
+     *
+     * @param nextPosition the Avro sync position that ends the current block
+     * @return {@code true} if a block was added to the index
+     */
+    public boolean endBlock(long nextPosition) {
+      if (events == 0) {
+        return false;
+      }
+      blocks.add(new Block(blockPosition, minTimestamp, maxTimestamp, levelCounts));
+      startBlock(nextPosition);
+      return true;
+    }
+
+    /**
+     * Returns the number of blocks ended so far.
+     */
+    public int getBlockCount() {
+      return blocks.size();
+    }
+
+    /**
+     * Builds an index covering the blocks ended so far.
+     */
+    public LogFileIndex build() {
+      return new LogFileIndex(blocks, blockPosition);
+    }
+
+    private void startBlock(long position) {
+      blockPosition = position;
+      levelCounts = new int[LEVELS.length];
+      events = 0;
+    }
+  }
+}
@@ -16,6 +16,7 @@
 
 package io.cdap.cdap.logging.write;
 
+import ch.qos.logback.classic.Level;
 import ch.qos.logback.classic.spi.ILoggingEvent;
 import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableList;
@@ -26,7 +27,10 @@ import io.cdap.cdap.common.io.Locations;
 import io.cdap.cdap.common.io.SeekableInputStream;
 import io.cdap.cdap.common.logging.LogSamplers;
 import io.cdap.cdap.common.logging.Loggers;
+import io.cdap.cdap.logging.filter.AndFilter;
 import io.cdap.cdap.logging.filter.Filter;
+import io.cdap.cdap.logging.filter.OrFilter;
+import io.cdap.cdap.logging.filter.SearchExpression;
 import io.cdap.cdap.logging.read.Callback;
 import io.cdap.cdap.logging.read.LogEvent;
 import io.cdap.cdap.logging.read.LogOffset;
@@ -44,12 +48,15 @@ import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.Deque;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.Set;
 import java.util.concurrent.Callable;
+import javax.annotation.Nullable;
 
 /**
  * LogLocation representing a log file and methods to read the file's contents.
@@ -121,6 +128,10 @@ public class LogLocation {
    * @return closeable iterator of log events
    */
   public CloseableIterator<LogEvent> readLog(Filter logFilter, long fromTimeMs, long toTimeMs, int maxEvents) {
+    ColumnarLogFile columnarFile = openColumnarFile(logFilter);
+    if (columnarFile != null) {
+      return columnarFile.readLog(logFilter, fromTimeMs, toTimeMs, maxEvents);
+    }
     return new LogEventIterator(logFilter, fromTimeMs, toTimeMs, maxEvents);
   }
 
@@ -150,6 +161,18 @@ public class LogLocation {
    */
   @SuppressWarnings("WeakerAccess")
   public Collection<LogEvent> readLogPrev(Filter logFilter, long fromTimeMs, final int maxEvents) throws IOException {
+    ColumnarLogFile columnarFile = openColumnarFile(logFilter);
+    if (columnarFile != null) {
+      try {
+        return columnarFile.readLogPrev(logFilter, fromTimeMs, maxEvents);
+      } catch (IOException e) {
+        READ_FAILURE_LOG.warn("Got exception while reading columnar log file of {}", location, e);
+        return ImmutableList.of();
+      } finally {
+        columnarFile.close();
+      }
+    }
+
     Deque<Collection<LogEvent>> logSegments = new LinkedList<>();
     int count = 0;
     try {
@@ -159,6 +182,11 @@ public class LogLocation {
           return ImmutableList.of();
         }
 
+        LogFileIndex index = readIndex();
+        if (index != null) {
+          return readLogPrev(dataFileReader, index, logFilter, fromTimeMs, maxEvents);
+        }
+
         // Calculate skipLen based on fileLength
         long length = location.length();
         LOG.trace("File length {} {}", location, length);
@@ -202,10 +230,152 @@ public class LogLocation {
       READ_FAILURE_LOG.warn("Got exception while reading log file {}", location, e);
     }
 
+    return getLastEvents(logSegments, count, maxEvents);
+  }
+
+  /**
+   * Reads the events before fromTimeMs by reading the blocks of the index backwards, skipping the blocks that
+   * start after fromTimeMs or cannot have events matching the log level or the search tokens of the filter.
+   */
+  private Collection<LogEvent> readLogPrev(DataFileReader<GenericRecord> dataFileReader, LogFileIndex index,
+                                           Filter logFilter, long fromTimeMs, int maxEvents) throws IOException {
+    Level minLevel = LogFileIndex.getMinimumLevel(logFilter);
+    BitSet tokenBlocks = readTokenBlocks(index, logFilter);
+    Deque<Collection<LogEvent>> logSegments = new LinkedList<>();
+
+    // Read the events written after the indexed part of the file first, in case the file is still being written
+    dataFileReader.seek(index.getEndPosition());
+    List<LogEvent> logSegment = readToEndSyncPosition(dataFileReader, logFilter, fromTimeMs, -1);
+    logSegments.addFirst(logSegment);
+    int count = logSegment.size();
+
+    for (int block = index.getBlockCount() - 1; block >= 0 && count < maxEvents; block--) {
+      LogFileIndex.Block indexBlock = index.getBlock(block);
+      if (indexBlock.getMinTimestamp() > fromTimeMs || !indexBlock.hasLevel(minLevel)
+        || (tokenBlocks != null && !tokenBlocks.get(block))) {
+        continue;
+      }
+      dataFileReader.seek(indexBlock.getPosition());
+      logSegment = readToEndSyncPosition(dataFileReader, logFilter, fromTimeMs, index.getBlockEndPosition(block));
+      if (!logSegment.isEmpty()) {
+        logSegments.addFirst(logSegment);
+        count = count + logSegment.size();
+      }
+      LOG.trace("Read log events {} from indexed block {}", count, indexBlock);
+    }
+
+    return getLastEvents(logSegments, count, maxEvents);
+  }
+
+  private static Collection<LogEvent> getLastEvents(Collection<Collection<LogEvent>> logSegments,
+                                                    int count, int maxEvents) {
     int skip = count >= maxEvents ? count - maxEvents : 0;
     return Lists.newArrayList(Iterables.skip(Iterables.concat(logSegments), skip));
   }
 
+  /**
+   * Reads the {@link LogFileIndex} of this log file.
+   *
+   * @return the index or {@code null} if the file has no valid index
+   */
+  @Nullable
+  private LogFileIndex readIndex() {
+    if (VERSION_0.equals(frameworkVersion)) {
+      // Files of the old version are never indexed
+      return null;
+    }
+    try {
+      return LogFileIndex.read(location);
+    } catch (Exception e) {
+      READ_FAILURE_LOG.warn("Failed to read the index of log file {}, reading the file without index", location, e);
+      return null;
+    }
+  }
+
+  /**
+   * Reads the {@link LogTokenIndex} of this log file and returns the blocks of the given index that may have events
+   * matching the {@link SearchExpression}s of the filter.
+   *
+   * @return the blocks or {@code null} if the filter has no search tokens or the file has no valid token index
+   */
+  @Nullable
+  private BitSet readTokenBlocks(LogFileIndex index, Filter logFilter) {
+    Set<String> tokens = LogTokenIndex.getRequiredTokens(logFilter);
+    if (tokens.isEmpty()) {
+      return null;
+    }
+    try {
+      LogTokenIndex tokenIndex = LogTokenIndex.read(location);
+      if (tokenIndex == null) {
+        return null;
+      }
+      BitSet blocks = tokenIndex.getBlocks(tokens);
+      // The blocks not covered by the token index may have matching events
+      if (tokenIndex.getBlockCount() < index.getBlockCount()) {
+        blocks.set(tokenIndex.getBlockCount(), index.getBlockCount());
+      }
+      return blocks;
+    } catch (Exception e) {
+      READ_FAILURE_LOG.warn("Failed to read the token index of log file {}, reading the file without it", location, e);
+      return null;
+    }
+  }
+
+  /**
+   * Finds the first block starting from the given block that may have events at or after the given time with at
+   * least the given level, and is one of the given token blocks if they are not {@code null}.
+   */
+  private static int findBlock(LogFileIndex index, @Nullable BitSet tokenBlocks, int fromBlock,
+                               long fromTimeMs, Level minLevel) {
+    int block = index.findBlock(fromBlock, fromTimeMs, minLevel);
+    while (tokenBlocks != null && block < index.getBlockCount() && !tokenBlocks.get(block)) {
+      block = index.findBlock(block + 1, fromTimeMs, minLevel);
+    }
+    return block;
+  }
+
+  /**
+   * Opens the {@link ColumnarLogFile} of this log file to read events matching the given filter.
+   *
+   * @return the columnar file or {@code null} if the file has no valid columnar file
+   */
+  @Nullable
+  private ColumnarLogFile openColumnarFile(Filter logFilter) {
+    if (VERSION_0.equals(frameworkVersion)) {
+      // Files of the old version are never compacted
+      return null;
+    }
+    if (hasSearchExpression(logFilter)) {
+      // The columnar file evaluates filters without decoding the messages, hence searches read the log file
+      return null;
+    }
+    try {
+      return ColumnarLogFile.open(location);
+    } catch (Exception e) {
+      READ_FAILURE_LOG.warn("Failed to open the columnar file of log file {}, reading the log file instead",
+                            location, e);
+      return null;
+    }
+  }
+
+  private static boolean hasSearchExpression(Filter filter) {
+    if (filter instanceof SearchExpression) {
+      return true;
+    }
+    Collection<? extends Filter> expressions = ImmutableList.of();
+    if (filter instanceof AndFilter) {
+      expressions = ((AndFilter) filter).getExpressions();
+    } else if (filter instanceof OrFilter) {
+      expressions = ((OrFilter) filter).getExpressions();
+    }
+    for (Filter expression : expressions) {
+      if (hasSearchExpression(expression)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
   /**
    *  Read current block in Avro file from current block sync marker to next block sync marker
    */
@@ -259,6 +429,12 @@ public class LogLocation {
     private final long maxEvents;
 
     private DataFileReader<GenericRecord> dataFileReader;
+    private LogFileIndex index;
+    private Level minLevel;
+    @Nullable
+    private BitSet tokenBlocks;
+    // Index of the next block of the index to check when reaching its position
+    private int nextBlock;
 
     private ILoggingEvent loggingEvent;
     private GenericRecord datum;
@@ -276,7 +452,13 @@ public class LogLocation {
 
       try {
         dataFileReader = createReader();
-        if (dataFileReader.hasNext()) {
+        index = readIndex();
+        if (index != null) {
+          // Seek directly to the first block that may have events to return
+          minLevel = LogFileIndex.getMinimumLevel(logFilter);
+          tokenBlocks = readTokenBlocks(index, logFilter);
+          seekToBlock(findBlock(index, tokenBlocks, 0, fromTimeMs, minLevel));
+        } else if (dataFileReader.hasNext()) {
           datum = dataFileReader.next();
           loggingEvent = new LoggingEvent(datum);
           loggingEvent.prepareForDeferredProcessing();
@@ -315,7 +497,7 @@ public class LogLocation {
     private void computeNext() {
       try {
         // read events from file
-        while (next == null && dataFileReader.hasNext()) {
+        while (next == null && hasNextEvent()) {
           loggingEvent = new LoggingEvent(dataFileReader.next(datum));
           loggingEvent.prepareForDeferredProcessing();
 
@@ -338,6 +520,37 @@ public class LogLocation {
       }
     }
 
+    /**
+     * Returns whether the file has more events. If the file is indexed, it skips the blocks that cannot have
+     * matching events when reaching them.
+     */
+    private boolean hasNextEvent() throws IOException {
+      while (dataFileReader.hasNext()) {
+        if (index == null || nextBlock >= index.getBlockCount()
+          || dataFileReader.previousSync() < index.getBlock(nextBlock).getPosition()) {
+          return true;
+        }
+        int block = findBlock(index, tokenBlocks, nextBlock, fromTimeMs, minLevel);
+        if (block == nextBlock) {
+          nextBlock++;
+        } else {
+          seekToBlock(block);
+        }
+      }
+      return false;
+    }
+
+    /**
+     * Seeks to the given block of the index, or to the end of the indexed part of the file if the block index is
+     * equal to the number of blocks.
+     */
+    private void seekToBlock(int block) throws IOException {
+      long position = block < index.getBlockCount() ? index.getBlock(block).getPosition() : index.getEndPosition();
+      LOG.trace("Seeking to block {} at pos {} of file {}", block, position, location);
+      dataFileReader.seek(position);
+      nextBlock = block + 1;
+    }
+
     @Override
     public void close() {
       try {
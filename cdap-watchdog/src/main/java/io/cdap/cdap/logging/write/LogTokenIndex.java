@@ -0,0 +1,349 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.cdap.logging.write;
+
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import com.google.common.collect.ImmutableMap;
+import io.cdap.cdap.common.io.Locations;
+import io.cdap.cdap.logging.filter.AndFilter;
+import io.cdap.cdap.logging.filter.Filter;
+import io.cdap.cdap.logging.filter.SearchExpression;
+import org.apache.twill.filesystem.Location;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import javax.annotation.Nullable;
+
+/**
+ * An inverted index of the tokens of a log file, stored in a sidecar file next to the log file. For every token of
+ * the messages and exceptions of the events, as defined by {@link SearchExpression}, the index records the blocks of
+ * the {@link LogFileIndex} that have events with the token. Readers use it to skip the blocks that cannot have events
+ * matching the {@link SearchExpression}s of a filter. Tokens made of digits only, such as counters, ports or
+ * durations, are not indexed, as they are rarely searched and would make up most of the distinct tokens of a file.
+ *
+ * The index is written when the log file is closed, and only covers the first {@link #getBlockCount()} blocks.
+ * The tokens of the files being written are held in memory until then, up to the limit of a shared {@link Budget}.
+ */
+public final class LogTokenIndex {
+
+  /**
+   * Suffix of the token index file name, which is appended to the log file name.
+   */
+  public static final String FILE_SUFFIX = ".tokens";
+
+  private static final int MAGIC = 0x4c544f4b;
+  private static final int VERSION = 1;
+
+  private final int blockCount;
+  private final Map<String, BitSet> postings;
+
+  private LogTokenIndex(int blockCount, Map<String, BitSet> postings) {
+    this.blockCount = blockCount;
+    this.postings = ImmutableMap.copyOf(postings);
+  }
+
+  /**
+   * Returns the {@link Location} of the token index file of the given log file.
+   */
+  public static Location getIndexLocation(Location logFile) throws IOException {
+    Location parent = Locations.getParent(logFile);
+    if (parent == null) {
+      throw new IOException("Log file " + logFile + " has no parent directory");
+    }
+    return parent.append(logFile.getName() + FILE_SUFFIX);
+  }
+
+  /**
+   * Reads the token index of the given log file.
+   *
+   * @param logFile the log file
+   * @return the index or {@code null} if the log file has no token index
+   * @throws IOException if failed to read the index
+   */
+  @Nullable
+  public static LogTokenIndex read(Location logFile) throws IOException {
+    Location indexLocation = getIndexLocation(logFile);
+    if (!indexLocation.exists()) {
+      return null;
+    }
+    try (InputStream is = indexLocation.getInputStream()) {
+      return read(is);
+    }
+  }
+
+  /**
+   * Reads a token index from the given {@link InputStream}.
+   */
+  public static LogTokenIndex read(InputStream is) throws IOException {
+    DataInputStream input = new DataInputStream(new BufferedInputStream(is));
+    if (input.readInt() != MAGIC) {
+      throw new IOException("Invalid log token index");
+    }
+    int version = input.readInt();
+    if (version != VERSION) {
+      throw new IOException("Unsupported log token index version " + version);
+    }
+    int blockCount = input.readInt();
+    int size = input.readInt();
+    Map<String, BitSet> postings = new HashMap<>(size);
+    for (int i = 0; i < size; i++) {
+      String token = input.readUTF();
+      int blocks = input.readInt();
+      BitSet bitSet = new BitSet();
+      int block = 0;
+      for (int j = 0; j < blocks; j++) {
+        // Block numbers are written as increasing deltas
+        block += input.readInt();
+        bitSet.set(block);
+      }
+      postings.put(token, bitSet);
+    }
+    return new LogTokenIndex(blockCount, postings);
+  }
+
+  /**
+   * Writes this index as the token index of the given log file, replacing the existing one.
+   *
+   * @param logFile the log file
+   * @param filePermissions permissions of the index file, or an empty string to use the default permissions
+   */
+  public void write(Location logFile, String filePermissions) throws IOException {
+    Location indexLocation = getIndexLocation(logFile);
+    try (OutputStream os = filePermissions.isEmpty() ? indexLocation.getOutputStream()
+                                                     : indexLocation.getOutputStream(filePermissions)) {
+      write(os);
+    }
+  }
+
+  /**
+   * Writes this index to the given {@link OutputStream}.
+   */
+  public void write(OutputStream os) throws IOException {
+    DataOutputStream output = new DataOutputStream(new BufferedOutputStream(os));
+    output.writeInt(MAGIC);
+    output.writeInt(VERSION);
+    output.writeInt(blockCount);
+    output.writeInt(postings.size());
+    for (Map.Entry<String, BitSet> entry : postings.entrySet()) {
+      output.writeUTF(entry.getKey());
+      BitSet blocks = entry.getValue();
+      output.writeInt(blocks.cardinality());
+      int previous = 0;
+      for (int block = blocks.nextSetBit(0); block >= 0; block = blocks.nextSetBit(block + 1)) {
+        output.writeInt(block - previous);
+        previous = block;
+      }
+    }
+    output.flush();
+  }
+
+  /**
+   * Returns the number of blocks of the {@link LogFileIndex} covered by this index.
+   */
+  public int getBlockCount() {
+    return blockCount;
+  }
+
+  /**
+   * Returns the number of distinct tokens in this index.
+   */
+  public int getTokenCount() {
+    return postings.size();
+  }
+
+  /**
+   * Returns the blocks that have events with all the given tokens. Only the first {@link #getBlockCount()} blocks
+   * are covered by the result, the other blocks may have such events.
+   */
+  public BitSet getBlocks(Collection<String> tokens) {
+    BitSet result = new BitSet();
+    result.set(0, blockCount);
+    for (String token : tokens) {
+      BitSet blocks = postings.get(token);
+      if (blocks == null) {
+        return new BitSet();
+      }
+      result.and(blocks);
+    }
+    return result;
+  }
+
+  /**
+   * Returns the tokens that all the events matching the given filter must have, based on the
+   * {@link SearchExpression}s in it.
+   */
+  public static Set<String> getRequiredTokens(Filter filter) {
+    Set<String> tokens = new HashSet<>();
+    collectRequiredTokens(filter, tokens);
+    return tokens;
+  }
+
+  private static void collectRequiredTokens(Filter filter, Set<String> tokens) {
+    if (filter instanceof SearchExpression) {
+      for (String token : ((SearchExpression) filter).getTokens()) {
+        if (isIndexed(token)) {
+          tokens.add(token);
+        }
+      }
+    } else if (filter instanceof AndFilter) {
+      // Any of the expressions of an OrFilter may match, hence only the AndFilter is used
+      for (Filter expression : ((AndFilter) filter).getExpressions()) {
+        collectRequiredTokens(expression, tokens);
+      }
+    }
+  }
+
+  /**
+   * Returns whether the given token is indexed, which is the case unless it only has digits.
+   */
+  private static boolean isIndexed(String token) {
+    for (int i = 0; i < token.length(); i++) {
+      if (!Character.isDigit(token.charAt(i))) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Limits the total number of distinct tokens held in memory by the {@link Builder}s of all the log files being
+   * written. It is shared by the builders of the log files of a log pipeline.
+   */
+  public static final class Budget {
+    private final int maxTokens;
+    private int usedTokens;
+
+    /**
+     * Creates a budget of the given number of distinct tokens.
+     */
+    public Budget(int maxTokens) {
+      this.maxTokens = maxTokens;
+    }
+
+    /**
+     * Returns the number of tokens currently held by the builders.
+     */
+    public synchronized int getUsedTokens() {
+      return usedTokens;
+    }
+
+    private synchronized boolean acquire() {
+      if (usedTokens >= maxTokens) {
+        return false;
+      }
+      usedTokens++;
+      return true;
+    }
+
+    private synchronized void release(int tokens) {
+      usedTokens -= tokens;
+    }
+  }
+
+  /**
+   * Builds the token index of a log file while the file is being written, along with the {@link LogFileIndex}.
+   * Indexing stops if the tokens of the file no longer fit in the shared {@link Budget}, as the index would either
+   * not be selective or take memory from the indexes of the other files. The tokens held by the builder must be
+   * given back with {@link #release()} when the file is closed.
+   */
+  public static final class Builder {
+    private final Budget budget;
+    private final Map<String, BitSet> postings = new HashMap<>();
+
+    private int blockCount;
+    private boolean overflow;
+
+    /**
+     * Creates a builder that holds its distinct tokens within the given budget.
+     */
+    public Builder(Budget budget) {
+      this.budget = budget;
+    }
+
+    /**
+     * Adds an event written to the current block.
+     */
+    public void add(ILoggingEvent event) {
+      if (overflow) {
+        return;
+      }
+      for (String token : SearchExpression.getTokens(event)) {
+        if (!isIndexed(token)) {
+          continue;
+        }
+        BitSet blocks = postings.get(token);
+        if (blocks == null) {
+          if (!budget.acquire()) {
+            overflow = true;
+            release();
+            return;
+          }
+          blocks = new BitSet();
+          postings.put(token, blocks);
+        }
+        blocks.set(blockCount);
+      }
+    }
+
+    /**
+     * Gives the tokens held by this builder back to the budget. The builder does not index any more events.
+     */
+    public void release() {
+      overflow = true;
+      budget.release(postings.size());
+      postings.clear();
+    }
+
+    /**
+     * Ends the current block. It must be called whenever the {@link LogFileIndex.Builder} adds a block.
+     */
+    public void endBlock() {
+      blockCount++;
+    }
+
+    /**
+     * Builds an index covering the blocks ended so far.
+     *
+     * @return the index, or {@code null} if the tokens of the file did not fit in the budget or were released
+     */
+    @Nullable
+    public LogTokenIndex build() {
+      if (overflow) {
+        return null;
+      }
+      Map<String, BitSet> blocks = new HashMap<>(postings.size());
+      for (Map.Entry<String, BitSet> entry : postings.entrySet()) {
+        BitSet ended = entry.getValue().get(0, blockCount);
+        if (!ended.isEmpty()) {
+          blocks.put(entry.getKey(), ended);
+        }
+      }
+      return new LogTokenIndex(blockCount, blocks);
+    }
+  }
+}
@@ -20,7 +20,7 @@ import com.google.common.cache.CacheLoader;
 import com.google.common.cache.LoadingCache;
 import com.google.common.collect.AbstractIterator;
 import com.google.common.collect.ImmutableMap;
-import com.google.common.collect.Lists;
+import com.google.common.collect.Iterators;
 import com.google.common.collect.Maps;
 import com.google.common.util.concurrent.AbstractExecutionThreadService;
 import com.google.common.util.concurrent.Uninterruptibles;
@@ -33,9 +33,12 @@ import io.cdap.cdap.common.conf.Constants;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
@@ -43,6 +46,10 @@ import java.util.concurrent.TimeUnit;
 /**
  * Base class for {@link MetricsCollectionService} which collect metrics through a set of cached
  * {@link AggregatedMetricsEmitter}.
+ *
+ * Each {@link MetricsContext} keeps a reference to the emitters of its tags, so that emitting a metric only
+ * involves looking up the emitter by the metric name, without hashing the tags on every call.
+ * Emitters of tags that have nothing to emit for {@link #CACHE_EXPIRE_MINUTES} are removed.
  */
 public abstract class AggregatedMetricsCollectionService extends AbstractExecutionThreadService
                                                          implements MetricsCollectionService {
@@ -51,7 +58,10 @@ public abstract class AggregatedMetricsCollectionService extends AbstractExecuti
   private static final long CACHE_EXPIRE_MINUTES = 1;
 
   private final LoadingCache<Map<String, String>, MetricsContext> collectors;
-  private final LoadingCache<Map<String, String>, LoadingCache<String, AggregatedMetricsEmitter>> emitters;
+  private final ConcurrentMap<Map<String, String>, ContextEmitters> emitters;
+  // Emitters removed in the last publish. They are emitted one more time to include values added while being removed.
+  // Only accessed by the publishing thread.
+  private List<ContextEmitters> removedEmitters;
   // maximum number of milliseconds to sleep between each publish
   private final long publishIntervalInMillis;
   private final CountDownLatch shutdownLatch;
@@ -64,24 +74,8 @@ public abstract class AggregatedMetricsCollectionService extends AbstractExecuti
       .expireAfterAccess(CACHE_EXPIRE_MINUTES, TimeUnit.MINUTES)
       .build(createCollectorLoader());
 
-    this.emitters = CacheBuilder.newBuilder()
-      // NOTE : we don't need to have removalListener to  emit metrics, as we have expireAfterAccess set for a minute,
-      // emitters.get() is used to increment/gauge and that would reset the access time,
-      // and since runOneIteration() emits all the metrics for the scheduled duration (every 1 second)
-      // there wont be any loss of emitter entries.
-      .expireAfterAccess(CACHE_EXPIRE_MINUTES, TimeUnit.MINUTES)
-      .build(new CacheLoader<Map<String, String>, LoadingCache<String, AggregatedMetricsEmitter>>() {
-        @Override
-        public LoadingCache<String, AggregatedMetricsEmitter> load(Map<String, String> tags) throws Exception {
-          return CacheBuilder.newBuilder().expireAfterAccess(CACHE_EXPIRE_MINUTES, TimeUnit.MINUTES).
-            build(new CacheLoader<String, AggregatedMetricsEmitter>() {
-              @Override
-              public AggregatedMetricsEmitter load(String metricName) throws Exception {
-                return new AggregatedMetricsEmitter(metricName);
-              }
-            });
-        }
-      });
+    this.emitters = new ConcurrentHashMap<>();
+    this.removedEmitters = new ArrayList<>();
   }
 
   /**
@@ -172,28 +166,25 @@ public abstract class AggregatedMetricsCollectionService extends AbstractExecuti
   }
 
   private Iterator<MetricValues> getMetrics(final long timestamp) {
-    // NOTE : emitters.asMap does not reset the access time in cache,
-    // so it's the preferred way to access the cache entries. as we access and emit metrics every second.
-    final Iterator<Map.Entry<Map<String, String>, LoadingCache<String, AggregatedMetricsEmitter>>> iterator =
-      emitters.asMap().entrySet().iterator();
+    final long expireTime = System.currentTimeMillis() - TimeUnit.MINUTES.toMillis(CACHE_EXPIRE_MINUTES);
+    final Iterator<ContextEmitters> iterator = Iterators.concat(removedEmitters.iterator(),
+                                                                emitters.values().iterator());
+    removedEmitters = new ArrayList<>();
+
     return new AbstractIterator<MetricValues>() {
       @Override
       protected MetricValues computeNext() {
         while (iterator.hasNext()) {
-          Map.Entry<Map<String, String>, LoadingCache<String, AggregatedMetricsEmitter>> entry = iterator.next();
-          Map<String, AggregatedMetricsEmitter> metricEmitters = entry.getValue().asMap();
-          // +1 because we add extra metric about how many metric values did we emit in this context (see below)
-          List<MetricValue> metricValues = Lists.newArrayListWithCapacity(metricEmitters.size() + 1);
-          for (Map.Entry<String, AggregatedMetricsEmitter> emitterEntry : metricEmitters.entrySet()) {
-            MetricValue metricValue = emitterEntry.getValue().emit();
-            // skip increment by 0
-            if (metricValue.getType() == MetricType.COUNTER && metricValue.getValue() == 0) {
-              continue;
-            }
-            metricValues.add(metricValue);
-          }
+          ContextEmitters contextEmitters = iterator.next();
+          List<MetricValue> metricValues = contextEmitters.emit();
 
           if (metricValues.isEmpty()) {
+            // Remove emitters that have nothing to emit for a while
+            if (!contextEmitters.isRemoved() && contextEmitters.getLastEmitTime() < expireTime
+              && emitters.remove(contextEmitters.getTags(), contextEmitters)) {
+              contextEmitters.setRemoved();
+              removedEmitters.add(contextEmitters);
+            }
             // skip if there are no metric values to send
             continue;
           }
@@ -202,7 +193,7 @@ public abstract class AggregatedMetricsCollectionService extends AbstractExecuti
           metricValues.add(new MetricValue("metrics.emitted.count", MetricType.COUNTER, metricValues.size() + 1));
 
           LOG.trace("Emit metric {}", metricValues);
-          return new MetricValues(entry.getKey(), timestamp, metricValues);
+          return new MetricValues(contextEmitters.getTags(), timestamp, metricValues);
         }
         return endOfData();
       }
@@ -221,6 +212,7 @@ public abstract class AggregatedMetricsCollectionService extends AbstractExecuti
   private final class MetricsContextImpl implements MetricsContext {
 
     private final Map<String, String> tags;
+    private volatile ContextEmitters contextEmitters;
 
     private MetricsContextImpl(final Map<String, String> tags) {
       this.tags = ImmutableMap.copyOf(tags);
@@ -228,12 +220,25 @@ public abstract class AggregatedMetricsCollectionService extends AbstractExecuti
 
     @Override
     public void increment(String metricName, long value) {
-      emitters.getUnchecked(tags).getUnchecked(metricName).increment(value);
+      getContextEmitters().getEmitter(metricName).increment(value);
     }
 
     @Override
     public void gauge(String metricName, long value) {
-      emitters.getUnchecked(tags).getUnchecked(metricName).gauge(value);
+      getContextEmitters().getEmitter(metricName).gauge(value);
+    }
+
+    /**
+     * Returns the {@link ContextEmitters} for this context. The emitters are only looked up by the tags
+     * when it is used for the first time or after it was removed due to inactivity.
+     */
+    private ContextEmitters getContextEmitters() {
+      ContextEmitters result = contextEmitters;
+      if (result == null || result.isRemoved()) {
+        result = emitters.computeIfAbsent(tags, ContextEmitters::new);
+        contextEmitters = result;
+      }
+      return result;
     }
 
     @Override
@@ -260,4 +265,64 @@ public abstract class AggregatedMetricsCollectionService extends AbstractExecuti
       return collectors.getUnchecked(allTags);
     }
   }
+
+  /**
+   * The set of {@link AggregatedMetricsEmitter} for the metrics emitted with the same tags.
+   */
+  private static final class ContextEmitters {
+
+    private final Map<String, String> tags;
+    private final ConcurrentMap<String, AggregatedMetricsEmitter> emitters;
+    private volatile boolean removed;
+    // Only accessed by the publishing thread
+    private long lastEmitTime;
+
+    ContextEmitters(Map<String, String> tags) {
+      this.tags = tags;
+      this.emitters = new ConcurrentHashMap<>();
+      this.lastEmitTime = System.currentTimeMillis();
+    }
+
+    Map<String, String> getTags() {
+      return tags;
+    }
+
+    AggregatedMetricsEmitter getEmitter(String metricName) {
+      // Call get first to avoid the locking in computeIfAbsent for the common case
+      AggregatedMetricsEmitter emitter = emitters.get(metricName);
+      return emitter == null ? emitters.computeIfAbsent(metricName, AggregatedMetricsEmitter::new) : emitter;
+    }
+
+    boolean isRemoved() {
+      return removed;
+    }
+
+    void setRemoved() {
+      removed = true;
+    }
+
+    long getLastEmitTime() {
+      return lastEmitTime;
+    }
+
+    /**
+     * Emits values of all metrics and returns a list of non-zero metric values.
+     */
+    List<MetricValue> emit() {
+      // +1 because we add extra metric about how many metric values did we emit in this context
+      List<MetricValue> metricValues = new ArrayList<>(emitters.size() + 1);
+      for (AggregatedMetricsEmitter emitter : emitters.values()) {
+        MetricValue metricValue = emitter.emit();
+        // skip increment by 0
+        if (metricValue.getType() == MetricType.COUNTER && metricValue.getValue() == 0) {
+          continue;
+        }
+        metricValues.add(metricValue);
+      }
+      if (!metricValues.isEmpty()) {
+        lastEmitTime = System.currentTimeMillis();
+      }
+      return metricValues;
+    }
+  }
 }
@@ -77,6 +77,8 @@ public final class LocalMetricsCollectionService extends AggregatedMetricsCollec
       metricValues.add(metrics.next());
     }
     metricStore.add(metricValues);
+    // Metrics are published periodically already, hence no need to keep them buffered in the store
+    metricStore.flush();
   }
 
   @Override
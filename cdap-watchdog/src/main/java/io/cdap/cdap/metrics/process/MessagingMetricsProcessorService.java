@@ -21,6 +21,7 @@ import com.google.common.base.Throwables;
 import com.google.common.reflect.TypeToken;
 import com.google.common.util.concurrent.AbstractExecutionThreadService;
 import com.google.inject.Inject;
+import com.google.inject.Provider;
 import com.google.inject.assistedinject.Assisted;
 import io.cdap.cdap.api.common.Bytes;
 import io.cdap.cdap.api.data.schema.Schema;
@@ -52,12 +53,14 @@ import org.slf4j.LoggerFactory;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Deque;
 import java.util.HashMap;
-import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
 import java.util.concurrent.BlockingDeque;
 import java.util.concurrent.ConcurrentHashMap;
@@ -70,6 +73,10 @@ import javax.annotation.Nullable;
 
 /**
  * Process metrics by consuming metrics being published to TMS.
+ *
+ * Metrics are fetched by one thread per topic and are distributed to a number of shards based on the hash of
+ * the metrics context. Each shard has its own thread that aggregates and persists metrics routed to it, as well as
+ * the message id of each topic that it has persisted up to, independent of other shards.
  */
 public class MessagingMetricsProcessorService extends AbstractExecutionThreadService {
   private static final Logger LOG = LoggerFactory.getLogger(MessagingMetricsProcessorService.class);
@@ -81,21 +88,21 @@ public class MessagingMetricsProcessorService extends AbstractExecutionThreadSer
   private final MessagingService messagingService;
   private final DatumReader<MetricValues> metricReader;
   private final Schema metricSchema;
-  private final MetricStore metricStore;
   private final Map<String, String> metricsContextMap;
   private final int fetcherLimit;
   private final long maxDelayMillis;
-  private final int queueSize;
-  private final BlockingDeque<MetricValues> metricsFromAllTopics;
-  private final ConcurrentMap<TopicIdMetaKey, TopicProcessMeta> topicProcessMetaMap;
-  private final AtomicBoolean persistingFlag;
+  private final long storeFlushIntervalMillis;
+  private final List<PersistMetricsThread> persistMetricsThreads;
   // maximum number of milliseconds to sleep between each run of fetching & processing new metrics, the max sleep time
   // is 1 min
   private final long metricsProcessIntervalMillis;
   private final List<ProcessMetricsThread> processMetricsThreads;
   private final String processMetricName;
   private final String metricsPrefixForDelayMetrics;
-  private long metricsProcessedCount;
+  // Whether to record the time that each topic has been caught up to, which bounds the rollup of metrics
+  private final boolean rollupEnabled;
+  // Threads for the rollup and compaction of metrics, only run by the first processor instance
+  private final List<StoreTaskThread> storeTaskThreads;
 
   private MetricsConsumerMetaTable metaTable;
 
@@ -107,22 +114,28 @@ public class MessagingMetricsProcessorService extends AbstractExecutionThreadSer
                                    MessagingService messagingService,
                                    SchemaGenerator schemaGenerator,
                                    DatumReaderFactory readerFactory,
-                                   MetricStore metricStore,
+                                   Provider<MetricStore> metricStoreProvider,
                                    @Assisted Set<Integer> topicNumbers,
                                    @Assisted MetricsContext metricsContext,
                                    @Assisted Integer instanceId) {
     this(cConf, metricDatasetFactory, messagingService,
-         schemaGenerator, readerFactory, metricStore, topicNumbers, metricsContext,
+         schemaGenerator, readerFactory, metricStoreProvider, topicNumbers, metricsContext,
          TimeUnit.SECONDS.toMillis(cConf.getInt(Constants.Metrics.METRICS_MINIMUM_RESOLUTION_SECONDS)), instanceId);
   }
 
+  /**
+   * Constructor.
+   *
+   * @param metricStoreProvider a {@link Provider} for the {@link MetricStore}. Each shard gets its own instance
+   *                            by calling the {@link Provider#get()} method once.
+   */
   @VisibleForTesting
   MessagingMetricsProcessorService(CConfiguration cConf,
                                    MetricDatasetFactory metricDatasetFactory,
                                    MessagingService messagingService,
                                    SchemaGenerator schemaGenerator,
                                    DatumReaderFactory readerFactory,
-                                   MetricStore metricStore,
+                                   Provider<MetricStore> metricStoreProvider,
                                    Set<Integer> topicNumbers,
                                    MetricsContext metricsContext,
                                    long metricsProcessIntervalMillis,
@@ -142,20 +155,46 @@ public class MessagingMetricsProcessorService extends AbstractExecutionThreadSer
       // This should never happen
       throw Throwables.propagate(e);
     }
-    this.metricStore = metricStore;
-    this.metricStore.setMetricsContext(metricsContext);
     this.maxDelayMillis = cConf.getLong(Constants.Metrics.PROCESSOR_MAX_DELAY_MS);
-    this.queueSize = cConf.getInt(Constants.Metrics.QUEUE_SIZE);
+    this.storeFlushIntervalMillis = cConf.getLong(Constants.Metrics.STORE_FLUSH_INTERVAL_MS, 0L);
+    int queueSize = cConf.getInt(Constants.Metrics.QUEUE_SIZE);
     this.fetcherLimit = Math.max(1, queueSize / topicNumbers.size()); // fetcherLimit is at least one
     this.metricsContextMap = metricsContext.getTags();
     this.processMetricsThreads = new ArrayList<>();
-    this.metricsFromAllTopics = new LinkedBlockingDeque<>(queueSize);
-    this.topicProcessMetaMap = new ConcurrentHashMap<>();
-    this.persistingFlag = new AtomicBoolean();
     // the max sleep time will be 1 min
     this.metricsProcessIntervalMillis = metricsProcessIntervalMillis < Constants.Metrics.PROCESS_INTERVAL_MILLIS ?
       metricsProcessIntervalMillis : Constants.Metrics.PROCESS_INTERVAL_MILLIS;
     this.processMetricName = String.format("metrics.%s.process.count", instanceId);
+
+    int shards = Math.max(1, cConf.getInt(Constants.Metrics.PROCESSOR_SHARDS, 1));
+    // The queue size is divided evenly among all shards, with at least one per shard
+    int shardQueueSize = Math.max(1, queueSize / shards);
+    List<PersistMetricsThread> persistThreads = new ArrayList<>(shards);
+    for (int i = 0; i < shards; i++) {
+      MetricStore metricStore = metricStoreProvider.get();
+      metricStore.setMetricsContext(metricsContext);
+      persistThreads.add(new PersistMetricsThread(i, metricStore, shardQueueSize));
+    }
+    this.persistMetricsThreads = persistThreads;
+
+    // Only the first processor instance computes coarser resolutions of metrics and compacts metrics
+    this.rollupEnabled = cConf.getBoolean(Constants.Metrics.ROLLUP_ENABLED, false);
+    this.storeTaskThreads = new ArrayList<>();
+    if (instanceId == 0 && rollupEnabled) {
+      MetricStore metricStore = metricStoreProvider.get();
+      metricStore.setMetricsContext(metricsContext);
+      storeTaskThreads.add(
+        new StoreTaskThread("MetricsRollupThread", "rollup", metricStore::rollup,
+                            TimeUnit.SECONDS.toMillis(cConf.getLong(Constants.Metrics.ROLLUP_INTERVAL_SECONDS, 300L))));
+    }
+    if (instanceId == 0 && cConf.getBoolean(Constants.Metrics.COMPACTION_ENABLED, false)) {
+      MetricStore metricStore = metricStoreProvider.get();
+      metricStore.setMetricsContext(metricsContext);
+      storeTaskThreads.add(
+        new StoreTaskThread("MetricsCompactionThread", "compact", metricStore::compact,
+                            TimeUnit.SECONDS.toMillis(cConf.getLong(Constants.Metrics.COMPACTION_INTERVAL_SECONDS,
+                                                                    3600L))));
+    }
   }
 
   private MetricsConsumerMetaTable getMetaTable() {
@@ -189,36 +228,49 @@ public class MessagingMetricsProcessorService extends AbstractExecutionThreadSer
     }
 
     for (TopicId topic : metricsTopics) {
-      TopicProcessMeta topicProcessMeta = null;
-      TopicIdMetaKey topicRowKey = new TopicIdMetaKey(topic);
-      try {
-        topicProcessMeta = metaTable.getTopicProcessMeta(topicRowKey);
-      } catch (Exception e) {
-        LOG.warn("Cannot retrieve last processed MessageId for topic: {}", topic, e);
+      // Load the message id that each shard has persisted up to for the topic
+      List<TopicProcessMeta> shardMetas = new ArrayList<>();
+      for (PersistMetricsThread persistThread : persistMetricsThreads) {
+        TopicProcessMeta topicProcessMeta = null;
+        try {
+          topicProcessMeta = metaTable.getTopicProcessMeta(persistThread.getMetaKey(topic));
+        } catch (Exception e) {
+          LOG.warn("Cannot retrieve last processed MessageId for topic: {}", topic, e);
+        }
+        shardMetas.add(topicProcessMeta);
       }
-      processMetricsThreads.add(new ProcessMetricsThread(topicRowKey, topicProcessMeta));
+      processMetricsThreads.add(new ProcessMetricsThread(topic, shardMetas));
     }
 
     if (!isRunning()) {
       return;
     }
 
+    for (PersistMetricsThread thread : persistMetricsThreads) {
+      thread.start();
+    }
     for (ProcessMetricsThread thread : processMetricsThreads) {
       thread.start();
     }
+    for (StoreTaskThread thread : storeTaskThreads) {
+      thread.start();
+    }
 
-    for (ProcessMetricsThread thread : processMetricsThreads) {
-      try {
-        thread.join();
-      } catch (InterruptedException e) {
-        LOG.info("Thread {} is being terminated while waiting for it to finish.", thread.getName());
-        Thread.currentThread().interrupt();
-      }
+    joinThreads(processMetricsThreads);
+    for (StoreTaskThread thread : storeTaskThreads) {
+      thread.interrupt();
     }
+    joinThreads(storeTaskThreads);
+    // Stop the persist threads after all ProcessMetricsThread's complete
+    for (PersistMetricsThread thread : persistMetricsThreads) {
+      thread.interrupt();
+    }
+    joinThreads(persistMetricsThreads);
 
-    // Persist metricsFromAllTopics and messageId's after all ProcessMetricsThread's complete.
-    // No need to make a copy of metricsFromAllTopics and topicProcessMetaMap because no thread is writing to them
-    persistMetricsAndTopicProcessMeta(metricsFromAllTopics, topicProcessMetaMap);
+    // Persist metrics and messageId's that are left in each shard after all threads complete.
+    for (PersistMetricsThread thread : persistMetricsThreads) {
+      thread.persist(true);
+    }
   }
 
   @Override
@@ -231,96 +283,129 @@ public class MessagingMetricsProcessorService extends AbstractExecutionThreadSer
     LOG.info("Metrics Processing Service stopped.");
   }
 
+  private void joinThreads(List<? extends Thread> threads) {
+    for (Thread thread : threads) {
+      try {
+        thread.join();
+      } catch (InterruptedException e) {
+        LOG.info("Thread {} is being terminated while waiting for it to finish.", thread.getName());
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
   /**
-   * Persist metrics from all topics into metric store and messageId's of the last persisted metrics of each topic
-   * into metrics meta table
+   * Aggregates metrics of the same context and timestamp into one {@link MetricValues}, so that less facts are
+   * written to the {@link MetricStore}. Values of counters with the same name are summed, while for gauges
+   * only the last value is kept, which is the same as how the {@link MetricStore} handles them.
    *
-   * @param metricValues a deque of {@link MetricValues}
-   * @param topicProcessMetaMap a map with each key {@link TopicIdMetaKey} representing a topic
-   *                            and {@link TopicProcessMeta} which has info on messageId and processing stats
+   * @param metricValues a collection of {@link MetricValues} in the order of how they were emitted
+   * @return a list of aggregated {@link MetricValues}
    */
-  private void persistMetricsAndTopicProcessMeta(Deque<MetricValues> metricValues,
-                                                 Map<TopicIdMetaKey, TopicProcessMeta> topicProcessMetaMap) {
-    try {
-      if (!metricValues.isEmpty()) {
-        persistMetrics(metricValues, topicProcessMetaMap);
+  @VisibleForTesting
+  static List<MetricValues> aggregate(Collection<MetricValues> metricValues) {
+    Map<AggregationKey, Map<String, MetricValue>> aggregated = new LinkedHashMap<>();
+    for (MetricValues values : metricValues) {
+      Map<String, MetricValue> metrics = aggregated.computeIfAbsent(
+        new AggregationKey(values.getTags(), values.getTimestamp()), k -> new LinkedHashMap<>());
+
+      for (MetricValue metric : values.getMetrics()) {
+        metrics.merge(metric.getName(), metric, (oldValue, newValue) -> {
+          if (oldValue.getType() == MetricType.COUNTER && newValue.getType() == MetricType.COUNTER) {
+            return new MetricValue(newValue.getName(), MetricType.COUNTER, oldValue.getValue() + newValue.getValue());
+          }
+          return newValue;
+        });
       }
-      persistTopicProcessMeta(topicProcessMetaMap);
-    } catch (Exception e) {
-      LOG.warn("Failed to persist metrics.", e);
     }
-  }
 
-  private void persistTopicProcessMeta(Map<TopicIdMetaKey, TopicProcessMeta> messageIds) {
-    try {
-      // messageIds can be empty if the current thread fetches nothing while other threads keep fetching new metrics
-      // and haven't updated messageId's of the corresponding topics
-      if (!messageIds.isEmpty()) {
-        metaTable.saveMetricsProcessorStats(messageIds);
-      }
-    } catch (Exception e) {
-      LOG.warn("Failed to update processing stats of consumed messages.", e);
+    List<MetricValues> result = new ArrayList<>(aggregated.size());
+    for (Map.Entry<AggregationKey, Map<String, MetricValue>> entry : aggregated.entrySet()) {
+      result.add(new MetricValues(entry.getKey().tags, entry.getKey().timestamp, entry.getValue().values()));
     }
+    return result;
   }
 
   /**
-   * Persist metrics into metric store
-   *
-   * @param metricValues a non-empty deque of {@link MetricValues}
+   * The key for aggregating metrics, which consists of the metrics context and the timestamp.
    */
-  private void persistMetrics(Deque<MetricValues> metricValues,
-                              Map<TopicIdMetaKey, TopicProcessMeta> topicProcessMetaMap) {
-    long now = System.currentTimeMillis();
-    long lastMetricTime = metricValues.peekLast().getTimestamp();
-    List<MetricValue> topicLevelDelays = new ArrayList<>();
-
-    //add topic level delay metrics
-    for (Map.Entry<TopicIdMetaKey, TopicProcessMeta> entry : topicProcessMetaMap.entrySet()) {
-      TopicProcessMeta topicProcessMeta = entry.getValue();
-      long delay = now - TimeUnit.SECONDS.toMillis(topicProcessMeta.getOldestMetricsTimestamp());
-      topicLevelDelays.add(new MetricValue(topicProcessMeta.getOldestMetricsTimestampMetricName(),
-                                           MetricType.GAUGE, delay));
-      delay = now - TimeUnit.SECONDS.toMillis(topicProcessMeta.getLatestMetricsTimestamp());
-      topicLevelDelays.add(new MetricValue(topicProcessMeta.getLatestMetricsTimestampMetricName(),
-                                           MetricType.GAUGE, delay));
-    }
-    List<MetricValue> processorMetrics = new ArrayList<>(topicLevelDelays);
-    processorMetrics.add(new MetricValue(processMetricName, MetricType.COUNTER, metricValues.size()));
-
-    metricValues.add(new MetricValues(metricsContextMap, TimeUnit.MILLISECONDS.toSeconds(now), processorMetrics));
-    metricStore.add(metricValues);
-    metricsProcessedCount += metricValues.size();
-    PROGRESS_LOG.debug("{} metrics persisted. Last metric's timestamp: {}",
-                       metricsProcessedCount, lastMetricTime);
+  private static final class AggregationKey {
+    private final Map<String, String> tags;
+    private final long timestamp;
+    private final int hashCode;
+
+    AggregationKey(Map<String, String> tags, long timestamp) {
+      this.tags = tags;
+      this.timestamp = timestamp;
+      this.hashCode = Objects.hash(tags, timestamp);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (o == null || getClass() != o.getClass()) {
+        return false;
+      }
+      AggregationKey that = (AggregationKey) o;
+      return timestamp == that.timestamp && tags.equals(that.tags);
+    }
+
+    @Override
+    public int hashCode() {
+      return hashCode;
+    }
   }
 
+  /**
+   * Thread for fetching metrics from one topic and distributing them to the shards.
+   */
   private class ProcessMetricsThread extends Thread {
-    private final TopicIdMetaKey topicIdMetaKey;
+    private final TopicId topicId;
     private final PayloadInputStream payloadInput;
     private final BinaryDecoder decoder;
     private final String oldestTsMetricName;
     private final String latestTsMetricName;
+    // For each shard, the message id that the shard has persisted up to before this thread started.
+    private final byte[][] shardPersistedMessageIds;
+    private final int[] shardMessageCounts;
+    private byte[] lastMessageId;
     private long lastMetricTimeSecs;
 
-    ProcessMetricsThread(TopicIdMetaKey topicIdMetaKey, @Nullable TopicProcessMeta topicProcessMeta) {
-      super(String.format("ProcessMetricsThread-%s", topicIdMetaKey.getTopicId()));
+    ProcessMetricsThread(TopicId topicId, List<TopicProcessMeta> shardMetas) {
+      super(String.format("ProcessMetricsThread-%s", topicId));
       setDaemon(true);
       oldestTsMetricName = String.format("%s.topic.%s.oldest.delay.ms",
-                                                metricsPrefixForDelayMetrics, topicIdMetaKey.getTopicId().getTopic());
+                                                metricsPrefixForDelayMetrics, topicId.getTopic());
       latestTsMetricName = String.format("%s.topic.%s.latest.delay.ms",
-                                                metricsPrefixForDelayMetrics, topicIdMetaKey.getTopicId().getTopic());
-      if (topicProcessMeta != null && topicProcessMeta.getMessageId() != null) {
-        // message-id already for this topic in metaTable, we create a new TopicProcessMeta with existing values,
-        // add metric names and put it in map
-        byte[] persistedMessageId = topicProcessMeta.getMessageId();
-        topicProcessMetaMap.put(topicIdMetaKey,
-                                new TopicProcessMeta(persistedMessageId, topicProcessMeta.getOldestMetricsTimestamp(),
-                                                     topicProcessMeta.getLatestMetricsTimestamp(),
-                                                     topicProcessMeta.getMessagesProcessed(),
-                                                     topicProcessMeta.getLastProcessedTimestamp(),
-                                                     oldestTsMetricName, latestTsMetricName));
+                                                metricsPrefixForDelayMetrics, topicId.getTopic());
+
+      // Fetching starts from the smallest message id persisted among all shards.
+      // Shards that don't have the message id persisted start from the same position.
+      for (TopicProcessMeta meta : shardMetas) {
+        byte[] messageId = meta == null ? null : meta.getMessageId();
+        if (messageId != null && (lastMessageId == null || Bytes.compareTo(messageId, lastMessageId) < 0)) {
+          lastMessageId = messageId;
+        }
+      }
+      this.shardPersistedMessageIds = new byte[shardMetas.size()][];
+      for (int i = 0; i < shardMetas.size(); i++) {
+        TopicProcessMeta meta = shardMetas.get(i);
+        shardPersistedMessageIds[i] = meta == null || meta.getMessageId() == null
+          ? lastMessageId : meta.getMessageId();
+        if (meta != null && meta.getMessageId() != null) {
+          // message-id already for this topic in metaTable, we create a new TopicProcessMeta with existing values,
+          // add metric names and put it in map
+          persistMetricsThreads.get(i).updateTopicProcessMeta(
+            topicId, new TopicProcessMeta(meta.getMessageId(), meta.getOldestMetricsTimestamp(),
+                                          meta.getLatestMetricsTimestamp(), meta.getMessagesProcessed(),
+                                          meta.getLastProcessedTimestamp(), meta.getCaughtUpTimestamp(),
+                                          oldestTsMetricName, latestTsMetricName));
+        }
       }
-      this.topicIdMetaKey = topicIdMetaKey;
+      this.shardMessageCounts = new int[shardMetas.size()];
+      this.topicId = topicId;
       this.payloadInput = new PayloadInputStream();
       this.decoder = new BinaryDecoder(payloadInput);
     }
@@ -351,14 +436,8 @@ public class MessagingMetricsProcessorService extends AbstractExecutionThreadSer
     private long processMetrics() {
       long startTime = System.currentTimeMillis();
       try {
-        MessageFetcher fetcher = messagingService.prepareFetch(topicIdMetaKey.getTopicId());
+        MessageFetcher fetcher = messagingService.prepareFetch(topicId);
         fetcher.setLimit(fetcherLimit);
-        TopicProcessMeta persistMetaInfo = topicProcessMetaMap.get(topicIdMetaKey);
-        byte[] lastMessageId = null;
-
-        if (persistMetaInfo != null) {
-          lastMessageId = persistMetaInfo.getMessageId();
-        }
 
         if (lastMessageId != null) {
           fetcher.setStartMessage(lastMessageId, false);
@@ -367,18 +446,35 @@ public class MessagingMetricsProcessorService extends AbstractExecutionThreadSer
         }
 
         byte[] currentMessageId = null;
+        // Processing stats of all metrics fetched from the topic in this run
         TopicProcessMeta localTopicProcessMeta =
           new TopicProcessMeta(lastMessageId, Long.MAX_VALUE, Long.MIN_VALUE, 0,
                                TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis()),
                                oldestTsMetricName, latestTsMetricName);
+        for (int i = 0; i < shardMessageCounts.length; i++) {
+          shardMessageCounts[i] = 0;
+        }
+
+        int fetched = 0;
+        boolean caughtUp = false;
         try (CloseableIterator<RawMessage> iterator = fetcher.fetch()) {
+          boolean queueFull = false;
           while (iterator.hasNext() && isRunning()) {
             RawMessage input = iterator.next();
+            fetched++;
             try {
               payloadInput.reset(input.getPayload());
               MetricValues metricValues = metricReader.read(decoder, metricSchema);
-              if (!metricsFromAllTopics.offer(metricValues)) {
-                break;
+              int shard = getShard(metricValues);
+
+              // Skip metrics that were already persisted by the shard
+              byte[] persistedMessageId = shardPersistedMessageIds[shard];
+              if (persistedMessageId == null || Bytes.compareTo(input.getId(), persistedMessageId) > 0) {
+                if (!persistMetricsThreads.get(shard).offer(metricValues)) {
+                  queueFull = true;
+                  break;
+                }
+                shardMessageCounts[shard]++;
               }
               lastMetricTimeSecs = metricValues.getTimestamp();
               currentMessageId = input.getId();
@@ -390,16 +486,25 @@ public class MessagingMetricsProcessorService extends AbstractExecutionThreadSer
               LOG.warn("Failed to decode message to MetricValue. Skipped. {}", e.getMessage());
             }
           }
+          // All messages published before the fetch started have been read if the fetch stopped before its limit
+          caughtUp = !queueFull && isRunning() && fetched < fetcherLimit && !iterator.hasNext();
         }
 
         if (currentMessageId != null) {
-          // update the last processed timestamp in local topic meta and update the topicProcessMetaMap with this
-          // local topic meta for the topic
+          lastMessageId = currentMessageId;
           localTopicProcessMeta.updateLastProcessedTimestamp();
-          topicProcessMetaMap.put(topicIdMetaKey, localTopicProcessMeta);
+          // All metrics up to the current message id have been handed to the shards they belong to,
+          // hence the message id of all shards can be advanced, including those that receive no metrics.
+          for (int i = 0; i < shardMessageCounts.length; i++) {
+            persistMetricsThreads.get(i).advanceTopicProcessMeta(topicId, localTopicProcessMeta, shardMessageCounts[i]);
+          }
+        }
+        if (caughtUp && rollupEnabled) {
+          // Lets the rollup proceed past the last message id if there are no new messages in the topic
+          for (PersistMetricsThread persistThread : persistMetricsThreads) {
+            persistThread.advanceCaughtUpTimestamp(topicId, TimeUnit.MILLISECONDS.toSeconds(startTime));
+          }
         }
-        // Try to persist metrics and messageId's of the last metrics to be persisted if no other thread is persisting
-        tryPersist();
 
         long endTime = System.currentTimeMillis();
         // use currentMessageId != null to ensure that the current fetching is not empty and
@@ -420,43 +525,229 @@ public class MessagingMetricsProcessorService extends AbstractExecutionThreadSer
     }
 
     /**
-     * Persist metrics and messageId's of the last metrics to be persisted if no other thread is persisting
+     * Returns the shard that the given {@link MetricValues} belongs to, based on the hash of the metrics context.
+     */
+    private int getShard(MetricValues metricValues) {
+      return Math.abs(metricValues.getTags().hashCode() % persistMetricsThreads.size());
+    }
+  }
+
+  /**
+   * Thread for aggregating and persisting metrics of one shard.
+   */
+  private class PersistMetricsThread extends Thread {
+    private final int shard;
+    private final MetricStore metricStore;
+    private final int queueSize;
+    private final BlockingDeque<MetricValues> metricsQueue;
+    private final ConcurrentMap<TopicIdMetaKey, TopicProcessMeta> topicProcessMetaMap;
+    private final AtomicBoolean topicProcessMetaUpdated;
+    private long metricsProcessedCount;
+    private long lastFlushTime;
+    // Whether there are metrics or processing information that are not yet flushed
+    private boolean flushPending;
+
+    PersistMetricsThread(int shard, MetricStore metricStore, int queueSize) {
+      super(String.format("PersistMetricsThread-%d", shard));
+      setDaemon(true);
+      this.shard = shard;
+      this.metricStore = metricStore;
+      this.queueSize = queueSize;
+      this.metricsQueue = new LinkedBlockingDeque<>(queueSize);
+      this.topicProcessMetaMap = new ConcurrentHashMap<>();
+      this.topicProcessMetaUpdated = new AtomicBoolean();
+    }
+
+    /**
+     * Returns the key in the {@link MetricsConsumerMetaTable} for storing the processing information of
+     * the given topic for this shard.
      */
-    private void tryPersist() {
-      // Ensure there's only one thread can persist metricsFromAllTopics and messageId's.
-      // This is because the underlying metrics table is not thread safe.
-      // If persistingFlag is false, set it to true and start persisting. Otherwise, log and return.
-      if (!persistingFlag.compareAndSet(false, true)) {
-        LOG.trace("There is another thread performing persisting. No need to persist in this thread.");
+    TopicIdMetaKey getMetaKey(TopicId topicId) {
+      return new TopicIdMetaKey(topicId, shard);
+    }
+
+    /**
+     * Adds the given {@link MetricValues} to this shard.
+     *
+     * @return {@code true} if it was added, {@code false} if the queue is full
+     */
+    boolean offer(MetricValues metricValues) {
+      return metricsQueue.offer(metricValues);
+    }
+
+    /**
+     * Sets the processing information of the given topic.
+     */
+    void updateTopicProcessMeta(TopicId topicId, TopicProcessMeta topicProcessMeta) {
+      topicProcessMetaMap.put(getMetaKey(topicId), topicProcessMeta);
+      topicProcessMetaUpdated.set(true);
+    }
+
+    /**
+     * Advances the processing information of the given topic after a batch of metrics from the topic has been
+     * offered to all shards.
+     *
+     * @param topicId the topic that the metrics were fetched from
+     * @param batchMeta the processing information of all metrics fetched from the topic in the batch
+     * @param messagesProcessed number of metrics in the batch that were offered to this shard
+     */
+    void advanceTopicProcessMeta(TopicId topicId, TopicProcessMeta batchMeta, int messagesProcessed) {
+      TopicIdMetaKey metaKey = getMetaKey(topicId);
+      TopicProcessMeta lastMeta = topicProcessMetaMap.get(metaKey);
+      long processed = messagesProcessed;
+      if (processed == 0) {
+        // Processing information is only persisted if there are processed messages,
+        // hence carry over the count from the last batch if there is nothing for this shard in this batch.
+        if (lastMeta == null) {
+          return;
+        }
+        processed = lastMeta.getMessagesProcessed();
+      }
+      topicProcessMetaMap.put(metaKey, new TopicProcessMeta(batchMeta.getMessageId(),
+                                                            batchMeta.getOldestMetricsTimestamp(),
+                                                            batchMeta.getLatestMetricsTimestamp(), processed,
+                                                            batchMeta.getLastProcessedTimestamp(),
+                                                            lastMeta == null ? 0L : lastMeta.getCaughtUpTimestamp(),
+                                                            batchMeta.getOldestMetricsTimestampMetricName(),
+                                                            batchMeta.getLatestMetricsTimestampMetricName()));
+      topicProcessMetaUpdated.set(true);
+    }
+
+    /**
+     * Advances the time before which all messages published to the given topic have been offered to all shards,
+     * after a fetch from the topic returned all messages that were available.
+     *
+     * @param topicId the topic that the metrics were fetched from
+     * @param caughtUpTimestamp timestamp in seconds when the fetch started
+     */
+    void advanceCaughtUpTimestamp(TopicId topicId, long caughtUpTimestamp) {
+      TopicIdMetaKey metaKey = getMetaKey(topicId);
+      TopicProcessMeta lastMeta = topicProcessMetaMap.get(metaKey);
+      // Nothing to persist if this shard never received metrics from the topic
+      if (lastMeta == null || lastMeta.getCaughtUpTimestamp() >= caughtUpTimestamp) {
         return;
       }
+      topicProcessMetaMap.put(metaKey, new TopicProcessMeta(lastMeta.getMessageId(),
+                                                            lastMeta.getOldestMetricsTimestamp(),
+                                                            lastMeta.getLatestMetricsTimestamp(),
+                                                            lastMeta.getMessagesProcessed(),
+                                                            lastMeta.getLastProcessedTimestamp(), caughtUpTimestamp,
+                                                            lastMeta.getOldestMetricsTimestampMetricName(),
+                                                            lastMeta.getLatestMetricsTimestampMetricName()));
+      topicProcessMetaUpdated.set(true);
+    }
+
+    @Override
+    public void run() {
+      while (!isInterrupted()) {
+        try {
+          // Wait for metrics to arrive. The metrics taken from the queue are persisted together with the ones that
+          // are queued after them, as putting them back may fail if fetchers have filled the queue meanwhile.
+          MetricValues metricValues = metricsQueue.poll(metricsProcessIntervalMillis, TimeUnit.MILLISECONDS);
+          persist(false, metricValues);
+        } catch (InterruptedException e) {
+          // It's triggered by stop
+          break;
+        } catch (Exception e) {
+          // Don't let the thread die, as metrics of this shard would no longer be persisted
+          LOG.warn("Failed to persist metrics of shard {}. Will be retried in next iteration.", shard, e);
+        }
+      }
+    }
+
+    /**
+     * Persist metrics of this shard and messageId's of the last persisted metrics of each topic.
+     * The messageId's are only persisted after metrics buffered in the {@link MetricStore} are flushed,
+     * which happens once per {@link Constants.Metrics#STORE_FLUSH_INTERVAL_MS}.
+     *
+     * @param forceFlush {@code true} to flush the {@link MetricStore} regardless of the flush interval
+     */
+    void persist(boolean forceFlush) {
+      persist(forceFlush, null);
+    }
+
+    /**
+     * Persist the given metrics that were already taken from the queue of this shard, followed by the metrics
+     * in the queue.
+     *
+     * @param forceFlush {@code true} to flush the {@link MetricStore} regardless of the flush interval
+     * @param polledMetrics metrics taken from the queue before the ones in the queue, or {@code null} if none
+     */
+    private void persist(boolean forceFlush, @Nullable MetricValues polledMetrics) {
       try {
-        // Make a copy of topicProcessMetaMap before copying metrics from metricsFromAllTopics to ensure that
-        // topicMessageIdsCopy will not contain new MessageId's in metricsFromAllTopics but not in metricsCopy.
+        // Make a copy of topicProcessMetaMap before copying metrics from metricsQueue to ensure that
+        // topicMessageIdsCopy will not contain new MessageId's in metricsQueue but not in metricsCopy.
         // This guarantees the metrics corresponding to last persisted MessageId's of each topic are persisted.
+        boolean metaUpdated = topicProcessMetaUpdated.getAndSet(false);
         Map<TopicIdMetaKey, TopicProcessMeta> topicProcessMetaMapCopy = new HashMap<>(topicProcessMetaMap);
-        // Remove at most queueSize of metrics from metricsFromAllTopics and put into metricsCopy to limit
+        // Remove at most queueSize of metrics from metricsQueue and put into metricsCopy to limit
         // the number of metrics being persisted each time
         Deque<MetricValues> metricsCopy = new LinkedList<>();
-        Iterator<MetricValues> iterator = metricsFromAllTopics.iterator();
-        // Though the blocking queue(metricsFromAllTopics) has upper bound on its size (which is the "queueSize")
-        // there can be a scenario, as the current thread is removing entries from blocking queue
-        // and adding it to a copy list, other threads are simultaneously adding entries to the queue and
-        // the current list might become very big causing out of memory issues, we avoid this
-        // by making the copy list size also to be limited by the max queue size.
-        while (iterator.hasNext() && metricsCopy.size() < queueSize) {
-          metricsCopy.add(iterator.next());
-          iterator.remove();
+        if (polledMetrics != null) {
+          metricsCopy.add(polledMetrics);
+        }
+        metricsQueue.drainTo(metricsCopy, queueSize);
+
+        if (!metricsCopy.isEmpty()) {
+          persistMetrics(metricsCopy, topicProcessMetaMapCopy);
+        }
+        flushPending = flushPending || !metricsCopy.isEmpty() || metaUpdated;
+
+        long now = System.currentTimeMillis();
+        if (flushPending && (forceFlush || now - lastFlushTime >= storeFlushIntervalMillis)) {
+          // The messageId's in topicProcessMetaMapCopy are only persisted after all metrics before them are written
+          metricStore.flush();
+          lastFlushTime = now;
+          flushPending = false;
+          persistTopicProcessMeta(topicProcessMetaMapCopy);
         }
-        // Persist the copy of metrics and MessageId's
-        persistMetricsAndTopicProcessMeta(metricsCopy, topicProcessMetaMapCopy);
       } catch (Exception e) {
         LOG.warn("Failed to persist metrics. Will be retried in next iteration.", e);
-      } finally {
-        // Set persistingFlag back to false after persisting completes.
-        persistingFlag.set(false);
       }
     }
+
+    private void persistTopicProcessMeta(Map<TopicIdMetaKey, TopicProcessMeta> messageIds) {
+      try {
+        // messageIds can be empty if no metrics has been fetched by this shard yet
+        if (!messageIds.isEmpty()) {
+          metaTable.saveMetricsProcessorStats(messageIds);
+        }
+      } catch (Exception e) {
+        LOG.warn("Failed to update processing stats of consumed messages.", e);
+      }
+    }
+
+    /**
+     * Persist metrics into metric store
+     *
+     * @param metricValues a non-empty deque of {@link MetricValues}
+     */
+    private void persistMetrics(Deque<MetricValues> metricValues,
+                                Map<TopicIdMetaKey, TopicProcessMeta> topicProcessMetaMap) {
+      long now = System.currentTimeMillis();
+      long lastMetricTime = metricValues.peekLast().getTimestamp();
+      List<MetricValue> topicLevelDelays = new ArrayList<>();
+
+      //add topic level delay metrics
+      for (Map.Entry<TopicIdMetaKey, TopicProcessMeta> entry : topicProcessMetaMap.entrySet()) {
+        TopicProcessMeta topicProcessMeta = entry.getValue();
+        long delay = now - TimeUnit.SECONDS.toMillis(topicProcessMeta.getOldestMetricsTimestamp());
+        topicLevelDelays.add(new MetricValue(topicProcessMeta.getOldestMetricsTimestampMetricName(),
+                                             MetricType.GAUGE, delay));
+        delay = now - TimeUnit.SECONDS.toMillis(topicProcessMeta.getLatestMetricsTimestamp());
+        topicLevelDelays.add(new MetricValue(topicProcessMeta.getLatestMetricsTimestampMetricName(),
+                                             MetricType.GAUGE, delay));
+      }
+      List<MetricValue> processorMetrics = new ArrayList<>(topicLevelDelays);
+      processorMetrics.add(new MetricValue(processMetricName, MetricType.COUNTER, metricValues.size()));
+
+      List<MetricValues> aggregated = aggregate(metricValues);
+      aggregated.add(new MetricValues(metricsContextMap, TimeUnit.MILLISECONDS.toSeconds(now), processorMetrics));
+      metricStore.add(aggregated);
+      metricsProcessedCount += metricValues.size();
+      PROGRESS_LOG.debug("{} metrics persisted by shard {}. Last metric's timestamp: {}",
+                         metricsProcessedCount, shard, lastMetricTime);
+    }
   }
 
   private class PayloadInputStream extends ByteArrayInputStream {
@@ -472,4 +763,39 @@ public class MessagingMetricsProcessorService extends AbstractExecutionThreadSer
       this.mark = 0;
     }
   }
+
+  /**
+   * Thread for periodically running a maintenance task on the {@link MetricStore}, such as computing coarser
+   * resolutions of metrics from the finest resolution.
+   */
+  private static final class StoreTaskThread extends Thread {
+    private final String taskName;
+    private final Runnable task;
+    private final long intervalMillis;
+
+    StoreTaskThread(String threadName, String taskName, Runnable task, long intervalMillis) {
+      super(threadName);
+      setDaemon(true);
+      this.taskName = taskName;
+      this.task = task;
+      this.intervalMillis = intervalMillis;
+    }
+
+    @Override
+    public void run() {
+      while (!isInterrupted()) {
+        try {
+          task.run();
+        } catch (Exception e) {
+          LOG.warn("Failed to {} metrics. Will be retried in next iteration.", taskName, e);
+        }
+        try {
+          TimeUnit.MILLISECONDS.sleep(intervalMillis);
+        } catch (InterruptedException e) {
+          // It's triggered by stop
+          break;
+        }
+      }
+    }
+  }
 }
@@ -77,7 +77,8 @@ public class MetricsAdminSubscriberService extends AbstractMessagingPollingServi
           FETCH_SIZE, cConf.getLong(Constants.Metrics.ADMIN_POLL_DELAY_MILLIS),
           RetryStrategies.fromConfiguration(cConf, "system.metrics."));
 
-    this.messagingContext = new MultiThreadMessagingContext(messagingService);
+    this.messagingContext = new MultiThreadMessagingContext(
+      messagingService, cConf.getLong(Constants.MessagingSystem.SUBSCRIBER_FETCH_WAIT_MS));
     this.metricDatasetFactory = metricDatasetFactory;
     this.metricStore = metricStore;
   }
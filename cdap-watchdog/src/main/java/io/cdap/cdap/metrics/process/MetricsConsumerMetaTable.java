@@ -34,6 +34,9 @@ public class MetricsConsumerMetaTable {
   private static final byte[] PROCESS_TIMESTAMP_OLDEST = Bytes.toBytes("pto");
   private static final byte[] LAST_PROCESS_TIMESTAMP = Bytes.toBytes("lpt");
   private static final byte[] PROCESS_TIMESTAMP_LATEST = Bytes.toBytes("ptl");
+  private static final byte[] CAUGHT_UP_TIMESTAMP = Bytes.toBytes("cut");
+  private static final byte[] ROLLUP_TIMESTAMP = Bytes.toBytes("rt");
+  private static final byte[] COMPACTION_TIMESTAMP = Bytes.toBytes("ct");
 
   private final MetricsTable metaTable;
 
@@ -51,6 +54,7 @@ public class MetricsConsumerMetaTable {
         columns.put(PROCESS_TIMESTAMP_LATEST, Bytes.toBytes(metaInfo.getLatestMetricsTimestamp()));
         columns.put(PROCESS_TIMESTAMP_OLDEST, Bytes.toBytes(metaInfo.getOldestMetricsTimestamp()));
         columns.put(LAST_PROCESS_TIMESTAMP, Bytes.toBytes(metaInfo.getLastProcessedTimestamp()));
+        columns.put(CAUGHT_UP_TIMESTAMP, Bytes.toBytes(metaInfo.getCaughtUpTimestamp()));
 
         columns.put(MESSAGE_ID_COLUMN, entry.getValue().getMessageId());
         updates.put(entry.getKey().getKey(), columns);
@@ -76,9 +80,73 @@ public class MetricsConsumerMetaTable {
     long oldestTs = getLong(metaKey.getKey(), PROCESS_TIMESTAMP_OLDEST);
     long latestTs = getLong(metaKey.getKey(), PROCESS_TIMESTAMP_LATEST);
     long lastProcessedTs = getLong(metaKey.getKey(), LAST_PROCESS_TIMESTAMP);
-    return new TopicProcessMeta(messageId, oldestTs, latestTs, processedCount, lastProcessedTs);
+    long caughtUpTs = getLong(metaKey.getKey(), CAUGHT_UP_TIMESTAMP);
+    return new TopicProcessMeta(messageId, oldestTs, latestTs, processedCount, lastProcessedTs, caughtUpTs,
+                                null, null);
   }
 
+  /**
+   * Saves the timestamp up to which metrics have been rolled up.
+   *
+   * @param metaKey the key identifying the rollup
+   * @param timestamp the timestamp in seconds, exclusive
+   */
+  public void saveRollupTimestamp(MetricsMetaKey metaKey, long timestamp) {
+    saveLong(metaKey.getKey(), ROLLUP_TIMESTAMP, timestamp);
+  }
+
+  /**
+   * Saves the timestamp up to which metrics have been rolled up if there is no timestamp saved for the given key.
+   *
+   * @param metaKey the key identifying the rollup
+   * @param timestamp the timestamp in seconds, exclusive
+   * @return {@code true} if the timestamp was saved, {@code false} if there was already one saved
+   */
+  public boolean initRollupTimestamp(MetricsMetaKey metaKey, long timestamp) {
+    return metaTable.swap(metaKey.getKey(), ROLLUP_TIMESTAMP, null, Bytes.toBytes(timestamp));
+  }
+
+  /**
+   * Gets the timestamp up to which metrics have been rolled up.
+   *
+   * @param metaKey the key identifying the rollup
+   * @return the timestamp in seconds or {@code null} if there was no rollup saved for the given key
+   */
+  @Nullable
+  public synchronized Long getRollupTimestamp(MetricsMetaKey metaKey) {
+    byte[] result = metaTable.get(metaKey.getKey(), ROLLUP_TIMESTAMP);
+    return result == null ? null : Bytes.toLong(result);
+  }
+
+  /**
+   * Saves the timestamp up to which metrics have been compacted.
+   *
+   * @param metaKey the key identifying the compaction
+   * @param timestamp the timestamp in seconds, exclusive
+   */
+  public void saveCompactionTimestamp(MetricsMetaKey metaKey, long timestamp) {
+    saveLong(metaKey.getKey(), COMPACTION_TIMESTAMP, timestamp);
+  }
+
+  /**
+   * Gets the timestamp up to which metrics have been compacted.
+   *
+   * @param metaKey the key identifying the compaction
+   * @return the timestamp in seconds or {@code null} if there was no compaction saved for the given key
+   */
+  @Nullable
+  public synchronized Long getCompactionTimestamp(MetricsMetaKey metaKey) {
+    byte[] result = metaTable.get(metaKey.getKey(), COMPACTION_TIMESTAMP);
+    return result == null ? null : Bytes.toLong(result);
+  }
+
+  private void saveLong(byte[] rowKey, byte[] column, long value) {
+    SortedMap<byte[], SortedMap<byte[], byte[]>> updates = new TreeMap<>(Bytes.BYTES_COMPARATOR);
+    SortedMap<byte[], byte[]> columns = new TreeMap<>(Bytes.BYTES_COMPARATOR);
+    columns.put(column, Bytes.toBytes(value));
+    updates.put(rowKey, columns);
+    metaTable.putBytes(updates);
+  }
 
   private synchronized long getLong(byte[] rowKey, byte[] column) {
     byte[] result = metaTable.get(rowKey, column);
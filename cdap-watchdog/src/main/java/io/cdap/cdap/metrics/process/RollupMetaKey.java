@@ -0,0 +1,61 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.cdap.metrics.process;
+
+import io.cdap.cdap.api.common.Bytes;
+
+import java.util.Arrays;
+
+/**
+ * Meta key for the rollup progress of a metrics resolution.
+ */
+public final class RollupMetaKey implements MetricsMetaKey {
+  private static final String PREFIX = "rollup.";
+
+  private final int resolution;
+  private final byte[] key;
+
+  public RollupMetaKey(int resolution) {
+    this.resolution = resolution;
+    this.key = Bytes.toBytes(PREFIX + resolution);
+  }
+
+  @Override
+  public byte[] getKey() {
+    return key;
+  }
+
+  public int getResolution() {
+    return resolution;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (o == null || getClass() != o.getClass()) {
+      return false;
+    }
+    return Arrays.equals(getKey(), ((RollupMetaKey) o).getKey());
+  }
+
+  @Override
+  public int hashCode() {
+    return Arrays.hashCode(getKey());
+  }
+}
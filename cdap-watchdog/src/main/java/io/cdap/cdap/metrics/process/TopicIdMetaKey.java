@@ -16,6 +16,7 @@
 
 package io.cdap.cdap.metrics.process;
 
+import io.cdap.cdap.api.common.Bytes;
 import io.cdap.cdap.messaging.MessagingUtils;
 import io.cdap.cdap.proto.id.TopicId;
 
@@ -29,8 +30,19 @@ public final class TopicIdMetaKey implements MetricsMetaKey {
   private final byte[] key;
 
   public TopicIdMetaKey(TopicId topicId) {
+    this(topicId, 0);
+  }
+
+  /**
+   * Creates a key for one shard of the given topic. The key of shard {@code 0} is the same as the key of the topic.
+   *
+   * @param topicId the topic id
+   * @param shard the shard number
+   */
+  public TopicIdMetaKey(TopicId topicId, int shard) {
     this.topicId = topicId;
-    this.key = MessagingUtils.toMetadataRowKey(topicId);
+    byte[] topicKey = MessagingUtils.toMetadataRowKey(topicId);
+    this.key = shard == 0 ? topicKey : Bytes.add(topicKey, Bytes.toBytes(shard));
   }
 
   @Override
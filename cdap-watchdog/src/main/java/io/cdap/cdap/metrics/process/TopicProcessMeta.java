@@ -30,6 +30,7 @@ public final class TopicProcessMeta {
   private long latestMetricsTimestamp;
   private long messagesProcessed;
   private long lastProcessedTimestamp;
+  private long caughtUpTimestamp;
 
   private final transient String oldestMetricsTimestampMetricName;
   private final transient String latestMetricsTimestampMetricName;
@@ -54,11 +55,32 @@ public final class TopicProcessMeta {
                           long latestMetricsTimestamp, long messagesProcessed, long lastProcessedTimestamp,
                           @Nullable String oldestMetricsTimestampMetricName,
                           @Nullable String latestMetricsTimestampMetricName) {
+    this(messageId, oldestMetricsTimestamp, latestMetricsTimestamp, messagesProcessed, lastProcessedTimestamp, 0L,
+         oldestMetricsTimestampMetricName, latestMetricsTimestampMetricName);
+  }
+
+  /**
+   *
+   * @param messageId - metrics message id
+   * @param oldestMetricsTimestamp - oldest timestamp among the processed metrics
+   * @param latestMetricsTimestamp - latest timestamp among the processed metrics
+   * @param messagesProcessed - messages processed in an iteration
+   * @param lastProcessedTimestamp - timestamp when the most recent update happened
+   * @param caughtUpTimestamp - timestamp in seconds before which all messages published to the topic are
+   *                            at or before the message id, or {@code 0} if unknown
+   * @param oldestMetricsTimestampMetricName - metric name used for oldest metrics timestamp - not serialized
+   * @param latestMetricsTimestampMetricName - metric name used for latest metrics timestamp - not serialized
+   */
+  public TopicProcessMeta(@Nullable byte[] messageId, long oldestMetricsTimestamp,
+                          long latestMetricsTimestamp, long messagesProcessed, long lastProcessedTimestamp,
+                          long caughtUpTimestamp, @Nullable String oldestMetricsTimestampMetricName,
+                          @Nullable String latestMetricsTimestampMetricName) {
     this.messageId = messageId;
     this.oldestMetricsTimestamp = oldestMetricsTimestamp;
     this.latestMetricsTimestamp = latestMetricsTimestamp;
     this.messagesProcessed = messagesProcessed;
     this.lastProcessedTimestamp = lastProcessedTimestamp;
+    this.caughtUpTimestamp = caughtUpTimestamp;
     this.oldestMetricsTimestampMetricName = oldestMetricsTimestampMetricName;
     this.latestMetricsTimestampMetricName = latestMetricsTimestampMetricName;
   }
@@ -117,6 +139,14 @@ public final class TopicProcessMeta {
     return messagesProcessed;
   }
 
+  /**
+   * Returns the timestamp in seconds before which all messages published to the topic are at or before the
+   * message id, or {@code 0} if it is unknown.
+   */
+  public long getCaughtUpTimestamp() {
+    return caughtUpTimestamp;
+  }
+
   @Override
   public int hashCode() {
     return Objects.hash(messageId, oldestMetricsTimestamp, latestMetricsTimestamp, messagesProcessed);
@@ -24,7 +24,6 @@ import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.inject.Inject;
-import io.cdap.cdap.api.dataset.lib.cube.Cube;
 import io.cdap.cdap.api.dataset.lib.cube.CubeDeleteQuery;
 import io.cdap.cdap.api.dataset.lib.cube.CubeExploreQuery;
 import io.cdap.cdap.api.dataset.lib.cube.CubeFact;
@@ -53,11 +52,15 @@ import io.cdap.cdap.data2.dataset2.lib.cube.DefaultAggregation;
 import io.cdap.cdap.data2.dataset2.lib.cube.DefaultCube;
 import io.cdap.cdap.data2.dataset2.lib.cube.FactTableSupplier;
 import io.cdap.cdap.messaging.data.MessageId;
+import io.cdap.cdap.metrics.process.CompactionMetaKey;
 import io.cdap.cdap.metrics.process.MetricsConsumerMetaTable;
+import io.cdap.cdap.metrics.process.RollupMetaKey;
 import io.cdap.cdap.metrics.process.TopicIdMetaKey;
 import io.cdap.cdap.metrics.process.TopicProcessMeta;
 import io.cdap.cdap.proto.id.NamespaceId;
 import io.cdap.cdap.proto.id.TopicId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
 import java.util.Collection;
@@ -72,9 +75,13 @@ import javax.annotation.Nullable;
  * Default implementation of {@link MetricStore}.
  */
 public class DefaultMetricStore implements MetricStore {
+  private static final Logger LOG = LoggerFactory.getLogger(DefaultMetricStore.class);
+
   public static final Map<String, Aggregation> AGGREGATIONS;
 
   private static final int TOTALS_RESOLUTION = Integer.MAX_VALUE;
+  // Maximum number of aggregated facts to buffer per resolution when buffering is enabled
+  private static final int MAX_BUFFERED_FACTS = 100000;
   private static final String BY_NAMESPACE = "namespace";
   private static final String BY_APP = "app";
   private static final String BY_MAPREDUCE = "mapreduce";
@@ -90,11 +97,18 @@ public class DefaultMetricStore implements MetricStore {
                     new AggregationAlias(ImmutableMap.of(Constants.Metrics.Tag.RUN_ID,
                                                          Constants.Metrics.Tag.WORKFLOW_RUN_ID)));
 
-  private final Supplier<Cube> cube;
+  private final Supplier<DefaultCube> cube;
   private final Supplier<MetricsConsumerMetaTable> metaTableSupplier;
   private MetricsContext metricsContext;
   private final List<TopicId> metricsTopics;
   private final Map<Integer, Long> resolutionTTLMap;
+  private final int[] resolutions;
+  private final boolean rollupEnabled;
+  private final long rollupDelaySeconds;
+  private final int processorShards;
+  private final boolean compactionEnabled;
+  private final long compactionDelaySeconds;
+  private volatile boolean rollupInitialized;
 
 
   static {
@@ -212,15 +226,24 @@ public class DefaultMetricStore implements MetricStore {
       builder.put(minimumResolution, cConf.getLong(Constants.Metrics.MINIMUM_RESOLUTION_RETENTION_SECONDS));
     }
     this.resolutionTTLMap = builder.build();
+    this.resolutions = resolutions;
+    this.rollupEnabled = cConf.getBoolean(Constants.Metrics.ROLLUP_ENABLED, false);
+    this.rollupDelaySeconds = cConf.getLong(Constants.Metrics.ROLLUP_DELAY_SECONDS, 120L);
+    this.processorShards = Math.max(1, cConf.getInt(Constants.Metrics.PROCESSOR_SHARDS, 1));
+    this.compactionEnabled = cConf.getBoolean(Constants.Metrics.COMPACTION_ENABLED, false);
+    this.compactionDelaySeconds = cConf.getLong(Constants.Metrics.COMPACTION_DELAY_SECONDS, 3600L);
     FactTableSupplier factTableSupplier = (resolution, ignoredRollTime) -> {
       // roll time will be taken from configuration
       // TODO: remove roll time from the supplier api, https://issues.cask.co/browse/CDAP-14730
       return dsFactory.getOrCreateFactTable(resolution);
     };
-    this.cube = Suppliers.memoize(new Supplier<Cube>() {
+    // Buffer metrics in memory only if they are periodically flushed
+    int maxBufferedFacts = cConf.getLong(Constants.Metrics.STORE_FLUSH_INTERVAL_MS, 0L) > 0 ? MAX_BUFFERED_FACTS : 0;
+    this.cube = Suppliers.memoize(new Supplier<DefaultCube>() {
       @Override
-      public Cube get() {
-        DefaultCube cube = new DefaultCube(resolutions, factTableSupplier, AGGREGATIONS, AGGREGATIONS_ALIAS_DIMENSIONS);
+      public DefaultCube get() {
+        DefaultCube cube = new DefaultCube(resolutions, factTableSupplier, AGGREGATIONS, AGGREGATIONS_ALIAS_DIMENSIONS,
+                                           maxBufferedFacts, rollupEnabled);
         cube.setMetricsCollector(metricsContext);
         return cube;
       }
@@ -263,9 +286,135 @@ public class DefaultMetricStore implements MetricStore {
         .addMeasurements(metrics);
       facts.add(fact);
     }
+    if (rollupEnabled && !rollupInitialized) {
+      // Metrics that are only written to the finest resolution must not be before the start of the rollup
+      initRollup(metaTableSupplier.get());
+      rollupInitialized = true;
+    }
     cube.get().add(facts);
   }
 
+  @Override
+  public void flush() {
+    cube.get().flush();
+  }
+
+  /**
+   * Computes each resolution from the next finer resolution, starting from the finest one. The progress of each
+   * resolution is saved in the consumer meta table, so that only metrics added since the last rollup are processed.
+   * Metrics are only rolled up to the time that the metrics processors have persisted all metrics up to, minus the
+   * configured rollup delay, to allow for late arriving metrics.
+   */
+  @Override
+  public void rollup() {
+    if (!rollupEnabled) {
+      return;
+    }
+    MetricsConsumerMetaTable metaTable = metaTableSupplier.get();
+    initRollup(metaTable);
+    long sourceEnd = getPersistedTimestamp(metaTable) - rollupDelaySeconds;
+    for (int i = 1; i < resolutions.length; i++) {
+      int resolution = resolutions[i];
+      // Totals are rolled up in every complete time bucket of the previous resolution
+      int alignment = resolution == TOTALS_RESOLUTION ? resolutions[i - 1] : resolution;
+      long end = sourceEnd / alignment * alignment;
+
+      RollupMetaKey metaKey = new RollupMetaKey(resolution);
+      long start = metaTable.getRollupTimestamp(metaKey);
+      if (start < end) {
+        cube.get().rollup(resolution, start, end);
+        metaTable.saveRollupTimestamp(metaKey, end);
+        LOG.debug("Rolled up metrics of resolution {} from {} to {}", resolution, start, end);
+      }
+      // Coarser resolutions can only be computed up to the point where this resolution is complete
+      sourceEnd = Math.max(start, end);
+    }
+  }
+
+  /**
+   * Compacts the rows of every resolution except totals that end before the time that all metrics have been
+   * persisted up to, minus the configured compaction delay. With rollup, rows of coarser resolutions are only
+   * compacted once they have been rolled up, since the rollup overwrites them. The progress of each resolution is
+   * saved in the consumer meta table, so that every row is only compacted once.
+   */
+  @Override
+  public void compact() {
+    if (!compactionEnabled) {
+      return;
+    }
+    MetricsConsumerMetaTable metaTable = metaTableSupplier.get();
+    long persistedEnd = getPersistedTimestamp(metaTable) - compactionDelaySeconds;
+    for (int i = 0; i < resolutions.length; i++) {
+      int resolution = resolutions[i];
+      if (resolution == TOTALS_RESOLUTION) {
+        continue;
+      }
+      long end = persistedEnd;
+      if (rollupEnabled && i > 0) {
+        Long rollupEnd = metaTable.getRollupTimestamp(new RollupMetaKey(resolution));
+        end = rollupEnd == null ? Long.MIN_VALUE : Math.min(end, rollupEnd);
+      }
+
+      CompactionMetaKey metaKey = new CompactionMetaKey(resolution);
+      Long start = metaTable.getCompactionTimestamp(metaKey);
+      if (start == null) {
+        start = 0L;
+      }
+      if (start < end) {
+        int compacted = cube.get().compact(resolution, start, end);
+        metaTable.saveCompactionTimestamp(metaKey, end);
+        LOG.debug("Compacted {} rows of metrics of resolution {} from {} to {}", compacted, resolution, start, end);
+      }
+    }
+  }
+
+  /**
+   * Saves the start of the rollup of each coarser resolution if it is not saved yet, which is the case when rollup
+   * is enabled for the first time. Metrics persisted before that were written to all resolutions when they were
+   * added, hence the rollup starts from the time that all metrics have been persisted up to. Since the rollup adds
+   * to the existing totals and the start is aligned down to a time bucket, totals can count the metrics persisted
+   * between the start and that time twice.
+   */
+  private void initRollup(MetricsConsumerMetaTable metaTable) {
+    Long start = null;
+    for (int i = 1; i < resolutions.length; i++) {
+      RollupMetaKey metaKey = new RollupMetaKey(resolutions[i]);
+      if (metaTable.getRollupTimestamp(metaKey) != null) {
+        continue;
+      }
+      if (start == null) {
+        // Aligned to the coarsest resolution before totals, so that the rollup of every resolution computes
+        // complete time buckets from complete time buckets of the finer resolution
+        int alignment = resolutions[resolutions.length - 2];
+        start = (getPersistedTimestamp(metaTable) - rollupDelaySeconds) / alignment * alignment;
+      }
+      // Another metrics store may have saved a start already, which is used instead
+      if (metaTable.initRollupTimestamp(metaKey, start)) {
+        LOG.info("Starting rollup of metrics of resolution {} from {}", resolutions[i], start);
+      }
+    }
+  }
+
+  /**
+   * Returns the timestamp in seconds before which the metrics processors have persisted all metrics published to
+   * the metrics topics, which is the current time if all of them are caught up.
+   */
+  private long getPersistedTimestamp(MetricsConsumerMetaTable metaTable) {
+    long persisted = TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis());
+    for (TopicId topicId : metricsTopics) {
+      for (int shard = 0; shard < processorShards; shard++) {
+        TopicProcessMeta meta = metaTable.getTopicProcessMeta(new TopicIdMetaKey(topicId, shard));
+        // There is nothing to wait for if the shard never persisted metrics from the topic
+        if (meta == null) {
+          continue;
+        }
+        long published = TimeUnit.MILLISECONDS.toSeconds(new MessageId(meta.getMessageId()).getPublishTimestamp());
+        persisted = Math.min(persisted, Math.max(published, meta.getCaughtUpTimestamp()));
+      }
+    }
+    return persisted;
+  }
+
   @Override
   public Collection<MetricTimeSeries> query(MetricDataQuery query) {
     Collection<TimeSeries> cubeResult = cube.get().query(buildCubeQuery(query));
@@ -40,6 +40,7 @@ import io.cdap.cdap.logging.context.WorkerLoggingContext;
 import io.cdap.cdap.logging.filter.Filter;
 import io.cdap.cdap.logging.framework.local.LocalLogAppender;
 import io.cdap.cdap.logging.guice.LocalLogAppenderModule;
+import io.cdap.cdap.logging.meta.FileMetaDataReader;
 import io.cdap.cdap.logging.read.FileLogReader;
 import io.cdap.cdap.logging.read.LogEvent;
 import io.cdap.cdap.logging.read.ReadRange;
@@ -147,6 +148,51 @@ public class TestFileLogging {
     tester.testGetPrev(logReader, loggingContext);
   }
 
+  @Test
+  public void testParallelRead() throws Exception {
+    // The log files are small, so that the reads span multiple files
+    LoggingContext loggingContext = new WorkerLoggingContext("TFL_NS_1", "APP_1", "WORKER_1", "RUN1", "INSTANCE1");
+    CConfiguration cConf = CConfiguration.copy(injector.getInstance(CConfiguration.class));
+    cConf.setInt(Constants.Logging.LOG_READER_PREFETCH_FILES, 1);
+    FileLogReader serialReader = new FileLogReader(cConf, injector.getInstance(FileMetaDataReader.class));
+    cConf.setInt(Constants.Logging.LOG_READER_PREFETCH_FILES, 3);
+    FileLogReader parallelReader = new FileLogReader(cConf, injector.getInstance(FileMetaDataReader.class));
+
+    LoggingTester.LogCallback callback = new LoggingTester.LogCallback();
+    serialReader.getLogNext(loggingContext, new ReadRange(0, Long.MAX_VALUE, -1),
+                            100, Filter.EMPTY_FILTER, callback);
+    List<LogEvent> allEvents = callback.getEvents();
+    Assert.assertEquals(60, allEvents.size());
+
+    for (int maxEvents : new int[] { 1, 10, 25, 60, 100 }) {
+      for (int start : new int[] { 0, 13, 30, 59 }) {
+        ReadRange nextRange = new ReadRange(allEvents.get(start).getLoggingEvent().getTimeStamp() - 1,
+                                            Long.MAX_VALUE, -1);
+        Assert.assertEquals(getMessages(serialReader, loggingContext, nextRange, maxEvents, true),
+                            getMessages(parallelReader, loggingContext, nextRange, maxEvents, true));
+
+        ReadRange prevRange = new ReadRange(0, allEvents.get(start).getLoggingEvent().getTimeStamp() + 1, -1);
+        Assert.assertEquals(getMessages(serialReader, loggingContext, prevRange, maxEvents, false),
+                            getMessages(parallelReader, loggingContext, prevRange, maxEvents, false));
+      }
+    }
+  }
+
+  private List<String> getMessages(FileLogReader logReader, LoggingContext loggingContext, ReadRange readRange,
+                                   int maxEvents, boolean next) throws Exception {
+    LoggingTester.LogCallback callback = new LoggingTester.LogCallback();
+    if (next) {
+      logReader.getLogNext(loggingContext, readRange, maxEvents, Filter.EMPTY_FILTER, callback);
+    } else {
+      logReader.getLogPrev(loggingContext, readRange, maxEvents, Filter.EMPTY_FILTER, callback);
+    }
+    List<String> messages = Lists.newArrayList();
+    for (LogEvent event : callback.getEvents()) {
+      messages.add(event.getLoggingEvent().getFormattedMessage());
+    }
+    return messages;
+  }
+
   @Test
   public void testGetLog() throws Exception {
     // LogReader.getLog is tested in LogSaverTest for distributed mode
@@ -0,0 +1,151 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.cdap.logging.appender.system;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.spi.LoggingEvent;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import io.cdap.cdap.api.dataset.lib.CloseableIterator;
+import io.cdap.cdap.common.conf.Constants;
+import io.cdap.cdap.logging.filter.AndFilter;
+import io.cdap.cdap.logging.filter.Filter;
+import io.cdap.cdap.logging.filter.LogLevelExpression;
+import io.cdap.cdap.logging.filter.MdcExpression;
+import io.cdap.cdap.logging.read.LogEvent;
+import io.cdap.cdap.logging.write.ColumnarLogFile;
+import io.cdap.cdap.logging.write.LogLocation;
+import org.apache.twill.filesystem.LocalLocationFactory;
+import org.apache.twill.filesystem.Location;
+import org.junit.Assert;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Tests for the {@link ColumnarLogFile} written by {@link LogFileCompactor}.
+ */
+public class LogFileCompactorTest {
+
+  @ClassRule
+  public static final TemporaryFolder TMP_FOLDER = new TemporaryFolder();
+
+  private static final long BASE_TIME = 1000000L;
+
+  @Test
+  public void testCompaction() throws Exception {
+    Location location = new LocalLocationFactory(TMP_FOLDER.newFolder()).create("test.avro");
+
+    // The first half of the events are from run1 and the second half from run2, with an ERROR every 100 events
+    try (LogFileOutputStream os = new LogFileOutputStream(location, "", 1024 * 1024, 0, null, BASE_TIME,
+                                                          new Closeable() {
+      @Override
+      public void close() {
+        // no-op
+      }
+    })) {
+      for (int i = 0; i < 1000; i++) {
+        os.append(createEvent(i % 100 == 0 ? Level.ERROR : Level.INFO, BASE_TIME + i, i < 500 ? "run1" : "run2",
+                              "Message " + i));
+      }
+    }
+
+    LogFileCompactor compactor = new LogFileCompactor("", 64);
+    try {
+      compactor.compactNow(location);
+    } finally {
+      compactor.stop();
+    }
+
+    ColumnarLogFile columnarFile = ColumnarLogFile.open(location);
+    Assert.assertNotNull(columnarFile);
+    try {
+      Assert.assertEquals(16, columnarFile.getStripeCount());
+    } finally {
+      columnarFile.close();
+    }
+    verifyReads(location);
+
+    // Reading the log file gives the same result
+    Assert.assertTrue(ColumnarLogFile.getColumnarLocation(location).delete());
+    verifyReads(location);
+  }
+
+  private void verifyReads(Location location) throws IOException {
+    LogLocation logLocation = new LogLocation(LogLocation.VERSION_1, BASE_TIME, BASE_TIME, location, "default", null);
+    Filter errorFilter = new LogLevelExpression("ERROR");
+    Filter run2Filter = new AndFilter(ImmutableList.of(new MdcExpression(Constants.Logging.TAG_RUN_ID, "run2"),
+                                                       Filter.EMPTY_FILTER));
+    Filter run3Filter = new AndFilter(ImmutableList.of(new MdcExpression(Constants.Logging.TAG_RUN_ID, "run3")));
+
+    Assert.assertEquals(range(0, 1000, 1), read(logLocation, Filter.EMPTY_FILTER, 0L, Long.MAX_VALUE, 1000));
+    Assert.assertEquals(range(500, 600, 1), read(logLocation, Filter.EMPTY_FILTER, 500L, 600L, 1000));
+    Assert.assertEquals(range(300, 1000, 100), read(logLocation, errorFilter, 250L, Long.MAX_VALUE, 1000));
+    Assert.assertEquals(range(500, 510, 1), read(logLocation, run2Filter, 0L, Long.MAX_VALUE, 10));
+    Assert.assertEquals(range(0, 0, 1), read(logLocation, run3Filter, 0L, Long.MAX_VALUE, 10));
+
+    Assert.assertEquals(range(401, 501, 1), toMessages(logLocation.readLogPrev(Filter.EMPTY_FILTER,
+                                                                               BASE_TIME + 500, 100)));
+    Assert.assertEquals(range(700, 1000, 100), toMessages(logLocation.readLogPrev(errorFilter,
+                                                                                  BASE_TIME + 999, 3)));
+    Assert.assertEquals(range(500, 1000, 100), toMessages(logLocation.readLogPrev(
+      new AndFilter(ImmutableList.of(run2Filter, errorFilter)), Long.MAX_VALUE, 100)));
+  }
+
+  private List<String> read(LogLocation logLocation, Filter filter, long from, long to, int maxEvents) {
+    List<String> messages = new ArrayList<>();
+    long toTime = to == Long.MAX_VALUE ? to : BASE_TIME + to;
+    try (CloseableIterator<LogEvent> iterator = logLocation.readLog(filter, BASE_TIME + from, toTime, maxEvents)) {
+      while (iterator.hasNext()) {
+        messages.add(iterator.next().getLoggingEvent().getFormattedMessage());
+      }
+    }
+    return messages;
+  }
+
+  private List<String> toMessages(Collection<LogEvent> events) {
+    List<String> messages = new ArrayList<>();
+    for (LogEvent event : events) {
+      messages.add(event.getLoggingEvent().getFormattedMessage());
+    }
+    return messages;
+  }
+
+  private List<String> range(int from, int to, int step) {
+    List<String> messages = new ArrayList<>();
+    for (int i = from; i < to; i += step) {
+      messages.add("Message " + i);
+    }
+    return messages;
+  }
+
+  private LoggingEvent createEvent(Level level, long timestamp, String runId, String message) {
+    Logger logger = (Logger) LoggerFactory.getLogger(Logger.ROOT_LOGGER_NAME);
+    LoggingEvent event = new LoggingEvent(getClass().getName(), logger, level, message, null, null);
+    event.setTimeStamp(timestamp);
+    event.setMDCPropertyMap(ImmutableMap.of(Constants.Logging.TAG_RUN_ID, runId));
+    return event;
+  }
+}
@@ -118,7 +118,7 @@ public class LogFileManagerTest {
     long maxFileSizeInBytes = 104857600;
     FileMetaDataWriter fileMetaDataWriter = new FileMetaDataWriter(injector.getInstance(TransactionRunner.class));
     LogFileManager logFileManager = new LogFileManager("700", "600", maxLifeTimeMs, maxFileSizeInBytes, syncInterval,
-                                                       fileMetaDataWriter,
+                                                       0, 0, 0, fileMetaDataWriter,
                                                        injector.getInstance(LocationFactory.class));
     LogPathIdentifier logPathIdentifier = new LogPathIdentifier("test", "testApp", "testFlow");
     long timestamp = System.currentTimeMillis();
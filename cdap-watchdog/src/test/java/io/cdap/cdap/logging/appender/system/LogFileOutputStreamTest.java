@@ -0,0 +1,309 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.cdap.logging.appender.system;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.spi.LoggingEvent;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import io.cdap.cdap.api.dataset.lib.CloseableIterator;
+import io.cdap.cdap.logging.filter.AndFilter;
+import io.cdap.cdap.logging.filter.Filter;
+import io.cdap.cdap.logging.filter.LogLevelExpression;
+import io.cdap.cdap.logging.filter.OrFilter;
+import io.cdap.cdap.logging.filter.SearchExpression;
+import io.cdap.cdap.logging.read.LogEvent;
+import io.cdap.cdap.logging.write.LogFileIndex;
+import io.cdap.cdap.logging.write.LogLocation;
+import io.cdap.cdap.logging.write.LogTokenIndex;
+import org.apache.twill.filesystem.LocalLocationFactory;
+import org.apache.twill.filesystem.Location;
+import org.junit.Assert;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import javax.annotation.Nullable;
+
+/**
+ * Tests for the {@link LogFileIndex} and {@link LogTokenIndex} written by {@link LogFileOutputStream}.
+ */
+public class LogFileOutputStreamTest {
+
+  @ClassRule
+  public static final TemporaryFolder TMP_FOLDER = new TemporaryFolder();
+
+  private static final long BASE_TIME = 1000000L;
+  private static final Closeable NO_OP = new Closeable() {
+    @Override
+    public void close() {
+      // no-op
+    }
+  };
+
+  @Test
+  public void testIndexRoundTrip() throws IOException {
+    LogFileIndex.Builder builder = new LogFileIndex.Builder(100L);
+    builder.add(createEvent(Level.INFO, 10L, "a"));
+    builder.add(createEvent(Level.DEBUG, 5L, "b"));
+    Assert.assertTrue(builder.endBlock(200L));
+    // Ending an empty block doesn't add a block
+    Assert.assertFalse(builder.endBlock(250L));
+    builder.add(createEvent(Level.ERROR, 20L, "c"));
+    Assert.assertTrue(builder.endBlock(300L));
+    builder.add(createEvent(Level.WARN, 30L, "d"));
+
+    // The last block is not ended, hence not covered by the index
+    LogFileIndex index = builder.build();
+    Assert.assertEquals(2, index.getBlockCount());
+    Assert.assertEquals(300L, index.getEndPosition());
+
+    ByteArrayOutputStream os = new ByteArrayOutputStream();
+    index.write(os);
+    index = LogFileIndex.read(new ByteArrayInputStream(os.toByteArray()));
+
+    Assert.assertEquals(2, index.getBlockCount());
+    Assert.assertEquals(300L, index.getEndPosition());
+
+    LogFileIndex.Block block = index.getBlock(0);
+    Assert.assertEquals(100L, block.getPosition());
+    Assert.assertEquals(5L, block.getMinTimestamp());
+    Assert.assertEquals(10L, block.getMaxTimestamp());
+    Assert.assertEquals(1, block.getLevelCount(Level.INFO));
+    Assert.assertEquals(1, block.getLevelCount(Level.DEBUG));
+    Assert.assertTrue(block.hasLevel(Level.INFO));
+    Assert.assertFalse(block.hasLevel(Level.WARN));
+    Assert.assertEquals(250L, index.getBlockEndPosition(0));
+
+    block = index.getBlock(1);
+    Assert.assertEquals(250L, block.getPosition());
+    Assert.assertTrue(block.hasLevel(Level.ERROR));
+    Assert.assertEquals(300L, index.getBlockEndPosition(1));
+
+    Assert.assertEquals(0, index.findBlock(0, 0L, Level.ALL));
+    Assert.assertEquals(1, index.findBlock(0, 11L, Level.ALL));
+    Assert.assertEquals(1, index.findBlock(0, 0L, Level.WARN));
+    Assert.assertEquals(2, index.findBlock(0, 21L, Level.ALL));
+  }
+
+  @Test
+  public void testMinimumLevel() {
+    Assert.assertEquals(Level.ALL, LogFileIndex.getMinimumLevel(Filter.EMPTY_FILTER));
+    Assert.assertEquals(Level.WARN, LogFileIndex.getMinimumLevel(new LogLevelExpression("WARN")));
+    Assert.assertEquals(Level.INFO, LogFileIndex.getMinimumLevel(
+      new OrFilter(ImmutableList.of(new LogLevelExpression("WARN"), new LogLevelExpression("INFO")))));
+    Assert.assertEquals(Level.ALL, LogFileIndex.getMinimumLevel(
+      new OrFilter(ImmutableList.of(new LogLevelExpression("WARN"), Filter.EMPTY_FILTER))));
+  }
+
+  @Test
+  public void testIndexedRead() throws Exception {
+    Location location = new LocalLocationFactory(TMP_FOLDER.newFolder()).create("test.avro");
+
+    // Small index interval to have many blocks, with an ERROR event every 100 events
+    try (LogFileOutputStream os = new LogFileOutputStream(location, "", 1024 * 1024, 1024, null, BASE_TIME, NO_OP)) {
+      for (int i = 0; i < 1000; i++) {
+        os.append(createEvent(i % 100 == 0 ? Level.ERROR : Level.INFO, BASE_TIME + i, "Message " + i));
+        if (i == 500) {
+          os.flush();
+        }
+      }
+      os.flush();
+
+      // The index of an open file only covers part of the file
+      LogFileIndex index = LogFileIndex.read(location);
+      Assert.assertNotNull(index);
+      Assert.assertTrue(index.getBlockCount() > 10);
+      verifyReads(location);
+    }
+
+    LogFileIndex index = LogFileIndex.read(location);
+    Assert.assertNotNull(index);
+    Assert.assertEquals(999L, index.getBlock(index.getBlockCount() - 1).getMaxTimestamp() - BASE_TIME);
+    verifyReads(location);
+
+    // Reading without the index gives the same result
+    Assert.assertTrue(LogFileIndex.getIndexLocation(location).delete());
+    verifyReads(location);
+  }
+
+  @Test
+  public void testTokenIndex() throws Exception {
+    Location location = new LocalLocationFactory(TMP_FOLDER.newFolder()).create("test.avro");
+
+    // Every 100th event has an exception
+    LogTokenIndex.Budget budget = new LogTokenIndex.Budget(1000);
+    try (LogFileOutputStream os = new LogFileOutputStream(location, "", 1024 * 1024, 1024, budget, BASE_TIME, NO_OP)) {
+      for (int i = 0; i < 1000; i++) {
+        Throwable throwable = i % 100 == 0 ? new FileNotFoundException("Missing file " + i) : null;
+        os.append(createEvent(Level.INFO, BASE_TIME + i, "Message " + i, throwable));
+      }
+      // The token index is only written when the file is closed
+      Assert.assertNull(LogTokenIndex.read(location));
+      Assert.assertTrue(budget.getUsedTokens() > 0);
+    }
+    // The tokens are released when the file is closed
+    Assert.assertEquals(0, budget.getUsedTokens());
+
+    LogFileIndex index = LogFileIndex.read(location);
+    LogTokenIndex tokenIndex = LogTokenIndex.read(location);
+    Assert.assertNotNull(index);
+    Assert.assertNotNull(tokenIndex);
+    Assert.assertEquals(index.getBlockCount(), tokenIndex.getBlockCount());
+    Assert.assertEquals(index.getBlockCount(), tokenIndex.getBlocks(ImmutableList.of("message")).cardinality());
+    Assert.assertEquals(10, tokenIndex.getBlocks(ImmutableList.of("filenotfoundexception")).cardinality());
+    Assert.assertEquals(10, tokenIndex.getBlocks(ImmutableList.of("missing", "file")).cardinality());
+    // Numbers are not indexed, but can still be searched
+    Assert.assertTrue(tokenIndex.getBlocks(ImmutableList.of("500")).isEmpty());
+    Assert.assertEquals(ImmutableSet.of("missing", "file"),
+                        LogTokenIndex.getRequiredTokens(new SearchExpression("missing file 500")));
+    Assert.assertTrue(tokenIndex.getBlocks(ImmutableList.of("nothing")).isEmpty());
+    verifySearches(location);
+
+    // Searching without the token index gives the same result
+    Assert.assertTrue(LogTokenIndex.getIndexLocation(location).delete());
+    verifySearches(location);
+
+    // No token index is written if there are too many distinct tokens
+    location = new LocalLocationFactory(TMP_FOLDER.newFolder()).create("test.avro");
+    budget = new LogTokenIndex.Budget(10);
+    try (LogFileOutputStream os = new LogFileOutputStream(location, "", 1024 * 1024, 1024, budget, BASE_TIME, NO_OP)) {
+      for (int i = 0; i < 100; i++) {
+        os.append(createEvent(Level.INFO, BASE_TIME + i, "Message m" + i));
+      }
+      Assert.assertEquals(0, budget.getUsedTokens());
+    }
+    Assert.assertNotNull(LogFileIndex.read(location));
+    Assert.assertNull(LogTokenIndex.read(location));
+  }
+
+  @Test
+  public void testSharedTokenBudget() throws Exception {
+    LogTokenIndex.Budget budget = new LogTokenIndex.Budget(20);
+    Location first = new LocalLocationFactory(TMP_FOLDER.newFolder()).create("test.avro");
+    Location second = new LocalLocationFactory(TMP_FOLDER.newFolder()).create("test.avro");
+    Location third = new LocalLocationFactory(TMP_FOLDER.newFolder()).create("test.avro");
+
+    try (LogFileOutputStream firstOs = new LogFileOutputStream(first, "", 1024 * 1024, 1024, budget, BASE_TIME, NO_OP);
+         LogFileOutputStream secondOs = new LogFileOutputStream(second, "", 1024 * 1024, 1024, budget,
+                                                                BASE_TIME, NO_OP)) {
+      // The first file holds most of the budget, which leaves too little for the second file
+      for (int i = 0; i < 15; i++) {
+        firstOs.append(createEvent(Level.INFO, BASE_TIME + i, "first" + i));
+      }
+      for (int i = 0; i < 10; i++) {
+        secondOs.append(createEvent(Level.INFO, BASE_TIME + i, "second" + i));
+      }
+      Assert.assertEquals(15, budget.getUsedTokens());
+    }
+    Assert.assertEquals(0, budget.getUsedTokens());
+    Assert.assertNotNull(LogTokenIndex.read(first));
+    Assert.assertNull(LogTokenIndex.read(second));
+
+    // Files opened after the others are closed can use the whole budget again
+    try (LogFileOutputStream os = new LogFileOutputStream(third, "", 1024 * 1024, 1024, budget, BASE_TIME, NO_OP)) {
+      for (int i = 0; i < 20; i++) {
+        os.append(createEvent(Level.INFO, BASE_TIME + i, "third" + i));
+      }
+    }
+    Assert.assertEquals(0, budget.getUsedTokens());
+    Assert.assertNotNull(LogTokenIndex.read(third));
+  }
+
+  private void verifySearches(Location location) throws IOException {
+    LogLocation logLocation = new LogLocation(LogLocation.VERSION_1, BASE_TIME, BASE_TIME, location, "default", null);
+    Filter exceptionFilter = new SearchExpression("java.io.FileNotFoundException");
+
+    Assert.assertEquals(range(0, 1000, 100), read(logLocation, exceptionFilter, 0L, Long.MAX_VALUE, 1000));
+    Assert.assertEquals(range(300, 600, 100), read(logLocation, exceptionFilter, 250L, 600L, 1000));
+    Assert.assertEquals(range(500, 501, 1), read(logLocation, new SearchExpression("missing file 500"),
+                                                  0L, Long.MAX_VALUE, 1000));
+    Assert.assertEquals(range(0, 0, 1), read(logLocation, new SearchExpression("missing 501"),
+                                             0L, Long.MAX_VALUE, 1000));
+    Assert.assertEquals(range(250, 251, 1), read(logLocation, new AndFilter(ImmutableList.of(
+      new SearchExpression("message"), new SearchExpression("250"))), 0L, Long.MAX_VALUE, 1000));
+
+    Assert.assertEquals(range(700, 1000, 100), toMessages(logLocation.readLogPrev(exceptionFilter,
+                                                                                  BASE_TIME + 999, 3)));
+  }
+
+  private void verifyReads(Location location) throws IOException {
+    LogLocation logLocation = new LogLocation(LogLocation.VERSION_1, BASE_TIME, BASE_TIME, location, "default", null);
+    Filter errorFilter = new LogLevelExpression("ERROR");
+
+    Assert.assertEquals(range(0, 1000, 1), read(logLocation, Filter.EMPTY_FILTER, 0L, Long.MAX_VALUE, 1000));
+    Assert.assertEquals(range(500, 600, 1), read(logLocation, Filter.EMPTY_FILTER, 500L, 600L, 1000));
+    Assert.assertEquals(range(950, 1000, 1), read(logLocation, Filter.EMPTY_FILTER, 950L, Long.MAX_VALUE, 1000));
+    Assert.assertEquals(range(300, 1000, 100), read(logLocation, errorFilter, 250L, Long.MAX_VALUE, 1000));
+    Assert.assertEquals(range(0, 0, 1), read(logLocation, Filter.EMPTY_FILTER, 1000L, Long.MAX_VALUE, 1000));
+
+    Assert.assertEquals(range(401, 501, 1), toMessages(logLocation.readLogPrev(Filter.EMPTY_FILTER,
+                                                                               BASE_TIME + 500, 100)));
+    Assert.assertEquals(range(990, 1000, 1), toMessages(logLocation.readLogPrev(Filter.EMPTY_FILTER,
+                                                                                Long.MAX_VALUE, 10)));
+    Assert.assertEquals(range(700, 1000, 100), toMessages(logLocation.readLogPrev(errorFilter,
+                                                                                  BASE_TIME + 999, 3)));
+  }
+
+  private List<String> read(LogLocation logLocation, Filter filter, long from, long to, int maxEvents) {
+    List<String> messages = new ArrayList<>();
+    long toTime = to == Long.MAX_VALUE ? to : BASE_TIME + to;
+    try (CloseableIterator<LogEvent> iterator = logLocation.readLog(filter, BASE_TIME + from, toTime, maxEvents)) {
+      while (iterator.hasNext()) {
+        messages.add(iterator.next().getLoggingEvent().getFormattedMessage());
+      }
+    }
+    return messages;
+  }
+
+  private List<String> toMessages(Collection<LogEvent> events) {
+    List<String> messages = new ArrayList<>();
+    for (LogEvent event : events) {
+      messages.add(event.getLoggingEvent().getFormattedMessage());
+    }
+    return messages;
+  }
+
+  private List<String> range(int from, int to, int step) {
+    List<String> messages = new ArrayList<>();
+    for (int i = from; i < to; i += step) {
+      messages.add("Message " + i);
+    }
+    return messages;
+  }
+
+  private LoggingEvent createEvent(Level level, long timestamp, String message) {
+    return createEvent(level, timestamp, message, null);
+  }
+
+  private LoggingEvent createEvent(Level level, long timestamp, String message, @Nullable Throwable throwable) {
+    Logger logger = (Logger) LoggerFactory.getLogger(Logger.ROOT_LOGGER_NAME);
+    LoggingEvent event = new LoggingEvent(getClass().getName(), logger, level, message, throwable, null);
+    event.setTimeStamp(timestamp);
+    return event;
+  }
+}
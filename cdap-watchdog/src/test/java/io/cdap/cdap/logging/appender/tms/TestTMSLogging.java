@@ -36,6 +36,7 @@ import io.cdap.cdap.logging.appender.kafka.LogPartitionType;
 import io.cdap.cdap.logging.context.LoggingContextHelper;
 import io.cdap.cdap.logging.context.MapReduceLoggingContext;
 import io.cdap.cdap.logging.filter.Filter;
+import io.cdap.cdap.logging.serialize.LoggingEventBlock;
 import io.cdap.cdap.logging.serialize.LoggingEventSerializer;
 import io.cdap.cdap.messaging.MessageFetcher;
 import io.cdap.cdap.messaging.MessagingService;
@@ -87,6 +88,8 @@ public class TestTMSLogging {
     cConf.setInt(Constants.MessagingSystem.HTTP_SERVER_CONSUME_CHUNK_SIZE, 128);
     // Set max life time to a high value so that dummy tx ids that we create in the tests still work
     cConf.setLong(TxConstants.Manager.CFG_TX_MAX_LIFETIME, 10000000000L);
+    // Block instead of dropping log messages so that all of them are published
+    cConf.setBoolean(Constants.Logging.TMS_DROP_ON_FULL_QUEUE, false);
 
     Injector injector = Guice.createInjector(
       new ConfigModule(cConf),
@@ -140,6 +143,7 @@ public class TestTMSLogging {
 
     Map<Integer, List<ILoggingEvent>> partitionedFetchedLogs = new HashMap<>();
     int totalFetchedLogs = 0;
+    int totalMessages = 0;
 
     for (Map.Entry<Integer, TopicId> topicId : topicIds.entrySet()) {
       List<ILoggingEvent> fetchedLogs = new ArrayList<>();
@@ -147,8 +151,10 @@ public class TestTMSLogging {
       try (CloseableIterator<RawMessage> messages = messageFetcher.fetch()) {
         while (messages.hasNext()) {
           RawMessage message = messages.next();
-          ILoggingEvent iLoggingEvent = loggingEventSerializer.fromBytes(ByteBuffer.wrap(message.getPayload()));
-          fetchedLogs.add(iLoggingEvent);
+          for (ByteBuffer eventBytes : LoggingEventBlock.decode(ByteBuffer.wrap(message.getPayload()))) {
+            fetchedLogs.add(loggingEventSerializer.fromBytes(eventBytes));
+          }
+          totalMessages++;
         }
       }
 
@@ -158,6 +164,9 @@ public class TestTMSLogging {
 
     // LoggingTester emits 220 logs in total
     Assert.assertEquals(220, totalFetchedLogs);
+    // The logs are batched into blocks
+    Assert.assertTrue(totalMessages < totalFetchedLogs);
+    Assert.assertEquals(0L, tmsLogAppender.getDroppedMessages());
 
     // Read the partition that our LoggingContext maps to and filter the logs in there to the logs that correspond
     // to our LoggingContext.
@@ -0,0 +1,102 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.cdap.logging.serialize;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import com.google.common.collect.ImmutableMap;
+import io.cdap.cdap.common.conf.Constants;
+import org.junit.Assert;
+import org.junit.Test;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Tests for {@link LoggingEventBlock}.
+ */
+public class LoggingEventBlockTest {
+
+  private final LoggingEventSerializer serializer = new LoggingEventSerializer();
+
+  @Test
+  public void testRoundTrip() throws IOException {
+    List<byte[]> events = new ArrayList<>();
+    for (int i = 0; i < 100; i++) {
+      events.add(serializer.toBytes(createEvent(1000000L + i, "Test log message " + i)));
+    }
+
+    for (LoggingEventBlock.Compression compression : LoggingEventBlock.Compression.values()) {
+      byte[] block = LoggingEventBlock.encode(events, compression);
+      Assert.assertTrue(LoggingEventBlock.isBlock(ByteBuffer.wrap(block)));
+
+      List<ByteBuffer> decoded = LoggingEventBlock.decode(ByteBuffer.wrap(block));
+      Assert.assertEquals(events.size(), decoded.size());
+      for (int i = 0; i < decoded.size(); i++) {
+        ILoggingEvent event = serializer.fromBytes(decoded.get(i));
+        Assert.assertEquals(1000000L + i, event.getTimeStamp());
+        Assert.assertEquals("Test log message " + i, event.getFormattedMessage());
+      }
+    }
+
+    // Similar events compress well
+    int uncompressed = LoggingEventBlock.encode(events, LoggingEventBlock.Compression.NONE).length;
+    Assert.assertTrue(LoggingEventBlock.encode(events, LoggingEventBlock.Compression.SNAPPY).length < uncompressed);
+  }
+
+  @Test
+  public void testSingleEvent() throws IOException {
+    // Events published by older appenders are not in blocks, including the ones with a zero timestamp
+    for (long timestamp : new long[] { 0L, 1000000L }) {
+      byte[] bytes = serializer.toBytes(createEvent(timestamp, "message"));
+      Assert.assertFalse(LoggingEventBlock.isBlock(ByteBuffer.wrap(bytes)));
+
+      List<ByteBuffer> decoded = LoggingEventBlock.decode(ByteBuffer.wrap(bytes));
+      Assert.assertEquals(1, decoded.size());
+      ILoggingEvent event = serializer.fromBytes(decoded.get(0));
+      Assert.assertEquals(timestamp, event.getTimeStamp());
+      Assert.assertEquals("message", event.getFormattedMessage());
+    }
+  }
+
+  @Test
+  public void testInvalidBlock() throws IOException {
+    byte[] block = LoggingEventBlock.encode(
+      Arrays.asList(serializer.toBytes(createEvent(1000000L, "message"))), LoggingEventBlock.Compression.NONE);
+    try {
+      LoggingEventBlock.decode(ByteBuffer.wrap(Arrays.copyOf(block, block.length - 1)));
+      Assert.fail("Expected IOException for a truncated block");
+    } catch (IOException e) {
+      // expected
+    }
+  }
+
+  private ILoggingEvent createEvent(long timestamp, String message) {
+    Logger logger = (Logger) LoggerFactory.getLogger(Logger.ROOT_LOGGER_NAME);
+    ch.qos.logback.classic.spi.LoggingEvent event =
+      new ch.qos.logback.classic.spi.LoggingEvent(getClass().getName(), logger, Level.INFO, message, null, null);
+    event.setTimeStamp(timestamp);
+    event.setThreadName("thread-1");
+    event.setMDCPropertyMap(ImmutableMap.of(Constants.Logging.TAG_RUN_ID, "run1"));
+    return event;
+  }
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.cdap.metrics.collect;
+
+import com.google.common.collect.ImmutableMap;
+import io.cdap.cdap.api.metrics.MetricValues;
+import io.cdap.cdap.api.metrics.MetricsContext;
+import io.cdap.cdap.common.conf.Constants;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH benchmark for the cost of emitting metrics through the {@link MetricsContext} returned by the
+ * {@link AggregatedMetricsCollectionService}. It can be run with the {@link #main(String[])} method from the
+ * test classpath. Adding {@code -prof gc} to the JMH options shows the allocation rate per call.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AggregatedMetricsCollectionServiceBenchmark {
+
+  private AggregatedMetricsCollectionService service;
+  private MetricsContext context;
+
+  @Setup
+  public void setup() {
+    service = new AggregatedMetricsCollectionService(1000L) {
+      @Override
+      protected void publish(Iterator<MetricValues> metrics) {
+        while (metrics.hasNext()) {
+          metrics.next();
+        }
+      }
+    };
+    service.startAndWait();
+
+    // Context similar to the one used by user programs
+    context = service.getContext(ImmutableMap.of(Constants.Metrics.Tag.NAMESPACE, "ns",
+                                                 Constants.Metrics.Tag.APP, "app",
+                                                 Constants.Metrics.Tag.SPARK, "spark",
+                                                 Constants.Metrics.Tag.RUN_ID, "run"))
+      .childContext(Constants.Metrics.Tag.SCOPE, "user");
+  }
+
+  @TearDown
+  public void teardown() {
+    service.stopAndWait();
+  }
+
+  @Benchmark
+  @Threads(1)
+  public void increment() {
+    context.increment("records.in", 1L);
+  }
+
+  @Benchmark
+  @Threads(4)
+  public void incrementConcurrent() {
+    context.increment("records.in", 1L);
+  }
+
+  @Benchmark
+  @Threads(1)
+  public void gauge() {
+    context.gauge("records.size", 100L);
+  }
+
+  public static void main(String[] args) throws RunnerException {
+    Options options = new OptionsBuilder()
+      .include(AggregatedMetricsCollectionServiceBenchmark.class.getSimpleName())
+      .build();
+    new Runner(options).run();
+  }
+}
@@ -42,9 +42,11 @@ import org.apache.tephra.TransactionManager;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.TimeUnit;
@@ -83,13 +85,15 @@ public class MessagingMetricsProcessorServiceTest extends MetricsProcessorServic
         publishMessagingMetrics(i, startTime, METRICS_CONTEXT, expected, "", MetricType.GAUGE);
       }
 
+      // Alternate between one and multiple shards in the processor
+      cConf.setInt(Constants.Metrics.PROCESSOR_SHARDS, iteration % 2 == 0 ? 1 : 3);
       final MockMetricStore metricStore = new MockMetricStore();
       // Create new MessagingMetricsProcessorService instance every time because the same instance cannot be started
       // again after it's stopped
       MessagingMetricsProcessorService messagingMetricsProcessorService =
         new MessagingMetricsProcessorService(cConf, injector.getInstance(MetricDatasetFactory.class), messagingService,
                                              injector.getInstance(SchemaGenerator.class),
-                                             injector.getInstance(DatumReaderFactory.class), metricStore,
+                                             injector.getInstance(DatumReaderFactory.class), () -> metricStore,
                                              partitions, new NoopMetricsContext(), 50, 0);
       messagingMetricsProcessorService.startAndWait();
 
@@ -122,6 +126,40 @@ public class MessagingMetricsProcessorServiceTest extends MetricsProcessorServic
       // Stop messagingMetricsProcessorService
       messagingMetricsProcessorService.stopAndWait();
     }
+    cConf.unset(Constants.Metrics.PROCESSOR_SHARDS);
+  }
+
+  @Test
+  public void testAggregate() {
+    Map<String, String> context1 = Collections.singletonMap("ns", "ns1");
+    Map<String, String> context2 = Collections.singletonMap("ns", "ns2");
+
+    List<MetricValues> aggregated = MessagingMetricsProcessorService.aggregate(Arrays.asList(
+      new MetricValues(context1, "counter", 1L, 1L, MetricType.COUNTER),
+      new MetricValues(context1, "gauge", 1L, 5L, MetricType.GAUGE),
+      new MetricValues(context2, "counter", 1L, 2L, MetricType.COUNTER),
+      new MetricValues(context1, "counter", 1L, 3L, MetricType.COUNTER),
+      new MetricValues(context1, "gauge", 1L, 2L, MetricType.GAUGE),
+      new MetricValues(context1, "counter", 2L, 4L, MetricType.COUNTER)
+    ));
+
+    // Metrics with the same context and timestamp are aggregated
+    Assert.assertEquals(3, aggregated.size());
+
+    Map<String, Long> values = new HashMap<>();
+    for (MetricValue metricValue : aggregated.get(0).getMetrics()) {
+      values.put(metricValue.getName(), metricValue.getValue());
+    }
+    Assert.assertEquals(context1, aggregated.get(0).getTags());
+    Assert.assertEquals(1L, aggregated.get(0).getTimestamp());
+    // Counters are summed and the last gauge value wins
+    Assert.assertEquals(4L, (long) values.get("counter"));
+    Assert.assertEquals(2L, (long) values.get("gauge"));
+
+    Assert.assertEquals(context2, aggregated.get(1).getTags());
+    Assert.assertEquals(2L, aggregated.get(1).getMetrics().iterator().next().getValue());
+    Assert.assertEquals(2L, aggregated.get(2).getTimestamp());
+    Assert.assertEquals(4L, aggregated.get(2).getMetrics().iterator().next().getValue());
   }
 
   private void assertMetricsResult(Map<String, Long> expected, Map<String, Long> actual) {
@@ -150,7 +188,7 @@ public class MessagingMetricsProcessorServiceTest extends MetricsProcessorServic
     }
 
     @Override
-    public void add(Collection<? extends MetricValues> metricValues) {
+    public synchronized void add(Collection<? extends MetricValues> metricValues) {
       for (MetricValues metric : metricValues) {
         for (MetricValue metricValue : metric.getMetrics()) {
           // metrics generated by MessagingMetricsProcessorService
@@ -179,11 +217,11 @@ public class MessagingMetricsProcessorServiceTest extends MetricsProcessorServic
       }
     }
 
-    public long getMetricsProcessedByMetricsProcessor() {
+    public synchronized long getMetricsProcessedByMetricsProcessor() {
       return systemMetricsMap.get("metrics.0.process.count");
     }
 
-    public boolean isMetricsProcessorDelayEmitted() {
+    public synchronized boolean isMetricsProcessorDelayEmitted() {
       for (int i = 0; i < cConf.getInt(Constants.Metrics.MESSAGING_TOPIC_NUM); i++) {
         if (!systemMetricsMap.containsKey(
           String.format(
@@ -218,7 +256,7 @@ public class MessagingMetricsProcessorServiceTest extends MetricsProcessorServic
     }
 
     @Override
-    public void deleteAll() {
+    public synchronized void deleteAll() {
       userMetricsMap.clear();
       systemMetricsMap.clear();
     }
@@ -238,8 +276,8 @@ public class MessagingMetricsProcessorServiceTest extends MetricsProcessorServic
       return Collections.EMPTY_MAP;
     }
 
-    Map<String, Long> getAllMetrics() {
-      return userMetricsMap;
+    synchronized Map<String, Long> getAllMetrics() {
+      return new HashMap<>(userMetricsMap);
     }
   }
 }
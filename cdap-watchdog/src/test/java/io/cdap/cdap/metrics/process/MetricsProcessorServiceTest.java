@@ -81,7 +81,7 @@ public class MetricsProcessorServiceTest extends MetricsProcessorServiceTestBase
     MessagingMetricsProcessorService messagingMetricsProcessorService =
       new MessagingMetricsProcessorService(cConf, injector.getInstance(MetricDatasetFactory.class),
                                            messagingService, injector.getInstance(SchemaGenerator.class),
-                                           injector.getInstance(DatumReaderFactory.class), metricStore,
+                                           injector.getInstance(DatumReaderFactory.class), () -> metricStore,
                                            partitions, new NoopMetricsContext(), 50, 0);
     messagingMetricsProcessorService.startAndWait();
 
@@ -99,7 +99,7 @@ public class MetricsProcessorServiceTest extends MetricsProcessorServiceTestBase
     messagingMetricsProcessorService =
       new MessagingMetricsProcessorService(cConf, injector.getInstance(MetricDatasetFactory.class),
                                            messagingService, injector.getInstance(SchemaGenerator.class),
-                                           injector.getInstance(DatumReaderFactory.class), metricStore,
+                                           injector.getInstance(DatumReaderFactory.class), () -> metricStore,
                                            partitions, new NoopMetricsContext(), 50, 0);
     messagingMetricsProcessorService.startAndWait();
 
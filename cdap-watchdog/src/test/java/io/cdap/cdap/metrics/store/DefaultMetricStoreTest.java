@@ -0,0 +1,169 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.cdap.metrics.store;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import io.cdap.cdap.api.dataset.lib.cube.AggregationFunction;
+import io.cdap.cdap.api.dataset.lib.cube.TimeValue;
+import io.cdap.cdap.api.metrics.MetricDataQuery;
+import io.cdap.cdap.api.metrics.MetricTimeSeries;
+import io.cdap.cdap.api.metrics.MetricType;
+import io.cdap.cdap.api.metrics.MetricValues;
+import io.cdap.cdap.common.conf.CConfiguration;
+import io.cdap.cdap.common.conf.Constants;
+import io.cdap.cdap.data2.dataset2.lib.table.inmemory.InMemoryMetricsTable;
+import io.cdap.cdap.data2.dataset2.lib.table.inmemory.InMemoryTableService;
+import io.cdap.cdap.data2.dataset2.lib.timeseries.EntityTable;
+import io.cdap.cdap.data2.dataset2.lib.timeseries.FactTable;
+import io.cdap.cdap.messaging.data.MessageId;
+import io.cdap.cdap.metrics.process.MetricsConsumerMetaTable;
+import io.cdap.cdap.metrics.process.RollupMetaKey;
+import io.cdap.cdap.metrics.process.TopicIdMetaKey;
+import io.cdap.cdap.metrics.process.TopicProcessMeta;
+import io.cdap.cdap.proto.id.NamespaceId;
+import io.cdap.cdap.proto.id.TopicId;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests for the rollup of metrics in {@link DefaultMetricStore}.
+ */
+public class DefaultMetricStoreTest {
+
+  private static final int TOTALS = Integer.MAX_VALUE;
+  private static final String METRIC = "system.metric";
+  private static final Map<String, String> TAGS = ImmutableMap.of(Constants.Metrics.Tag.NAMESPACE, "ns");
+
+  @Test
+  public void testRollup() {
+    CConfiguration cConf = CConfiguration.create();
+    cConf.setBoolean(Constants.Metrics.ROLLUP_ENABLED, true);
+    cConf.setLong(Constants.Metrics.ROLLUP_DELAY_SECONDS, 0L);
+    cConf.setInt(Constants.Metrics.MESSAGING_TOPIC_NUM, 1);
+    cConf.setInt(Constants.Metrics.PROCESSOR_SHARDS, 1);
+
+    MetricDatasetFactory dsFactory = createDatasetFactory("testRollup");
+    MetricsConsumerMetaTable metaTable = dsFactory.createConsumerMeta();
+    TopicId topicId = NamespaceId.SYSTEM.topic(cConf.get(Constants.Metrics.TOPIC_PREFIX) + 0);
+
+    // Metrics are persisted up to an hour in the past
+    long start = (TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis()) / 3600 - 10) * 3600;
+    savePersistedTimestamp(metaTable, topicId, start);
+
+    // The rollup starts from the persisted timestamp when the first metrics are added
+    DefaultMetricStore metricStore = new DefaultMetricStore(dsFactory, cConf);
+    metricStore.add(new MetricValues(TAGS, "metric", start + 10, 1, MetricType.COUNTER));
+    for (int resolution : new int[] {60, 3600, TOTALS}) {
+      Assert.assertEquals(Long.valueOf(start), metaTable.getRollupTimestamp(new RollupMetaKey(resolution)));
+    }
+    metricStore.add(new MetricValues(TAGS, "metric", start + 70, 2, MetricType.COUNTER));
+    metricStore.add(new MetricValues(TAGS, "metric", start + 3610, 3, MetricType.COUNTER));
+
+    // Nothing is rolled up before the metrics processor persisted more metrics
+    metricStore.rollup();
+    Assert.assertEquals(timeValues(start + 10, 1, start + 70, 2, start + 3610, 3), query(metricStore, 1, start));
+    Assert.assertTrue(query(metricStore, 60, start).isEmpty());
+    Assert.assertTrue(query(metricStore, 3600, start).isEmpty());
+    Assert.assertTrue(query(metricStore, TOTALS, 0).isEmpty());
+
+    // Coarser resolutions and totals are computed up to the persisted timestamp
+    savePersistedTimestamp(metaTable, topicId, start + 7200);
+    metricStore.rollup();
+    Assert.assertEquals(timeValues(start, 1, start + 60, 2, start + 3600, 3), query(metricStore, 60, start));
+    Assert.assertEquals(timeValues(start, 3, start + 3600, 3), query(metricStore, 3600, start));
+    Assert.assertEquals(timeValues(0, 6), query(metricStore, TOTALS, 0));
+
+    // Repeating the rollup of the same range, as if saving the progress failed, must not count metrics twice
+    for (int resolution : new int[] {60, 3600, TOTALS}) {
+      metaTable.saveRollupTimestamp(new RollupMetaKey(resolution), start);
+    }
+    metricStore.rollup();
+    Assert.assertEquals(timeValues(start, 1, start + 60, 2, start + 3600, 3), query(metricStore, 60, start));
+    Assert.assertEquals(timeValues(start, 3, start + 3600, 3), query(metricStore, 3600, start));
+    Assert.assertEquals(timeValues(0, 6), query(metricStore, TOTALS, 0));
+
+    // A rollup over a range that overlaps with the rolled up range only adds the new metrics to the totals
+    metricStore.add(new MetricValues(TAGS, "metric", start + 7210, 4, MetricType.COUNTER));
+    savePersistedTimestamp(metaTable, topicId, start + 10800);
+    metaTable.saveRollupTimestamp(new RollupMetaKey(TOTALS), start + 3600);
+    metricStore.rollup();
+    Assert.assertEquals(timeValues(start, 3, start + 3600, 3, start + 7200, 4), query(metricStore, 3600, start));
+    Assert.assertEquals(timeValues(0, 10), query(metricStore, TOTALS, 0));
+    for (int resolution : new int[] {60, 3600, TOTALS}) {
+      Assert.assertEquals(Long.valueOf(start + 10800), metaTable.getRollupTimestamp(new RollupMetaKey(resolution)));
+    }
+  }
+
+  /**
+   * Saves the processing progress of the only metrics topic, such that all metrics published before the given
+   * timestamp have been persisted.
+   */
+  private void savePersistedTimestamp(MetricsConsumerMetaTable metaTable, TopicId topicId, long timestamp) {
+    byte[] messageId = new byte[MessageId.RAW_ID_SIZE];
+    MessageId.putRawId(TimeUnit.SECONDS.toMillis(timestamp), (short) 0, 0L, (short) 0, messageId, 0);
+    metaTable.saveMetricsProcessorStats(Collections.singletonMap(
+      new TopicIdMetaKey(topicId, 0), new TopicProcessMeta(messageId, timestamp, timestamp, 1L, timestamp)));
+  }
+
+  private List<TimeValue> query(DefaultMetricStore metricStore, int resolution, long startTs) {
+    Collection<MetricTimeSeries> result = metricStore.query(new MetricDataQuery(
+      startTs, startTs + 86400, resolution, Integer.MAX_VALUE, ImmutableMap.of(METRIC, AggregationFunction.SUM),
+      TAGS, ImmutableList.of(), null));
+    List<TimeValue> timeValues = new ArrayList<>();
+    for (MetricTimeSeries timeSeries : result) {
+      timeValues.addAll(timeSeries.getTimeValues());
+    }
+    return timeValues;
+  }
+
+  private List<TimeValue> timeValues(long... tsAndValues) {
+    List<TimeValue> timeValues = new ArrayList<>();
+    for (int i = 0; i < tsAndValues.length; i += 2) {
+      timeValues.add(new TimeValue(tsAndValues[i], tsAndValues[i + 1]));
+    }
+    return timeValues;
+  }
+
+  private MetricDatasetFactory createDatasetFactory(String name) {
+    String entityTableName = name + "-entity";
+    String metaTableName = name + "-meta";
+    InMemoryTableService.create(entityTableName);
+    InMemoryTableService.create(metaTableName);
+    return new MetricDatasetFactory() {
+      @Override
+      public FactTable getOrCreateFactTable(int resolution) {
+        String dataTableName = name + "-" + resolution;
+        InMemoryTableService.create(dataTableName);
+        return new FactTable(new InMemoryMetricsTable(dataTableName),
+                             new EntityTable(new InMemoryMetricsTable(entityTableName)), resolution, 3600);
+      }
+
+      @Override
+      public MetricsConsumerMetaTable createConsumerMeta() {
+        return new MetricsConsumerMetaTable(new InMemoryMetricsTable(metaTableName));
+      }
+    };
+  }
+}